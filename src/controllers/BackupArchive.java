@@ -0,0 +1,839 @@
+package controllers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import cryptography.SecretValue;
+
+/**
+ * A directory holding many generations of one user's backup database while storing each piece of data only once.
+ * Each backup file is cut into chunks at content-defined boundaries (a rolling Gear hash picks the cut points), so
+ * an edit only changes the chunks around it and the rest of the file maps to chunks the archive already has. Every
+ * chunk is compressed, encrypted with AES and stored under an HMAC of its contents; a generation is an encrypted
+ * manifest listing its chunks. Deleting a generation and collecting garbage removes the chunks nothing refers to.
+ *
+ * Layout:
+ * 	archive.properties		owner, key derivation parameters and the wrapped archive key
+ * 	generations/<millis>.gen	one manifest per backup, with the backup's BackupManifest if it had one
+ * 	chunks/<xx>/<id>		chunk files, spread over 256 sub-directories by the first byte of their id
+ *
+ * The archive key is random and stored wrapped under a key derived from the owner's password (see deriveKey), so
+ * the archive can be restored with nothing but the password even if the vault itself is lost.
+ */
+public class BackupArchive {
+
+	public static final String HEADER_FILE = "archive.properties";
+
+	private static final int FORMAT_VERSION = 1;
+	private static final int MANIFEST_MAGIC = 0x53444d46; // "SDMF"
+	private static final int KDF_ITERATIONS = 100000;
+	private static final int KEY_BYTES = 32;
+	private static final int ID_BYTES = 32;
+	private static final int IV_BYTES = 16;
+
+	// Chunk sizes: cut points are only taken between MIN and MAX, on average every 8 KB
+	private static final int MIN_CHUNK = 2 * 1024;
+	private static final int MAX_CHUNK = 64 * 1024;
+	private static final long CUT_MASK = (1L << 13) - 1;
+	private static final long[] GEAR = new long[256];
+
+	// Deleting a file costs about a block of metadata writes, however small the file is
+	private static final long FILE_IO_COST = 4096;
+
+	private static final byte STORED = 0;
+	private static final byte DEFLATED = 1;
+
+	static {
+		// The table must be the same in every run, or unchanged data would be cut differently and stored again
+		Random seeded = new Random(0x5e17e1L);
+		for (int i = 0; i < GEAR.length; i++) {
+			GEAR[i] = seeded.nextLong();
+		}
+	}
+
+	// One lock per archive directory, so garbage collection never runs while a generation's chunks are being written
+	private static final ConcurrentHashMap<String, Object> LOCKS = new ConcurrentHashMap<String, Object>();
+
+	private final File directory;
+	private final Object lock;
+	private final File chunkDirectory;
+	private final File generationDirectory;
+	private final SecureRandom random = new SecureRandom();
+	private SecretKeySpec encryptionKey;
+	private SecretKeySpec idKey;
+
+	/**
+	 * Told how far addGeneration has got; can cancel it.
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param	bytesDone	bytes of the backup file stored so far
+		 * @param	bytesTotal	size of the backup file
+		 * @return	false to cancel
+		 */
+		boolean progress(long bytesDone, long bytesTotal);
+	}
+
+	/**
+	 * One backup stored in the archive.
+	 */
+	public static class Generation implements Comparable<Generation> {
+		private final long created;
+		private final long length;
+		private final List<byte[]> chunkIds;
+		private final byte[] entryManifest;
+
+		Generation(long created, long length, List<byte[]> chunkIds, byte[] entryManifest) {
+			this.created = created;
+			this.length = length;
+			this.chunkIds = chunkIds;
+			this.entryManifest = entryManifest;
+		}
+
+		/**
+		 * @return	when the backup was taken, in milliseconds since the epoch; also identifies the generation
+		 */
+		public long getCreated() {
+			return created;
+		}
+
+		/**
+		 * @return	size of the backup database file in bytes
+		 */
+		public long getLength() {
+			return length;
+		}
+
+		public int getChunkCount() {
+			return chunkIds.size();
+		}
+
+		List<byte[]> getChunkIds() {
+			return chunkIds;
+		}
+
+		/**
+		 * @return	true if the backup's BackupManifest was stored with it, so the restored file can be verified
+		 */
+		public boolean hasEntryManifest() {
+			return entryManifest != null;
+		}
+
+		public int compareTo(Generation o) {
+			return Long.compare(created, o.created);
+		}
+	}
+
+	/**
+	 * @param	directory	directory of the archive; created by create()
+	 */
+	public BackupArchive(File directory) {
+		this.directory = directory;
+		Object newLock = new Object();
+		Object existingLock = LOCKS.putIfAbsent(directory.getAbsolutePath(), newLock);
+		this.lock = (existingLock != null) ? existingLock : newLock;
+		this.chunkDirectory = new File(directory, "chunks");
+		this.generationDirectory = new File(directory, "generations");
+	}
+
+	/**
+	 * @param	directory	directory to check
+	 * @return	true if the directory holds a backup archive
+	 */
+	public static boolean isArchive(File directory) {
+		return new File(directory, HEADER_FILE).isFile();
+	}
+
+	/**
+	 * Derives the key that protects a user's archives from their password. Done once at sign-in, so the session can
+	 * take backups without keeping the password. The salt is derived from the username, which makes the key
+	 * reproducible from the username and password alone when restoring.
+	 *
+	 * @param	owner		username (email) of the archive's owner
+	 * @param	password	the owner's password
+	 * @return	the derived key; the caller closes it
+	 */
+	public static SecretValue deriveKey(String owner, char[] password) {
+		try {
+			byte[] salt = MessageDigest.getInstance("SHA-256").digest(("sentinel-archive:" + owner).getBytes(StandardCharsets.UTF_8));
+			PBEKeySpec spec = new PBEKeySpec(password, salt, KDF_ITERATIONS, KEY_BYTES * 8);
+			byte[] key = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+			spec.clearPassword();
+			SecretValue derived = SecretValue.copyOf(key);
+			Arrays.fill(key, (byte) 0);
+			return derived;
+		}
+		catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Creates a new, empty archive in the directory with a fresh random archive key.
+	 *
+	 * @param	owner		username (email) of the archive's owner
+	 * @param	passwordKey	key from deriveKey
+	 * @return	positive integer if the archive was created and opened; negative if failure
+	 */
+	public int create(String owner, SecretValue passwordKey) {
+		byte[] archiveKey = new byte[2 * KEY_BYTES];
+		random.nextBytes(archiveKey);
+		byte[] wrappingKey = passwordKey.toByteArray();
+		try {
+			if (!chunkDirectory.mkdirs() && !chunkDirectory.isDirectory() || !generationDirectory.mkdirs() && !generationDirectory.isDirectory()) {
+				System.err.println("Could not create the backup archive in " + directory.getPath());
+				return -1;
+			}
+			Properties header = new Properties();
+			header.setProperty("format", String.valueOf(FORMAT_VERSION));
+			header.setProperty("owner", owner);
+			header.setProperty("kdf", "PBKDF2WithHmacSHA256");
+			header.setProperty("iterations", String.valueOf(KDF_ITERATIONS));
+			header.setProperty("key", Base64.getEncoder().encodeToString(encrypt(new SecretKeySpec(wrappingKey, "AES"), archiveKey)));
+			header.setProperty("key_check", Base64.getEncoder().encodeToString(keyCheck(archiveKey)));
+			writeAtomically(new File(directory, HEADER_FILE), headerBytes(header));
+			setKeys(archiveKey);
+			return 1;
+		}
+		catch (IOException | GeneralSecurityException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			return -1;
+		}
+		finally {
+			Arrays.fill(archiveKey, (byte) 0);
+			Arrays.fill(wrappingKey, (byte) 0);
+		}
+	}
+
+	/**
+	 * Opens an existing archive by unwrapping its key.
+	 *
+	 * @param	passwordKey	key from deriveKey for the archive's owner
+	 * @return	positive integer if opened; negative if the key is wrong or the archive cannot be read
+	 */
+	public int open(SecretValue passwordKey) {
+		byte[] wrappingKey = passwordKey.toByteArray();
+		byte[] archiveKey = null;
+		try {
+			Properties header = readHeader();
+			if (Integer.parseInt(header.getProperty("format", "0")) != FORMAT_VERSION) {
+				System.err.println("Unsupported backup archive format in " + directory.getPath());
+				return -1;
+			}
+			archiveKey = decrypt(new SecretKeySpec(wrappingKey, "AES"), Base64.getDecoder().decode(header.getProperty("key")));
+			if (!MessageDigest.isEqual(keyCheck(archiveKey), Base64.getDecoder().decode(header.getProperty("key_check")))) {
+				return -1;
+			}
+			setKeys(archiveKey);
+			return 1;
+		}
+		catch (GeneralSecurityException e) {
+			return -1; // wrong password: the padding of the wrapped key does not check out
+		}
+		catch (IOException | RuntimeException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			return -1;
+		}
+		finally {
+			Arrays.fill(wrappingKey, (byte) 0);
+			if (archiveKey != null) {
+				Arrays.fill(archiveKey, (byte) 0);
+			}
+		}
+	}
+
+	/**
+	 * Wraps the archive key under the key for the owner's new password, after a password change. The whole header
+	 * (wrapped key and key check) is replaced in one rename while the archive is locked, so it always holds exactly
+	 * one working wrapped key. Calling it again after it succeeded does nothing.
+	 *
+	 * @param	oldKey	key from deriveKey for the old password
+	 * @param	newKey	key from deriveKey for the new password
+	 * @return	positive integer if the archive now opens with newKey; negative if neither key opens it or the header
+	 * 			cannot be written (the header is then unchanged)
+	 */
+	public int rewrap(SecretValue oldKey, SecretValue newKey) {
+		synchronized (lock) {
+			byte[] oldWrappingKey = oldKey.toByteArray();
+			byte[] newWrappingKey = newKey.toByteArray();
+			byte[] archiveKey = null;
+			try {
+				Properties header = readHeader();
+				try {
+					archiveKey = decrypt(new SecretKeySpec(oldWrappingKey, "AES"), Base64.getDecoder().decode(header.getProperty("key")));
+				}
+				catch (GeneralSecurityException e) {
+					return open(newKey); // already rewrapped, or the old key is wrong
+				}
+				if (!MessageDigest.isEqual(keyCheck(archiveKey), Base64.getDecoder().decode(header.getProperty("key_check")))) {
+					return open(newKey);
+				}
+				header.setProperty("key", Base64.getEncoder().encodeToString(encrypt(new SecretKeySpec(newWrappingKey, "AES"), archiveKey)));
+				header.setProperty("key_check", Base64.getEncoder().encodeToString(keyCheck(archiveKey)));
+				writeAtomically(new File(directory, HEADER_FILE), headerBytes(header));
+				setKeys(archiveKey);
+				return 1;
+			}
+			catch (IOException | GeneralSecurityException | RuntimeException e) {
+				System.err.println(e.getClass().getName() + ": " + e.getMessage());
+				e.printStackTrace();
+				return -1;
+			}
+			finally {
+				Arrays.fill(oldWrappingKey, (byte) 0);
+				Arrays.fill(newWrappingKey, (byte) 0);
+				if (archiveKey != null) {
+					Arrays.fill(archiveKey, (byte) 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return	username (email) of the archive's owner, or null if the header cannot be read
+	 */
+	public String getOwner() {
+		try {
+			return readHeader().getProperty("owner");
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Adds a backup database file as a new generation. Only chunks the archive does not have yet are written.
+	 *
+	 * @param	databaseFile	backup database file to store
+	 * @return	the new generation, or null if failure (nothing the other generations use is changed)
+	 */
+	public Generation addGeneration(File databaseFile) {
+		return addGeneration(databaseFile, null);
+	}
+
+	/**
+	 * Adds a backup database file as a new generation, reporting progress after every chunk. If the listener
+	 * cancels, no generation is written; chunks already stored are removed by the next collectGarbage().
+	 * A BackupManifest next to the file is stored in the generation, and restoreGeneration() puts it back.
+	 *
+	 * @param	databaseFile	backup database file to store
+	 * @param	listener		progress listener, or null
+	 * @return	the new generation, or null if failure or cancelled
+	 */
+	public Generation addGeneration(File databaseFile, ProgressListener listener) {
+		synchronized (lock) {
+			return writeGeneration(databaseFile, listener);
+		}
+	}
+
+	private Generation writeGeneration(File databaseFile, ProgressListener listener) {
+		long total = databaseFile.length();
+		List<byte[]> chunkIds = new ArrayList<byte[]>();
+		long length = 0;
+		try {
+			File manifestFile = new File(databaseFile.getPath() + BackupManifest.MANIFEST_SUFFIX);
+			byte[] entryManifest = manifestFile.isFile() ? Files.readAllBytes(manifestFile.toPath()) : null;
+			InputStream in = new BufferedInputStream(new FileInputStream(databaseFile), MAX_CHUNK);
+			try {
+				byte[] chunk = new byte[MAX_CHUNK];
+				int size;
+				while ((size = readChunk(in, chunk)) > 0) {
+					chunkIds.add(storeChunk(chunk, size));
+					length += size;
+					if (listener != null && !listener.progress(length, total)) {
+						return null;
+					}
+				}
+			}
+			finally {
+				in.close();
+			}
+			long created = System.currentTimeMillis();
+			while (generationFile(created).exists()) {
+				created++;
+			}
+			Generation generation = new Generation(created, length, chunkIds, entryManifest);
+			writeAtomically(generationFile(created), seal(manifestBytes(generation)));
+			return generation;
+		}
+		catch (IOException | GeneralSecurityException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * @return	the archive's generations, oldest first; generations whose manifest cannot be read are left out
+	 */
+	public List<Generation> listGenerations() {
+		List<Generation> generations = new ArrayList<Generation>();
+		File[] files = generationDirectory.listFiles();
+		if (files == null) {
+			return generations;
+		}
+		for (File file : files) {
+			if (!file.getName().endsWith(".gen")) {
+				continue;
+			}
+			try {
+				generations.add(readManifest(unseal(Files.readAllBytes(file.toPath()))));
+			}
+			catch (IOException | GeneralSecurityException e) {
+				System.err.println("Skipping unreadable backup generation " + file.getName() + ": " + e.getMessage());
+			}
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+
+	/**
+	 * Rebuilds a generation's backup database file. Every chunk is checked against its id while it is read. If the
+	 * generation has a BackupManifest it is written next to the target, so the entries can be verified before import.
+	 *
+	 * @param	generation	generation to restore
+	 * @param	target		file to write; replaced only if the whole generation could be restored
+	 * @return	positive integer if success; negative if a chunk is missing or damaged
+	 */
+	public int restoreGeneration(Generation generation, File target) {
+		File partial = new File(target.getPath() + ".partial");
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(partial));
+			try {
+				for (byte[] id : generation.chunkIds) {
+					byte[] data = unseal(Files.readAllBytes(chunkFile(id).toPath()));
+					if (!MessageDigest.isEqual(id, chunkId(data, data.length))) {
+						throw new IOException("Backup chunk " + toHex(id) + " is damaged");
+					}
+					out.write(data);
+				}
+			}
+			finally {
+				out.close();
+			}
+			if (partial.length() != generation.length) {
+				throw new IOException("Restored backup has the wrong length");
+			}
+			Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			File manifestFile = new File(target.getPath() + BackupManifest.MANIFEST_SUFFIX);
+			if (generation.entryManifest != null) {
+				writeAtomically(manifestFile, generation.entryManifest);
+			}
+			else {
+				manifestFile.delete(); // never verify against the manifest of some other backup
+			}
+			return 1;
+		}
+		catch (IOException | GeneralSecurityException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			partial.delete();
+			return -1;
+		}
+	}
+
+	/**
+	 * Deletes a generation's manifest. Its chunks stay until collectGarbage() finds nothing else uses them.
+	 *
+	 * @param	generation	generation to delete
+	 * @return	positive integer if deleted; negative if failure
+	 */
+	public int deleteGeneration(Generation generation) {
+		synchronized (lock) {
+			return generationFile(generation.created).delete() ? 1 : -1;
+		}
+	}
+
+	/**
+	 * Deletes every chunk that no readable generation refers to, and anything left over from interrupted writes.
+	 *
+	 * @return	number of bytes freed, or -1 if failure (nothing is deleted)
+	 */
+	public long collectGarbage() {
+		return collectGarbage(0);
+	}
+
+	/**
+	 * Like collectGarbage(), but paces the manifest reads and chunk deletions so they average no more than
+	 * maxBytesPerSecond, leaving the disk to the rest of the application. Stops early if the thread is interrupted.
+	 *
+	 * @param	maxBytesPerSecond	I/O budget; 0 for no limit
+	 * @return	number of bytes freed, or -1 if failure
+	 */
+	public long collectGarbage(long maxBytesPerSecond) {
+		synchronized (lock) {
+			return deleteUnusedChunks(maxBytesPerSecond);
+		}
+	}
+
+	private long deleteUnusedChunks(long maxBytesPerSecond) {
+		long started = System.nanoTime();
+		long io = 0;
+		File[] manifests = generationDirectory.listFiles();
+		Set<String> live = new HashSet<String>();
+		if (manifests != null) {
+			for (File manifest : manifests) {
+				if (!manifest.getName().endsWith(".gen")) {
+					manifest.delete(); // left over from an interrupted write
+					continue;
+				}
+				try {
+					byte[] sealed = Files.readAllBytes(manifest.toPath());
+					for (byte[] id : readManifest(unseal(sealed)).chunkIds) {
+						live.add(toHex(id));
+					}
+					io += sealed.length;
+					if (!pace(io, started, maxBytesPerSecond)) {
+						return -1;
+					}
+				}
+				catch (IOException | GeneralSecurityException e) {
+					// An unreadable manifest might still need any chunk; keep them all
+					System.err.println(e.getClass().getName() + ": " + e.getMessage());
+					return -1;
+				}
+			}
+		}
+		long freed = 0;
+		File[] buckets = chunkDirectory.listFiles();
+		if (buckets != null) {
+			for (File bucket : buckets) {
+				File[] chunks = bucket.listFiles();
+				if (chunks == null) {
+					continue;
+				}
+				for (File chunk : chunks) {
+					if (!live.contains(chunk.getName())) {
+						long size = chunk.length();
+						if (chunk.delete()) {
+							freed += size;
+						}
+						io += FILE_IO_COST;
+						if (!pace(io, started, maxBytesPerSecond)) {
+							return freed;
+						}
+					}
+				}
+			}
+		}
+		return freed;
+	}
+
+	/**
+	 * @return	total bytes the archive takes on disk
+	 */
+	public long getDiskUsage() {
+		return sizeOf(directory);
+	}
+
+	/**
+	 * @param	id	chunk id from a generation
+	 * @return	bytes the chunk takes on disk, or 0 if it is missing
+	 */
+	long getChunkSize(byte[] id) {
+		return chunkFile(id).length();
+	}
+
+	/**
+	 * Sleeps as long as needed to keep 'io' bytes since 'started' within the budget.
+	 *
+	 * @return	false if the thread was interrupted
+	 */
+	private static boolean pace(long io, long started, long maxBytesPerSecond) {
+		if (maxBytesPerSecond <= 0) {
+			return !Thread.currentThread().isInterrupted();
+		}
+		long aheadMillis = io * 1000 / maxBytesPerSecond - (System.nanoTime() - started) / 1000000;
+		if (aheadMillis > 0) {
+			try {
+				Thread.sleep(aheadMillis);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the next content-defined chunk into the buffer.
+	 *
+	 * @return	number of bytes read; 0 at the end of the input
+	 */
+	private static int readChunk(InputStream in, byte[] chunk) throws IOException {
+		long hash = 0;
+		int size = 0;
+		int b;
+		while (size < MAX_CHUNK && (b = in.read()) >= 0) {
+			chunk[size++] = (byte) b;
+			hash = (hash << 1) + GEAR[b];
+			if (size >= MIN_CHUNK && (hash & CUT_MASK) == 0) {
+				break;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Stores a chunk unless the archive already has it.
+	 *
+	 * @return	the chunk's id
+	 */
+	private byte[] storeChunk(byte[] chunk, int size) throws IOException, GeneralSecurityException {
+		byte[] id = chunkId(chunk, size);
+		File file = chunkFile(id);
+		if (file.exists()) {
+			return id;
+		}
+		file.getParentFile().mkdirs();
+		writeAtomically(file, seal(Arrays.copyOf(chunk, size)));
+		return id;
+	}
+
+	/**
+	 * Compresses (when that helps) and encrypts data with a fresh IV.
+	 */
+	private byte[] seal(byte[] data) throws GeneralSecurityException {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(data);
+		deflater.finish();
+		byte[] compressed = new byte[data.length + 1];
+		compressed[0] = DEFLATED;
+		int compressedLength = 1;
+		while (!deflater.finished() && compressedLength < compressed.length) {
+			compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+		}
+		boolean smaller = deflater.finished() && compressedLength < compressed.length;
+		deflater.end();
+		if (!smaller) {
+			compressed = new byte[data.length + 1];
+			compressed[0] = STORED;
+			System.arraycopy(data, 0, compressed, 1, data.length);
+			compressedLength = compressed.length;
+		}
+		return encrypt(encryptionKey, Arrays.copyOf(compressed, compressedLength));
+	}
+
+	private byte[] unseal(byte[] sealed) throws IOException, GeneralSecurityException {
+		byte[] plain = decrypt(encryptionKey, sealed);
+		if (plain.length == 0) {
+			throw new IOException("Empty backup record");
+		}
+		if (plain[0] == STORED) {
+			return Arrays.copyOfRange(plain, 1, plain.length);
+		}
+		Inflater inflater = new Inflater();
+		inflater.setInput(plain, 1, plain.length - 1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(MAX_CHUNK);
+		byte[] buffer = new byte[8192];
+		try {
+			while (!inflater.finished()) {
+				int n = inflater.inflate(buffer);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Truncated backup record");
+				}
+				out.write(buffer, 0, n);
+			}
+		}
+		catch (DataFormatException e) {
+			throw new IOException(e);
+		}
+		finally {
+			inflater.end();
+		}
+		return out.toByteArray();
+	}
+
+	private byte[] encrypt(SecretKeySpec key, byte[] data) throws GeneralSecurityException {
+		byte[] iv = new byte[IV_BYTES];
+		random.nextBytes(iv);
+		Cipher c = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		c.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+		byte[] sealed = new byte[IV_BYTES + c.getOutputSize(data.length)];
+		System.arraycopy(iv, 0, sealed, 0, IV_BYTES);
+		int length = IV_BYTES + c.doFinal(data, 0, data.length, sealed, IV_BYTES);
+		return (length == sealed.length) ? sealed : Arrays.copyOf(sealed, length);
+	}
+
+	private static byte[] decrypt(SecretKeySpec key, byte[] sealed) throws GeneralSecurityException {
+		if (sealed.length < IV_BYTES) {
+			throw new GeneralSecurityException("Backup record too short");
+		}
+		Cipher c = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		c.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(sealed, 0, IV_BYTES));
+		return c.doFinal(sealed, IV_BYTES, sealed.length - IV_BYTES);
+	}
+
+	private byte[] chunkId(byte[] chunk, int size) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(idKey);
+		mac.update(chunk, 0, size);
+		return mac.doFinal();
+	}
+
+	private static byte[] keyCheck(byte[] archiveKey) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(new SecretKeySpec(archiveKey, "HmacSHA256"));
+		return mac.doFinal("sentinel-archive-key-check".getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Splits the archive key into the AES key for records and the HMAC key for chunk ids.
+	 */
+	private void setKeys(byte[] archiveKey) {
+		encryptionKey = new SecretKeySpec(archiveKey, 0, KEY_BYTES, "AES");
+		idKey = new SecretKeySpec(archiveKey, KEY_BYTES, KEY_BYTES, "HmacSHA256");
+	}
+
+	private byte[] manifestBytes(Generation generation) throws IOException, GeneralSecurityException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MANIFEST_MAGIC);
+		out.writeLong(generation.created);
+		out.writeLong(generation.length);
+		out.writeInt(generation.chunkIds.size());
+		for (byte[] id : generation.chunkIds) {
+			out.write(id);
+		}
+		if (generation.entryManifest != null) {
+			out.writeInt(generation.entryManifest.length);
+			out.write(generation.entryManifest);
+		}
+		out.flush();
+		byte[] body = bytes.toByteArray();
+		out.write(chunkId(body, body.length)); // authenticates the manifest as a whole
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private Generation readManifest(byte[] manifest) throws IOException, GeneralSecurityException {
+		if (manifest.length < ID_BYTES) {
+			throw new IOException("Backup manifest too short");
+		}
+		int bodyLength = manifest.length - ID_BYTES;
+		byte[] mac = Arrays.copyOfRange(manifest, bodyLength, manifest.length);
+		if (!MessageDigest.isEqual(mac, chunkId(manifest, bodyLength))) {
+			throw new IOException("Backup manifest is damaged");
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(manifest, 0, bodyLength));
+		if (in.readInt() != MANIFEST_MAGIC) {
+			throw new IOException("Not a backup manifest");
+		}
+		long created = in.readLong();
+		long length = in.readLong();
+		int count = in.readInt();
+		List<byte[]> chunkIds = new ArrayList<byte[]>(count);
+		for (int i = 0; i < count; i++) {
+			byte[] id = new byte[ID_BYTES];
+			in.readFully(id);
+			chunkIds.add(id);
+		}
+		// Generations written before entry manifests were kept end here
+		byte[] entryManifest = null;
+		if (in.available() > 0) {
+			entryManifest = new byte[in.readInt()];
+			in.readFully(entryManifest);
+		}
+		return new Generation(created, length, chunkIds, entryManifest);
+	}
+
+	private Properties readHeader() throws IOException {
+		Properties header = new Properties();
+		InputStream in = new FileInputStream(new File(directory, HEADER_FILE));
+		try {
+			header.load(in);
+		}
+		finally {
+			in.close();
+		}
+		return header;
+	}
+
+	private static byte[] headerBytes(Properties header) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		header.store(bytes, "Sentinel Data Vault backup archive");
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes a file under a temporary name and renames it, so a crash never leaves a half-written chunk or manifest.
+	 */
+	private static void writeAtomically(File file, byte[] contents) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(contents);
+		}
+		finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File chunkFile(byte[] id) {
+		String hex = toHex(id);
+		return new File(new File(chunkDirectory, hex.substring(0, 2)), hex);
+	}
+
+	private File generationFile(long created) {
+		return new File(generationDirectory, created + ".gen");
+	}
+
+	private static long sizeOf(File file) {
+		File[] children = file.listFiles();
+		if (children == null) {
+			return file.length();
+		}
+		long size = 0;
+		for (File child : children) {
+			size += sizeOf(child);
+		}
+		return size;
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
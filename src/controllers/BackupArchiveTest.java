@@ -0,0 +1,155 @@
+package controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import cryptography.SecretValue;
+
+/**
+ * Checks that a file stored in a BackupArchive (cut into chunks, compressed and sealed) restores byte for byte with its
+ * entry manifest, that a later edit stores few new chunks, that the archive only opens with its owner's key, that
+ * rewrapping moves it to a new key, and that a damaged chunk fails the restore instead of writing a bad file.
+ */
+public class BackupArchiveTest {
+
+	private static final String OWNER = "owner@example.com";
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		File directory = null;
+		try {
+			directory = Files.createTempDirectory("archive").toFile();
+			run(directory);
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			failures++;
+		}
+		finally {
+			deleteAll(directory);
+		}
+
+		System.out.println((failures == 0) ? "All tests passed" : failures + " tests failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void run(File directory) throws IOException {
+		File archiveDirectory = new File(directory, "archive");
+		SecretValue key = BackupArchive.deriveKey(OWNER, "Password1!".toCharArray());
+		SecretValue wrongKey = BackupArchive.deriveKey(OWNER, "Password2!".toCharArray());
+		SecretValue newKey = BackupArchive.deriveKey(OWNER, "NewPassword1!".toCharArray());
+
+		// Half random (does not compress), half repetitive (does), so both kinds of chunk are stored
+		byte[] contents = new byte[600 * 1024];
+		Random random = new Random(307);
+		random.nextBytes(contents);
+		byte[] text = "INSERT INTO data_entries VALUES ('Bank', 'Login');\n".getBytes(StandardCharsets.UTF_8);
+		for (int i = contents.length / 2; i < contents.length; i++) {
+			contents[i] = text[i % text.length];
+		}
+		File backup = new File(directory, "backup.db");
+		Files.write(backup.toPath(), contents);
+		byte[] manifest = "sentinel-backup-manifest 1\nowner x\nentries 0\nroot 00\n".getBytes(StandardCharsets.UTF_8);
+		Files.write(new File(backup.getPath() + BackupManifest.MANIFEST_SUFFIX).toPath(), manifest);
+
+		BackupArchive archive = new BackupArchive(archiveDirectory);
+		check("a new archive is created", archive.create(OWNER, key) > 0);
+		BackupArchive.Generation first = archive.addGeneration(backup);
+		check("a generation is stored", first != null && first.getLength() == contents.length);
+		check("the generation is cut into several chunks", first != null && first.getChunkCount() > 1);
+		check("the generation keeps the backup's manifest", first != null && first.hasEntryManifest());
+
+		// Change a few bytes in the middle; most chunks are shared with the first generation
+		long usedBefore = archive.getDiskUsage();
+		contents[contents.length / 3] ^= 1;
+		Files.write(backup.toPath(), contents);
+		new File(backup.getPath() + BackupManifest.MANIFEST_SUFFIX).delete();
+		try {
+			Thread.sleep(5); // generations are named by the millisecond they were taken
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		BackupArchive.Generation second = archive.addGeneration(backup);
+		check("an edited backup is stored as a second generation", second != null && archive.listGenerations().size() == 2);
+		check("the second generation stores only the changed chunks", archive.getDiskUsage() - usedBefore < contents.length / 4);
+
+		BackupArchive reopened = new BackupArchive(archiveDirectory);
+		check("the archive does not open with another key", reopened.open(wrongKey) < 0);
+		check("the archive opens with its key", reopened.open(key) > 0);
+		List<BackupArchive.Generation> generations = reopened.listGenerations();
+		File restored = new File(directory, "restored.db");
+		File restoredManifest = new File(restored.getPath() + BackupManifest.MANIFEST_SUFFIX);
+		check("the first generation restores", reopened.restoreGeneration(generations.get(0), restored) > 0);
+		contents[contents.length / 3] ^= 1;
+		check("the first generation restores byte for byte", Arrays.equals(contents, Files.readAllBytes(restored.toPath())));
+		check("the first generation restores its manifest", restoredManifest.isFile() && Arrays.equals(manifest, Files.readAllBytes(restoredManifest.toPath())));
+		contents[contents.length / 3] ^= 1;
+		check("the second generation restores byte for byte", reopened.restoreGeneration(generations.get(1), restored) > 0
+				&& Arrays.equals(contents, Files.readAllBytes(restored.toPath())));
+		check("a generation without a manifest leaves none behind", !restoredManifest.exists());
+
+		check("the archive is not rewrapped from a wrong key", new BackupArchive(archiveDirectory).rewrap(wrongKey, newKey) < 0);
+		check("the archive is rewrapped to a new key", new BackupArchive(archiveDirectory).rewrap(key, newKey) > 0);
+		check("rewrapping again does nothing", new BackupArchive(archiveDirectory).rewrap(key, newKey) > 0);
+		check("the old key no longer opens the archive", new BackupArchive(archiveDirectory).open(key) < 0);
+		BackupArchive rewrapped = new BackupArchive(archiveDirectory);
+		check("the new key opens the archive", rewrapped.open(newKey) > 0);
+		check("the rewrapped archive still restores", rewrapped.restoreGeneration(rewrapped.listGenerations().get(1), restored) > 0
+				&& Arrays.equals(contents, Files.readAllBytes(restored.toPath())));
+
+		// Flip a byte of every chunk: each one fails to decrypt or to match its id
+		File chunkDirectory = new File(archiveDirectory, "chunks");
+		for (File subDirectory : chunkDirectory.listFiles()) {
+			for (File chunk : subDirectory.listFiles()) {
+				RandomAccessFile file = new RandomAccessFile(chunk, "rw");
+				try {
+					file.seek(file.length() / 2);
+					int b = file.read();
+					file.seek(file.length() / 2);
+					file.write(b ^ 0x40);
+				}
+				finally {
+					file.close();
+				}
+			}
+		}
+		restored.delete();
+		check("a damaged archive does not restore", rewrapped.restoreGeneration(rewrapped.listGenerations().get(0), restored) < 0);
+		check("a failed restore writes no file", !restored.exists() && !new File(restored.getPath() + ".partial").exists());
+
+		key.close();
+		wrongKey.close();
+		newKey.close();
+	}
+
+	private static void deleteAll(File file) {
+		if (file == null) {
+			return;
+		}
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteAll(child);
+			}
+		}
+		file.delete();
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "PASS: " : "FAIL: ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+}
@@ -1,15 +1,30 @@
 package controllers;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import cryptography.SecretValue;
 import dataManagement.DataEntry;
 import dataManagement.User;
 import security.PasswordValidation;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class BackupManager {
 	
 	/**
-	 * Generates a new backup database file containing ONLY the current user and their associated data entries
+	 * Generates a new backup database file containing ONLY the current user and their associated data entries. If the
+	 * backup file already exists and records the change log sequence number it was last brought up to, only the
+	 * entries changed since then are copied (see updateUserBackupDatabase); otherwise a new snapshot is taken (see
+	 * createSnapshotBackup), and if that fails every entry is rewritten. A BackupManifest of the entries is then
+	 * written next to the backup so it can be verified before it is imported, and the user's change log is pruned up
+	 * to the sequence number the backup reached.
 	 * 
 	 * @param user User object to create an account backup database file for
 	 */
@@ -17,13 +32,29 @@ public class BackupManager {
 		// Parse username from user_email to use as backup database name
 		String username = user.getUsername().substring(0, user.getUsername().indexOf('@'));
 		String backup_database_name = username + "_backup_database";
+		String backupPath = backupLocation + "/" + backup_database_name;
+		File databaseFile = new File(backupPath);
+		long currentSequence = readLastChangeSequence(VaultModel.VAULT_DATABASE);
+		if (databaseFile.exists() && currentSequence >= 0) {
+			long backupSequence = readBackupSequence(backupPath, user);
+			// Once the log has been pruned past the backup's sequence number, the changes it is missing are gone
+			if (backupSequence >= 0 && backupSequence <= currentSequence && backupSequence >= readPrunedSequence(user)
+					&& updateUserBackupDatabase(user, backupPath, backupSequence) >= 0) {
+				BackupManifest.write(backupPath, user.getUsername());
+				pruneChangeLog(user, readBackupSequence(backupPath, user));
+				return;
+			}
+		}
+		if (createSnapshotBackup(user, backupPath) > 0) {
+			BackupManifest.write(backupPath, user.getUsername());
+			pruneChangeLog(user, readBackupSequence(backupPath, user));
+			return;
+		}
 		// Retrieve all of user's data entries into a list
-		DatabaseManager dbm = new DatabaseManager("vault_database");
-		List<DataEntry> dataEntryList = dbm.retrieveUserDataEntries(user);
-		// Create a new backup database to store account data
-		dbm.setCurrentDatabase(backupLocation + "/" + backup_database_name); // DatabaseManager dbm = new DatabaseManager(backup_database_name);
+		List<DataEntry> dataEntryList = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).retrieveUserDataEntries(user);
+		// Create a new backup database to store account data, leaving the current database as it is
+		DatabaseManager dbm = DatabaseManager.forDatabase(backupPath);
 		// If backup does not already exist, create the users and data_entries tables in new database, and add the current user.
-		File databaseFile = new File(backupLocation + "/" + backup_database_name);
 		if (!databaseFile.exists()) { // New backup; prepare a new backup database
 			dbm.createUsersTable();
 			dbm.createDataEntriesTable();
@@ -36,6 +67,470 @@ public class BackupManager {
 		for (DataEntry entry : dataEntryList) {
 			dbm.addEntryToDatabase(user, entry);
 		}
+		// Changes logged after currentSequence was read are copied by the next incremental backup
+		if (currentSequence >= 0) {
+			writeBackupSequence(backupPath, user, currentSequence);
+		}
+		BackupManifest.write(backupPath, user.getUsername());
+		pruneChangeLog(user, currentSequence);
+	}
+
+	/**
+	 * Creates a backup by copying the vault database page by page with SQLite's online backup API, then deleting
+	 * everything that does not belong to the user from the copy. Entries keep their stored ciphertext, so nothing is
+	 * decrypted or encrypted. If another connection writes to the vault while the pages are copied, SQLite restarts
+	 * the copy, so the snapshot always matches one committed state of the vault. The copy is made and filtered in a
+	 * temporary file beside the vault, so other users' data never reaches the backup location, and only the filtered
+	 * file is moved there to replace the backup.
+	 * 
+	 * @param	user		User to back up
+	 * @param	backupPath	path of the backup database file to create or replace
+	 * @return	positive integer if the backup was written; negative if failure (an existing backup is left as it was)
+	 */
+	public int createSnapshotBackup(User user, String backupPath) {
+		File backupFile = new File(backupPath);
+		File snapshotFile;
+		try {
+			snapshotFile = File.createTempFile(VaultModel.VAULT_DATABASE, ".snapshot", new File(VaultModel.VAULT_DATABASE).getAbsoluteFile().getParentFile());
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			return -1;
+		}
+		// Copy the pages over a connection to the vault
+		Connection DBconnection = DatabaseManager.connectToDatabase(VaultModel.VAULT_DATABASE);
+		try {
+			DBconnection.setAutoCommit(true);
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("backup to \"" + snapshotFile.getAbsolutePath() + "\"");
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			try {
+				DBconnection.close();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			snapshotFile.delete();
+			return -1;
+		}
+		if (filterSnapshot(user, snapshotFile.getPath()) < 0) {
+			snapshotFile.delete();
+			return -1;
+		}
+		// The backup location may be another disk: copy beside the backup first, then replace it in one rename
+		File movedFile = new File(backupPath + ".snapshot");
+		try {
+			Files.move(snapshotFile.toPath(), movedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(movedFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			System.err.println("Could not move the snapshot to " + backupPath + ": " + e.getMessage());
+			snapshotFile.delete();
+			movedFile.delete();
+			return -1;
+		}
+		return 1;
+	}
+
+	/**
+	 * Removes other users, their entries and every table the vault keeps for itself from a snapshot, and records the
+	 * snapshot's change log sequence number so later backups can be incremental. The freed pages are wiped.
+	 * 
+	 * @return	positive integer if success; negative if failure
+	 */
+	private static int filterSnapshot(User user, String snapshotPath) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(snapshotPath);
+		long sequence = -1;
+		try {
+			DBconnection.setAutoCommit(true);
+			Statement stmt = DBconnection.createStatement();
+			stmt.execute("PRAGMA secure_delete = ON;");
+			DBconnection.setAutoCommit(false);
+
+			// The change log in the snapshot ends exactly where the snapshot does
+			ResultSet results = stmt.executeQuery("SELECT count(*) FROM sqlite_master WHERE type='table' AND name='change_log';");
+			boolean hasChangeLog = results.getInt(1) > 0;
+			results.close();
+			if (hasChangeLog) {
+				results = stmt.executeQuery("SELECT ifnull(max(seq), 0) FROM change_log;");
+				sequence = results.getLong(1);
+				results.close();
+			}
+
+			// Triggers first, since they write to the tables being dropped
+			List<String> drops = new ArrayList<String>();
+			results = stmt.executeQuery("SELECT type, name FROM sqlite_master WHERE type IN ('trigger', 'table') "
+					+ "AND name NOT IN ('users', 'data_entries') AND name NOT LIKE 'sqlite_%' ORDER BY type DESC;");
+			while (results.next()) {
+				drops.add("DROP " + results.getString("type").toUpperCase() + " IF EXISTS \"" + results.getString("name") + "\";");
+			}
+			results.close();
+			for (String drop : drops) {
+				stmt.executeUpdate(drop);
+			}
+
+			PreparedStatement deleteEntries = DBconnection.prepareStatement("DELETE FROM data_entries WHERE owner<>?;");
+			deleteEntries.setString(1, user.getUsername());
+			deleteEntries.executeUpdate();
+			deleteEntries.close();
+			PreparedStatement deleteUsers = DBconnection.prepareStatement("DELETE FROM users WHERE user_email<>?;");
+			deleteUsers.setString(1, user.getUsername());
+			deleteUsers.executeUpdate();
+			deleteUsers.close();
+			DBconnection.commit();
+
+			// Shrink the file to what the user's data needs
+			DBconnection.setAutoCommit(true);
+			stmt.executeUpdate("VACUUM;");
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			try {
+				DBconnection.close();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			return -1;
+		}
+		if (sequence >= 0) {
+			writeBackupSequence(snapshotPath, user, sequence);
+		}
+		return 1;
+	}
+
+	/**
+	 * Brings an existing backup up to date by copying only the user's entries named in the change log after
+	 * 'sinceSequence'. Entries are copied as stored (still encrypted), together with the user's row, in a single
+	 * transaction on the vault database with the backup attached.
+	 * 
+	 * @param	user			User whose backup is updated
+	 * @param	backupPath		path of the existing backup database file
+	 * @param	sinceSequence	change log sequence number the backup already includes
+	 * @return	number of entry names that were copied or removed; negative if failure (the backup is unchanged)
+	 */
+	public int updateUserBackupDatabase(User user, String backupPath, long sinceSequence) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(VaultModel.VAULT_DATABASE);
+		boolean attached = false;
+		try {
+			// ATTACH cannot run inside a transaction
+			DBconnection.setAutoCommit(true);
+			PreparedStatement attach = DBconnection.prepareStatement("ATTACH DATABASE ? AS backup;");
+			attach.setString(1, backupPath);
+			attach.execute();
+			attach.close();
+			attached = true;
+			DBconnection.setAutoCommit(false);
+
+			Statement stmt = DBconnection.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT max(seq) FROM change_log;");
+			long untilSequence = results.getLong(1);
+			results.close();
+
+			// Every entry name changed in the range, whatever happened to it in between
+			stmt.executeUpdate("DROP TABLE IF EXISTS temp.backup_changes;");
+			stmt.executeUpdate("CREATE TEMP TABLE backup_changes (entry_name TEXT PRIMARY KEY);");
+			PreparedStatement changes = DBconnection.prepareStatement(
+					"INSERT OR IGNORE INTO temp.backup_changes SELECT entry_name FROM change_log WHERE owner=? AND seq>? AND seq<=?;");
+			changes.setString(1, user.getUsername());
+			changes.setLong(2, sinceSequence);
+			changes.setLong(3, untilSequence);
+			int changedNames = changes.executeUpdate();
+			changes.close();
+
+			PreparedStatement remove = DBconnection.prepareStatement(
+					"DELETE FROM backup.data_entries WHERE owner=? AND entry_name IN (SELECT entry_name FROM temp.backup_changes);");
+			remove.setString(1, user.getUsername());
+			remove.executeUpdate();
+			remove.close();
+			PreparedStatement copy = DBconnection.prepareStatement(
+					"INSERT INTO backup.data_entries SELECT * FROM main.data_entries WHERE owner=? AND entry_name IN (SELECT entry_name FROM temp.backup_changes);");
+			copy.setString(1, user.getUsername());
+			copy.executeUpdate();
+			copy.close();
+
+			// The user's row is tiny; refresh it so password or setting changes reach the backup too
+			PreparedStatement removeUser = DBconnection.prepareStatement("DELETE FROM backup.users WHERE user_email=?;");
+			removeUser.setString(1, user.getUsername());
+			removeUser.executeUpdate();
+			removeUser.close();
+			PreparedStatement copyUser = DBconnection.prepareStatement("INSERT INTO backup.users SELECT * FROM main.users WHERE user_email=?;");
+			copyUser.setString(1, user.getUsername());
+			copyUser.executeUpdate();
+			copyUser.close();
+
+			PreparedStatement sequence = DBconnection.prepareStatement("UPDATE backup.backup_info SET last_sequence=? WHERE owner=?;");
+			sequence.setLong(1, untilSequence);
+			sequence.setString(2, user.getUsername());
+			sequence.executeUpdate();
+			sequence.close();
+
+			stmt.executeUpdate("DROP TABLE temp.backup_changes;");
+			DBconnection.commit();
+			DBconnection.setAutoCommit(true);
+			stmt.executeUpdate("DETACH DATABASE backup;");
+			stmt.close();
+			DBconnection.close();
+			return changedNames;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			try {
+				if (!DBconnection.getAutoCommit()) {
+					DBconnection.rollback();
+					DBconnection.setAutoCommit(true);
+				}
+				if (attached) {
+					DBconnection.createStatement().executeUpdate("DETACH DATABASE backup;");
+				}
+				DBconnection.close();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * @return	the newest sequence number in a database's change log, 0 if it is empty, or -1 if it has no change log
+	 */
+	private static long readLastChangeSequence(String databaseName) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(databaseName);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT count(*) FROM sqlite_master WHERE type='table' AND name='change_log';");
+			long sequence = -1;
+			if (results.getInt(1) > 0) {
+				results.close();
+				results = stmt.executeQuery("SELECT ifnull(max(seq), 0) FROM change_log;");
+				sequence = results.getLong(1);
+			}
+			results.close();
+			stmt.close();
+			DBconnection.close();
+			return sequence;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * @return	the change log sequence number a backup was last brought up to, or -1 if it does not record one
+	 */
+	private static long readBackupSequence(String backupPath, User user) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(backupPath);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT last_sequence FROM backup_info WHERE owner=?;");
+			select.setString(1, user.getUsername());
+			ResultSet results = select.executeQuery();
+			long sequence = results.next() ? results.getLong(1) : -1;
+			results.close();
+			select.close();
+			DBconnection.close();
+			return sequence;
+		}
+		catch (SQLException e) {
+			// backups made before the change log existed have no backup_info table
+			try {
+				DBconnection.close();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * @return	the sequence number the user's change log has been pruned up to, 0 if never, or Long.MAX_VALUE if
+	 * 			it cannot be read (so no backup relies on the log)
+	 */
+	private static long readPrunedSequence(User user) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(VaultModel.VAULT_DATABASE);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT through_seq FROM change_log_pruned WHERE owner=?;");
+			select.setString(1, user.getUsername());
+			ResultSet results = select.executeQuery();
+			long sequence = results.next() ? results.getLong(1) : 0;
+			results.close();
+			select.close();
+			DBconnection.close();
+			return sequence;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			try {
+				DBconnection.close();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Deletes the user's change log rows up to a sequence number a backup has reached, and records how far the log
+	 * was pruned so a backup from before then takes a new snapshot instead of an incremental update.
+	 *
+	 * @param	user			User whose change log rows are deleted
+	 * @param	throughSequence	sequence number the backup includes; nothing is pruned if it is not positive
+	 */
+	private static void pruneChangeLog(User user, long throughSequence) {
+		if (throughSequence <= 0) {
+			return;
+		}
+		Connection DBconnection = DatabaseManager.connectToDatabase(VaultModel.VAULT_DATABASE);
+		try {
+			PreparedStatement delete = DBconnection.prepareStatement("DELETE FROM change_log WHERE owner=? AND seq<=?;");
+			delete.setString(1, user.getUsername());
+			delete.setLong(2, throughSequence);
+			delete.executeUpdate();
+			delete.close();
+			PreparedStatement pruned = DBconnection.prepareStatement("INSERT OR REPLACE INTO change_log_pruned (owner, through_seq) "
+					+ "VALUES (?, max(?, ifnull((SELECT through_seq FROM change_log_pruned WHERE owner=?), 0)));");
+			pruned.setString(1, user.getUsername());
+			pruned.setLong(2, throughSequence);
+			pruned.setString(3, user.getUsername());
+			pruned.executeUpdate();
+			pruned.close();
+			DBconnection.commit();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			try {
+				DBconnection.rollback();
+				DBconnection.close();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+		}
+	}
+
+	private static void writeBackupSequence(String backupPath, User user, long sequence) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(backupPath);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS backup_info ("
+					+ "'owner'			TEXT	PRIMARY KEY	NOT NULL, "
+					+ "'last_sequence'	INTEGER	NOT NULL)");
+			stmt.close();
+			PreparedStatement insert = DBconnection.prepareStatement("INSERT OR REPLACE INTO backup_info (owner, last_sequence) VALUES (?, ?);");
+			insert.setString(1, user.getUsername());
+			insert.setLong(2, sequence);
+			insert.executeUpdate();
+			DBconnection.commit();
+			insert.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Adds a generation to the user's backup archive ('<username>_backup_archive' in the backup location), creating
+	 * the archive on first use. The generation is a snapshot of the user's data (see createSnapshotBackup), so only
+	 * what changed since the archive's earlier generations takes new space. Old generations are then pruned in the
+	 * background according to the user's retention policy (see BackupRetention).
+	 * 
+	 * @param	user			User to back up
+	 * @param	backupLocation	directory the archive is kept in
+	 * @param	archiveKey		key derived from the user's password (BackupArchive.deriveKey)
+	 * @return	positive integer if success; negative if failure
+	 */
+	public int createArchiveBackup(User user, String backupLocation, SecretValue archiveKey) {
+		return createArchiveBackup(user, backupLocation, archiveKey, null);
+	}
+
+	/**
+	 * Like createArchiveBackup(User, String, SecretValue), reporting progress while the snapshot is stored.
+	 * 
+	 * @param	listener	told how much of the snapshot has been stored, and may cancel; may be null
+	 * @return	positive integer if success; negative if failure or cancelled
+	 */
+	public int createArchiveBackup(User user, String backupLocation, SecretValue archiveKey, BackupArchive.ProgressListener listener) {
+		File archiveDirectory = getArchiveDirectory(user, backupLocation);
+		BackupArchive archive = new BackupArchive(archiveDirectory);
+		int opened = BackupArchive.isArchive(archiveDirectory) ? archive.open(archiveKey) : archive.create(user.getUsername(), archiveKey);
+		if (opened < 0) {
+			System.err.println("Could not open the backup archive in " + archiveDirectory.getPath());
+			return -1;
+		}
+		File snapshot = new File(archiveDirectory, "snapshot.tmp");
+		File snapshotManifest = new File(snapshot.getPath() + BackupManifest.MANIFEST_SUFFIX);
+		try {
+			// The manifest is stored in the generation, so a restored generation can be verified like a backup file
+			if (createSnapshotBackup(user, snapshot.getPath()) < 0 || BackupManifest.write(snapshot.getPath(), user.getUsername()) < 0
+					|| archive.addGeneration(snapshot, listener) == null) {
+				return -1;
+			}
+			pruneChangeLog(user, readBackupSequence(snapshot.getPath(), user));
+		}
+		finally {
+			snapshot.delete();
+			snapshotManifest.delete();
+		}
+		BackupRetention.getInstance().schedule(archive, BackupRetention.Policy.forUser(user));
+		return 1;
+	}
+
+	/**
+	 * @param	user			owner of the archive
+	 * @param	backupLocation	directory the archive is kept in
+	 * @return	directory of the user's backup archive in the backup location ('<username>_backup_archive')
+	 */
+	public static File getArchiveDirectory(User user, String backupLocation) {
+		String username = user.getUsername().substring(0, user.getUsername().indexOf('@'));
+		return new File(backupLocation, username + "_backup_archive");
+	}
+
+	/**
+	 * Rebuilds the newest generation of a backup archive as a backup database file, which can then be checked,
+	 * verified against the BackupManifest written next to it and imported like any other backup (isValidBackupUser,
+	 * BackupManifest.verify, importEntriesFromBackup).
+	 * 
+	 * @param	archiveDirectory	directory of the archive
+	 * @param	backupUserEmail		username (email) of the archive's owner
+	 * @param	backupUserPassword	password of the archive's owner
+	 * @param	target				backup database file to write
+	 * @return	positive integer if success; negative if the password is wrong or the archive cannot be restored
+	 */
+	public int restoreArchiveBackup(File archiveDirectory, String backupUserEmail, String backupUserPassword, File target) {
+		BackupArchive archive = new BackupArchive(archiveDirectory);
+		char[] passwordChars = backupUserPassword.toCharArray();
+		SecretValue archiveKey = BackupArchive.deriveKey(backupUserEmail, passwordChars);
+		Arrays.fill(passwordChars, '\0');
+		try {
+			if (archive.open(archiveKey) < 0) {
+				return -1;
+			}
+		}
+		finally {
+			archiveKey.close();
+		}
+		List<BackupArchive.Generation> generations = archive.listGenerations();
+		if (generations.isEmpty()) {
+			return -1;
+		}
+		return archive.restoreGeneration(generations.get(generations.size() - 1), target);
 	}
 	
 	/**
@@ -45,23 +540,40 @@ public class BackupManager {
 	 * @param backupUser			User of the backup file whose entries will be added to the current user
 	 * @param currentDatabaseName	Name of the current working database to receive entries from the backup
 	 * @param backupDatabaseLocation	Name of the backup database whose entries will be added to the current database
+	 * @return	number of entries imported; negative if the backup could not be read or the entries could not be stored
 	 */
-	public void importEntriesFromBackup(User currentUser, User backupUser, String currentDatabaseName, String backupDatabaseLocation) {
-		// Connect to backup database and retrieve all the entries into a List
-		DatabaseManager dbm = new DatabaseManager(backupDatabaseLocation);
-		List<DataEntry> importedDataEntryList = dbm.retrieveUserDataEntries(backupUser);
-		// Change owner of all entries to currentUser
-		for (DataEntry entry : importedDataEntryList) {
-			entry.setOwner(currentUser.getUsername());
-		}
-		// Switch to the database of currentUser
-		dbm.setCurrentDatabase(currentDatabaseName);
-		// Put all entries from the List into the current database for the current user
-		for (DataEntry entry : importedDataEntryList) {
-			dbm.addEntryToDatabase(currentUser, entry);
-		}
+	public int importEntriesFromBackup(User currentUser, User backupUser, String currentDatabaseName, String backupDatabaseLocation) {
+		// Entries are streamed from the backup, re-encrypted in parallel and inserted in batches
+		return new ImportPipeline().run(currentUser, backupUser, currentDatabaseName, backupDatabaseLocation);
 	}
 	
+	/**
+	 * Merges data entries from a database backup file into the current user's account. Entries the user already has
+	 * are skipped, and entries whose name the user already uses are resolved by the given policy.
+	 * 
+	 * @param	currentUser				Current user who will receive entries from the backup
+	 * @param	backupUser				User of the backup file whose entries will be merged into the current user's
+	 * @param	currentDatabaseName		Name of the current working database to receive entries from the backup
+	 * @param	backupDatabaseLocation	Name of the backup database whose entries will be merged
+	 * @param	policy					what to do with an entry whose name the current user already uses
+	 * @return	MergeImporter.Report of what was done with each entry; null if the import failed
+	 */
+	public MergeImporter.Report mergeEntriesFromBackup(User currentUser, User backupUser, String currentDatabaseName, String backupDatabaseLocation, MergeImporter.CollisionPolicy policy) {
+		return new MergeImporter(policy).importEntries(currentUser, backupUser, currentDatabaseName, backupDatabaseLocation);
+	}
+
+	/**
+	 * Like mergeEntriesFromBackup(User, User, String, String, CollisionPolicy), reporting progress while the entries
+	 * are merged.
+	 * 
+	 * @param	listener	told how far the merge has got, and may cancel; may be null
+	 * @return	Report of what was done with the backup's entries (see Report.isCancelled()), or null if failure
+	 */
+	public MergeImporter.Report mergeEntriesFromBackup(User currentUser, User backupUser, String currentDatabaseName, String backupDatabaseLocation,
+			MergeImporter.CollisionPolicy policy, ImportPipeline.ProgressListener listener) {
+		return new MergeImporter(policy).importEntries(currentUser, backupUser, currentDatabaseName, backupDatabaseLocation, listener);
+	}
+
 	/**
 	 * Determines if the current user has correct privileges to access a backup database file
 	 * 
@@ -71,8 +583,11 @@ public class BackupManager {
 	 * @return	true if the given credentials of the backup database file are valid; false if not 
 	 */
 	public boolean isValidBackupUser(String backupUserEmail, String backupUserPassword, String backupDatabaseLocation) {
-		DatabaseManager dbm = new DatabaseManager(backupDatabaseLocation);
-		User backupUser = dbm.retrieveUserFromDatabase(backupUserEmail);
+		// Read the backup without making it the current database
+		User backupUser = DatabaseManager.forDatabase(backupDatabaseLocation).retrieveUserFromDatabase(backupUserEmail);
+		if (backupUser == null || backupUserPassword == null) {
+			return false;
+		}
 		PasswordValidation pv = new PasswordValidation();
 		if (pv.isValidPassword(backupUser, backupUserPassword)) {
 			return true;
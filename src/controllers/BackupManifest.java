@@ -0,0 +1,440 @@
+package controllers;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A Merkle tree over the entries of a backup database file, written next to the backup as "<backup>.manifest".
+ *
+ * Each leaf is the SHA-256 hash of one of the owner's data_entries rows exactly as stored, so the ciphertext is
+ * hashed and nothing is decrypted. Leaves are ordered by entry name and paired up into a tree whose root is kept in
+ * the manifest with every leaf. Verifying recomputes the leaves from the backup and compares them with the manifest,
+ * which names the entries that are damaged, missing or unexpected, and recomputes the root from the manifest's
+ * leaves to check the manifest itself.
+ *
+ * The manifest is not keyed: it detects incomplete or corrupted backups, not deliberate tampering with both files.
+ */
+public class BackupManifest {
+
+	public static final String MANIFEST_SUFFIX = ".manifest";
+
+	private static final String MAGIC = "sentinel-backup-manifest 1";
+	private static final byte LEAF_PREFIX = 0;
+	private static final byte NODE_PREFIX = 1;
+	private static final int MIN_ROWS_PER_READER = 1000;
+
+	private final String owner;
+	private final List<Leaf> leaves;
+	private final byte[] root;
+
+	private static class Leaf implements Comparable<Leaf> {
+		final String entryName;
+		final byte[] hash;
+
+		Leaf(String entryName, byte[] hash) {
+			this.entryName = entryName;
+			this.hash = hash;
+		}
+
+		public int compareTo(Leaf o) {
+			return entryName.compareTo(o.entryName);
+		}
+	}
+
+	/**
+	 * Result of checking a backup against its manifest.
+	 */
+	public static class Verification {
+		private final boolean manifestIntact;
+		private final List<String> damagedEntries = new ArrayList<String>();
+		private final List<String> missingEntries = new ArrayList<String>();
+		private final List<String> unexpectedEntries = new ArrayList<String>();
+
+		Verification(boolean manifestIntact) {
+			this.manifestIntact = manifestIntact;
+		}
+
+		/**
+		 * @return	true if the backup holds exactly the entries the manifest lists, unchanged
+		 */
+		public boolean isIntact() {
+			return manifestIntact && damagedEntries.isEmpty() && missingEntries.isEmpty() && unexpectedEntries.isEmpty();
+		}
+
+		/**
+		 * @return	false if the manifest's root does not match its own leaves (the manifest itself is damaged)
+		 */
+		public boolean isManifestIntact() {
+			return manifestIntact;
+		}
+
+		/**
+		 * @return	names of entries whose stored data differs from when the backup was written
+		 */
+		public List<String> getDamagedEntries() {
+			return damagedEntries;
+		}
+
+		/**
+		 * @return	names of entries the manifest lists but the backup does not hold
+		 */
+		public List<String> getMissingEntries() {
+			return missingEntries;
+		}
+
+		/**
+		 * @return	names of entries the backup holds but the manifest does not list
+		 */
+		public List<String> getUnexpectedEntries() {
+			return unexpectedEntries;
+		}
+
+		@Override
+		public String toString() {
+			if (isIntact()) {
+				return "The backup is complete and undamaged.";
+			}
+			StringBuilder summary = new StringBuilder();
+			if (!manifestIntact) {
+				summary.append("The backup's manifest is damaged.\n");
+			}
+			appendNames(summary, "Damaged entries", damagedEntries);
+			appendNames(summary, "Missing entries", missingEntries);
+			appendNames(summary, "Unexpected entries", unexpectedEntries);
+			return summary.toString();
+		}
+
+		private static void appendNames(StringBuilder summary, String heading, List<String> names) {
+			if (!names.isEmpty()) {
+				summary.append(heading).append(": ").append(names.size()).append("\n");
+				for (String name : names) {
+					summary.append("  ").append(name).append("\n");
+				}
+			}
+		}
+	}
+
+	private BackupManifest(String owner, List<Leaf> leaves, byte[] root) {
+		this.owner = owner;
+		this.leaves = leaves;
+		this.root = root;
+	}
+
+	/**
+	 * Hashes the owner's entries in a backup and writes the manifest next to it, replacing any earlier manifest.
+	 *
+	 * @param	backupPath	path of the backup database file
+	 * @param	owner		username (email) whose entries the backup holds
+	 * @return	positive integer if success; negative if failure
+	 */
+	public static int write(String backupPath, String owner) {
+		List<Leaf> leaves = hashEntries(backupPath, owner);
+		if (leaves == null) {
+			return -1;
+		}
+		BackupManifest manifest = new BackupManifest(owner, leaves, computeRoot(leaves));
+		File manifestFile = new File(backupPath + MANIFEST_SUFFIX);
+		File temporaryFile = new File(backupPath + MANIFEST_SUFFIX + ".tmp");
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.UTF_8));
+			try {
+				manifest.writeTo(writer);
+			}
+			finally {
+				writer.close();
+			}
+			manifestFile.delete();
+			if (!temporaryFile.renameTo(manifestFile)) {
+				throw new IOException("Could not move the manifest to " + manifestFile.getPath());
+			}
+			return 1;
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			temporaryFile.delete();
+			return -1;
+		}
+	}
+
+	/**
+	 * @param	backupPath	path of a backup database file
+	 * @return	true if the backup has a manifest to verify it against
+	 */
+	public static boolean hasManifest(String backupPath) {
+		return new File(backupPath + MANIFEST_SUFFIX).isFile();
+	}
+
+	/**
+	 * Checks a backup against its manifest. The backup is read in one pass, split among several connections.
+	 *
+	 * @param	backupPath	path of the backup database file
+	 * @return	Verification naming any bad entries, or null if the backup or its manifest cannot be read
+	 */
+	public static Verification verify(String backupPath) {
+		BackupManifest manifest = read(new File(backupPath + MANIFEST_SUFFIX));
+		if (manifest == null) {
+			return null;
+		}
+		List<Leaf> actual = hashEntries(backupPath, manifest.owner);
+		if (actual == null) {
+			return null;
+		}
+		Verification verification = new Verification(Arrays.equals(manifest.root, computeRoot(manifest.leaves)));
+		Map<String, byte[]> expected = new LinkedHashMap<String, byte[]>();
+		for (Leaf leaf : manifest.leaves) {
+			expected.put(leaf.entryName, leaf.hash);
+		}
+		for (Leaf leaf : actual) {
+			byte[] hash = expected.remove(leaf.entryName);
+			if (hash == null) {
+				verification.unexpectedEntries.add(leaf.entryName);
+			}
+			else if (!Arrays.equals(hash, leaf.hash)) {
+				verification.damagedEntries.add(leaf.entryName);
+			}
+		}
+		verification.missingEntries.addAll(expected.keySet());
+		return verification;
+	}
+
+	/**
+	 * Hashes every data_entries row of the owner, splitting the rows by rowid among up to one reader per processor.
+	 *
+	 * @return	leaves sorted by entry name, or null if the backup cannot be read
+	 */
+	private static List<Leaf> hashEntries(final String backupPath, final String owner) {
+		long minRowid;
+		long maxRowid;
+		Connection DBconnection = DatabaseManager.connectToDatabase(backupPath);
+		try {
+			PreparedStatement range = DBconnection.prepareStatement("SELECT ifnull(min(rowid), 0), ifnull(max(rowid), -1), count(*) FROM data_entries WHERE owner=?;");
+			range.setString(1, owner);
+			ResultSet results = range.executeQuery();
+			minRowid = results.getLong(1);
+			maxRowid = results.getLong(2);
+			long rows = results.getLong(3);
+			results.close();
+			range.close();
+			DBconnection.close();
+			if (rows == 0) {
+				return new ArrayList<Leaf>();
+			}
+			int readers = (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), rows / MIN_ROWS_PER_READER));
+			ExecutorService pool = Executors.newFixedThreadPool(readers);
+			try {
+				List<Future<List<Leaf>>> parts = new ArrayList<Future<List<Leaf>>>();
+				long span = (maxRowid - minRowid) / readers + 1;
+				for (int i = 0; i < readers; i++) {
+					final long from = minRowid + i * span;
+					final long to = Math.min(maxRowid, from + span - 1);
+					parts.add(pool.submit(new Callable<List<Leaf>>() {
+						public List<Leaf> call() throws SQLException {
+							return hashRange(backupPath, owner, from, to);
+						}
+					}));
+				}
+				List<Leaf> leaves = new ArrayList<Leaf>();
+				for (Future<List<Leaf>> part : parts) {
+					leaves.addAll(part.get());
+				}
+				Collections.sort(leaves);
+				return leaves;
+			}
+			finally {
+				pool.shutdownNow();
+			}
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return null;
+		}
+		catch (ExecutionException e) {
+			System.err.println(e.getCause().getClass().getName() + ": " + e.getCause().getMessage());
+			return null;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	private static List<Leaf> hashRange(String backupPath, String owner, long fromRowid, long toRowid) throws SQLException {
+		List<Leaf> leaves = new ArrayList<Leaf>();
+		MessageDigest digest = newDigest();
+		Connection DBconnection = DatabaseManager.connectToDatabase(backupPath);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT * FROM data_entries WHERE owner=? AND rowid BETWEEN ? AND ?;");
+			select.setString(1, owner);
+			select.setLong(2, fromRowid);
+			select.setLong(3, toRowid);
+			ResultSet dataEntrySet = select.executeQuery();
+			int columns = dataEntrySet.getMetaData().getColumnCount();
+			while (dataEntrySet.next()) {
+				digest.update(LEAF_PREFIX);
+				for (int i = 1; i <= columns; i++) {
+					update(digest, dataEntrySet.getString(i));
+				}
+				leaves.add(new Leaf(dataEntrySet.getString("entry_name"), digest.digest()));
+			}
+			dataEntrySet.close();
+			select.close();
+		}
+		finally {
+			closeQuietly(DBconnection);
+		}
+		return leaves;
+	}
+
+	/**
+	 * @return	root of the Merkle tree over the leaves (an odd node out is carried up a level unchanged)
+	 */
+	private static byte[] computeRoot(List<Leaf> leaves) {
+		MessageDigest digest = newDigest();
+		if (leaves.isEmpty()) {
+			return digest.digest();
+		}
+		List<byte[]> level = new ArrayList<byte[]>(leaves.size());
+		for (Leaf leaf : leaves) {
+			level.add(leaf.hash);
+		}
+		while (level.size() > 1) {
+			List<byte[]> parents = new ArrayList<byte[]>((level.size() + 1) / 2);
+			for (int i = 0; i < level.size(); i += 2) {
+				if (i + 1 == level.size()) {
+					parents.add(level.get(i));
+					continue;
+				}
+				digest.update(NODE_PREFIX);
+				digest.update(level.get(i));
+				digest.update(level.get(i + 1));
+				parents.add(digest.digest());
+			}
+			level = parents;
+		}
+		return level.get(0);
+	}
+
+	private void writeTo(Writer writer) throws IOException {
+		writer.write(MAGIC + "\n");
+		writer.write("owner " + encode(owner) + "\n");
+		writer.write("entries " + leaves.size() + "\n");
+		writer.write("root " + toHex(root) + "\n");
+		for (Leaf leaf : leaves) {
+			writer.write(toHex(leaf.hash) + " " + encode(leaf.entryName) + "\n");
+		}
+	}
+
+	private static BackupManifest read(File manifestFile) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8));
+			try {
+				if (!MAGIC.equals(reader.readLine())) {
+					throw new IOException("Not a backup manifest: " + manifestFile.getPath());
+				}
+				String owner = URLDecoder.decode(field(reader.readLine(), "owner"), "UTF-8");
+				int numEntries = Integer.parseInt(field(reader.readLine(), "entries"));
+				byte[] root = fromHex(field(reader.readLine(), "root"));
+				List<Leaf> leaves = new ArrayList<Leaf>(numEntries);
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					int space = line.indexOf(' ');
+					leaves.add(new Leaf(URLDecoder.decode(line.substring(space + 1), "UTF-8"), fromHex(line.substring(0, space))));
+				}
+				if (leaves.size() != numEntries) {
+					throw new IOException("The manifest lists " + leaves.size() + " of its " + numEntries + " entries");
+				}
+				return new BackupManifest(owner, leaves, root);
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static String field(String line, String name) throws IOException {
+		if (line == null || !line.startsWith(name + " ")) {
+			throw new IOException("The manifest has no " + name);
+		}
+		return line.substring(name.length() + 1);
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		byte[] bytes = (value == null) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+		int length = (value == null) ? -1 : bytes.length;
+		digest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+		digest.update(bytes);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String encode(String value) throws UnsupportedEncodingException {
+		return URLEncoder.encode(value, "UTF-8");
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	private static byte[] fromHex(String hex) {
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+	private static void closeQuietly(Connection DBconnection) {
+		try {
+			if (DBconnection != null) {
+				DBconnection.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Checks that BackupManifest notices every way a backup can differ from its manifest: a changed entry, a deleted
+ * entry, an added entry, and a manifest that was edited itself. Needs the SQLite driver on the classpath.
+ */
+public class BackupManifestTest {
+
+	private static final String OWNER = "owner@example.com";
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		File backup = null;
+		try {
+			backup = File.createTempFile("backup", ".db");
+			run(backup.getPath());
+		}
+		catch (IOException | SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			failures++;
+		}
+		finally {
+			if (backup != null) {
+				backup.delete();
+				new File(backup.getPath() + BackupManifest.MANIFEST_SUFFIX).delete();
+			}
+		}
+
+		System.out.println((failures == 0) ? "All tests passed" : failures + " tests failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void run(String backupPath) throws IOException, SQLException {
+		execute(backupPath, "CREATE TABLE data_entries (entry_name TEXT, entry_type TEXT, owner TEXT, data_field_1 TEXT);");
+		for (int i = 0; i < 2500; i++) {
+			execute(backupPath, "INSERT INTO data_entries VALUES (?, 'Login', ?, ?);", "Entry " + i, OWNER, "secret " + i);
+		}
+		execute(backupPath, "INSERT INTO data_entries VALUES ('Other', 'Login', 'someone@example.com', 'not in the manifest');");
+
+		check("the manifest is written", BackupManifest.write(backupPath, OWNER) > 0 && BackupManifest.hasManifest(backupPath));
+		BackupManifest.Verification verification = BackupManifest.verify(backupPath);
+		check("an untouched backup is intact", verification != null && verification.isIntact());
+
+		execute(backupPath, "UPDATE data_entries SET data_field_1='changed' WHERE entry_name='Entry 1234';");
+		execute(backupPath, "DELETE FROM data_entries WHERE entry_name='Entry 7';");
+		execute(backupPath, "INSERT INTO data_entries VALUES ('Added', 'Login', ?, 'extra');", OWNER);
+		execute(backupPath, "UPDATE data_entries SET data_field_1='changed' WHERE owner='someone@example.com';");
+		verification = BackupManifest.verify(backupPath);
+		check("a tampered backup is not intact", verification != null && !verification.isIntact() && verification.isManifestIntact());
+		check("the changed entry is named", verification != null && names(verification.getDamagedEntries(), "Entry 1234"));
+		check("the deleted entry is named", verification != null && names(verification.getMissingEntries(), "Entry 7"));
+		check("the added entry is named", verification != null && names(verification.getUnexpectedEntries(), "Added"));
+
+		// Rewrite the manifest to match the tampered entry; the root no longer covers the leaves
+		BackupManifest.write(backupPath, OWNER);
+		File manifestFile = new File(backupPath + BackupManifest.MANIFEST_SUFFIX);
+		List<String> lines = Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8);
+		String leaf = lines.get(4);
+		lines.set(4, ((leaf.charAt(0) == '0') ? "1" : "0") + leaf.substring(1));
+		Files.write(manifestFile.toPath(), lines, StandardCharsets.UTF_8);
+		verification = BackupManifest.verify(backupPath);
+		check("an edited manifest is detected", verification != null && !verification.isManifestIntact() && !verification.isIntact());
+
+		lines.remove(4);
+		Files.write(manifestFile.toPath(), lines, StandardCharsets.UTF_8);
+		check("a manifest missing a line is not read", BackupManifest.verify(backupPath) == null);
+	}
+
+	private static boolean names(List<String> entryNames, String entryName) {
+		return entryNames.size() == 1 && entryNames.get(0).equals(entryName);
+	}
+
+	private static void execute(String backupPath, String sql, String... values) throws SQLException {
+		Connection DBconnection = DatabaseManager.connectToDatabase(backupPath);
+		if (DBconnection == null) {
+			throw new SQLException("Could not open " + backupPath);
+		}
+		try {
+			if (values.length == 0) {
+				Statement statement = DBconnection.createStatement();
+				statement.executeUpdate(sql);
+				statement.close();
+			}
+			else {
+				PreparedStatement statement = DBconnection.prepareStatement(sql);
+				for (int i = 0; i < values.length; i++) {
+					statement.setString(i + 1, values[i]);
+				}
+				statement.executeUpdate();
+				statement.close();
+			}
+			DBconnection.commit();
+		}
+		finally {
+			DBconnection.close();
+		}
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "PASS: " : "FAIL: ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package controllers;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import dataManagement.User;
+
+/**
+ * Decides which generations of a backup archive to keep, and deletes the rest in the background.
+ *
+ * Generations are kept grandfather-father-son style: the newest few, plus the newest generation of each of the last
+ * so many hours, days, weeks, months and years. Kept generations older than the maximum age are then dropped, and if
+ * the archive would still be larger than the size limit, the oldest kept generations are dropped until it fits. The
+ * newest generation is never deleted. Pruning runs on one daemon thread and paces its disk I/O (see
+ * BackupArchive.collectGarbage(long)).
+ */
+public class BackupRetention {
+
+	// Values the settings screen used to store in max_backup_size, when it held the backup frequency (1 to 6)
+	private static final int LEGACY_SIZE_SETTING_MAX = 6;
+	private static final int DEFAULT_MAX_BACKUP_MEGABYTES = 1000;
+	private static final long DEFAULT_IO_BYTES_PER_SECOND = 4L * 1024 * 1024;
+
+	private static BackupRetention instance;
+
+	private final ExecutorService pruner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "backup-retention");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	/**
+	 * How many generations to keep. Counts of 0 keep nothing for that period; a maximum age or size of 0 means no
+	 * limit.
+	 */
+	public static class Policy {
+		private final int keepLast;
+		private final int keepHourly;
+		private final int keepDaily;
+		private final int keepWeekly;
+		private final int keepMonthly;
+		private final int keepYearly;
+		private final long maxAgeMillis;
+		private final long maxBytes;
+
+		/**
+		 * @param keepLast		newest generations to keep regardless of when they were taken
+		 * @param keepHourly	hours, counting back from the newest backup, to keep one generation of
+		 * @param keepDaily		days to keep one generation of
+		 * @param keepWeekly	weeks to keep one generation of
+		 * @param keepMonthly	months to keep one generation of
+		 * @param keepYearly	years to keep one generation of
+		 * @param maxAgeMillis	generations older than this are deleted even if a rule above keeps them
+		 * @param maxBytes		largest size the archive may take on disk
+		 */
+		public Policy(int keepLast, int keepHourly, int keepDaily, int keepWeekly, int keepMonthly, int keepYearly, long maxAgeMillis, long maxBytes) {
+			this.keepLast = keepLast;
+			this.keepHourly = keepHourly;
+			this.keepDaily = keepDaily;
+			this.keepWeekly = keepWeekly;
+			this.keepMonthly = keepMonthly;
+			this.keepYearly = keepYearly;
+			this.maxAgeMillis = maxAgeMillis;
+			this.maxBytes = maxBytes;
+		}
+
+		/**
+		 * The default rotation: the last 3 backups, one per day for a week, one per week for a month, one per month
+		 * for a year and one per year for 5 years, within the user's max_backup_size (in megabytes).
+		 *
+		 * @param	user	owner of the archive
+		 * @return	the user's retention policy
+		 */
+		public static Policy forUser(User user) {
+			long megabytes = user.getMaxBackupSize();
+			if (megabytes > 0 && megabytes <= LEGACY_SIZE_SETTING_MAX) {
+				megabytes = DEFAULT_MAX_BACKUP_MEGABYTES;
+			}
+			return new Policy(3, 0, 7, 4, 12, 5, 0, Math.max(0, megabytes) * 1024 * 1024);
+		}
+	}
+
+	BackupRetention() {
+	}
+
+	public static synchronized BackupRetention getInstance() {
+		if (instance == null) {
+			instance = new BackupRetention();
+		}
+		return instance;
+	}
+
+	/**
+	 * Prunes an archive on the background thread.
+	 *
+	 * @param	archive	opened archive to prune
+	 * @param	policy	generations to keep
+	 * @return	number of generations deleted, or -1 if the archive could not be pruned
+	 */
+	public Future<Integer> schedule(final BackupArchive archive, final Policy policy) {
+		return pruner.submit(new Callable<Integer>() {
+			public Integer call() {
+				return prune(archive, policy, DEFAULT_IO_BYTES_PER_SECOND);
+			}
+		});
+	}
+
+	/**
+	 * Deletes the generations the policy does not keep, then the chunks only they used.
+	 *
+	 * @param	archive				opened archive to prune
+	 * @param	policy				generations to keep
+	 * @param	maxBytesPerSecond	I/O budget for collecting garbage; 0 for no limit
+	 * @return	number of generations deleted, or -1 if failure
+	 */
+	public int prune(BackupArchive archive, Policy policy, long maxBytesPerSecond) {
+		List<BackupArchive.Generation> generations = archive.listGenerations();
+		if (generations.size() <= 1) {
+			return 0;
+		}
+		Set<BackupArchive.Generation> keep = selectByAge(generations, policy);
+		fitToSize(archive, generations, keep, policy.maxBytes);
+
+		int deleted = 0;
+		for (BackupArchive.Generation generation : generations) {
+			if (!keep.contains(generation) && archive.deleteGeneration(generation) > 0) {
+				deleted++;
+			}
+		}
+		if (deleted > 0 && archive.collectGarbage(maxBytesPerSecond) < 0) {
+			return -1;
+		}
+		return deleted;
+	}
+
+	/**
+	 * Applies the count and age rules.
+	 *
+	 * @param	generations	all generations, oldest first
+	 * @return	generations to keep; always includes the newest
+	 */
+	static Set<BackupArchive.Generation> selectByAge(List<BackupArchive.Generation> generations, Policy policy) {
+		Set<BackupArchive.Generation> keep = new HashSet<BackupArchive.Generation>();
+		BackupArchive.Generation newest = generations.get(generations.size() - 1);
+		keep.add(newest);
+
+		Map<ChronoUnit, Set<Long>> periodsSeen = new HashMap<ChronoUnit, Set<Long>>();
+		ChronoUnit[] units = { ChronoUnit.HOURS, ChronoUnit.DAYS, ChronoUnit.WEEKS, ChronoUnit.MONTHS, ChronoUnit.YEARS };
+		int[] limits = { policy.keepHourly, policy.keepDaily, policy.keepWeekly, policy.keepMonthly, policy.keepYearly };
+		for (ChronoUnit unit : units) {
+			periodsSeen.put(unit, new HashSet<Long>());
+		}
+		// Newest first, so each period keeps its newest generation
+		for (int i = generations.size() - 1, position = 0; i >= 0; i--, position++) {
+			BackupArchive.Generation generation = generations.get(i);
+			if (position < policy.keepLast) {
+				keep.add(generation);
+			}
+			LocalDateTime taken = LocalDateTime.ofInstant(Instant.ofEpochMilli(generation.getCreated()), ZoneId.systemDefault());
+			for (int u = 0; u < units.length; u++) {
+				Set<Long> seen = periodsSeen.get(units[u]);
+				if (seen.size() < limits[u] && seen.add(period(taken, units[u]))) {
+					keep.add(generation);
+				}
+			}
+		}
+
+		if (policy.maxAgeMillis > 0) {
+			long oldestAllowed = System.currentTimeMillis() - policy.maxAgeMillis;
+			for (BackupArchive.Generation generation : generations) {
+				if (generation != newest && generation.getCreated() < oldestAllowed) {
+					keep.remove(generation);
+				}
+			}
+		}
+		return keep;
+	}
+
+	/**
+	 * Removes the oldest generations from 'keep' until the chunks the rest use fit in maxBytes. Chunk sizes are
+	 * looked up once, so this costs no more I/O than listing the chunk files.
+	 */
+	private static void fitToSize(BackupArchive archive, List<BackupArchive.Generation> generations, Set<BackupArchive.Generation> keep, long maxBytes) {
+		if (maxBytes <= 0) {
+			return;
+		}
+		Map<String, Integer> references = new HashMap<String, Integer>();
+		Map<String, Long> sizes = new HashMap<String, Long>();
+		long keptBytes = 0;
+		for (BackupArchive.Generation generation : generations) {
+			if (!keep.contains(generation)) {
+				continue;
+			}
+			for (byte[] id : generation.getChunkIds()) {
+				String key = new String(toChars(id));
+				Integer count = references.get(key);
+				if (count == null) {
+					long size = archive.getChunkSize(id);
+					sizes.put(key, size);
+					keptBytes += size;
+					count = 0;
+				}
+				references.put(key, count + 1);
+			}
+		}
+		BackupArchive.Generation newest = generations.get(generations.size() - 1);
+		for (BackupArchive.Generation generation : generations) {
+			if (keptBytes <= maxBytes) {
+				break;
+			}
+			if (generation == newest || !keep.contains(generation)) {
+				continue;
+			}
+			keep.remove(generation);
+			for (byte[] id : generation.getChunkIds()) {
+				String key = new String(toChars(id));
+				Integer count = references.get(key);
+				if (count == null) {
+					continue;
+				}
+				if (count == 1) {
+					references.remove(key);
+					keptBytes -= sizes.get(key);
+				}
+				else {
+					references.put(key, count - 1);
+				}
+			}
+		}
+		if (keptBytes > maxBytes) {
+			System.err.println("The newest backup alone is larger than the maximum backup size");
+		}
+	}
+
+	/**
+	 * @return	number identifying the period (hour, day, ISO week, month or year) a time falls in
+	 */
+	private static long period(LocalDateTime taken, ChronoUnit unit) {
+		switch (unit) {
+		case HOURS:
+			return taken.toLocalDate().toEpochDay() * 24 + taken.getHour();
+		case DAYS:
+			return taken.toLocalDate().toEpochDay();
+		case WEEKS:
+			return taken.get(IsoFields.WEEK_BASED_YEAR) * 100L + taken.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+		case MONTHS:
+			return taken.getYear() * 100L + taken.getMonthValue();
+		default:
+			return taken.getYear();
+		}
+	}
+
+	private static char[] toChars(byte[] id) {
+		char[] chars = new char[id.length];
+		for (int i = 0; i < id.length; i++) {
+			chars[i] = (char) (id[i] & 0xff);
+		}
+		return chars;
+	}
+}
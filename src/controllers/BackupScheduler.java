@@ -0,0 +1,429 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import cryptography.SecretValue;
+import dataManagement.User;
+
+/**
+ * Takes the signed-in user's archive backups in the background at their backup frequency. Each user's backup
+ * destination and the time of their last backup are remembered in the 'backup_schedule' table, so scheduled backups
+ * go where the user last chose, and the schedule carries over between sessions.
+ *
+ * Backups run one at a time on a low-priority daemon thread. Asking for a backup while one is running returns the
+ * running one instead of starting another. Listeners are told on the event dispatch thread when a backup starts,
+ * progresses and finishes, and can cancel it through its BackupRun.
+ */
+public class BackupScheduler {
+
+	private static final long CHECK_INTERVAL_MILLIS = 60 * 1000;
+	private static final long FIRST_CHECK_MILLIS = 10 * 1000;
+	private static final long HOUR_MILLIS = 60 * 60 * 1000;
+	// The snapshot is taken before storing starts; storing it is the rest of the progress bar
+	private static final int SNAPSHOT_PERCENT = 10;
+
+	private static BackupScheduler instance;
+
+	private final String database;
+	private final ScheduledExecutorService executor;
+	private final List<BackupListener> listeners = new CopyOnWriteArrayList<BackupListener>();
+	private ScheduledFuture<?> checks;
+	private String scheduledUser;
+	private BackupRun running;
+
+	/**
+	 * Told about backups; always called on the event dispatch thread.
+	 */
+	public interface BackupListener {
+		void backupStarted(BackupRun run);
+
+		void backupProgress(BackupRun run);
+
+		void backupFinished(BackupRun run);
+	}
+
+	/**
+	 * One backup, scheduled or asked for by the user.
+	 */
+	public static class BackupRun {
+		public static final int RUNNING = 0;
+		public static final int SUCCEEDED = 1;
+		public static final int FAILED = -1;
+		public static final int CANCELLED = -2;
+
+		private final String username;
+		private volatile boolean manual;
+		private volatile boolean cancelled = false;
+		private volatile int percent = 0;
+		private volatile String stage = "Waiting";
+		private volatile int result = RUNNING;
+
+		BackupRun(String username, boolean manual) {
+			this.username = username;
+			this.manual = manual;
+		}
+
+		public String getUsername() {
+			return username;
+		}
+
+		/**
+		 * @return	true if the user asked for this backup (rather than the schedule)
+		 */
+		public boolean isManual() {
+			return manual;
+		}
+
+		public int getPercent() {
+			return percent;
+		}
+
+		public String getStage() {
+			return stage;
+		}
+
+		/**
+		 * @return	RUNNING, SUCCEEDED, FAILED or CANCELLED
+		 */
+		public int getResult() {
+			return result;
+		}
+
+		public boolean isDone() {
+			return result != RUNNING;
+		}
+
+		/**
+		 * Asks the backup to stop at the next chunk it stores. Nothing is written to the archive for a cancelled backup.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+
+	BackupScheduler(String database) {
+		this.database = database;
+		ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "backup-scheduler");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		pool.setRemoveOnCancelPolicy(true);
+		this.executor = pool;
+	}
+
+	public static synchronized BackupScheduler getInstance() {
+		if (instance == null) {
+			instance = new BackupScheduler(VaultModel.VAULT_DATABASE);
+			instance.createScheduleTable();
+		}
+		return instance;
+	}
+
+	/**
+	 * Starts checking whether the user's next backup is due. Called at sign-in; replaces any earlier user's schedule.
+	 *
+	 * @param	user	the signed-in user
+	 */
+	public synchronized void start(User user) {
+		stopChecks();
+		scheduledUser = user.getUsername();
+		checks = executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				checkSchedule();
+			}
+		}, FIRST_CHECK_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops scheduled backups (sign-out) and cancels a running backup. Listeners still hear that it finished.
+	 */
+	public synchronized void stop() {
+		stopChecks();
+		scheduledUser = null;
+		if (running != null) {
+			running.cancel();
+		}
+	}
+
+	private void stopChecks() {
+		if (checks != null) {
+			checks.cancel(false);
+			checks = null;
+		}
+	}
+
+	public void addBackupListener(BackupListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeBackupListener(BackupListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Starts a backup of the user's data to their remembered destination, unless one is already running, in which
+	 * case that one is returned (and reported as manual if this request is).
+	 *
+	 * @param	user	user to back up; must be the signed-in user
+	 * @param	manual	true if the user asked for the backup
+	 * @return	the backup that will cover this request
+	 */
+	public synchronized BackupRun requestBackup(final User user, boolean manual) {
+		if (running != null && !running.isDone() && running.getUsername().equals(user.getUsername())) {
+			if (manual) {
+				running.manual = true;
+			}
+			return running;
+		}
+		final BackupRun run = new BackupRun(user.getUsername(), manual);
+		running = run;
+		executor.execute(new Runnable() {
+			public void run() {
+				performBackup(user, run);
+			}
+		});
+		return run;
+	}
+
+	/**
+	 * @param	username	username (email) of the user
+	 * @return	directory the user's backups go to, or null if they have not chosen one
+	 */
+	public String getDestination(String username) {
+		Object destination = readSchedule(username, "destination");
+		return (destination instanceof String) ? (String) destination : null;
+	}
+
+	/**
+	 * @param	username	username (email) of the user
+	 * @return	when the user's last backup finished (milliseconds since the epoch), or 0 if never
+	 */
+	public long getLastBackup(String username) {
+		Object lastBackup = readSchedule(username, "last_backup");
+		return (lastBackup instanceof Number) ? ((Number) lastBackup).longValue() : 0;
+	}
+
+	/**
+	 * Remembers where the user's backups go.
+	 *
+	 * @param	username	username (email) of the user
+	 * @param	destination	directory to keep the user's backup archive in
+	 * @return	positive integer if success; negative if failure
+	 */
+	public int setDestination(String username, String destination) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement insert = DBconnection.prepareStatement("INSERT OR IGNORE INTO backup_schedule (user_email, destination, last_backup) VALUES (?, ?, 0);");
+			insert.setString(1, username);
+			insert.setString(2, destination);
+			insert.executeUpdate();
+			insert.close();
+			PreparedStatement update = DBconnection.prepareStatement("UPDATE backup_schedule SET destination=? WHERE user_email=?;");
+			update.setString(1, destination);
+			update.setString(2, username);
+			update.executeUpdate();
+			update.close();
+			DBconnection.commit();
+			DBconnection.close();
+			return 1;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+			return -1;
+		}
+	}
+
+	/**
+	 * @return	milliseconds between backups for a backup_frequency setting, or 0 for none ("Manually")
+	 */
+	static long intervalFor(String frequency) {
+		if (frequency == null) {
+			return 0;
+		}
+		switch (frequency) {
+		case "Hourly":
+			return HOUR_MILLIS;
+		case "Daily":
+			return 24 * HOUR_MILLIS;
+		case "Weekly":
+			return 7 * 24 * HOUR_MILLIS;
+		case "Monthly":
+			return 30 * 24 * HOUR_MILLIS;
+		case "Annually":
+			return 365 * 24 * HOUR_MILLIS;
+		default:
+			return 0;
+		}
+	}
+
+	private void checkSchedule() {
+		VaultSession session = VaultSession.getCurrent();
+		if (session == null) {
+			return;
+		}
+		User user = session.getUser();
+		synchronized (this) {
+			if (user == null || !user.getUsername().equals(scheduledUser)) {
+				return;
+			}
+		}
+		long interval = intervalFor(user.getBackupFrequency());
+		if (interval <= 0 || getDestination(user.getUsername()) == null) {
+			return;
+		}
+		if (System.currentTimeMillis() - getLastBackup(user.getUsername()) >= interval) {
+			requestBackup(user, false);
+		}
+	}
+
+	private void performBackup(User user, final BackupRun run) {
+		fire(run, "started");
+		int result = BackupRun.FAILED;
+		try {
+			VaultSession session = VaultSession.getCurrent();
+			SecretValue archiveKey = (session != null && session.getUser().getUsername().equals(user.getUsername())) ? session.getArchiveKey() : null;
+			String destination = getDestination(user.getUsername());
+			if (archiveKey != null && destination != null && !run.isCancelled()) {
+				run.stage = "Taking a snapshot of your vault";
+				fire(run, "progress");
+				int archived = new BackupManager().createArchiveBackup(user, destination, archiveKey, new BackupArchive.ProgressListener() {
+					public boolean progress(long bytesDone, long bytesTotal) {
+						int percent = SNAPSHOT_PERCENT + (int) ((100 - SNAPSHOT_PERCENT) * bytesDone / Math.max(1, bytesTotal));
+						if (percent != run.percent) {
+							run.percent = percent;
+							run.stage = "Storing the backup";
+							fire(run, "progress");
+						}
+						return !run.isCancelled();
+					}
+				});
+				if (archived > 0) {
+					recordBackup(user.getUsername(), System.currentTimeMillis());
+					result = BackupRun.SUCCEEDED;
+				}
+			}
+		}
+		catch (RuntimeException e) {
+			// e.g. the archive key was closed because the user signed out mid-backup
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+		}
+		if (result != BackupRun.SUCCEEDED && run.isCancelled()) {
+			result = BackupRun.CANCELLED;
+		}
+		run.percent = (result == BackupRun.SUCCEEDED) ? 100 : run.percent;
+		run.stage = (result == BackupRun.SUCCEEDED) ? "Done" : (result == BackupRun.CANCELLED) ? "Cancelled" : "Failed";
+		run.result = result;
+		fire(run, "finished");
+	}
+
+	private void fire(final BackupRun run, final String what) {
+		if (listeners.isEmpty()) {
+			return;
+		}
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				for (BackupListener listener : listeners) {
+					if (what.equals("started")) {
+						listener.backupStarted(run);
+					}
+					else if (what.equals("progress")) {
+						listener.backupProgress(run);
+					}
+					else {
+						listener.backupFinished(run);
+					}
+				}
+			}
+		});
+	}
+
+	void createScheduleTable() {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS backup_schedule ("
+					+ "'user_email'		TEXT	PRIMARY KEY	NOT NULL, "
+					+ "'destination'	TEXT, "
+					+ "'last_backup'	INTEGER	NOT NULL)");
+			DBconnection.commit();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private Object readSchedule(String username, String column) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT destination, last_backup FROM backup_schedule WHERE user_email=?;");
+			select.setString(1, username);
+			ResultSet results = select.executeQuery();
+			Object value = results.next() ? results.getObject(column) : null;
+			results.close();
+			select.close();
+			DBconnection.close();
+			return value;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return null;
+		}
+	}
+
+	private void recordBackup(String username, long finished) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement update = DBconnection.prepareStatement("UPDATE backup_schedule SET last_backup=? WHERE user_email=?;");
+			update.setLong(1, finished);
+			update.setString(2, username);
+			update.executeUpdate();
+			DBconnection.commit();
+			update.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private static void closeQuietly(Connection DBconnection) {
+		try {
+			if (DBconnection != null) {
+				DBconnection.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package controllers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import cryptography.SecretValue;
+import dataManagement.DataEntry;
+
+/**
+ * Size-bounded LRU cache of decrypted data entries, keyed by (owner, entry name, entry type). Owned by a VaultSession.
+ * Plaintext fields are held in off-heap SecretValues so they can be overwritten: an entry's fields are zeroed when it is
+ * evicted or invalidated, and the whole cache is wiped once it has not been used for the idle timeout.
+ * Entries are invalidated as VaultModel publishes each change, on the thread that committed it and before any view is
+ * told, so updateEntry, deleteEntryFromDatabase and updateEntryValidUsers never leave a stale copy behind. A copy read
+ * from the database while such a change was being made is not cached (see getGeneration).
+ *
+ * Callers always receive a new DataEntry built from the cached fields; changing it does not change the cache.
+ */
+public class DataEntryCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 32;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 2 * 60 * 1000;
+	private static final long MIN_SWEEP_MILLIS = 1000;
+
+	private final int maxEntries;
+	private long idleTimeoutMillis;
+	private long lastAccess = System.currentTimeMillis();
+	private Timer sweeper;
+	private boolean closed = false;
+	private long generation = 0;
+
+	// access-ordered; evicted entries are zeroed before they are dropped
+	private final LinkedHashMap<String, CachedEntry> entries = new LinkedHashMap<String, CachedEntry>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, CachedEntry> eldest) {
+			if (size() > maxEntries) {
+				eldest.getValue().wipe();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	private static class CachedEntry {
+		private final String entryName;
+		private final String entryType;
+		private final String encryptionKey;
+		private final String owner;
+		private final List<String> validUsers;
+		private final int highSecurity;
+		private final LocalDateTime lastModified;
+		private final SecretValue[] fields;
+
+		CachedEntry(DataEntry entry) {
+			this.entryName = entry.getEntryName();
+			this.entryType = entry.getEntryType();
+			this.encryptionKey = entry.getEncryptionKey();
+			this.owner = entry.getOwner();
+			this.validUsers = new ArrayList<String>(entry.getValidUsers());
+			this.highSecurity = entry.isHighSecurity();
+			this.lastModified = entry.getLastModified();
+			List<String> fieldDataList = entry.getFieldDataList();
+			this.fields = new SecretValue[fieldDataList.size()];
+			for (int i = 0; i < fields.length; i++) {
+				String field = fieldDataList.get(i);
+				if (field != null) {
+					char[] chars = field.toCharArray();
+					fields[i] = SecretValue.fromChars(chars);
+					Arrays.fill(chars, '\0');
+				}
+			}
+		}
+
+		DataEntry toDataEntry() {
+			List<String> fieldDataList = new ArrayList<String>(fields.length);
+			for (SecretValue field : fields) {
+				if (field == null) {
+					fieldDataList.add(null);
+				}
+				else {
+					char[] chars = field.toCharArray();
+					fieldDataList.add(new String(chars));
+					Arrays.fill(chars, '\0');
+				}
+			}
+			return new DataEntry(entryName, entryType, encryptionKey, owner, new ArrayList<String>(validUsers),
+					highSecurity, lastModified, fieldDataList);
+		}
+
+		void wipe() {
+			for (SecretValue field : fields) {
+				if (field != null) {
+					field.close();
+				}
+			}
+		}
+	}
+
+	public DataEntryCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_IDLE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param maxEntries		maximum number of decrypted entries kept at once
+	 * @param idleTimeoutMillis	time without a cache access after which all cached plaintext is wiped
+	 */
+	public DataEntryCache(int maxEntries, long idleTimeoutMillis) {
+		if (maxEntries < 1 || idleTimeoutMillis < 1) {
+			throw new IllegalArgumentException("Cache size and idle timeout must be positive");
+		}
+		this.maxEntries = maxEntries;
+		setIdleTimeout(idleTimeoutMillis);
+	}
+
+	/**
+	 * Changes the idle timeout. The cache is swept at a quarter of the timeout, so plaintext outlives it by at most
+	 * that much.
+	 *
+	 * @param idleTimeoutMillis	time without a cache access after which all cached plaintext is wiped
+	 */
+	public synchronized void setIdleTimeout(long idleTimeoutMillis) {
+		if (idleTimeoutMillis < 1) {
+			throw new IllegalArgumentException("Idle timeout must be positive");
+		}
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		if (closed) {
+			return;
+		}
+		if (sweeper != null) {
+			sweeper.cancel();
+		}
+		long period = Math.max(MIN_SWEEP_MILLIS, idleTimeoutMillis / 4);
+		sweeper = new Timer("data-entry-cache-sweeper", true);
+		sweeper.schedule(new TimerTask() {
+			public void run() {
+				expireIfIdle();
+			}
+		}, period, period);
+	}
+
+	public synchronized long getIdleTimeout() {
+		return idleTimeoutMillis;
+	}
+
+	/**
+	 * @param	owner		username of the entry's owner
+	 * @param	entryName	name of the entry
+	 * @param	entryType	type of the entry
+	 * @return	a copy of the decrypted entry, or null if it is not cached
+	 */
+	public synchronized DataEntry get(String owner, String entryName, String entryType) {
+		lastAccess = System.currentTimeMillis();
+		CachedEntry cached = entries.get(key(owner, entryName, entryType));
+		return (cached == null) ? null : cached.toDataEntry();
+	}
+
+	/**
+	 * Caches a decrypted entry. The entry's fields are copied, so the caller's DataEntry is not retained.
+	 *
+	 * @param	entry	decrypted data entry
+	 */
+	public synchronized void put(DataEntry entry) {
+		if (closed || entry == null || entry.getFieldDataList() == null) {
+			return;
+		}
+		lastAccess = System.currentTimeMillis();
+		CachedEntry previous = entries.put(key(entry.getOwner(), entry.getEntryName(), entry.getEntryType()), new CachedEntry(entry));
+		if (previous != null) {
+			previous.wipe();
+		}
+	}
+
+	/**
+	 * Caches a decrypted entry read from the database, unless an entry was invalidated since the read began. Without
+	 * that check, a read racing an update could put the old entry back after the update had invalidated it.
+	 *
+	 * @param	entry		decrypted data entry
+	 * @param	generation	value of getGeneration taken before the entry was read
+	 */
+	public synchronized void put(DataEntry entry, long generation) {
+		if (generation == this.generation) {
+			put(entry);
+		}
+	}
+
+	/**
+	 * @return	a count that changes whenever an entry is invalidated or the cache is cleared
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Removes and zeroes one cached entry.
+	 *
+	 * @param	owner		username of the entry's owner
+	 * @param	entryName	name of the entry
+	 * @param	entryType	type of the entry
+	 */
+	public synchronized void invalidate(String owner, String entryName, String entryType) {
+		generation++;
+		CachedEntry removed = entries.remove(key(owner, entryName, entryType));
+		if (removed != null) {
+			removed.wipe();
+		}
+	}
+
+	/**
+	 * Removes and zeroes every cached entry.
+	 */
+	public synchronized void clear() {
+		generation++;
+		Iterator<CachedEntry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			it.next().wipe();
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return	number of entries currently cached
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Wipes the cache and stops the idle sweeper; the cache stays empty afterwards.
+	 */
+	public synchronized void close() {
+		closed = true;
+		clear();
+		if (sweeper != null) {
+			sweeper.cancel();
+			sweeper = null;
+		}
+	}
+
+	/**
+	 * Invalidates whatever a committed change may have made stale.
+	 *
+	 * @param	event	the change published by VaultModel
+	 */
+	void invalidate(VaultEvent event) {
+		switch (event.getType()) {
+		case UPDATED:
+			invalidate(event.getOwner(), event.getPreviousEntryName(), event.getEntryType());
+			invalidate(event.getOwner(), event.getEntryName(), event.getEntryType());
+			break;
+		case REMOVED:
+		case SHARED:
+			invalidate(event.getOwner(), event.getEntryName(), event.getEntryType());
+			break;
+		case RELOADED:
+			clear(); // a merge or restore may have replaced any number of entries
+			break;
+		default:
+			break;
+		}
+	}
+
+	private synchronized void expireIfIdle() {
+		if (!entries.isEmpty() && System.currentTimeMillis() - lastAccess >= idleTimeoutMillis) {
+			clear();
+		}
+	}
+
+	private static String key(String owner, String entryName, String entryType) {
+		return owner + '\0' + entryType + '\0' + entryName;
+	}
+}
@@ -2,13 +2,20 @@ package controllers;
 
 import dataManagement.User;
 import dataManagement.DataEntry;
+import dataManagement.EntryMatch;
+import dataManagement.EntrySummary;
 import java.io.UnsupportedEncodingException;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
 import cryptography.Crypto;
 
@@ -16,8 +23,33 @@ public class DatabaseManager {
 
 	private static String database_name;
 
+	// Database this manager reads and writes, whatever the current database is switched to later
+	private String database;
+
+	/**
+	 * Makes the given database the current database and returns a manager for it.
+	 * 
+	 * @param	database	name (path) of the database
+	 */
 	public DatabaseManager(String database) {
 		database_name = database;
+		this.database = database;
+	}
+
+	private DatabaseManager() {
+	}
+
+	/**
+	 * Returns a manager for a specific database without making it the current database, for backup files and for
+	 * work done off the event dispatch thread.
+	 * 
+	 * @param	database	name (path) of the database
+	 * @return	manager that always connects to that database
+	 */
+	public static DatabaseManager forDatabase(String database) {
+		DatabaseManager dbm = new DatabaseManager();
+		dbm.database = database;
+		return dbm;
 	}
 
 	public static String getCurrentDatabase() {
@@ -26,6 +58,7 @@ public class DatabaseManager {
 
 	public void setCurrentDatabase(String newDatabase) {
 		database_name = newDatabase;
+		database = newDatabase;
 	}
 
 	/**
@@ -35,11 +68,22 @@ public class DatabaseManager {
 	 * @return active Connection to vault_database
 	 */
 	public static Connection connectToDatabase() {
+		return connectToDatabase(getCurrentDatabase());
+	}
+
+	/**
+	 * Connects to a specific database without changing the current database, for work done off the event dispatch
+	 * thread while the current database may be switched to a backup file.
+	 * 
+	 * @param	databaseName	name (path) of the database to connect to
+	 * @return	active Connection to the database
+	 */
+	public static Connection connectToDatabase(String databaseName) {
 		Connection connection = null;
 		// Establish connection to the existing database
 		try {
 			Class.forName("org.sqlite.JDBC");
-			connection = DriverManager.getConnection("jdbc:sqlite:" + getCurrentDatabase());
+			connection = DriverManager.getConnection("jdbc:sqlite:" + databaseName);
 			connection.setAutoCommit(false);
 		} catch (Exception e) {
 			System.err.println(e.getClass().getName() + ": " + e.getMessage());
@@ -55,7 +99,7 @@ public class DatabaseManager {
 	 */
 	public void createUsersTable() {
 		// Connect to the given database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Construct SQLite statement
 			Statement stmt = DBconnection.createStatement();
@@ -92,7 +136,7 @@ public class DatabaseManager {
 	 */
 	public void createDataEntriesTable() {
 		// Connect to the given database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Construct SQLite statement
 			Statement stmt = DBconnection.createStatement();
@@ -125,6 +169,68 @@ public class DatabaseManager {
 			System.err.println(e.getClass().getName() + ": " + e.getMessage());
 			e.printStackTrace();
 		}
+		createDataEntryIndexes();
+	}
+
+	/**
+	 * Creates the indexes used to count and page through data entries by owner and type, if they do not exist yet.
+	 * Safe to call on every start so that vaults created before the indexes existed get them too.
+	 */
+	public void createDataEntryIndexes() {
+		// Connect to the given database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE INDEX IF NOT EXISTS data_entries_owner_type_name ON data_entries(owner, entry_type, entry_name)");
+			DBconnection.commit();
+			// Disconnect from database
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Creates the "change_log" table and the triggers that fill it, if they do not exist yet. Every insert, update and
+	 * delete on data_entries appends the (owner, entry_name) it touched with an increasing sequence number, so a
+	 * backup can copy only the entries changed since the sequence number it last saw. The triggers run inside the
+	 * writing transaction, so no write can be missed or logged without being committed. Backups prune the log up to
+	 * the sequence number they reach, and "change_log_pruned" records how far each owner's log has been pruned.
+	 */
+	public void createChangeLog() {
+		// Connect to the given database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS change_log ("
+					+ "'seq'			INTEGER	PRIMARY KEY	AUTOINCREMENT, "
+					+ "'owner'			TEXT	NOT NULL, "
+					+ "'entry_name'		TEXT	NOT NULL, "
+					+ "'operation'		TEXT	NOT NULL)");
+			stmt.executeUpdate("CREATE INDEX IF NOT EXISTS change_log_owner_seq ON change_log(owner, seq)");
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS change_log_pruned ("
+					+ "'owner'			TEXT	PRIMARY KEY	NOT NULL, "
+					+ "'through_seq'	INTEGER	NOT NULL)");
+			stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS data_entries_log_insert AFTER INSERT ON data_entries BEGIN "
+					+ "INSERT INTO change_log (owner, entry_name, operation) VALUES (NEW.owner, NEW.entry_name, 'insert'); END");
+			stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS data_entries_log_update AFTER UPDATE ON data_entries BEGIN "
+					+ "INSERT INTO change_log (owner, entry_name, operation) SELECT OLD.owner, OLD.entry_name, 'delete' "
+					+ "WHERE OLD.owner <> NEW.owner OR OLD.entry_name <> NEW.entry_name; "
+					+ "INSERT INTO change_log (owner, entry_name, operation) VALUES (NEW.owner, NEW.entry_name, 'update'); END");
+			stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS data_entries_log_delete AFTER DELETE ON data_entries BEGIN "
+					+ "INSERT INTO change_log (owner, entry_name, operation) VALUES (OLD.owner, OLD.entry_name, 'delete'); END");
+			DBconnection.commit();
+			// Disconnect from database
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
 	}
 
 	/**
@@ -135,7 +241,7 @@ public class DatabaseManager {
 	 */
 	public int addUserToDatabase(User newUser) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -185,7 +291,7 @@ public class DatabaseManager {
 	 */
 	public int deleteUserFromDatabase(User doomedUser) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -216,7 +322,7 @@ public class DatabaseManager {
 	 */
 	public User retrieveUserFromDatabase(String userEmail) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -282,7 +388,7 @@ public class DatabaseManager {
 	 */
 	public List<DataEntry> retrieveUserDataEntries(User user) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		// Create an empty List to populate with data entries
 		List<DataEntry> dataEntryList = new ArrayList<DataEntry>();
 		try {
@@ -353,6 +459,347 @@ public class DatabaseManager {
 		}
 	}
 
+	/**
+	 * Streams a user's data entries of the given types to a handler one row at a time, without building a List.
+	 * Entries are passed on still ENCRYPTED; the handler decides if and where to decrypt them.
+	 *
+	 * @param	user		user whose data entries are streamed
+	 * @param	entryTypes	entry types to include (e.g. "Account Login"); null to include every type
+	 * @param	handler		receives each encrypted DataEntry in turn
+	 * @return	number of entries streamed; negative if failure
+	 */
+	public int streamUserDataEntries(User user, List<String> entryTypes, Consumer<DataEntry> handler) {
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			// Construct the SQL select statement, with one placeholder per requested type
+			String sql = "SELECT * FROM data_entries WHERE owner=?";
+			if (entryTypes != null) {
+				sql += " AND entry_type IN (";
+				for (int i = 0; i < entryTypes.size(); i++) {
+					sql += (i == 0) ? "?" : ", ?";
+				}
+				sql += ")";
+			}
+			PreparedStatement preparedStatement = DBconnection.prepareStatement(sql + ";");
+			preparedStatement.setString(1, user.getUsername());
+			if (entryTypes != null) {
+				for (int i = 0; i < entryTypes.size(); i++) {
+					preparedStatement.setString(2 + i, entryTypes.get(i));
+				}
+			}
+			// Hand each row to the handler as it is read from the cursor
+			ResultSet dataEntrySet = preparedStatement.executeQuery();
+			int numEntries = 0;
+			while (dataEntrySet.next()) {
+				handler.accept(readDataEntryRow(dataEntrySet));
+				numEntries++;
+			}
+			// Disconnect from database
+			dataEntrySet.close();
+			preparedStatement.close();
+			DBconnection.close();
+			return numEntries;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			// return a failure value
+			return -1;
+		}
+	}
+
+	/**
+	 * Reconstructs a single (still encrypted) data entry from the current row of a data_entries result set.
+	 *
+	 * @param	dataEntrySet	result set positioned on a data_entries row
+	 * @return	DataEntry holding the row's encrypted fields
+	 */
+	static DataEntry readDataEntryRow(ResultSet dataEntrySet) throws SQLException {
+		String entry_name = dataEntrySet.getString("entry_name");
+		String entry_type = dataEntrySet.getString("entry_type");
+		String encryption_key = dataEntrySet.getString("encryption_key");
+		String owner = dataEntrySet.getString("owner");
+		int secure_entry = dataEntrySet.getInt("secure_entry");
+		LocalDateTime last_modified = LocalDateTime.parse(dataEntrySet.getString("last_modified"));
+
+		// Parse the valid_users String and convert to List<String> to assign to validUsers field of DataEntry
+		List<String> validUsers = new ArrayList<String>();
+		String validUsersString = dataEntrySet.getString("valid_users");
+		String[] parsedValidUsers = validUsersString.split(" ");
+		for (int i = 0; i < parsedValidUsers.length; i++) {
+			validUsers.add(parsedValidUsers[i]);
+		}
+
+		// Retrieve the data_fields; create a List of the fields
+		List<String> data_field_list = new ArrayList<String>();
+		for (int i = 1; i <= 10; i++) {
+			data_field_list.add(dataEntrySet.getString("data_field_" + i));
+		}
+
+		return new DataEntry(entry_name, entry_type, encryption_key, owner, validUsers, secure_entry, last_modified, data_field_list);
+	}
+
+	/**
+	 * Counts a user's data entries by type, without reading any of the entries themselves.
+	 * 
+	 * @param	user_email	username (email) of the user whose data entries are counted
+	 * @return	Map of entry type to number of entries of that type (types with no entries are absent)
+	 */
+	public Map<String, Integer> countDataEntriesByType(String user_email) {
+		Map<String, Integer> typeCounts = new HashMap<String, Integer>();
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			PreparedStatement preparedStatement = DBconnection.prepareStatement(
+					"SELECT entry_type, COUNT(*) AS entry_count FROM data_entries WHERE owner=? GROUP BY entry_type;");
+			preparedStatement.setString(1, user_email);
+			ResultSet countSet = preparedStatement.executeQuery();
+			while (countSet.next()) {
+				typeCounts.put(countSet.getString("entry_type"), countSet.getInt("entry_count"));
+			}
+			// Disconnect from database
+			countSet.close();
+			preparedStatement.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+		return typeCounts;
+	}
+
+	/**
+	 * Retrieves the name, type and last modified time of each of a user's data entries. Only those (unencrypted)
+	 * columns are read, so no entry is decrypted.
+	 *
+	 * @param	user_email	username (email) of the owner of the data entries
+	 * @return	List<EntrySummary> of all the user's data entries, in no particular order
+	 */
+	public List<EntrySummary> retrieveDataEntrySummaries(String user_email) {
+		List<EntrySummary> summaryList = new ArrayList<EntrySummary>();
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			PreparedStatement preparedStatement = DBconnection.prepareStatement(
+					"SELECT entry_name, entry_type, last_modified FROM data_entries WHERE owner=?;");
+			preparedStatement.setString(1, user_email);
+			ResultSet summarySet = preparedStatement.executeQuery();
+			while (summarySet.next()) {
+				summaryList.add(new EntrySummary(user_email, summarySet.getString("entry_name"), summarySet.getString("entry_type"),
+						LocalDateTime.parse(summarySet.getString("last_modified"))));
+			}
+			// Disconnect from database
+			summarySet.close();
+			preparedStatement.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+		return summaryList;
+	}
+
+	/**
+	 * Retrieves the name, type and last modified time of one data entry, without decrypting it.
+	 *
+	 * @param	user_email	username (email) of the owner of the data entry
+	 * @param	entryName	name of the data entry
+	 * @param	entryType	type of the data entry
+	 * @return	EntrySummary of the data entry, or null if there is no such entry
+	 */
+	public EntrySummary retrieveDataEntrySummary(String user_email, String entryName, String entryType) {
+		EntrySummary summary = null;
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			PreparedStatement preparedStatement = DBconnection.prepareStatement(
+					"SELECT last_modified FROM data_entries WHERE owner=? AND entry_name=? AND entry_type=?;");
+			preparedStatement.setString(1, user_email);
+			preparedStatement.setString(2, entryName);
+			preparedStatement.setString(3, entryType);
+			ResultSet summarySet = preparedStatement.executeQuery();
+			if (summarySet.next()) {
+				summary = new EntrySummary(user_email, entryName, entryType, LocalDateTime.parse(summarySet.getString("last_modified")));
+			}
+			// Disconnect from database
+			summarySet.close();
+			preparedStatement.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+		return summary;
+	}
+
+	/**
+	 * Counts the data entries shared with a user, grouped by owner and then by type.
+	 * NOTE: Requires that valid_users field in database contains user_emails separated by " " (space)
+	 * 
+	 * @param	user_email	username (email) of the user the entries are shared with
+	 * @return	Map (sorted by owner) of owner to a Map of entry type to number of entries of that type
+	 */
+	public Map<String, Map<String, Integer>> countSharedEntriesByOwnerAndType(String user_email) {
+		Map<String, Map<String, Integer>> ownerCounts = new TreeMap<String, Map<String, Integer>>();
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			// Pad valid_users with spaces so instr() only matches whole usernames
+			PreparedStatement preparedStatement = DBconnection.prepareStatement(
+					"SELECT owner, entry_type, COUNT(*) AS entry_count FROM data_entries "
+					+ "WHERE instr(' ' || valid_users || ' ', ?) > 0 GROUP BY owner, entry_type;");
+			preparedStatement.setString(1, " " + user_email + " ");
+			ResultSet countSet = preparedStatement.executeQuery();
+			while (countSet.next()) {
+				String owner = countSet.getString("owner");
+				Map<String, Integer> typeCounts = ownerCounts.get(owner);
+				if (typeCounts == null) {
+					typeCounts = new HashMap<String, Integer>();
+					ownerCounts.put(owner, typeCounts);
+				}
+				typeCounts.put(countSet.getString("entry_type"), countSet.getInt("entry_count"));
+			}
+			// Disconnect from database
+			countSet.close();
+			preparedStatement.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+		return ownerCounts;
+	}
+
+	/**
+	 * Retrieves one window of data entry names of a given owner and type, in alphabetical order.
+	 * Windows are keyed on the last name of the previous window rather than an offset, so every window
+	 * is a single index range scan no matter how deep into the list it is.
+	 * 
+	 * @param	owner		username (email) of the owner of the data entries
+	 * @param	entryType	type of the data entries
+	 * @param	sharedWith	username (email) the entries must be shared with; null for the owner's own view
+	 * @param	afterName	last name of the previous window; null for the first window
+	 * @param	limit		maximum number of names to retrieve
+	 * @return	List<String> of up to limit data entry names that sort after afterName
+	 */
+	public List<String> retrieveDataEntryNamePage(String owner, String entryType, String sharedWith, String afterName, int limit) {
+		List<String> entryNameList = new ArrayList<String>();
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			// Construct the SQL select statement
+			String sql = "SELECT entry_name FROM data_entries WHERE owner=? AND entry_type=?";
+			if (sharedWith != null) {
+				sql += " AND instr(' ' || valid_users || ' ', ?) > 0";
+			}
+			if (afterName != null) {
+				sql += " AND entry_name > ?";
+			}
+			PreparedStatement preparedStatement = DBconnection.prepareStatement(sql + " ORDER BY entry_name LIMIT ?;");
+			int parameter = 1;
+			preparedStatement.setString(parameter++, owner);
+			preparedStatement.setString(parameter++, entryType);
+			if (sharedWith != null) {
+				preparedStatement.setString(parameter++, " " + sharedWith + " ");
+			}
+			if (afterName != null) {
+				preparedStatement.setString(parameter++, afterName);
+			}
+			preparedStatement.setInt(parameter, limit);
+			ResultSet entryNameSet = preparedStatement.executeQuery();
+			while (entryNameSet.next()) {
+				entryNameList.add(entryNameSet.getString("entry_name"));
+			}
+			// Disconnect from database
+			entryNameSet.close();
+			preparedStatement.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+		return entryNameList;
+	}
+
+	/**
+	 * Retrieves one window of a user's data entries whose name contains the search text, best matches first: rank 0
+	 * for an exact name match, 1 for a name that starts with the text, 2 for any other match.
+	 * Like retrieveDataEntryNamePage(), windows are keyed on the last match of the previous window.
+	 * Case is ignored for ASCII letters only: SQLite's lower() leaves every other character as it is, so the search
+	 * text is folded the same way, and "É" does not match "é".
+	 *
+	 * @param	owner	username (email) of the owner of the data entries
+	 * @param	text	text to search entry names for
+	 * @param	after	last match of the previous window; null for the first window
+	 * @param	limit	maximum number of matches to retrieve
+	 * @return	List<EntryMatch> of up to limit matches, in EntryMatch order
+	 */
+	public List<EntryMatch> searchDataEntryPage(String owner, String text, EntryMatch after, int limit) {
+		List<EntryMatch> matchList = new ArrayList<EntryMatch>();
+		String lowerText = asciiLowerCase(text);
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			// Construct the SQL select statement
+			String sql = "SELECT entry_name, entry_type, match_rank FROM (SELECT entry_name, entry_type, "
+					+ "CASE WHEN lower(entry_name) = ? THEN 0 WHEN instr(lower(entry_name), ?) = 1 THEN 1 ELSE 2 END AS match_rank "
+					+ "FROM data_entries WHERE owner=? AND instr(lower(entry_name), ?) > 0)";
+			if (after != null) {
+				sql += " WHERE match_rank > ? OR (match_rank = ? AND (entry_name > ? OR (entry_name = ? AND entry_type > ?)))";
+			}
+			PreparedStatement preparedStatement = DBconnection.prepareStatement(sql + " ORDER BY match_rank, entry_name, entry_type LIMIT ?;");
+			int parameter = 1;
+			preparedStatement.setString(parameter++, lowerText);
+			preparedStatement.setString(parameter++, lowerText);
+			preparedStatement.setString(parameter++, owner);
+			preparedStatement.setString(parameter++, lowerText);
+			if (after != null) {
+				preparedStatement.setInt(parameter++, after.getRank());
+				preparedStatement.setInt(parameter++, after.getRank());
+				preparedStatement.setString(parameter++, after.getEntryName());
+				preparedStatement.setString(parameter++, after.getEntryName());
+				preparedStatement.setString(parameter++, after.getEntryType());
+			}
+			preparedStatement.setInt(parameter, limit);
+			ResultSet matchSet = preparedStatement.executeQuery();
+			while (matchSet.next()) {
+				matchList.add(new EntryMatch(owner, matchSet.getString("entry_name"), matchSet.getString("entry_type"), matchSet.getInt("match_rank")));
+			}
+			// Disconnect from database
+			matchSet.close();
+			preparedStatement.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+		}
+		return matchList;
+	}
+
+	/**
+	 * Lower-cases only the ASCII letters of a string, the way SQLite's lower() does, so a search term folds the same
+	 * way as the entry names it is compared with.
+	 *
+	 * @param	text	text to fold
+	 * @return	text with A-Z replaced by a-z
+	 */
+	private static String asciiLowerCase(String text) {
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] >= 'A' && chars[i] <= 'Z') {
+				chars[i] += 'a' - 'A';
+			}
+		}
+		return new String(chars);
+	}
+
 	/**
 	 * Generates a List of Strings of all the data entry NAMES of a given user.
 	 * To be used in tandem with retrieveDataEntryTypeList().
@@ -364,7 +811,7 @@ public class DatabaseManager {
 	public List<String> retrieveDataEntryNameList(String user_email) {
 		List<String> entryNameList = new ArrayList<String>();
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -401,7 +848,7 @@ public class DatabaseManager {
 	public List<String> retrieveDataEntryTypeList(String user_email) {
 		List<String> entryTypeList = new ArrayList<String>();
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -440,7 +887,7 @@ public class DatabaseManager {
 	public List<String> retrieveSharedEntryNameList(String user_email) {
 		List<String> sharedEntryList = new ArrayList<String>();
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -475,7 +922,7 @@ public class DatabaseManager {
 	public List<String> retrieveSharedEntryTypeList(String user_email) {
 		List<String> sharedEntryList = new ArrayList<String>();
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -510,7 +957,7 @@ public class DatabaseManager {
 	public List<String> retrieveSharedEntryOwnerList(String user_email) {
 		List<String> sharedEntryList = new ArrayList<String>();
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -552,7 +999,7 @@ public class DatabaseManager {
 	 */
 	public DataEntry retrieveOneDataEntry(String entryname, User user, String type) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -632,7 +1079,7 @@ public class DatabaseManager {
 		// Connect to the database
 		List<DataEntry> resultList = new ArrayList<DataEntry>();
 
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -723,7 +1170,7 @@ public class DatabaseManager {
 	 */
 	public void modifyUserField(User user, String fieldName, String newTextData) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -736,6 +1183,7 @@ public class DatabaseManager {
 			// Disconnect from database
 			stmt.close();
 			DBconnection.close();
+			VaultSession.userModified(user);
 		}
 		catch (SQLException e) {
 			System.err.println(e.getClass().getName() + ": " + e.getMessage());
@@ -752,7 +1200,7 @@ public class DatabaseManager {
 	 */
 	public void modifyUserField(User user, String fieldName, int newIntData) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -765,6 +1213,7 @@ public class DatabaseManager {
 			// Disconnect from database
 			stmt.close();
 			DBconnection.close();
+			VaultSession.userModified(user);
 		}
 		catch (SQLException e) {
 			System.err.println(e.getClass().getName() + ": " + e.getMessage());
@@ -773,7 +1222,7 @@ public class DatabaseManager {
 	}
 
 	/**
-	 * Replaces an existing data entry with a new one.
+	 * Replaces an existing data entry with a new one. The version it replaces is kept in the EntryHistory.
 	 * 
 	 * @param 	user		User whose data entry is to be replaced
 	 * @param 	oldEntry	Existing data entry that will be replaced
@@ -782,7 +1231,7 @@ public class DatabaseManager {
 	 */
 	public int updateEntry(User user, DataEntry oldEntry, DataEntry newEntry) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		Crypto c = new Crypto();
 		newEntry = c.encrypt(user, newEntry);
 		try {
@@ -823,12 +1272,18 @@ public class DatabaseManager {
 			preparedStatement.setString(j , newEntry.getLastModified().toString());
 			preparedStatement.setString(j + 1 , oldEntry.getEntryName());
 			preparedStatement.setString(j + 2 , oldEntry.getOwner());
-			// Execute the statement and commit database changes
+			// Keep the version being overwritten, then execute the statement and commit database changes
+			EntryHistory.recordRevision(database, DBconnection, oldEntry.getOwner(), oldEntry.getEntryName(), newEntry);
 			preparedStatement.executeUpdate();
+			OperationJournal.journal(database, DBconnection, oldEntry.getOwner(), OperationJournal.UPDATE, oldEntry.getEntryName(), newEntry.getEntryName());
 			DBconnection.commit();
 			// Disconnect from database
 			preparedStatement.close();
 			DBconnection.close();
+			// Publish the change so open views can apply it in place
+			if (VaultModel.VAULT_DATABASE.equals(database)) {
+				VaultModel.getInstance().fireEntryUpdated(oldEntry, newEntry.getEntryName());
+			}
 			// return a success value
 			return 1;
 		}
@@ -849,7 +1304,7 @@ public class DatabaseManager {
 	 */
 	public int addEntryToDatabase(User user, DataEntry entry) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		Crypto c = new Crypto();
 		try {
 			entry.setEncryptionKey(c.randomDataKey(entry.isHighSecurity()));
@@ -905,11 +1360,67 @@ public class DatabaseManager {
 			}
 
 			preparedStatement.executeUpdate();
+			OperationJournal.journal(database, DBconnection, entry.getOwner(), OperationJournal.ADD, entry.getEntryName(), entry.getEntryName());
 			// Execute the statement and commit database changes stmt.executeUpdate(sql);
 			DBconnection.commit();
 			// Disconnect from database
 			preparedStatement.close();
 			DBconnection.close();
+			// Publish the change so open views can apply it in place
+			if (VaultModel.VAULT_DATABASE.equals(database)) {
+				VaultModel.getInstance().fireEntryAdded(entry);
+			}
+			// return a success value
+			return 1;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			// return a failure value
+			return -1;
+		}
+	}
+
+	/**
+	 * Updates only the valid users of a data entry, leaving its key and encrypted fields untouched.
+	 * 
+	 * @param	entry	Data entry (identified by name and owner) whose valid users have changed
+	 * @return	positive integer if the valid users were updated; negative if failure
+	 */
+	public int updateEntryValidUsers(DataEntry entry) {
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			// Read the current valid users so the change can be published
+			PreparedStatement preparedStatement = DBconnection.prepareStatement("SELECT valid_users FROM data_entries WHERE entry_name=? AND owner=?;");
+			preparedStatement.setString(1, entry.getEntryName());
+			preparedStatement.setString(2, entry.getOwner());
+			ResultSet results = preparedStatement.executeQuery();
+			if (!results.next()) {
+				results.close();
+				preparedStatement.close();
+				DBconnection.close();
+				return -1;
+			}
+			List<String> previousValidUsers = Arrays.asList(results.getString("valid_users").split(" "));
+			results.close();
+			preparedStatement.close();
+
+			preparedStatement = DBconnection.prepareStatement("UPDATE data_entries SET valid_users=? WHERE entry_name=? AND owner=?;");
+			preparedStatement.setString(1, entry.buildValidUsersString());
+			preparedStatement.setString(2, entry.getEntryName());
+			preparedStatement.setString(3, entry.getOwner());
+			// Execute the statement and commit database changes
+			preparedStatement.executeUpdate();
+			OperationJournal.journal(database, DBconnection, entry.getOwner(), OperationJournal.UPDATE, entry.getEntryName(), entry.getEntryName());
+			DBconnection.commit();
+			// Disconnect from database
+			preparedStatement.close();
+			DBconnection.close();
+			// Publish the change so open views can apply it in place
+			if (VaultModel.VAULT_DATABASE.equals(database)) {
+				VaultModel.getInstance().fireEntryShared(entry, previousValidUsers);
+			}
 			// return a success value
 			return 1;
 		}
@@ -921,6 +1432,112 @@ public class DatabaseManager {
 		}
 	}
 
+	/**
+	 * Grants several users access to several data entries in one transaction. Each entry's valid users are read and
+	 * written once no matter how many recipients are added, and entries that already include every recipient are
+	 * left alone. The DataEntry objects are updated to match once the transaction has committed.
+	 * 
+	 * @param	entries		Data entries (identified by name and owner) to share
+	 * @param	recipients	usernames (emails) to share the entries with
+	 * @return	number of entries whose valid users changed; negative if failure (nothing is changed)
+	 */
+	public int shareEntries(List<DataEntry> entries, List<String> recipients) {
+		return changeValidUsers(entries, recipients);
+	}
+
+	/**
+	 * Stops sharing several data entries with anyone, in one transaction. Entries that are not shared are left alone.
+	 * The DataEntry objects are updated to match once the transaction has committed.
+	 * 
+	 * @param	entries		Data entries (identified by name and owner) to stop sharing
+	 * @return	number of entries whose valid users changed; negative if failure (nothing is changed)
+	 */
+	public int stopSharingEntries(List<DataEntry> entries) {
+		return changeValidUsers(entries, null);
+	}
+
+	/**
+	 * @param	recipients	usernames to add to each entry's valid users, or null to remove all of them
+	 */
+	private int changeValidUsers(List<DataEntry> entries, List<String> recipients) {
+		List<DataEntry> changedEntries = new ArrayList<DataEntry>();
+		List<List<String>> previousValidUsers = new ArrayList<List<String>>();
+		List<List<String>> newValidUsers = new ArrayList<List<String>>();
+		// Connect to the database
+		Connection DBconnection = connectToDatabase(database);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT valid_users FROM data_entries WHERE entry_name=? AND owner=?;");
+			PreparedStatement update = DBconnection.prepareStatement("UPDATE data_entries SET valid_users=? WHERE entry_name=? AND owner=?;");
+			for (DataEntry entry : entries) {
+				select.setString(1, entry.getEntryName());
+				select.setString(2, entry.getOwner());
+				ResultSet results = select.executeQuery();
+				if (!results.next()) {
+					results.close();
+					continue;
+				}
+				String storedValidUsers = results.getString("valid_users");
+				results.close();
+
+				List<String> previous = new ArrayList<String>();
+				if (storedValidUsers != null) {
+					for (String validUser : storedValidUsers.split(" ")) {
+						if (!validUser.isEmpty()) {
+							previous.add(validUser);
+						}
+					}
+				}
+				TreeSet<String> validUsers = new TreeSet<String>(previous); // kept sorted, as addValidUser() does
+				if ((recipients == null) ? previous.isEmpty() : !validUsers.addAll(recipients)) {
+					continue;
+				}
+				if (recipients == null) {
+					validUsers.clear();
+				}
+				DataEntry sharedEntry = new DataEntry(entry.getEntryName(), entry.getEntryType(), null, entry.getOwner(), 0, null);
+				sharedEntry.setValidUsers(new ArrayList<String>(validUsers));
+				update.setString(1, sharedEntry.buildValidUsersString());
+				update.setString(2, entry.getEntryName());
+				update.setString(3, entry.getOwner());
+				update.addBatch();
+				changedEntries.add(entry);
+				previousValidUsers.add(previous);
+				newValidUsers.add(sharedEntry.getValidUsers());
+			}
+			// Execute the statements and commit database changes
+			update.executeBatch();
+			for (DataEntry entry : changedEntries) {
+				OperationJournal.journal(database, DBconnection, entry.getOwner(), OperationJournal.UPDATE, entry.getEntryName(), entry.getEntryName());
+			}
+			DBconnection.commit();
+			// Disconnect from database
+			select.close();
+			update.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			try {
+				DBconnection.rollback();
+				DBconnection.close();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			// return a failure value
+			return -1;
+		}
+		// Publish the changes so open views can apply them in place
+		for (int i = 0; i < changedEntries.size(); i++) {
+			changedEntries.get(i).setValidUsers(newValidUsers.get(i));
+			if (VaultModel.VAULT_DATABASE.equals(database)) {
+				VaultModel.getInstance().fireEntryShared(changedEntries.get(i), previousValidUsers.get(i));
+			}
+		}
+		return changedEntries.size();
+	}
+
 	/**
 	 * Completely delete a single data entry from the database
 	 * 
@@ -929,19 +1546,25 @@ public class DatabaseManager {
 	 */
 	public int deleteEntryFromDatabase(DataEntry entry) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
 			// Construct the SQL INSERT statement
 			String sql = "DELETE FROM data_entries WHERE entry_name='" + entry.getEntryName() + "'" + " AND "
 					+ "owner='" + entry.getOwner() + "';";
-			// Execute the statement and commit database changes
+			// Keep the entry's history, then execute the statement and commit database changes
+			EntryHistory.recordDeletion(database, DBconnection, entry.getOwner(), entry.getEntryName());
 			stmt.executeUpdate(sql);
+			OperationJournal.journal(database, DBconnection, entry.getOwner(), OperationJournal.DELETE, entry.getEntryName(), entry.getEntryName());
 			DBconnection.commit();
 			// Disconnect from database
 			stmt.close();
 			DBconnection.close();
+			// Publish the change so open views can apply it in place
+			if (VaultModel.VAULT_DATABASE.equals(database)) {
+				VaultModel.getInstance().fireEntryRemoved(entry);
+			}
 			// return a success value
 			return 1;
 		}
@@ -961,7 +1584,7 @@ public class DatabaseManager {
 	 */
 	public int deleteAllEntriesFromDatabase(User destroyer) {
 		// Connect to the database
-		Connection DBconnection = connectToDatabase();
+		Connection DBconnection = connectToDatabase(database);
 		try {
 			// Initialize a statement to execute
 			Statement stmt = DBconnection.createStatement();
@@ -969,10 +1592,15 @@ public class DatabaseManager {
 			String sql = "DELETE FROM data_entries WHERE owner='" + destroyer.getUsername() + "';";
 			// Execute the statement and commit database changes
 			stmt.executeUpdate(sql);
+			EntryHistory.clearHistory(DBconnection, destroyer.getUsername(), null);
 			DBconnection.commit();
 			// Disconnect from database
 			stmt.close();
 			DBconnection.close();
+			// Publish the change so cached and displayed entries are dropped
+			if (VaultModel.VAULT_DATABASE.equals(database)) {
+				VaultModel.getInstance().fireEntriesReloaded(destroyer.getUsername());
+			}
 			// return a success value
 			return 1;
 		}
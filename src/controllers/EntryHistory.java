@@ -0,0 +1,651 @@
+package controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import cryptography.Crypto;
+import dataManagement.DataEntry;
+import dataManagement.User;
+
+/**
+ * Earlier versions of each data entry, kept when updateEntry() overwrites them or deleteEntryFromDatabase() deletes
+ * them.
+ *
+ * A version is the entry's row as it was stored, so its fields stay encrypted under the entry's key exactly as in
+ * data_entries. The entry's fields are encrypted the same way each time, so a field that did not change is stored
+ * unchanged, and most versions only need the fields that differ from the version before (a delta). Every
+ * SNAPSHOT_EVERY versions the whole row is stored (a snapshot), so reading any version applies at most
+ * SNAPSHOT_EVERY - 1 deltas. The PruningPolicy drops the oldest versions of an entry when it saves a new one, and of
+ * every entry at sign-in.
+ *
+ * The history of a deleted entry ends with the entry as it was deleted, and is moved to a name starting with
+ * DELETED_MARK so that a new entry with the same name starts without it. It is pruned like any other history, except
+ * that the policy's minimum does not apply, so it is dropped entirely once its versions have expired.
+ */
+public class EntryHistory {
+
+	private static final int SNAPSHOT_EVERY = 8;
+	private static final int ALL_COLUMNS = (1 << OperationJournal.COLUMNS.length) - 1;
+	private static final char DELETED_MARK = '\u0001';
+
+	public static final PruningPolicy DEFAULT_POLICY = new PruningPolicy(50, 365, 5);
+
+	private static EntryHistory instance;
+
+	private final String database;
+	private volatile PruningPolicy policy = DEFAULT_POLICY;
+	private final ExecutorService pruner = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "history-pruner");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	/**
+	 * How many versions of each entry are kept.
+	 */
+	public static class PruningPolicy {
+		private final int maxVersions;
+		private final int maxAgeDays;
+		private final int minVersions;
+
+		/**
+		 * @param	maxVersions	most versions kept per entry
+		 * @param	maxAgeDays	versions replaced more than this many days ago are dropped...
+		 * @param	minVersions	...unless the entry has no more than this many versions (not applied to deleted entries)
+		 */
+		public PruningPolicy(int maxVersions, int maxAgeDays, int minVersions) {
+			this.maxVersions = Math.max(1, maxVersions);
+			this.maxAgeDays = maxAgeDays;
+			this.minVersions = Math.min(Math.max(0, minVersions), this.maxVersions);
+		}
+
+		public int getMaxVersions() {
+			return maxVersions;
+		}
+
+		public int getMaxAgeDays() {
+			return maxAgeDays;
+		}
+
+		public int getMinVersions() {
+			return minVersions;
+		}
+	}
+
+	/**
+	 * One earlier version of an entry.
+	 */
+	public static class EntryVersion {
+		private final int version;
+		private final long replaced;
+		private final String[] row;
+
+		EntryVersion(int version, long replaced, String[] row) {
+			this.version = version;
+			this.replaced = replaced;
+			this.row = row;
+		}
+
+		/**
+		 * @return	version number; higher numbers are newer
+		 */
+		public int getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return	when this version was overwritten by the next one
+		 */
+		public LocalDateTime getReplaced() {
+			return LocalDateTime.ofInstant(Instant.ofEpochMilli(replaced), ZoneId.systemDefault());
+		}
+
+		/**
+		 * @return	the entry as it was, still encrypted
+		 */
+		public DataEntry getEntry() {
+			List<String> validUsers = new ArrayList<String>();
+			if (row[4] != null) {
+				for (String validUser : row[4].split(" ")) {
+					validUsers.add(validUser);
+				}
+			}
+			List<String> dataFields = new ArrayList<String>();
+			for (int i = 7; i < row.length; i++) {
+				dataFields.add(row[i]);
+			}
+			return new DataEntry(row[0], row[1], row[2], row[3], validUsers, Integer.parseInt(row[5]), LocalDateTime.parse(row[6]), dataFields);
+		}
+
+		/**
+		 * @param	user	owner of the entry
+		 * @return	the entry as it was, decrypted
+		 */
+		public DataEntry decrypt(User user) {
+			return new Crypto().decrypt(user, getEntry());
+		}
+	}
+
+	/**
+	 * Pages through an entry's versions from newest to oldest, reading each page only when it is asked for.
+	 */
+	public static class HistoryPager {
+		private final EntryHistory history;
+		private final String owner;
+		private final String entryName;
+		private final int pageSize;
+		private int nextVersion;
+
+		HistoryPager(EntryHistory history, String owner, String entryName, int pageSize, int newestVersion) {
+			this.history = history;
+			this.owner = owner;
+			this.entryName = entryName;
+			this.pageSize = Math.max(1, pageSize);
+			this.nextVersion = newestVersion;
+		}
+
+		/**
+		 * @return	true if there are older versions than those already returned
+		 */
+		public boolean hasMore() {
+			return nextVersion > 0;
+		}
+
+		/**
+		 * @return	the next (older) page of versions, newest first; empty once there are no more, or if they could not be read
+		 */
+		public List<EntryVersion> nextPage() {
+			if (!hasMore()) {
+				return Collections.emptyList();
+			}
+			List<EntryVersion> page = history.readVersions(owner, entryName, Math.max(1, nextVersion - pageSize + 1), nextVersion);
+			if (page.isEmpty()) {
+				nextVersion = 0; // pruned since the pager was opened
+				return page;
+			}
+			nextVersion = page.get(0).getVersion() - 1;
+			Collections.reverse(page);
+			return page;
+		}
+	}
+
+	EntryHistory(String database) {
+		this.database = database;
+	}
+
+	public static synchronized EntryHistory getInstance() {
+		if (instance == null) {
+			instance = new EntryHistory(VaultModel.VAULT_DATABASE);
+			instance.createHistoryTable();
+		}
+		return instance;
+	}
+
+	public PruningPolicy getPruningPolicy() {
+		return policy;
+	}
+
+	public void setPruningPolicy(PruningPolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Prunes the history of all of the signed-in user's entries in the background, so entries that are no longer
+	 * edited still lose versions that have grown too old.
+	 *
+	 * @param	user	the signed-in user
+	 */
+	public void start(User user) {
+		final String owner = user.getUsername();
+		pruner.execute(new Runnable() {
+			public void run() {
+				pruneAll(owner);
+			}
+		});
+	}
+
+	/**
+	 * @param	user		owner of the entry
+	 * @param	entryName	current name of the entry
+	 * @return	number of earlier versions kept for the entry; negative if failure
+	 */
+	public int countVersions(User user, String entryName) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement count = DBconnection.prepareStatement("SELECT COUNT(*) FROM entry_versions WHERE owner=? AND entry_name=?;");
+			count.setString(1, user.getUsername());
+			count.setString(2, entryName);
+			ResultSet results = count.executeQuery();
+			int numVersions = results.getInt(1);
+			results.close();
+			count.close();
+			DBconnection.close();
+			return numVersions;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+			return -1;
+		}
+	}
+
+	/**
+	 * Opens an entry's history. No versions are read until the first page is asked for.
+	 *
+	 * @param	user		owner of the entry
+	 * @param	entryName	current name of the entry
+	 * @param	pageSize	versions per page
+	 * @return	pager over the entry's versions, newest first
+	 */
+	public HistoryPager openHistory(User user, String entryName, int pageSize) {
+		int newestVersion = 0;
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			newestVersion = newestVersion(DBconnection, user.getUsername(), entryName);
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+		return new HistoryPager(this, user.getUsername(), entryName, pageSize, newestVersion);
+	}
+
+	/**
+	 * @param	user		owner of the entry
+	 * @param	entryName	current name of the entry
+	 * @param	version		version number
+	 * @return	that version of the entry, or null if it has been pruned or could not be read
+	 */
+	public EntryVersion getVersion(User user, String entryName, int version) {
+		List<EntryVersion> versions = readVersions(user.getUsername(), entryName, version, version);
+		return versions.isEmpty() ? null : versions.get(0);
+	}
+
+	/**
+	 * Keeps the version of an entry that updateEntry() is about to overwrite, inside the transaction that overwrites
+	 * it. Nothing is kept if the update changes neither the entry's name nor its fields, or if it is not made to the
+	 * vault database.
+	 *
+	 * @param	database		name of the database the update is made to
+	 * @param	DBconnection	connection holding the uncommitted update
+	 * @param	owner			owner of the entry
+	 * @param	oldName			name of the entry before the update
+	 * @param	newEntry		entry as it will be stored (encrypted)
+	 */
+	static void recordRevision(String database, Connection DBconnection, String owner, String oldName, DataEntry newEntry) throws SQLException {
+		EntryHistory history;
+		synchronized (EntryHistory.class) {
+			// Not getInstance(): creating the table now would wait on the lock this transaction holds
+			history = instance;
+		}
+		if (history == null || !history.database.equals(database)) {
+			return;
+		}
+		String[] row = OperationJournal.readRows(DBconnection, owner, oldName).get(oldName);
+		if (row == null) {
+			return;
+		}
+		String newName = newEntry.getEntryName();
+		boolean changed = !row[0].equals(newName);
+		List<String> newFields = newEntry.getFieldDataList();
+		for (int i = 0; i < newFields.size() && !changed; i++) {
+			changed = !newFields.get(i).equals(row[7 + i]);
+		}
+		if (!changed) {
+			return;
+		}
+		if (!oldName.equals(newName)) {
+			// The history follows the entry to its new name
+			PreparedStatement rename = DBconnection.prepareStatement("UPDATE entry_versions SET entry_name=? WHERE owner=? AND entry_name=?;");
+			rename.setString(1, newName);
+			rename.setString(2, owner);
+			rename.setString(3, oldName);
+			rename.executeUpdate();
+			rename.close();
+		}
+		history.addVersion(DBconnection, owner, newName, row);
+	}
+
+	/**
+	 * Keeps the history of an entry that deleteEntryFromDatabase() is about to delete, inside the transaction that
+	 * deletes it: the entry as it is now becomes its newest version, and the history is moved out of the way of any
+	 * new entry with the same name. The history is dropped instead if the delete is not made to the vault database.
+	 *
+	 * @param	database		name of the database the delete is made to
+	 * @param	DBconnection	connection holding the uncommitted delete
+	 * @param	owner			owner of the entry
+	 * @param	entryName		name of the entry
+	 */
+	static void recordDeletion(String database, Connection DBconnection, String owner, String entryName) throws SQLException {
+		EntryHistory history;
+		synchronized (EntryHistory.class) {
+			history = instance;
+		}
+		if (history == null || !history.database.equals(database)) {
+			clearHistory(DBconnection, owner, entryName);
+			return;
+		}
+		String[] row = OperationJournal.readRows(DBconnection, owner, entryName).get(entryName);
+		if (row == null) {
+			return;
+		}
+		history.addVersion(DBconnection, owner, entryName, row);
+		PreparedStatement rename = DBconnection.prepareStatement("UPDATE entry_versions SET entry_name=? WHERE owner=? AND entry_name=?;");
+		rename.setString(1, DELETED_MARK + Long.toString(System.currentTimeMillis()) + DELETED_MARK + entryName);
+		rename.setString(2, owner);
+		rename.setString(3, entryName);
+		rename.executeUpdate();
+		rename.close();
+	}
+
+	/**
+	 * Drops the history of a deleted entry, or of all of an owner's entries, inside the transaction that deletes them.
+	 *
+	 * @param	DBconnection	connection holding the uncommitted delete
+	 * @param	owner			owner of the entries
+	 * @param	entryName		name of the deleted entry, or null for all of the owner's entries
+	 */
+	static void clearHistory(Connection DBconnection, String owner, String entryName) throws SQLException {
+		ResultSet tables = DBconnection.getMetaData().getTables(null, null, "entry_versions", null);
+		boolean exists = tables.next();
+		tables.close();
+		if (!exists) {
+			return;
+		}
+		PreparedStatement delete = DBconnection.prepareStatement("DELETE FROM entry_versions WHERE owner=?" + ((entryName == null) ? ";" : " AND entry_name=?;"));
+		delete.setString(1, owner);
+		if (entryName != null) {
+			delete.setString(2, entryName);
+		}
+		delete.executeUpdate();
+		delete.close();
+	}
+
+	private void addVersion(Connection DBconnection, String owner, String entryName, String[] row) throws SQLException {
+		int previousVersion = newestVersion(DBconnection, owner, entryName);
+		int version = previousVersion + 1;
+		boolean snapshot = (previousVersion == 0) || ((version - 1) % SNAPSHOT_EVERY == 0);
+		byte[] data;
+		try {
+			if (snapshot) {
+				data = encode(row, null);
+			}
+			else {
+				List<EntryVersion> previous = readVersions(DBconnection, owner, entryName, previousVersion, previousVersion);
+				snapshot = previous.isEmpty();
+				data = encode(row, snapshot ? null : previous.get(0).row);
+			}
+		}
+		catch (IOException e) {
+			throw new SQLException("Entry history of " + entryName + " could not be read", e);
+		}
+		PreparedStatement insert = DBconnection.prepareStatement("INSERT INTO entry_versions (owner, entry_name, version, replaced, snapshot, data) VALUES (?, ?, ?, ?, ?, ?);");
+		insert.setString(1, owner);
+		insert.setString(2, entryName);
+		insert.setInt(3, version);
+		insert.setLong(4, System.currentTimeMillis());
+		insert.setInt(5, snapshot ? 1 : 0);
+		insert.setBytes(6, data);
+		insert.executeUpdate();
+		insert.close();
+		prune(DBconnection, owner, entryName);
+	}
+
+	private List<EntryVersion> readVersions(String owner, String entryName, int fromVersion, int toVersion) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			List<EntryVersion> versions = readVersions(DBconnection, owner, entryName, fromVersion, toVersion);
+			DBconnection.close();
+			return versions;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+			return new ArrayList<EntryVersion>();
+		}
+	}
+
+	/**
+	 * Rebuilds a range of versions from the snapshot at or before the first of them.
+	 *
+	 * @return	the versions that still exist, oldest first
+	 */
+	private static List<EntryVersion> readVersions(Connection DBconnection, String owner, String entryName, int fromVersion, int toVersion) throws SQLException {
+		List<EntryVersion> versions = new ArrayList<EntryVersion>();
+		PreparedStatement select = DBconnection.prepareStatement("SELECT version, replaced, snapshot, data FROM entry_versions "
+				+ "WHERE owner=? AND entry_name=? AND version<=? AND version>=(SELECT ifnull(max(version), 0) FROM entry_versions "
+				+ "WHERE owner=? AND entry_name=? AND version<=? AND snapshot=1) ORDER BY version;");
+		select.setString(1, owner);
+		select.setString(2, entryName);
+		select.setInt(3, toVersion);
+		select.setString(4, owner);
+		select.setString(5, entryName);
+		select.setInt(6, fromVersion);
+		ResultSet results = select.executeQuery();
+		try {
+			String[] row = null;
+			while (results.next()) {
+				if (row == null && results.getInt("snapshot") != 1) {
+					throw new SQLException("Entry history of " + entryName + " has no snapshot before version " + results.getInt("version"));
+				}
+				row = decode(results.getBytes("data"), row);
+				if (results.getInt("version") >= fromVersion) {
+					versions.add(new EntryVersion(results.getInt("version"), results.getLong("replaced"), row));
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new SQLException("Entry history of " + entryName + " could not be read", e);
+		}
+		finally {
+			results.close();
+			select.close();
+		}
+		return versions;
+	}
+
+	/**
+	 * Drops the versions of an entry that the PruningPolicy no longer keeps. The oldest version kept is rewritten as
+	 * a snapshot first if it is a delta, since the versions it was based on are going.
+	 */
+	private void prune(Connection DBconnection, String owner, String entryName) throws SQLException {
+		PruningPolicy policy = this.policy;
+		PreparedStatement select = DBconnection.prepareStatement("SELECT ifnull(min(version), 0), ifnull(max(version), 0), "
+				+ "(SELECT ifnull(max(version), 0) FROM entry_versions WHERE owner=? AND entry_name=? AND replaced<?) "
+				+ "FROM entry_versions WHERE owner=? AND entry_name=?;");
+		select.setString(1, owner);
+		select.setString(2, entryName);
+		select.setLong(3, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(policy.getMaxAgeDays()));
+		select.setString(4, owner);
+		select.setString(5, entryName);
+		ResultSet results = select.executeQuery();
+		int oldest = results.getInt(1);
+		int newest = results.getInt(2);
+		int newestExpired = results.getInt(3);
+		results.close();
+		select.close();
+
+		int firstKept = firstKept(policy, newest, newestExpired, entryName.charAt(0) == DELETED_MARK);
+		if (oldest == 0 || firstKept <= oldest) {
+			return;
+		}
+		List<EntryVersion> rebased = readVersions(DBconnection, owner, entryName, firstKept, firstKept);
+		if (!rebased.isEmpty()) {
+			PreparedStatement update = DBconnection.prepareStatement("UPDATE entry_versions SET snapshot=1, data=? WHERE owner=? AND entry_name=? AND version=? AND snapshot=0;");
+			try {
+				update.setBytes(1, encode(rebased.get(0).row, null));
+			}
+			catch (IOException e) {
+				update.close();
+				throw new SQLException("Entry history of " + entryName + " could not be written", e);
+			}
+			update.setString(2, owner);
+			update.setString(3, entryName);
+			update.setInt(4, firstKept);
+			update.executeUpdate();
+			update.close();
+		}
+		PreparedStatement delete = DBconnection.prepareStatement("DELETE FROM entry_versions WHERE owner=? AND entry_name=? AND version<?;");
+		delete.setString(1, owner);
+		delete.setString(2, entryName);
+		delete.setInt(3, firstKept);
+		delete.executeUpdate();
+		delete.close();
+	}
+
+	/**
+	 * @param	policy			PruningPolicy to apply
+	 * @param	newest			newest version of the entry
+	 * @param	newestExpired	newest version older than the policy's maximum age; 0 if none
+	 * @param	deleted			true if the entry has been deleted, so no minimum number of versions is kept
+	 * @return	oldest version the policy keeps; newest + 1 if none are kept
+	 */
+	static int firstKept(PruningPolicy policy, int newest, int newestExpired, boolean deleted) {
+		int firstKept = Math.max(newest - policy.getMaxVersions() + 1, newestExpired + 1);
+		return deleted ? firstKept : Math.min(firstKept, newest - policy.getMinVersions() + 1);
+	}
+
+	private void pruneAll(String owner) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			List<String> entryNames = new ArrayList<String>();
+			PreparedStatement select = DBconnection.prepareStatement("SELECT DISTINCT entry_name FROM entry_versions WHERE owner=?;");
+			select.setString(1, owner);
+			ResultSet results = select.executeQuery();
+			while (results.next()) {
+				entryNames.add(results.getString("entry_name"));
+			}
+			results.close();
+			select.close();
+			for (String entryName : entryNames) {
+				prune(DBconnection, owner, entryName);
+			}
+			DBconnection.commit();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private static int newestVersion(Connection DBconnection, String owner, String entryName) throws SQLException {
+		PreparedStatement select = DBconnection.prepareStatement("SELECT ifnull(max(version), 0) FROM entry_versions WHERE owner=? AND entry_name=?;");
+		select.setString(1, owner);
+		select.setString(2, entryName);
+		ResultSet results = select.executeQuery();
+		int newest = results.getInt(1);
+		results.close();
+		select.close();
+		return newest;
+	}
+
+	/**
+	 * @param	row			columns of the version (OperationJournal.COLUMNS)
+	 * @param	previous	columns of the version before, or null for a snapshot
+	 * @return	a bit mask of the columns that differ from the previous version, followed by those columns
+	 */
+	static byte[] encode(String[] row, String[] previous) throws IOException {
+		int changed = 0;
+		for (int i = 0; i < row.length; i++) {
+			if (previous == null || !equal(row[i], previous[i])) {
+				changed |= 1 << i;
+			}
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(changed);
+		for (int i = 0; i < row.length; i++) {
+			if ((changed & (1 << i)) != 0) {
+				OperationJournal.writeString(out, row[i]);
+			}
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param	data		an encoded version
+	 * @param	previous	columns of the version before, or null if data is a snapshot
+	 * @return	columns of the version
+	 */
+	static String[] decode(byte[] data, String[] previous) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		int changed = in.readInt();
+		if (previous == null && changed != ALL_COLUMNS) {
+			throw new IOException("Version is not a snapshot");
+		}
+		String[] row = (previous == null) ? new String[OperationJournal.COLUMNS.length] : previous.clone();
+		for (int i = 0; i < row.length; i++) {
+			if ((changed & (1 << i)) != 0) {
+				row[i] = OperationJournal.readString(in);
+			}
+		}
+		in.close();
+		return row;
+	}
+
+	private static boolean equal(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+
+	void createHistoryTable() {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS entry_versions ("
+					+ "'owner'		TEXT	NOT NULL, "
+					+ "'entry_name'	TEXT	NOT NULL, "
+					+ "'version'	INTEGER	NOT NULL, "
+					+ "'replaced'	INTEGER	NOT NULL, "
+					+ "'snapshot'	INTEGER	NOT NULL, "
+					+ "'data'		BLOB	NOT NULL, "
+					+ "PRIMARY KEY (owner, entry_name, version))");
+			DBconnection.commit();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private static void closeQuietly(Connection DBconnection) {
+		try {
+			if (DBconnection != null) {
+				DBconnection.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
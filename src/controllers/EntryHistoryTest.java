@@ -0,0 +1,118 @@
+package controllers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the version encoding of EntryHistory: snapshots and deltas decode back to the rows they were made from, and
+ * rebasing the oldest kept version onto a snapshot (as pruning does) leaves every later version readable.
+ */
+public class EntryHistoryTest {
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		try {
+			testRoundTrip();
+			testPruneRebasing();
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			failures++;
+		}
+		testFirstKept();
+
+		System.out.println((failures == 0) ? "All tests passed" : failures + " tests failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void testRoundTrip() throws IOException {
+		String[] first = row("Bank", "Login", "alice", "hunter2");
+		String[] second = first.clone();
+		second[7] = "alice.smith";
+		second[8] = null;
+
+		check("a snapshot decodes to its row", Arrays.equals(first, EntryHistory.decode(EntryHistory.encode(first, null), null)));
+		byte[] delta = EntryHistory.encode(second, first);
+		check("a delta decodes to its row", Arrays.equals(second, EntryHistory.decode(delta, first)));
+		check("a delta only holds the changed columns", delta.length < EntryHistory.encode(second, null).length);
+		check("an unchanged row is an empty delta", EntryHistory.encode(first, first.clone()).length == 4);
+
+		boolean rejected = false;
+		try {
+			EntryHistory.decode(delta, null);
+		}
+		catch (IOException e) {
+			rejected = true;
+		}
+		check("a delta is not read as a snapshot", rejected);
+	}
+
+	private static void testPruneRebasing() throws IOException {
+		// Versions 1..10 as stored: version 1 is a snapshot, every other one a delta on the version before
+		List<String[]> rows = new ArrayList<String[]>();
+		List<byte[]> stored = new ArrayList<byte[]>();
+		String[] previous = null;
+		for (int version = 1; version <= 10; version++) {
+			String[] current = row("Mail", "Login", "bob", "password " + version);
+			if (version % 3 == 0) {
+				current[9] = "note " + version;
+			}
+			stored.add(EntryHistory.encode(current, previous));
+			rows.add(current);
+			previous = current;
+		}
+
+		// Pruning keeps versions 6..10: version 6 is rebuilt from the chain and rewritten as a snapshot
+		int firstKept = 6;
+		String[] rebased = null;
+		for (int version = 1; version <= firstKept; version++) {
+			rebased = EntryHistory.decode(stored.get(version - 1), rebased);
+		}
+		stored.set(firstKept - 1, EntryHistory.encode(rebased, null));
+
+		String[] row = null;
+		boolean allMatch = true;
+		for (int version = firstKept; version <= 10; version++) {
+			row = EntryHistory.decode(stored.get(version - 1), row);
+			allMatch &= Arrays.equals(rows.get(version - 1), row);
+		}
+		check("versions after the rebased snapshot decode without the pruned ones", allMatch);
+	}
+
+	private static void testFirstKept() {
+		EntryHistory.PruningPolicy policy = new EntryHistory.PruningPolicy(50, 365, 5);
+		check("nothing is pruned under the version limit", EntryHistory.firstKept(policy, 20, 0, false) == 1);
+		check("the oldest versions over the limit are pruned", EntryHistory.firstKept(policy, 60, 0, false) == 11);
+		check("expired versions are pruned", EntryHistory.firstKept(policy, 20, 12, false) == 13);
+		check("the minimum number of versions is kept even when expired", EntryHistory.firstKept(policy, 20, 20, false) == 16);
+		check("a deleted entry keeps its unexpired versions", EntryHistory.firstKept(policy, 20, 12, true) == 13);
+		check("a deleted entry loses all of its versions once they expire", EntryHistory.firstKept(policy, 20, 20, true) == 21);
+	}
+
+	private static String[] row(String name, String type, String user, String password) {
+		String[] row = new String[OperationJournal.COLUMNS.length];
+		row[0] = name;
+		row[1] = type;
+		row[2] = "key";
+		row[3] = user + "@example.com";
+		row[4] = "";
+		row[5] = "0";
+		row[6] = "2016-04-01T12:00";
+		row[7] = user;
+		row[8] = password;
+		return row;
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "PASS: " : "FAIL: ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+}
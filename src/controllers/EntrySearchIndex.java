@@ -0,0 +1,384 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import dataManagement.EntryMatch;
+import dataManagement.EntrySummary;
+
+/**
+ * In-memory trigram index over the names and types of the signed-in user's data entries, owned by a VaultSession.
+ * It is filled once from the entry names and types HomeView loads and then kept up to date from VaultModel events, so
+ * searching never touches the database.
+ *
+ * Every entry name is broken into lower-case trigrams (plus two boundary trigrams marking its start and end), and each
+ * trigram maps to a sorted list of the entries that contain it. A substring query intersects the lists for its own
+ * trigrams and only checks the entries left over; queries shorter than a trigram scan the names directly. If there
+ * are not enough substring matches, names that share enough trigrams with the query (Dice coefficient) are added as
+ * fuzzy matches.
+ *
+ * Ranks (lower is better): 0 exact name, 1 name prefix, 2 name substring, 3 entry type contains the query, and
+ * FUZZY_RANK + (100 - similarity percentage) for fuzzy name matches.
+ */
+public class EntrySearchIndex implements VaultModelListener {
+
+	public static final int FUZZY_RANK = 10;
+	private static final double FUZZY_THRESHOLD = 0.4;
+	private static final char BOUNDARY = '\u0001';
+
+	private String owner;
+	private final List<IndexedEntry> entries = new ArrayList<IndexedEntry>(); // by id; null once removed
+	private final Map<String, Integer> idsByKey = new HashMap<String, Integer>();
+	private final Map<Long, IntList> postings = new HashMap<Long, IntList>();
+	private final Map<String, IntList> idsByType = new HashMap<String, IntList>();
+	private int removedCount = 0;
+	private int[] hitCounts = new int[0]; // scratch space for fuzzy matching
+
+	private static class IndexedEntry {
+		private final String entryName;
+		private final String entryType;
+		private final String lowerName;
+		private final String lowerType;
+		private final int numTrigrams;
+
+		IndexedEntry(String entryName, String entryType, int numTrigrams) {
+			this.entryName = entryName;
+			this.entryType = entryType;
+			this.lowerName = entryName.toLowerCase(Locale.ROOT);
+			this.lowerType = entryType.toLowerCase(Locale.ROOT);
+			this.numTrigrams = numTrigrams;
+		}
+	}
+
+	/**
+	 * Growable, sorted list of entry ids.
+	 */
+	private static class IntList {
+		private int[] values = new int[4];
+		private int size = 0;
+
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+	}
+
+	public EntrySearchIndex() {
+		VaultModel.getInstance().addVaultModelListener(this);
+	}
+
+	/**
+	 * Replaces the contents of the index with a user's entries.
+	 *
+	 * @param	owner		username (email) whose entries are indexed; events for other owners are ignored
+	 * @param	summaries	names and types of all of the owner's data entries
+	 */
+	public synchronized void rebuild(String owner, List<EntrySummary> summaries) {
+		this.owner = owner;
+		clearIndex();
+		for (EntrySummary entry : summaries) {
+			add(entry.getEntryName(), entry.getEntryType());
+		}
+	}
+
+	/**
+	 * Adds an entry to the index (or leaves it if it is already indexed).
+	 *
+	 * @param	entryName	name of the entry
+	 * @param	entryType	type of the entry
+	 */
+	public synchronized void add(String entryName, String entryType) {
+		String key = key(entryName, entryType);
+		if (idsByKey.containsKey(key)) {
+			return;
+		}
+		long[] trigrams = trigrams(entryName.toLowerCase(Locale.ROOT), true);
+		int id = entries.size();
+		entries.add(new IndexedEntry(entryName, entryType, trigrams.length));
+		idsByKey.put(key, id);
+		IntList typeList = idsByType.get(entryType);
+		if (typeList == null) {
+			typeList = new IntList();
+			idsByType.put(entryType, typeList);
+		}
+		typeList.add(id);
+		// ids only grow, so appending keeps every posting list sorted
+		for (long trigram : trigrams) {
+			IntList list = postings.get(trigram);
+			if (list == null) {
+				list = new IntList();
+				postings.put(trigram, list);
+			}
+			list.add(id);
+		}
+	}
+
+	/**
+	 * Removes an entry from the index. Its ids are left in the posting lists and skipped at query time until enough
+	 * entries have been removed to make rebuilding the lists worthwhile.
+	 *
+	 * @param	entryName	name of the entry
+	 * @param	entryType	type of the entry
+	 */
+	public synchronized void remove(String entryName, String entryType) {
+		Integer id = idsByKey.remove(key(entryName, entryType));
+		if (id == null) {
+			return;
+		}
+		entries.set(id, null);
+		removedCount++;
+		if (removedCount > 1024 && removedCount > idsByKey.size()) {
+			compact();
+		}
+	}
+
+	/**
+	 * @return	number of entries in the index
+	 */
+	public synchronized int size() {
+		return idsByKey.size();
+	}
+
+	/**
+	 * Finds the best matching entries for a query, ignoring case.
+	 *
+	 * @param	query	text typed by the user
+	 * @param	limit	maximum number of matches to return
+	 * @return	List<EntryMatch> of up to limit matches, best first
+	 */
+	public synchronized List<EntryMatch> search(String query, int limit) {
+		String lowerQuery = query.trim().toLowerCase(Locale.ROOT);
+		if (lowerQuery.isEmpty() || limit < 1) {
+			return new ArrayList<EntryMatch>();
+		}
+		// Max-heap on rank, so the worst of the best matches so far is always on top
+		PriorityQueue<EntryMatch> best = new PriorityQueue<EntryMatch>(limit + 1, Collections.reverseOrder());
+
+		if (lowerQuery.length() < 3) {
+			for (int id = 0; id < entries.size(); id++) {
+				matchSubstring(id, lowerQuery, best, limit);
+			}
+		}
+		else {
+			IntList candidates = intersect(trigrams(lowerQuery, false));
+			for (int i = 0; i < candidates.size; i++) {
+				matchSubstring(candidates.values[i], lowerQuery, best, limit);
+			}
+		}
+		// Lower-ranked kinds of match can only get in while there is room left
+		if (best.size() < limit) {
+			matchTypes(lowerQuery, best, limit);
+		}
+		if (best.size() < limit && lowerQuery.length() >= 3) {
+			matchFuzzy(lowerQuery, best, limit);
+		}
+
+		List<EntryMatch> results = new ArrayList<EntryMatch>(best);
+		Collections.sort(results);
+		return results;
+	}
+
+	public void vaultChanged(VaultEvent event) {
+		if (!event.getOwner().equals(owner)) {
+			return;
+		}
+		switch (event.getType()) {
+		case ADDED:
+			add(event.getEntryName(), event.getEntryType());
+			break;
+		case UPDATED:
+			remove(event.getPreviousEntryName(), event.getEntryType());
+			add(event.getEntryName(), event.getEntryType());
+			break;
+		case REMOVED:
+			remove(event.getEntryName(), event.getEntryType());
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Empties the index and stops following vault changes.
+	 */
+	public synchronized void close() {
+		clearIndex();
+		VaultModel.getInstance().removeVaultModelListener(this);
+	}
+
+	private void matchSubstring(int id, String lowerQuery, PriorityQueue<EntryMatch> best, int limit) {
+		IndexedEntry entry = entries.get(id);
+		if (entry == null) {
+			return;
+		}
+		int position = entry.lowerName.indexOf(lowerQuery);
+		if (position < 0) {
+			return;
+		}
+		int rank = (position > 0) ? 2 : (entry.lowerName.length() == lowerQuery.length()) ? 0 : 1;
+		offer(best, entry, rank, limit);
+	}
+
+	private void matchTypes(String lowerQuery, PriorityQueue<EntryMatch> best, int limit) {
+		for (Map.Entry<String, IntList> type : idsByType.entrySet()) {
+			if (!type.getKey().toLowerCase(Locale.ROOT).contains(lowerQuery)) {
+				continue;
+			}
+			IntList ids = type.getValue();
+			for (int i = 0; i < ids.size; i++) {
+				IndexedEntry entry = entries.get(ids.values[i]);
+				// entries whose name matches are already in with a better rank
+				if (entry != null && !entry.lowerName.contains(lowerQuery)) {
+					offer(best, entry, 3, limit);
+				}
+			}
+		}
+	}
+
+	private void matchFuzzy(String lowerQuery, PriorityQueue<EntryMatch> best, int limit) {
+		long[] queryTrigrams = trigrams(lowerQuery, true);
+		if (hitCounts.length < entries.size()) {
+			hitCounts = new int[entries.size()];
+		}
+		IntList touched = new IntList();
+		for (long trigram : queryTrigrams) {
+			IntList list = postings.get(trigram);
+			if (list == null) {
+				continue;
+			}
+			for (int i = 0; i < list.size; i++) {
+				int id = list.values[i];
+				if (hitCounts[id]++ == 0) {
+					touched.add(id);
+				}
+			}
+		}
+		for (int i = 0; i < touched.size; i++) {
+			int id = touched.values[i];
+			IndexedEntry entry = entries.get(id);
+			if (entry != null && !entry.lowerName.contains(lowerQuery) && !entry.lowerType.contains(lowerQuery)) {
+				double similarity = 2.0 * hitCounts[id] / (queryTrigrams.length + entry.numTrigrams);
+				if (similarity >= FUZZY_THRESHOLD) {
+					offer(best, entry, FUZZY_RANK + (int) Math.round((1 - similarity) * 100), limit);
+				}
+			}
+			hitCounts[id] = 0;
+		}
+	}
+
+	/**
+	 * Keeps a match if it is among the best limit seen so far. Matches that cannot get in are rejected before an
+	 * EntryMatch is created for them.
+	 */
+	private void offer(PriorityQueue<EntryMatch> best, IndexedEntry entry, int rank, int limit) {
+		if (best.size() >= limit) {
+			EntryMatch worst = best.peek();
+			if (rank > worst.getRank() || (rank == worst.getRank() && entry.entryName.compareTo(worst.getEntryName()) > 0)) {
+				return;
+			}
+		}
+		best.add(new EntryMatch(owner, entry.entryName, entry.entryType, rank));
+		if (best.size() > limit) {
+			best.poll();
+		}
+	}
+
+	/**
+	 * @return	ids present in the posting lists of every trigram (empty if any trigram has no list)
+	 */
+	private IntList intersect(long[] trigrams) {
+		IntList[] lists = new IntList[trigrams.length];
+		for (int i = 0; i < trigrams.length; i++) {
+			lists[i] = postings.get(trigrams[i]);
+			if (lists[i] == null) {
+				return new IntList();
+			}
+		}
+		// Start from the shortest list so every later merge is bounded by it
+		int shortest = 0;
+		for (int i = 1; i < lists.length; i++) {
+			if (lists[i].size < lists[shortest].size) {
+				shortest = i;
+			}
+		}
+		IntList result = new IntList();
+		result.values = Arrays.copyOf(lists[shortest].values, lists[shortest].size);
+		result.size = lists[shortest].size;
+		for (int i = 0; i < lists.length && result.size > 0; i++) {
+			if (i == shortest) {
+				continue;
+			}
+			IntList other = lists[i];
+			int kept = 0;
+			int j = 0;
+			for (int k = 0; k < result.size; k++) {
+				int id = result.values[k];
+				while (j < other.size && other.values[j] < id) {
+					j++;
+				}
+				if (j < other.size && other.values[j] == id) {
+					result.values[kept++] = id;
+				}
+			}
+			result.size = kept;
+		}
+		return result;
+	}
+
+	/**
+	 * @param	text			lower-case text
+	 * @param	withBoundaries	adds trigrams for the start and end of the text (used for indexing and fuzzy queries)
+	 * @return	the distinct trigrams of the text, sorted
+	 */
+	private static long[] trigrams(String text, boolean withBoundaries) {
+		String padded = withBoundaries ? BOUNDARY + text + BOUNDARY : text;
+		if (padded.length() < 3) {
+			return new long[0];
+		}
+		long[] trigrams = new long[padded.length() - 2];
+		for (int i = 0; i < trigrams.length; i++) {
+			trigrams[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+		}
+		Arrays.sort(trigrams);
+		int distinct = 0;
+		for (int i = 0; i < trigrams.length; i++) {
+			if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+				trigrams[distinct++] = trigrams[i];
+			}
+		}
+		return Arrays.copyOf(trigrams, distinct);
+	}
+
+	private void compact() {
+		List<IndexedEntry> live = new ArrayList<IndexedEntry>();
+		for (IndexedEntry entry : entries) {
+			if (entry != null) {
+				live.add(entry);
+			}
+		}
+		clearIndex();
+		for (IndexedEntry entry : live) {
+			add(entry.entryName, entry.entryType);
+		}
+	}
+
+	private void clearIndex() {
+		entries.clear();
+		idsByKey.clear();
+		postings.clear();
+		idsByType.clear();
+		removedCount = 0;
+	}
+
+	private static String key(String entryName, String entryType) {
+		return entryType + '\0' + entryName;
+	}
+}
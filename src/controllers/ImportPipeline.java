@@ -0,0 +1,449 @@
+package controllers;
+
+import java.io.UnsupportedEncodingException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import cryptography.Crypto;
+import dataManagement.DataEntry;
+import dataManagement.User;
+
+/**
+ * Imports the data entries of a backup database into a user's account in three stages:
+ * <ol>
+ * <li>one thread reads the backup's rows through a cursor,</li>
+ * <li>worker threads decrypt each entry with the backup owner's keys, give it a new data key and encrypt it for the
+ * current user,</li>
+ * <li>the calling thread inserts the re-encrypted entries in batches, one transaction per batch.</li>
+ * </ol>
+ * The stages are joined by bounded queues, so a fast stage waits for a slow one instead of buffering the backup, and
+ * memory use does not grow with the size of the backup. Entries whose name the current user already uses are
+ * skipped, as addEntryToDatabase does, unless an EntryResolver decides otherwise (see MergeImporter).
+ */
+public class ImportPipeline {
+
+	private static final int QUEUE_CAPACITY = 256;
+	private static final int BATCH_SIZE = 500;
+	private static final long PROGRESS_MILLIS = 100;
+
+	// Marks the end of a queue; one is queued per consumer
+	private static final DataEntry END = new DataEntry(null, null, null, null, 0, null);
+
+	private final int workers;
+	private final EntryResolver resolver;
+	private final AtomicInteger failedEntries = new AtomicInteger();
+	private final AtomicInteger runningWorkers = new AtomicInteger();
+	private final Set<DataEntry> replacements = Collections.newSetFromMap(new ConcurrentHashMap<DataEntry, Boolean>());
+	private final AtomicInteger processedEntries = new AtomicInteger();
+	private volatile int totalEntries = 0;
+	private volatile boolean cancelled = false;
+	private int skippedEntries = 0;
+
+	/**
+	 * Told how far an import has got; can cancel it. Called on the thread running the import.
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param	entriesDone		backup entries decrypted so far
+		 * @param	entriesTotal	backup entries to import; 0 until the backup has been counted
+		 * @return	false to cancel (batches already stored stay imported)
+		 */
+		boolean progress(int entriesDone, int entriesTotal);
+	}
+
+	/**
+	 * Decides what becomes of each entry once it is decrypted, before it is re-encrypted. Called on the worker
+	 * threads, so implementations must be thread-safe.
+	 */
+	public interface EntryResolver {
+		int SKIP = 0;
+		int INSERT = 1;
+		int REPLACE = 2;
+
+		/**
+		 * @param	decrypted	decrypted entry from the backup, already owned by the current user; may be renamed
+		 * @return	SKIP, INSERT, or REPLACE to overwrite the current user's entry of the same name
+		 */
+		int resolve(DataEntry decrypted);
+	}
+
+	public ImportPipeline() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), null);
+	}
+
+	/**
+	 * @param	workers		number of threads re-encrypting entries
+	 * @param	resolver	decides which entries are stored; null to insert every entry whose name is free
+	 */
+	public ImportPipeline(int workers, EntryResolver resolver) {
+		this.workers = Math.max(1, workers);
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Imports every entry of the backup user into the current user's account.
+	 *
+	 * @param	currentUser				user who receives the entries
+	 * @param	backupUser				owner of the entries in the backup database
+	 * @param	currentDatabaseName		name of the database to import into
+	 * @param	backupDatabaseLocation	name (path) of the backup database
+	 * @return	number of entries imported, or -1 if the backup could not be read or the entries could not be stored
+	 */
+	public int run(User currentUser, User backupUser, String currentDatabaseName, String backupDatabaseLocation) {
+		return run(currentUser, backupUser, currentDatabaseName, backupDatabaseLocation, null);
+	}
+
+	/**
+	 * Like run(User, User, String, String), reporting progress while the entries are imported. If the listener
+	 * cancels, the entries stored so far are kept and the rest of the backup is not read; see isCancelled().
+	 *
+	 * @param	listener	told how far the import has got, and may cancel; may be null
+	 * @return	number of entries imported, or -1 if the backup could not be read or the entries could not be stored
+	 */
+	public int run(final User currentUser, final User backupUser, String currentDatabaseName, final String backupDatabaseLocation, ProgressListener listener) {
+		final BlockingQueue<DataEntry> readQueue = new ArrayBlockingQueue<DataEntry>(QUEUE_CAPACITY);
+		final BlockingQueue<DataEntry> writeQueue = new ArrayBlockingQueue<DataEntry>(QUEUE_CAPACITY);
+		failedEntries.set(0);
+		processedEntries.set(0);
+		totalEntries = 0;
+		cancelled = false;
+		runningWorkers.set(workers);
+		replacements.clear();
+		ExecutorService threads = Executors.newFixedThreadPool(workers + 1, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "import-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			Future<Integer> read = threads.submit(new Callable<Integer>() {
+				public Integer call() {
+					return readEntries(backupUser, backupDatabaseLocation, readQueue);
+				}
+			});
+			for (int i = 0; i < workers; i++) {
+				threads.execute(new Runnable() {
+					public void run() {
+						reencryptEntries(currentUser, backupUser, readQueue, writeQueue);
+					}
+				});
+			}
+			int imported = writeEntries(currentDatabaseName, writeQueue, listener);
+			if (imported > 0 && VaultModel.VAULT_DATABASE.equals(currentDatabaseName)) {
+				VaultModel.getInstance().fireEntriesReloaded(currentUser.getUsername());
+				// Imported rows bypass the journal, so restores start again from the imported vault
+				OperationJournal.getInstance().entriesReloaded(currentUser.getUsername());
+			}
+			return (read.get() < 0 && !cancelled) ? -1 : imported;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+		catch (ExecutionException e) {
+			e.printStackTrace();
+			return -1;
+		}
+		finally {
+			threads.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return	true if the last run was cancelled by its ProgressListener
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return	number of entries that could not be decrypted or encrypted in the last run
+	 */
+	public int getFailedEntries() {
+		return failedEntries.get();
+	}
+
+	/**
+	 * @return	number of entries the writer skipped in the last run because the current user already had an entry of
+	 * 			that name (entries the EntryResolver skipped are not counted)
+	 */
+	public int getSkippedEntries() {
+		return skippedEntries;
+	}
+
+	/**
+	 * Stage 1: streams the backup user's (encrypted) rows into the queue, then one END per worker.
+	 */
+	private int readEntries(User backupUser, String backupDatabaseLocation, BlockingQueue<DataEntry> readQueue) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(backupDatabaseLocation);
+		int numEntries = -1;
+		try {
+			PreparedStatement count = DBconnection.prepareStatement("SELECT count(*) FROM data_entries WHERE owner=?;");
+			count.setString(1, backupUser.getUsername());
+			ResultSet countSet = count.executeQuery();
+			totalEntries = countSet.getInt(1);
+			countSet.close();
+			count.close();
+			PreparedStatement preparedStatement = DBconnection.prepareStatement("SELECT * FROM data_entries WHERE owner=?;");
+			preparedStatement.setString(1, backupUser.getUsername());
+			ResultSet dataEntrySet = preparedStatement.executeQuery();
+			numEntries = 0;
+			while (!cancelled && dataEntrySet.next()) {
+				readQueue.put(DatabaseManager.readDataEntryRow(dataEntrySet));
+				numEntries++;
+			}
+			dataEntrySet.close();
+			preparedStatement.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			numEntries = -1;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			numEntries = -1;
+		}
+		finally {
+			closeQuietly(DBconnection);
+			putEnds(readQueue, workers);
+		}
+		return numEntries;
+	}
+
+	/**
+	 * Stage 2: decrypts each entry with the backup owner's keys, lets the resolver decide what becomes of it, and
+	 * encrypts it under a new data key for the current user. Runs on every worker; the last worker to finish ends the
+	 * write queue.
+	 */
+	private void reencryptEntries(User currentUser, User backupUser, BlockingQueue<DataEntry> readQueue, BlockingQueue<DataEntry> writeQueue) {
+		Crypto crypto = new Crypto();
+		try {
+			for (DataEntry entry = readQueue.take(); entry != END; entry = readQueue.take()) {
+				if (cancelled) {
+					continue; // keep draining, so the reader is never left blocked on a full queue
+				}
+				DataEntry reencrypted = reencrypt(crypto, currentUser, backupUser, entry);
+				processedEntries.incrementAndGet();
+				if (reencrypted == null) {
+					failedEntries.incrementAndGet();
+				}
+				else if (reencrypted != END) {
+					writeQueue.put(reencrypted);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			if (runningWorkers.decrementAndGet() == 0) {
+				putEnds(writeQueue, 1);
+			}
+		}
+	}
+
+	/**
+	 * @return	the re-encrypted entry, END if the resolver skipped it, or null if it could not be re-encrypted
+	 */
+	private DataEntry reencrypt(Crypto crypto, User currentUser, User backupUser, DataEntry entry) {
+		try {
+			DataEntry decrypted = crypto.decrypt(backupUser, entry);
+			decrypted.setOwner(currentUser.getUsername());
+			int action = (resolver == null) ? EntryResolver.INSERT : resolver.resolve(decrypted);
+			if (action == EntryResolver.SKIP) {
+				return END;
+			}
+			if (action == EntryResolver.REPLACE) {
+				replacements.add(decrypted);
+			}
+			decrypted.setEncryptionKey(crypto.randomDataKey(decrypted.isHighSecurity()));
+			return crypto.encrypt(currentUser, decrypted);
+		}
+		catch (UnsupportedEncodingException | RuntimeException e) {
+			// One bad entry must not stop the worker, or the reader could be left blocked on a full queue
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Stage 3: stores the re-encrypted entries, BATCH_SIZE to a transaction. Replacements overwrite the entry of the
+	 * same name; any other entry is only inserted if its owner has no entry of the same name, including ones inserted
+	 * earlier in the import. Once the import is cancelled, nothing more is stored.
+	 *
+	 * @return	number of entries stored, or -1 if a batch could not be stored
+	 */
+	private int writeEntries(String currentDatabaseName, BlockingQueue<DataEntry> writeQueue, ProgressListener listener) throws InterruptedException {
+		Connection DBconnection = DatabaseManager.connectToDatabase(currentDatabaseName);
+		int imported = 0;
+		boolean failed = false;
+		skippedEntries = 0;
+		List<DataEntry> batch = new ArrayList<DataEntry>(BATCH_SIZE);
+		PreparedStatement insert = null;
+		PreparedStatement replace = null;
+		try {
+			String sql = "INSERT INTO data_entries(entry_name, entry_type, encryption_key, owner, valid_users, secure_entry, last_modified";
+			for (int i = 0; i < 10; i++) {
+				sql = sql + ", data_field_" + Integer.toString(i + 1);
+			}
+			sql = sql + ") SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ? "
+					+ "WHERE NOT EXISTS (SELECT 1 FROM data_entries WHERE owner=? AND entry_name=?);";
+			insert = DBconnection.prepareStatement(sql);
+			sql = "UPDATE data_entries SET entry_name=?, entry_type=?, encryption_key=?, owner=?, valid_users=?, secure_entry=?, last_modified=?";
+			for (int i = 0; i < 10; i++) {
+				sql = sql + ", data_field_" + Integer.toString(i + 1) + "=?";
+			}
+			sql = sql + " WHERE owner=? AND entry_name=?;";
+			replace = DBconnection.prepareStatement(sql);
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			failed = true;
+		}
+		// Keep draining after a failure so the other stages are never left blocked on a full queue
+		for (DataEntry entry = nextEntry(writeQueue, listener); entry != END; entry = nextEntry(writeQueue, listener)) {
+			if (failed || cancelled) {
+				continue;
+			}
+			batch.add(entry);
+			if (batch.size() == BATCH_SIZE) {
+				int inserted = insertBatch(DBconnection, insert, replace, batch);
+				failed = inserted < 0;
+				imported += Math.max(0, inserted);
+			}
+		}
+		if (!failed && !cancelled && !batch.isEmpty()) {
+			int inserted = insertBatch(DBconnection, insert, replace, batch);
+			failed = inserted < 0;
+			imported += Math.max(0, inserted);
+		}
+		try {
+			if (insert != null) {
+				insert.close();
+			}
+			if (replace != null) {
+				replace.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+		closeQuietly(DBconnection);
+		return (failed) ? -1 : imported;
+	}
+
+	/**
+	 * Waits for the next entry to store, telling the listener how far the import has got at least every
+	 * PROGRESS_MILLIS while it waits (entries the resolver skips never reach this queue).
+	 */
+	private DataEntry nextEntry(BlockingQueue<DataEntry> writeQueue, ProgressListener listener) throws InterruptedException {
+		if (listener == null) {
+			return writeQueue.take();
+		}
+		while (true) {
+			if (!cancelled && !listener.progress(processedEntries.get(), totalEntries)) {
+				cancelled = true;
+			}
+			DataEntry entry = writeQueue.poll(PROGRESS_MILLIS, TimeUnit.MILLISECONDS);
+			if (entry != null) {
+				return entry;
+			}
+		}
+	}
+
+	private int insertBatch(Connection DBconnection, PreparedStatement insert, PreparedStatement replace, List<DataEntry> batch) {
+		try {
+			int replacing = 0;
+			for (DataEntry entry : batch) {
+				PreparedStatement statement = replacements.remove(entry) ? replace : insert;
+				replacing += (statement == replace) ? 1 : 0;
+				List<String> fields = entry.getFieldDataList();
+				statement.setString(1, entry.getEntryName());
+				statement.setString(2, entry.getEntryType());
+				statement.setString(3, entry.getEncryptionKey());
+				statement.setString(4, entry.getOwner());
+				statement.setString(5, entry.buildValidUsersString());
+				statement.setInt(6, entry.isHighSecurity());
+				statement.setString(7, entry.getLastModified().toString());
+				for (int i = 0; i < 10; i++) {
+					statement.setString(8 + i, (i < fields.size()) ? fields.get(i) : "null");
+				}
+				statement.setString(18, entry.getOwner());
+				statement.setString(19, entry.getEntryName());
+				statement.addBatch();
+			}
+			// The resolver never lets a replacement and an insert in one import share a name, so order does not matter
+			int inserted = 0;
+			if (replacing > 0) {
+				for (int count : replace.executeBatch()) {
+					inserted += (count > 0) ? 1 : 0;
+				}
+			}
+			if (replacing < batch.size()) {
+				for (int count : insert.executeBatch()) {
+					inserted += (count > 0) ? 1 : 0;
+				}
+			}
+			DBconnection.commit();
+			skippedEntries += batch.size() - inserted;
+			batch.clear();
+			return inserted;
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			try {
+				DBconnection.rollback();
+			}
+			catch (SQLException e1) {
+				e1.printStackTrace();
+			}
+			batch.clear();
+			return -1;
+		}
+	}
+
+	private static void putEnds(BlockingQueue<DataEntry> queue, int count) {
+		try {
+			for (int i = 0; i < count; i++) {
+				queue.put(END);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void closeQuietly(Connection DBconnection) {
+		try {
+			if (DBconnection != null) {
+				DBconnection.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,421 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import dataManagement.User;
+
+/**
+ * Tracks failed sign-in attempts per account and decides when an account may try again. Every account has a sliding
+ * window of its recent failure times; each failure makes the account wait a little longer before the next attempt
+ * (exponential backoff), and enough failures within the window lock the account or wipe it, depending on the Policy.
+ * Throttled attempts are turned away before the password is hashed.
+ *
+ * The windows live in a ConcurrentHashMap and are updated with compare-and-set, so sign-in checks never block each
+ * other. Every change is also written to the 'login_attempts' table by a background thread, so restarting the
+ * application does not reset the counters. Only failures against existing accounts are written, so guessing usernames
+ * does not grow the table. Wiping an account and the warning e-mails run on that thread too.
+ */
+public class LoginAttemptService {
+
+	public static final String WINDOW_PROPERTY = "sentinel.login.window";
+	public static final String BACKOFF_BASE_PROPERTY = "sentinel.login.backoff";
+	public static final String BACKOFF_MAX_PROPERTY = "sentinel.login.maxBackoff";
+	public static final String WARN_AFTER_PROPERTY = "sentinel.login.warnAfter";
+	public static final String LOCK_AFTER_PROPERTY = "sentinel.login.lockAfter";
+	public static final String LOCK_DURATION_PROPERTY = "sentinel.login.lockDuration";
+	public static final String WIPE_AFTER_PROPERTY = "sentinel.login.wipeAfter";
+
+	// Results of recordFailure()
+	public static final int FAILURE_RECORDED = 0;
+	public static final int ACCOUNT_LOCKED = -1;
+	public static final int ACCOUNT_WIPED = -2;
+
+	private static final int PRUNE_THRESHOLD = 4096;
+
+	private static LoginAttemptService instance;
+
+	private final String database;
+	private volatile Policy policy;
+	private final ConcurrentHashMap<String, AtomicReference<AttemptWindow>> windows = new ConcurrentHashMap<String, AtomicReference<AttemptWindow>>(64, 0.75f, 16);
+	private final ExecutorService background = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "login-attempts");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * When failed attempts are throttled, locked out or punished by wiping the account. A threshold of 0 disables
+	 * that rule.
+	 */
+	public static class Policy {
+		private final long windowMillis;
+		private final long backoffBaseMillis;
+		private final long backoffMaxMillis;
+		private final int warnAfter;
+		private final int lockAfter;
+		private final long lockMillis;
+		private final int wipeAfter;
+
+		/**
+		 * @param windowMillis		how long a failure counts against the account
+		 * @param backoffBaseMillis	wait after the first failure; it doubles with every further failure in the window
+		 * @param backoffMaxMillis	longest wait between two attempts
+		 * @param warnAfter			failures in the window from which the owner is warned by e-mail, on every further failure
+		 * @param lockAfter			failures in the window after which the account is locked
+		 * @param lockMillis		how long a locked account stays locked
+		 * @param wipeAfter			failures in the window after which the account and its entries are deleted
+		 */
+		public Policy(long windowMillis, long backoffBaseMillis, long backoffMaxMillis, int warnAfter, int lockAfter, long lockMillis, int wipeAfter) {
+			this.windowMillis = windowMillis;
+			this.backoffBaseMillis = backoffBaseMillis;
+			this.backoffMaxMillis = backoffMaxMillis;
+			this.warnAfter = warnAfter;
+			this.lockAfter = lockAfter;
+			this.lockMillis = lockMillis;
+			this.wipeAfter = wipeAfter;
+		}
+
+		/**
+		 * The default policy: failures count for 15 minutes, the wait starts at one second and doubles up to one
+		 * minute, the owner is warned from the 2nd failure on and the account is wiped after 5. Lockout is off unless
+		 * configured. Every value can be overridden with the sentinel.login.* system properties (times in seconds).
+		 *
+		 * @return	the policy configured by system properties
+		 */
+		public static Policy fromSystemProperties() {
+			return new Policy(
+					Long.getLong(WINDOW_PROPERTY, 15 * 60) * 1000,
+					Long.getLong(BACKOFF_BASE_PROPERTY, 1) * 1000,
+					Long.getLong(BACKOFF_MAX_PROPERTY, 60) * 1000,
+					Integer.getInteger(WARN_AFTER_PROPERTY, 2),
+					Integer.getInteger(LOCK_AFTER_PROPERTY, 0),
+					Long.getLong(LOCK_DURATION_PROPERTY, 15 * 60) * 1000,
+					Integer.getInteger(WIPE_AFTER_PROPERTY, 5));
+		}
+
+		/**
+		 * @return	how long to wait after the given number of failures within the window
+		 */
+		long backoffMillis(int failures) {
+			if (failures <= 0 || backoffBaseMillis <= 0) {
+				return 0;
+			}
+			int doublings = Math.min(failures - 1, 30);
+			return Math.min(backoffMaxMillis, backoffBaseMillis << doublings);
+		}
+
+		/**
+		 * @return	the largest number of failures any rule needs to see
+		 */
+		int trackedFailures() {
+			return Math.max(Math.max(warnAfter, lockAfter), Math.max(wipeAfter, 1)) + 1;
+		}
+	}
+
+	/**
+	 * Immutable snapshot of one account's recent failures; replaced as a whole with compare-and-set.
+	 */
+	private static final class AttemptWindow {
+		static final AttemptWindow EMPTY = new AttemptWindow(new long[0], 0);
+
+		final long[] failureTimes; // oldest first
+		final long lockedUntil;
+
+		AttemptWindow(long[] failureTimes, long lockedUntil) {
+			this.failureTimes = failureTimes;
+			this.lockedUntil = lockedUntil;
+		}
+
+		/**
+		 * @return	this window without the failures that happened before 'since'
+		 */
+		AttemptWindow expire(long since) {
+			int first = 0;
+			while (first < failureTimes.length && failureTimes[first] < since) {
+				first++;
+			}
+			if (first == 0) {
+				return this;
+			}
+			return new AttemptWindow(Arrays.copyOfRange(failureTimes, first, failureTimes.length), lockedUntil);
+		}
+
+		AttemptWindow withFailure(long time, int maxTracked, long lockedUntil) {
+			int keep = Math.min(failureTimes.length, maxTracked - 1);
+			long[] times = Arrays.copyOfRange(failureTimes, failureTimes.length - keep, failureTimes.length + 1);
+			times[keep] = time;
+			return new AttemptWindow(times, Math.max(this.lockedUntil, lockedUntil));
+		}
+
+		long lastFailure() {
+			return (failureTimes.length == 0) ? 0 : failureTimes[failureTimes.length - 1];
+		}
+
+		boolean isIdle(long since, long now) {
+			return lastFailure() < since && lockedUntil <= now;
+		}
+	}
+
+	LoginAttemptService(String database, Policy policy) {
+		this.database = database;
+		this.policy = policy;
+	}
+
+	/**
+	 * @return	the service for the vault database, using the policy from the system properties
+	 */
+	public static synchronized LoginAttemptService getInstance() {
+		if (instance == null) {
+			instance = new LoginAttemptService(VaultModel.VAULT_DATABASE, Policy.fromSystemProperties());
+			instance.createAttemptsTable();
+		}
+		return instance;
+	}
+
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	public void setPolicy(Policy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Checks whether an account may try to sign in now. Cheap enough to call before every attempt.
+	 *
+	 * @param	username	account being signed in to
+	 * @return	milliseconds until the next attempt is allowed; 0 if it is allowed now
+	 */
+	public long getRetryDelay(String username) {
+		long now = System.currentTimeMillis();
+		AttemptWindow window = windowFor(username).get().expire(now - policy.windowMillis);
+		long allowedAt = Math.max(window.lockedUntil, window.lastFailure() + policy.backoffMillis(window.failureTimes.length));
+		return Math.max(0, allowedAt - now);
+	}
+
+	/**
+	 * Records a failed sign-in. Warning e-mails, and wiping the account if the policy calls for it, happen in the
+	 * background.
+	 *
+	 * @param	username	account whose sign-in failed
+	 * @return	FAILURE_RECORDED, ACCOUNT_LOCKED if the account is now locked, or ACCOUNT_WIPED if it is being deleted
+	 */
+	public int recordFailure(final String username) {
+		Policy current = policy;
+		long now = System.currentTimeMillis();
+		AtomicReference<AttemptWindow> ref = windowFor(username);
+		AttemptWindow before;
+		AttemptWindow after;
+		do {
+			before = ref.get();
+			AttemptWindow recent = before.expire(now - current.windowMillis);
+			int failures = recent.failureTimes.length + 1;
+			long lockedUntil = (current.lockAfter > 0 && failures >= current.lockAfter) ? now + current.lockMillis : 0;
+			after = recent.withFailure(now, current.trackedFailures(), lockedUntil);
+		} while (!ref.compareAndSet(before, after));
+
+		final int failures = after.failureTimes.length;
+		if (current.wipeAfter > 0 && failures >= current.wipeAfter) {
+			windows.remove(username, ref);
+			background.execute(new Runnable() {
+				public void run() {
+					wipeAccount(username);
+				}
+			});
+			return ACCOUNT_WIPED;
+		}
+
+		persist(username, after);
+		boolean locked = after.lockedUntil > now && before.lockedUntil <= now;
+		if (locked) {
+			notifyOwner(username, "Dear user,\n\nYour account has been locked for " + (current.lockMillis / 60000)
+					+ " minute(s) after " + failures + " failed login attempts.\n"
+					+ "If it is not you, please change your password immediately.\n\n"
+					+ "Sincerely,\nSentinel Data Vault Team");
+		}
+		else if (current.warnAfter > 0 && failures >= current.warnAfter) {
+			notifyOwner(username, "Dear user,\n\nYou have multiple failed login attempts for your account.\n"
+					+ "If it is not you, please change your password immediately.\n\n"
+					+ "Sincerely,\nSentinel Data Vault Team");
+		}
+		if (windows.size() > PRUNE_THRESHOLD) {
+			prune(now - current.windowMillis, now);
+		}
+		return locked ? ACCOUNT_LOCKED : FAILURE_RECORDED;
+	}
+
+	/**
+	 * Records a successful sign-in, which clears the account's failures.
+	 *
+	 * @param	username	account that signed in
+	 */
+	public void recordSuccess(String username) {
+		AtomicReference<AttemptWindow> ref = windows.remove(username);
+		if (ref != null && ref.get() != AttemptWindow.EMPTY) {
+			persist(username, AttemptWindow.EMPTY);
+		}
+	}
+
+	/**
+	 * @return	the account's window, loading it from the database the first time the account is seen
+	 */
+	private AtomicReference<AttemptWindow> windowFor(String username) {
+		AtomicReference<AttemptWindow> ref = windows.get(username);
+		if (ref == null) {
+			AtomicReference<AttemptWindow> loaded = new AtomicReference<AttemptWindow>(load(username));
+			ref = windows.putIfAbsent(username, loaded);
+			if (ref == null) {
+				ref = loaded;
+			}
+		}
+		return ref;
+	}
+
+	/**
+	 * Drops windows that no longer hold anything, so guessing many usernames cannot grow the map without bound.
+	 */
+	private void prune(long since, long now) {
+		Iterator<Map.Entry<String, AtomicReference<AttemptWindow>>> it = windows.entrySet().iterator();
+		while (it.hasNext()) {
+			if (it.next().getValue().get().isIdle(since, now)) {
+				it.remove();
+			}
+		}
+	}
+
+	private void notifyOwner(final String username, final String body) {
+		background.execute(new Runnable() {
+			public void run() {
+				MailDispatcher.getInstance().enqueue(username, "Security Warning", body);
+			}
+		});
+	}
+
+	private void wipeAccount(String username) {
+		DatabaseManager d = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE);
+		User u = d.retrieveUserFromDatabase(username);
+		if (u != null) {
+			d.deleteAllEntriesFromDatabase(u);
+			d.deleteUserFromDatabase(u);
+			MailDispatcher.getInstance().enqueue(username, "Security Warning",
+					"Dear user,\n\nWe have deleted your account.\n" + "Have a nice day.\n\n"
+							+ "Sincerely,\nSentinel Data Vault Team");
+		}
+		write(username, AttemptWindow.EMPTY);
+	}
+
+	void createAttemptsTable() {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS login_attempts ("
+					+ "'username'		TEXT	PRIMARY KEY	NOT NULL, "
+					+ "'failure_times'	TEXT	NOT NULL, "
+					+ "'locked_until'	INTEGER	NOT NULL)");
+			DBconnection.commit();
+			// Drop windows that were kept for usernames with no account
+			stmt.executeUpdate("DELETE FROM login_attempts WHERE username NOT IN (SELECT user_email FROM users);");
+			DBconnection.commit();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private AttemptWindow load(String username) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT failure_times, locked_until FROM login_attempts WHERE username=?;");
+			select.setString(1, username);
+			ResultSet results = select.executeQuery();
+			AttemptWindow window = AttemptWindow.EMPTY;
+			if (results.next()) {
+				String stored = results.getString("failure_times").trim();
+				String[] times = stored.isEmpty() ? new String[0] : stored.split(" ");
+				long[] failureTimes = new long[times.length];
+				for (int i = 0; i < times.length; i++) {
+					failureTimes[i] = Long.parseLong(times[i]);
+				}
+				window = new AttemptWindow(failureTimes, results.getLong("locked_until"));
+			}
+			results.close();
+			select.close();
+			DBconnection.close();
+			return window;
+		}
+		catch (SQLException | NumberFormatException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return AttemptWindow.EMPTY;
+		}
+	}
+
+	private void persist(final String username, final AttemptWindow window) {
+		background.execute(new Runnable() {
+			public void run() {
+				write(username, window);
+			}
+		});
+	}
+
+	private void write(String username, AttemptWindow window) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement stmt;
+			if (window.failureTimes.length == 0 && window.lockedUntil == 0) {
+				stmt = DBconnection.prepareStatement("DELETE FROM login_attempts WHERE username=?;");
+				stmt.setString(1, username);
+			}
+			else {
+				StringBuilder times = new StringBuilder();
+				for (long time : window.failureTimes) {
+					times.append(time).append(' ');
+				}
+				stmt = DBconnection.prepareStatement("INSERT OR REPLACE INTO login_attempts (username, failure_times, locked_until) "
+						+ "SELECT ?, ?, ? WHERE EXISTS (SELECT 1 FROM users WHERE user_email=?);");
+				stmt.setString(1, username);
+				stmt.setString(2, times.toString().trim());
+				stmt.setLong(3, window.lockedUntil);
+				stmt.setString(4, username);
+			}
+			stmt.executeUpdate();
+			DBconnection.commit();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private static void closeQuietly(Connection DBconnection) {
+		try {
+			if (DBconnection != null) {
+				DBconnection.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
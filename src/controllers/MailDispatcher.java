@@ -0,0 +1,518 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Sends the vault's outgoing e-mail (failed login warnings, recovery codes, shared entries) in the background.
+ * Messages are first written to the 'mail_outbox' table of the vault database, so enqueueing is a single local insert
+ * and mail that could not be sent yet survives a restart. A daemon thread drains the outbox in batches over one SMTP
+ * connection, which stays open while there is mail to send and is closed after TRANSPORT_IDLE_MILLIS without any.
+ * Failed messages are retried with exponential backoff and dropped after MAX_ATTEMPTS. Mail that must not reach the
+ * disk, or is useless after a restart (recovery codes), is queued with enqueueTransient() and kept in memory only.
+ *
+ * The SMTP server is configured with system properties, e.g. to use a local test server:
+ * -Dsentinel.mail.protocol=smtp -Dsentinel.mail.host=localhost -Dsentinel.mail.port=2525 -Dsentinel.mail.auth=false
+ */
+public class MailDispatcher {
+
+	public static final String PROTOCOL_PROPERTY = "sentinel.mail.protocol";
+	public static final String HOST_PROPERTY = "sentinel.mail.host";
+	public static final String PORT_PROPERTY = "sentinel.mail.port";
+	public static final String AUTH_PROPERTY = "sentinel.mail.auth";
+	public static final String USERNAME_PROPERTY = "sentinel.mail.username";
+	public static final String PASSWORD_PROPERTY = "sentinel.mail.password";
+	public static final String FROM_PROPERTY = "sentinel.mail.from";
+
+	private static final int BATCH_SIZE = 50;
+	private static final int MAX_ATTEMPTS = 10;
+	private static final long BASE_RETRY_MILLIS = 30 * 1000;
+	private static final long MAX_RETRY_MILLIS = 60 * 60 * 1000;
+	private static final long TRANSPORT_IDLE_MILLIS = 30 * 1000;
+	private static final long MAX_WAIT_MILLIS = 5 * 60 * 1000;
+	private static final int SMTP_TIMEOUT_MILLIS = 15 * 1000;
+
+	private static MailDispatcher instance;
+
+	private final String database;
+	private final String protocol;
+	private final String host;
+	private final int port;
+	private final boolean auth;
+	private final String username;
+	private final String password;
+	private final String from;
+	private final Session mailSession;
+	private final Random jitter = new Random();
+
+	private final Object lock = new Object();
+	private boolean mailPending = true; // drain whatever an earlier run left in the outbox
+	private final List<OutgoingMail> transientOutbox = new ArrayList<OutgoingMail>(); // guarded by lock
+	private Thread sender;
+
+	/**
+	 * One message waiting in the outbox.
+	 */
+	public static class OutgoingMail {
+		private final long id;
+		private final String recipient;
+		private final String subject;
+		private final String body;
+		private final int attempts;
+		private final boolean durable;
+		private long nextAttempt; // of transient mail; durable mail keeps it in the outbox table
+
+		/**
+		 * @param recipient	e-mail address of the recipient
+		 * @param subject	subject line
+		 * @param body		plain-text body
+		 */
+		public OutgoingMail(String recipient, String subject, String body) {
+			this(-1, recipient, subject, body, 0, true);
+		}
+
+		OutgoingMail(long id, String recipient, String subject, String body, int attempts, boolean durable) {
+			this.id = id;
+			this.recipient = recipient;
+			this.subject = subject;
+			this.body = body;
+			this.attempts = attempts;
+			this.durable = durable;
+		}
+
+		public String getRecipient() {
+			return recipient;
+		}
+
+		public String getSubject() {
+			return subject;
+		}
+
+		public String getBody() {
+			return body;
+		}
+	}
+
+	MailDispatcher(String database) {
+		this.database = database;
+		this.protocol = System.getProperty(PROTOCOL_PROPERTY, "smtps");
+		this.host = System.getProperty(HOST_PROPERTY, "smtp.gmail.com");
+		this.port = Integer.parseInt(System.getProperty(PORT_PROPERTY, "465"));
+		this.auth = Boolean.parseBoolean(System.getProperty(AUTH_PROPERTY, "true"));
+		this.username = System.getProperty(USERNAME_PROPERTY, "sentineldatavault");
+		this.password = System.getProperty(PASSWORD_PROPERTY, "SENTINELDATA");
+		this.from = System.getProperty(FROM_PROPERTY, username + "@gmail.com");
+
+		Properties props = new Properties();
+		props.setProperty("mail." + protocol + ".host", host);
+		props.setProperty("mail." + protocol + ".port", String.valueOf(port));
+		props.setProperty("mail." + protocol + ".auth", String.valueOf(auth));
+		props.setProperty("mail." + protocol + ".quitwait", "false");
+		props.setProperty("mail." + protocol + ".connectiontimeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+		props.setProperty("mail." + protocol + ".timeout", String.valueOf(SMTP_TIMEOUT_MILLIS));
+		this.mailSession = Session.getInstance(props, null);
+	}
+
+	/**
+	 * @return	the dispatcher for the vault database; its sender thread is started on first use
+	 */
+	public static synchronized MailDispatcher getInstance() {
+		if (instance == null) {
+			instance = new MailDispatcher(VaultModel.VAULT_DATABASE);
+			instance.createOutboxTable();
+			instance.start();
+		}
+		return instance;
+	}
+
+	/**
+	 * Queues one message. Never blocks on the network.
+	 *
+	 * @param	recipient	e-mail address of the recipient
+	 * @param	subject		subject line
+	 * @param	body		plain-text body
+	 * @return	positive integer if the message was queued; negative if it could not be written to the outbox
+	 */
+	public int enqueue(String recipient, String subject, String body) {
+		return enqueueAll(Collections.singletonList(new OutgoingMail(recipient, subject, body)));
+	}
+
+	/**
+	 * Queues one message in memory only. It is sent and retried like any other, but never written to the database, so
+	 * it is lost if the application exits first. Use it for mail whose contents must not reach the disk or would be of
+	 * no use after a restart, such as a password recovery code.
+	 *
+	 * @param	recipient	e-mail address of the recipient
+	 * @param	subject		subject line
+	 * @param	body		plain-text body
+	 */
+	public void enqueueTransient(String recipient, String subject, String body) {
+		OutgoingMail mail = new OutgoingMail(-1, recipient, subject, body, 0, false);
+		mail.nextAttempt = System.currentTimeMillis();
+		synchronized (lock) {
+			transientOutbox.add(mail);
+		}
+		wakeSender();
+	}
+
+	/**
+	 * Queues several messages in one transaction. Never blocks on the network.
+	 *
+	 * @param	mail	messages to send
+	 * @return	positive integer if every message was queued; negative if none could be written to the outbox
+	 */
+	public int enqueueAll(List<OutgoingMail> mail) {
+		if (mail.isEmpty()) {
+			return 1;
+		}
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement insert = DBconnection.prepareStatement(
+					"INSERT INTO mail_outbox (recipient, subject, body, attempts, next_attempt) VALUES (?, ?, ?, 0, ?);");
+			long now = System.currentTimeMillis();
+			for (OutgoingMail message : mail) {
+				insert.setString(1, message.recipient);
+				insert.setString(2, message.subject);
+				insert.setString(3, message.body);
+				insert.setLong(4, now);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+			DBconnection.commit();
+			insert.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+			return -1;
+		}
+		wakeSender();
+		return 1;
+	}
+
+	/**
+	 * @return	number of messages waiting in the outbox (including transient ones), or -1 if it could not be read
+	 */
+	public int getPendingCount() {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT count(*) FROM mail_outbox;");
+			int count = results.next() ? results.getInt(1) : 0;
+			results.close();
+			stmt.close();
+			DBconnection.close();
+			synchronized (lock) {
+				return count + transientOutbox.size();
+			}
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return -1;
+		}
+	}
+
+	void createOutboxTable() {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS mail_outbox ("
+					+ "'id'				INTEGER	PRIMARY KEY	AUTOINCREMENT, "
+					+ "'recipient'		TEXT	NOT NULL, "
+					+ "'subject'		TEXT, "
+					+ "'body'			TEXT, "
+					+ "'attempts'		INTEGER	NOT NULL, "
+					+ "'next_attempt'	INTEGER	NOT NULL, "
+					+ "'last_error'		TEXT)");
+			stmt.executeUpdate("CREATE INDEX IF NOT EXISTS mail_outbox_next_attempt ON mail_outbox(next_attempt)");
+			DBconnection.commit();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private synchronized void start() {
+		if (sender != null) {
+			return;
+		}
+		sender = new Thread(new Runnable() {
+			public void run() {
+				sendLoop();
+			}
+		}, "mail-dispatcher");
+		sender.setDaemon(true);
+		sender.start();
+	}
+
+	private void wakeSender() {
+		synchronized (lock) {
+			mailPending = true;
+			lock.notifyAll();
+		}
+	}
+
+	private void sendLoop() {
+		Transport transport = null;
+		long transportLastUsed = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			List<OutgoingMail> due = takeDueTransientMail();
+			due.addAll(loadDueMail(BATCH_SIZE));
+			if (due.isEmpty()) {
+				long wait = millisUntilNextAttempt();
+				if (transport != null) {
+					long idle = System.currentTimeMillis() - transportLastUsed;
+					if (idle >= TRANSPORT_IDLE_MILLIS) {
+						closeQuietly(transport);
+						transport = null;
+					}
+					else {
+						wait = Math.min(wait, TRANSPORT_IDLE_MILLIS - idle);
+					}
+				}
+				if (!waitForMail(wait)) {
+					break;
+				}
+				continue;
+			}
+
+			try {
+				if (transport == null || !transport.isConnected()) {
+					transport = mailSession.getTransport(protocol);
+					if (auth) {
+						transport.connect(host, port, username, password);
+					}
+					else {
+						transport.connect();
+					}
+				}
+			}
+			catch (MessagingException e) {
+				System.err.println(e.getClass().getName() + ": " + e.getMessage());
+				transport = null;
+				for (OutgoingMail mail : due) {
+					reschedule(mail, e);
+				}
+				continue;
+			}
+
+			for (OutgoingMail mail : due) {
+				try {
+					MimeMessage message = new MimeMessage(mailSession);
+					message.setFrom(new InternetAddress(from));
+					message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(mail.recipient, false));
+					message.setSubject(mail.subject);
+					message.setText(mail.body, "utf-8");
+					message.setSentDate(new Date());
+					transport.sendMessage(message, message.getAllRecipients());
+					delete(mail);
+				}
+				catch (MessagingException e) {
+					System.err.println(e.getClass().getName() + ": " + e.getMessage());
+					reschedule(mail, e);
+					if (!transport.isConnected()) {
+						transport = null; // reconnect for the rest of the batch on the next pass
+						break;
+					}
+				}
+			}
+			transportLastUsed = System.currentTimeMillis();
+		}
+		closeQuietly(transport);
+	}
+
+	/**
+	 * @return	false if the sender thread was interrupted
+	 */
+	private boolean waitForMail(long millis) {
+		synchronized (lock) {
+			try {
+				if (!mailPending && millis > 0) {
+					lock.wait(millis);
+				}
+			}
+			catch (InterruptedException e) {
+				return false;
+			}
+			mailPending = false;
+		}
+		return true;
+	}
+
+	private List<OutgoingMail> loadDueMail(int limit) {
+		List<OutgoingMail> due = new ArrayList<OutgoingMail>();
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement(
+					"SELECT id, recipient, subject, body, attempts FROM mail_outbox WHERE next_attempt <= ? ORDER BY next_attempt, id LIMIT ?;");
+			select.setLong(1, System.currentTimeMillis());
+			select.setInt(2, limit);
+			ResultSet results = select.executeQuery();
+			while (results.next()) {
+				due.add(new OutgoingMail(results.getLong("id"), results.getString("recipient"), results.getString("subject"),
+						results.getString("body"), results.getInt("attempts"), true));
+			}
+			results.close();
+			select.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+		}
+		return due;
+	}
+
+	/**
+	 * @return	transient messages that are due, taken out of the in-memory outbox
+	 */
+	private List<OutgoingMail> takeDueTransientMail() {
+		List<OutgoingMail> due = new ArrayList<OutgoingMail>();
+		long now = System.currentTimeMillis();
+		synchronized (lock) {
+			for (int i = 0; i < transientOutbox.size(); i++) {
+				if (transientOutbox.get(i).nextAttempt <= now) {
+					due.add(transientOutbox.remove(i--));
+				}
+			}
+		}
+		return due;
+	}
+
+	private long millisUntilNextAttempt() {
+		long next = Long.MAX_VALUE;
+		synchronized (lock) {
+			for (OutgoingMail mail : transientOutbox) {
+				next = Math.min(next, mail.nextAttempt);
+			}
+		}
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			ResultSet results = stmt.executeQuery("SELECT min(next_attempt) FROM mail_outbox;");
+			if (results.next()) {
+				long nextStored = results.getLong(1);
+				if (!results.wasNull()) {
+					next = Math.min(next, nextStored);
+				}
+			}
+			results.close();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+		}
+		if (next == Long.MAX_VALUE) {
+			return MAX_WAIT_MILLIS;
+		}
+		return Math.max(1, Math.min(MAX_WAIT_MILLIS, next - System.currentTimeMillis()));
+	}
+
+	private void delete(OutgoingMail mail) {
+		if (mail.durable) {
+			executeUpdate("DELETE FROM mail_outbox WHERE id = " + mail.id + ";");
+		}
+	}
+
+	/**
+	 * Schedules another attempt after an exponentially growing delay (with up to 20% jitter so that a batch that failed
+	 * together is not retried in lockstep), or drops the message once it has failed MAX_ATTEMPTS times.
+	 */
+	private void reschedule(OutgoingMail mail, MessagingException cause) {
+		int attempts = mail.attempts + 1;
+		if (attempts >= MAX_ATTEMPTS) {
+			System.err.println("Giving up on mail to " + mail.recipient + " after " + attempts + " attempts");
+			delete(mail);
+			return;
+		}
+		long delay = Math.min(MAX_RETRY_MILLIS, BASE_RETRY_MILLIS << Math.min(attempts - 1, 20));
+		delay += (long) (delay * 0.2 * jitter.nextDouble());
+		if (!mail.durable) {
+			OutgoingMail retry = new OutgoingMail(-1, mail.recipient, mail.subject, mail.body, attempts, false);
+			retry.nextAttempt = System.currentTimeMillis() + delay;
+			synchronized (lock) {
+				transientOutbox.add(retry);
+			}
+			return;
+		}
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement update = DBconnection.prepareStatement(
+					"UPDATE mail_outbox SET attempts = ?, next_attempt = ?, last_error = ? WHERE id = ?;");
+			update.setInt(1, attempts);
+			update.setLong(2, System.currentTimeMillis() + delay);
+			update.setString(3, cause.getClass().getName() + ": " + cause.getMessage());
+			update.setLong(4, mail.id);
+			update.executeUpdate();
+			DBconnection.commit();
+			update.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private void executeUpdate(String sql) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate(sql);
+			DBconnection.commit();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private static void closeQuietly(Connection DBconnection) {
+		try {
+			if (DBconnection != null) {
+				DBconnection.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private static void closeQuietly(Transport transport) {
+		try {
+			if (transport != null) {
+				transport.close();
+			}
+		}
+		catch (MessagingException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+		}
+	}
+}
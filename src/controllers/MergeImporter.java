@@ -0,0 +1,386 @@
+package controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import cryptography.Crypto;
+import dataManagement.DataEntry;
+import dataManagement.User;
+
+/**
+ * Imports a backup into a vault that may already hold some of the same entries.
+ *
+ * Every entry is fingerprinted by an HMAC of its type and fields under a key made up for the import, so the
+ * fingerprints say nothing about the contents once the import is over. The current user's entries are decrypted
+ * once, up front, to fingerprint them; the backup's entries are fingerprinted by the ImportPipeline's workers right
+ * after the one decryption they need anyway. A backup entry that matches the user's entry of the same name is an exact
+ * duplicate and is skipped. One that does not is a collision, resolved by the CollisionPolicy.
+ */
+public class MergeImporter implements ImportPipeline.EntryResolver {
+
+	public enum CollisionPolicy {
+		KEEP_NEWEST,	// keep whichever of the two entries was modified last
+		RENAME,			// keep both; the backup's entry is stored as "name (2)", "name (3)", ...
+		SKIP			// keep the user's entry
+	}
+
+	private final CollisionPolicy policy;
+	private final int workers;
+	private final byte[] fingerprintKey = new byte[32];
+	private ThreadLocal<Mac> macs;
+
+	// Entry names the user has, or will have once the import is stored
+	private final Map<String, Fingerprint> names = new HashMap<String, Fingerprint>();
+	private Report report;
+
+	private static class Fingerprint {
+		final byte[] hash;
+		final LocalDateTime lastModified;
+		final boolean fromBackup;
+
+		Fingerprint(byte[] hash, LocalDateTime lastModified, boolean fromBackup) {
+			this.hash = hash;
+			this.lastModified = lastModified;
+			this.fromBackup = fromBackup;
+		}
+	}
+
+	/**
+	 * What a merge did with the backup's entries.
+	 */
+	public static class Report {
+		private int added;
+		private int duplicates;
+		private int replaced;
+		private int renamed;
+		private int keptExisting;
+		private int failed;
+		private boolean cancelled;
+		private int stored;
+		private final List<String> renamedEntries = new ArrayList<String>();
+
+		/**
+		 * @return	entries added under their own name
+		 */
+		public int getAdded() {
+			return added;
+		}
+
+		/**
+		 * @return	entries skipped because the user already had the same entry
+		 */
+		public int getDuplicates() {
+			return duplicates;
+		}
+
+		/**
+		 * @return	entries that replaced an older entry of the same name (KEEP_NEWEST)
+		 */
+		public int getReplaced() {
+			return replaced;
+		}
+
+		/**
+		 * @return	entries added under a new name (RENAME)
+		 */
+		public int getRenamed() {
+			return renamed;
+		}
+
+		/**
+		 * @return	entries skipped because the user's entry of the same name was kept (SKIP, or newer under KEEP_NEWEST)
+		 */
+		public int getKeptExisting() {
+			return keptExisting;
+		}
+
+		/**
+		 * @return	entries that could not be decrypted or stored
+		 */
+		public int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return	true if the merge was cancelled before every entry was stored
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * @return	"old name -> new name" for each renamed entry
+		 */
+		public List<String> getRenamedEntries() {
+			return renamedEntries;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder summary = new StringBuilder();
+			if (cancelled) {
+				// The counts are of entries looked at, not stored, so they would mislead
+				return summary.append("The import was cancelled after ").append(stored).append(" entries were stored.\n").toString();
+			}
+			summary.append(added).append(" new entries added\n");
+			summary.append(duplicates).append(" duplicates skipped\n");
+			summary.append(replaced).append(" entries replaced by a newer version\n");
+			summary.append(renamed).append(" entries renamed\n");
+			summary.append(keptExisting).append(" entries kept as they were\n");
+			if (failed > 0) {
+				summary.append(failed).append(" entries could not be imported\n");
+			}
+			for (String rename : renamedEntries) {
+				summary.append("\n").append(rename);
+			}
+			return summary.toString();
+		}
+	}
+
+	/**
+	 * @param	policy	how to resolve entries whose name the user already has
+	 */
+	public MergeImporter(CollisionPolicy policy) {
+		this(policy, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+	}
+
+	/**
+	 * @param	policy	how to resolve entries whose name the user already has
+	 * @param	workers	number of threads decrypting and re-encrypting entries
+	 */
+	public MergeImporter(CollisionPolicy policy, int workers) {
+		this.policy = policy;
+		this.workers = Math.max(1, workers);
+	}
+
+	/**
+	 * Merges the backup user's entries into the current user's account.
+	 *
+	 * @param	currentUser				user who receives the entries
+	 * @param	backupUser				owner of the entries in the backup database
+	 * @param	currentDatabaseName		name of the database to import into
+	 * @param	backupDatabaseLocation	name (path) of the backup database
+	 * @return	Report of the merge, or null if the backup could not be read or the entries could not be stored
+	 */
+	public Report importEntries(User currentUser, User backupUser, String currentDatabaseName, String backupDatabaseLocation) {
+		return importEntries(currentUser, backupUser, currentDatabaseName, backupDatabaseLocation, null);
+	}
+
+	/**
+	 * Like importEntries(User, User, String, String), reporting progress while the backup's entries are merged. If
+	 * the listener cancels, the entries stored so far are kept and the Report says the merge was cancelled.
+	 *
+	 * @param	listener	told how far the merge has got, and may cancel; may be null
+	 * @return	Report of the merge, or null if the backup could not be read or the entries could not be stored
+	 */
+	public synchronized Report importEntries(User currentUser, User backupUser, String currentDatabaseName, String backupDatabaseLocation, ImportPipeline.ProgressListener listener) {
+		beginMerge();
+		try {
+			if (fingerprintExisting(currentUser, currentDatabaseName) < 0) {
+				return null;
+			}
+			// Fingerprinting the user's own entries can take a while; give the user a chance to stop before the merge
+			if (listener != null && !listener.progress(0, 0)) {
+				report.cancelled = true;
+				return report;
+			}
+			ImportPipeline pipeline = new ImportPipeline(workers, this);
+			int stored = pipeline.run(currentUser, backupUser, currentDatabaseName, backupDatabaseLocation, listener);
+			if (stored < 0) {
+				return null;
+			}
+			if (pipeline.isCancelled()) {
+				report.cancelled = true;
+				report.stored = stored;
+				return report;
+			}
+			report.failed = pipeline.getFailedEntries();
+			// Entries the writer found taken were counted as added (or renamed) here
+			report.added -= pipeline.getSkippedEntries();
+			report.keptExisting += pipeline.getSkippedEntries();
+			return report;
+		}
+		finally {
+			endMerge();
+		}
+	}
+
+	/**
+	 * Starts a merge with a new fingerprint key, no names taken and an empty Report.
+	 *
+	 * @return	Report that resolve() fills in
+	 */
+	Report beginMerge() {
+		new SecureRandom().nextBytes(fingerprintKey);
+		// New per import, so no thread keeps a Mac keyed for an earlier one
+		macs = new ThreadLocal<Mac>() {
+			protected Mac initialValue() {
+				try {
+					Mac mac = Mac.getInstance("HmacSHA256");
+					mac.init(new SecretKeySpec(fingerprintKey, "HmacSHA256"));
+					return mac;
+				}
+				catch (GeneralSecurityException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		names.clear();
+		report = new Report();
+		return report;
+	}
+
+	/**
+	 * Forgets the fingerprint key and the fingerprints of the merge.
+	 */
+	void endMerge() {
+		Arrays.fill(fingerprintKey, (byte) 0);
+		macs = null;
+		names.clear();
+	}
+
+	/**
+	 * Takes the name of one of the current user's entries for the merge, fingerprinting the entry.
+	 *
+	 * @param	decrypted	decrypted entry the current user already has
+	 */
+	void addExistingEntry(DataEntry decrypted) {
+		Fingerprint fingerprint = new Fingerprint(fingerprint(decrypted), decrypted.getLastModified(), false);
+		synchronized (names) {
+			names.put(decrypted.getEntryName(), fingerprint);
+		}
+	}
+
+	/**
+	 * Decides what becomes of one of the backup's entries; called by the ImportPipeline's workers.
+	 */
+	public int resolve(DataEntry decrypted) {
+		Fingerprint incoming = new Fingerprint(fingerprint(decrypted), decrypted.getLastModified(), true);
+		synchronized (names) {
+			String name = decrypted.getEntryName();
+			Fingerprint existing = names.get(name);
+			if (existing == null) {
+				names.put(name, incoming);
+				report.added++;
+				return INSERT;
+			}
+			if (Arrays.equals(existing.hash, incoming.hash)) {
+				report.duplicates++;
+				return SKIP;
+			}
+			switch (policy) {
+			case KEEP_NEWEST:
+				// Only the user's own entries are replaced; a name used twice in the backup keeps its first entry
+				if (!existing.fromBackup && incoming.lastModified != null && (existing.lastModified == null || incoming.lastModified.isAfter(existing.lastModified))) {
+					names.put(name, incoming);
+					report.replaced++;
+					return REPLACE;
+				}
+				report.keptExisting++;
+				return SKIP;
+			case RENAME:
+				for (int copy = 2; ; copy++) {
+					String newName = name + " (" + copy + ")";
+					Fingerprint taken = names.get(newName);
+					if (taken == null) {
+						names.put(newName, incoming);
+						decrypted.setEntryName(newName);
+						report.renamed++;
+						report.renamedEntries.add(name + " -> " + newName);
+						return INSERT;
+					}
+					if (Arrays.equals(taken.hash, incoming.hash)) {
+						// Renamed by an earlier merge of the same backup
+						report.duplicates++;
+						return SKIP;
+					}
+				}
+			default:
+				report.keptExisting++;
+				return SKIP;
+			}
+		}
+	}
+
+	/**
+	 * Decrypts and fingerprints each of the user's entries once, in parallel.
+	 *
+	 * @return	number of entries fingerprinted; negative if they could not be read
+	 */
+	private int fingerprintExisting(final User currentUser, String currentDatabaseName) {
+		// Bounded queue + caller-runs keeps at most a few entries per thread in memory at once
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(workers * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+		final AtomicInteger unreadable = new AtomicInteger();
+		DatabaseManager dbm = DatabaseManager.forDatabase(currentDatabaseName);
+		int numEntries = dbm.streamUserDataEntries(currentUser, null, new Consumer<DataEntry>() {
+			public void accept(final DataEntry entry) {
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							new Crypto().decrypt(currentUser, entry);
+							addExistingEntry(entry);
+						}
+						catch (RuntimeException e) {
+							unreadable.incrementAndGet();
+							// An empty hash never matches, so an entry that cannot be read still keeps its name
+							synchronized (names) {
+								names.put(entry.getEntryName(), new Fingerprint(new byte[0], entry.getLastModified(), false));
+							}
+						}
+						entry.setDataFields(null);
+					}
+				});
+			}
+		});
+		pool.shutdown();
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+		if (unreadable.get() > 0) {
+			System.err.println(unreadable.get() + " entries could not be fingerprinted; their names are still reserved");
+		}
+		return numEntries;
+	}
+
+	/**
+	 * @return	HMAC of the entry's type and decrypted fields, each prefixed by its length so no two entries run together
+	 */
+	private byte[] fingerprint(DataEntry decrypted) {
+		Mac mac = macs.get();
+		update(mac, decrypted.getEntryType());
+		List<String> fields = decrypted.getFieldDataList();
+		if (fields != null) {
+			for (String field : fields) {
+				update(mac, field);
+			}
+		}
+		return mac.doFinal();
+	}
+
+	private static void update(Mac mac, String value) {
+		byte[] bytes = (value == null) ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+		int length = (value == null) ? -1 : bytes.length;
+		mac.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+		mac.update(bytes);
+	}
+}
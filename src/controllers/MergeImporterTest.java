@@ -0,0 +1,112 @@
+package controllers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import dataManagement.DataEntry;
+
+/**
+ * Checks how MergeImporter resolves each of a backup's entries against the user's entries of the same name under every
+ * CollisionPolicy. The entries are handed to resolve() already decrypted, as the ImportPipeline's workers do.
+ */
+public class MergeImporterTest {
+
+	private static final LocalDateTime OLDER = LocalDateTime.of(2016, 3, 1, 12, 0);
+	private static final LocalDateTime NEWER = LocalDateTime.of(2016, 4, 1, 12, 0);
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		testDuplicatesAndNewEntries();
+		testKeepNewest();
+		testRename();
+		testSkip();
+
+		System.out.println((failures == 0) ? "All tests passed" : failures + " tests failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void testDuplicatesAndNewEntries() {
+		for (MergeImporter.CollisionPolicy policy : MergeImporter.CollisionPolicy.values()) {
+			MergeImporter importer = new MergeImporter(policy, 1);
+			MergeImporter.Report report = importer.beginMerge();
+			importer.addExistingEntry(entry("Bank", OLDER, "alice", "hunter2"));
+
+			check(policy + ": an exact duplicate is skipped", importer.resolve(entry("Bank", NEWER, "alice", "hunter2")) == ImportPipeline.EntryResolver.SKIP);
+			check(policy + ": a new name is inserted", importer.resolve(entry("Mail", OLDER, "alice", "letmein")) == ImportPipeline.EntryResolver.INSERT);
+			check(policy + ": the same new entry twice is a duplicate", importer.resolve(entry("Mail", OLDER, "alice", "letmein")) == ImportPipeline.EntryResolver.SKIP);
+			check(policy + ": the report counts them", report.getDuplicates() == 2 && report.getAdded() == 1);
+			importer.endMerge();
+		}
+	}
+
+	private static void testKeepNewest() {
+		MergeImporter importer = new MergeImporter(MergeImporter.CollisionPolicy.KEEP_NEWEST, 1);
+		MergeImporter.Report report = importer.beginMerge();
+		importer.addExistingEntry(entry("Bank", OLDER, "alice", "hunter2"));
+		importer.addExistingEntry(entry("Mail", NEWER, "alice", "letmein"));
+		importer.addExistingEntry(entry("Shop", null, "alice", "shopping"));
+
+		check("KEEP_NEWEST: a newer backup entry replaces the user's", importer.resolve(entry("Bank", NEWER, "alice", "changed")) == ImportPipeline.EntryResolver.REPLACE);
+		check("KEEP_NEWEST: an older backup entry is skipped", importer.resolve(entry("Mail", OLDER, "alice", "changed")) == ImportPipeline.EntryResolver.SKIP);
+		check("KEEP_NEWEST: a dated backup entry replaces an undated one", importer.resolve(entry("Shop", OLDER, "alice", "changed")) == ImportPipeline.EntryResolver.REPLACE);
+		check("KEEP_NEWEST: a name used twice in the backup keeps its first entry", importer.resolve(entry("Bank", NEWER.plusDays(1), "alice", "again")) == ImportPipeline.EntryResolver.SKIP);
+		check("KEEP_NEWEST: the report counts them", report.getReplaced() == 2 && report.getKeptExisting() == 2);
+		importer.endMerge();
+	}
+
+	private static void testRename() {
+		MergeImporter importer = new MergeImporter(MergeImporter.CollisionPolicy.RENAME, 1);
+		MergeImporter.Report report = importer.beginMerge();
+		importer.addExistingEntry(entry("Bank", OLDER, "alice", "hunter2"));
+		importer.addExistingEntry(entry("Bank (2)", OLDER, "alice", "taken"));
+
+		DataEntry first = entry("Bank", NEWER, "alice", "changed");
+		check("RENAME: a collision is inserted", importer.resolve(first) == ImportPipeline.EntryResolver.INSERT);
+		check("RENAME: under the first free name", "Bank (3)".equals(first.getEntryName()));
+		DataEntry second = entry("Bank", NEWER, "alice", "changed again");
+		check("RENAME: a second collision is inserted", importer.resolve(second) == ImportPipeline.EntryResolver.INSERT);
+		check("RENAME: under the next free name", "Bank (4)".equals(second.getEntryName()));
+		importer.endMerge();
+
+		// Merging the same backup again finds the renamed copies and adds nothing
+		importer = new MergeImporter(MergeImporter.CollisionPolicy.RENAME, 1);
+		MergeImporter.Report again = importer.beginMerge();
+		importer.addExistingEntry(entry("Bank", OLDER, "alice", "hunter2"));
+		importer.addExistingEntry(entry("Bank (2)", OLDER, "alice", "taken"));
+		importer.addExistingEntry(entry("Bank (3)", NEWER, "alice", "changed"));
+		DataEntry repeated = entry("Bank", NEWER, "alice", "changed");
+		check("RENAME: an entry renamed by an earlier merge is a duplicate", importer.resolve(repeated) == ImportPipeline.EntryResolver.SKIP
+				&& "Bank".equals(repeated.getEntryName()));
+		check("RENAME: the reports count them", report.getRenamed() == 2 && report.getRenamedEntries().size() == 2 && again.getDuplicates() == 1);
+		importer.endMerge();
+	}
+
+	private static void testSkip() {
+		MergeImporter importer = new MergeImporter(MergeImporter.CollisionPolicy.SKIP, 1);
+		MergeImporter.Report report = importer.beginMerge();
+		importer.addExistingEntry(entry("Bank", OLDER, "alice", "hunter2"));
+
+		DataEntry incoming = entry("Bank", NEWER, "alice", "changed");
+		check("SKIP: a collision keeps the user's entry", importer.resolve(incoming) == ImportPipeline.EntryResolver.SKIP
+				&& "Bank".equals(incoming.getEntryName()));
+		check("SKIP: the report counts it", report.getKeptExisting() == 1 && report.getReplaced() == 0 && report.getRenamed() == 0);
+		importer.endMerge();
+	}
+
+	private static DataEntry entry(String name, LocalDateTime lastModified, String... fields) {
+		List<String> fieldList = new ArrayList<String>(Arrays.asList(fields));
+		return new DataEntry(name, "Login", null, "owner@example.com", new ArrayList<String>(), 0, lastModified, fieldList);
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "PASS: " : "FAIL: ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+}
@@ -0,0 +1,931 @@
+package controllers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import cryptography.SecretValue;
+import dataManagement.DataEntry;
+import dataManagement.User;
+
+/**
+ * An append-only, encrypted record of every change made to a user's data entries, from which an entry or the whole
+ * vault can be restored as it was at any earlier time.
+ *
+ * Each record holds the operation and the entry's row as stored afterwards (its fields are still encrypted with the
+ * entry's key), sealed with AES under a random journal key. The journal key is kept wrapped under the session key
+ * derived from the user's password, so records can only be read while the user is signed in. Every record's HMAC
+ * also covers the previous record's, which chains a user's records together: a record removed, reordered or changed
+ * breaks the chain and the restore is refused. The table refuses UPDATE and DELETE.
+ *
+ * A checkpoint is a sealed copy of all of a user's rows as of one record. Restoring starts from the newest checkpoint
+ * before the time asked for and replays the records after it, so a restore never replays more than about
+ * CHECKPOINT_EVERY records. Checkpoints are compacted on a background thread: every CHECKPOINT_EVERY records the
+ * last checkpoint and the records after it are folded into a new one, and older compacted checkpoints are thinned
+ * to one per day. Changes the journal does not see (imports, account wipes) are caught by taking a "base"
+ * checkpoint of the table itself; base checkpoints are never thinned, since the records cannot rebuild them.
+ */
+public class OperationJournal {
+
+	public static final int ADD = 1;
+	public static final int UPDATE = 2;
+	public static final int DELETE = 3;
+
+	static final String[] COLUMNS = { "entry_name", "entry_type", "encryption_key", "owner", "valid_users", "secure_entry", "last_modified",
+			"data_field_1", "data_field_2", "data_field_3", "data_field_4", "data_field_5", "data_field_6", "data_field_7", "data_field_8",
+			"data_field_9", "data_field_10" };
+
+	private static final int CHECKPOINT_EVERY = 100;
+	private static final int KEY_BYTES = 32;
+	private static final int IV_BYTES = 16;
+
+	private static OperationJournal instance;
+
+	private final String database;
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "journal-compactor");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+	// Unwrapped journal keys of signed-in users, and their records since the last checkpoint
+	private final Map<String, JournalKeys> keys = new ConcurrentHashMap<String, JournalKeys>();
+	private final Map<String, AtomicInteger> uncompacted = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private static class JournalKeys {
+		final byte[] raw;
+		final SecretKeySpec encryption;
+		final SecretKeySpec mac;
+
+		JournalKeys(byte[] raw) {
+			this.raw = raw;
+			this.encryption = new SecretKeySpec(raw, 0, KEY_BYTES, "AES");
+			this.mac = new SecretKeySpec(raw, KEY_BYTES, KEY_BYTES, "HmacSHA256");
+		}
+
+		void destroy() {
+			Arrays.fill(raw, (byte) 0);
+		}
+	}
+
+	/**
+	 * A user's rows as of one journal record.
+	 */
+	static class Replay {
+		final TreeMap<String, String[]> rows;
+		long seq;
+		long recorded;
+		byte[] chainMac;
+
+		Replay(TreeMap<String, String[]> rows, long seq, long recorded, byte[] chainMac) {
+			this.rows = rows;
+			this.seq = seq;
+			this.recorded = recorded;
+			this.chainMac = chainMac;
+		}
+	}
+
+	OperationJournal(String database) {
+		this.database = database;
+	}
+
+	public static synchronized OperationJournal getInstance() {
+		if (instance == null) {
+			instance = new OperationJournal(VaultModel.VAULT_DATABASE);
+			instance.createJournalTables();
+		}
+		return instance;
+	}
+
+	/**
+	 * Starts journaling the signed-in user's changes: unwraps (or creates) their journal key with the session key,
+	 * then checks in the background that the journal still matches the vault, taking a base checkpoint if it does not.
+	 *
+	 * @param	user		the signed-in user
+	 * @param	sessionKey	key derived from the user's password (VaultSession.getArchiveKey())
+	 * @return	positive integer if journaling started; negative if the journal key could not be unwrapped
+	 */
+	public int start(User user, SecretValue sessionKey) {
+		final String owner = user.getUsername();
+		JournalKeys journalKeys = loadKeys(owner, sessionKey);
+		if (journalKeys == null) {
+			return -1;
+		}
+		JournalKeys previous = keys.put(owner, journalKeys);
+		if (previous != null) {
+			previous.destroy();
+		}
+		uncompacted.put(owner, new AtomicInteger());
+		compactor.execute(new Runnable() {
+			public void run() {
+				reconcile(owner);
+			}
+		});
+		return 1;
+	}
+
+	/**
+	 * Stops journaling (sign-out) and forgets every unwrapped journal key.
+	 */
+	public void stop() {
+		for (String owner : new ArrayList<String>(keys.keySet())) {
+			JournalKeys journalKeys = keys.remove(owner);
+			if (journalKeys != null) {
+				journalKeys.destroy();
+			}
+		}
+		uncompacted.clear();
+	}
+
+	/**
+	 * Wraps the user's journal key under a new session key, after a password change.
+	 *
+	 * @param	owner			username (email) of the signed-in user
+	 * @param	newSessionKey	key derived from the new password
+	 * @return	positive integer if success; negative if failure (the old password still opens the journal)
+	 */
+	public int changePassword(String owner, SecretValue newSessionKey) {
+		JournalKeys journalKeys = keys.get(owner);
+		if (journalKeys == null) {
+			return -1;
+		}
+		return storeWrappedKey(owner, journalKeys.raw, newSessionKey, false);
+	}
+
+	/**
+	 * Appends a record of a change to the data_entries table, inside the transaction that made it, so the record is
+	 * committed or rolled back with the change. Changes to other databases or by users who are not signed in are not
+	 * journaled.
+	 *
+	 * @param	database		name of the database the change was made to
+	 * @param	DBconnection	connection holding the uncommitted change
+	 * @param	owner			owner of the entry
+	 * @param	operation		ADD, UPDATE or DELETE
+	 * @param	previousName	name of the entry before the change
+	 * @param	entryName		name of the entry after the change
+	 */
+	static void journal(String database, Connection DBconnection, String owner, int operation, String previousName, String entryName) throws SQLException {
+		OperationJournal journal;
+		synchronized (OperationJournal.class) {
+			// Not getInstance(): creating the tables now would wait on the lock this transaction holds
+			journal = instance;
+		}
+		if (journal == null || !journal.database.equals(database)) {
+			return;
+		}
+		journal.record(DBconnection, owner, operation, previousName, entryName);
+	}
+
+	/**
+	 * Takes a base checkpoint in the background after the user's entries were changed without being journaled
+	 * (e.g. by an import).
+	 *
+	 * @param	owner	username (email) whose entries changed
+	 */
+	public void entriesReloaded(final String owner) {
+		if (!keys.containsKey(owner)) {
+			return;
+		}
+		compactor.execute(new Runnable() {
+			public void run() {
+				takeBaseCheckpoint(owner);
+			}
+		});
+	}
+
+	/**
+	 * Puts an entry back the way it was at the given time. The restore is itself journaled, so it can be undone.
+	 *
+	 * @param	user		signed-in owner of the entry
+	 * @param	entryName	name of the entry at that time
+	 * @param	timestamp	time to restore to (milliseconds since the epoch)
+	 * @return	positive integer if success; negative if the entry did not exist then, the journal does not reach back
+	 * 			that far, or it could not be read
+	 */
+	public int restoreEntry(User user, String entryName, long timestamp) {
+		String owner = user.getUsername();
+		Replay replay = stateAt(owner, timestamp);
+		if (replay == null || !replay.rows.containsKey(entryName)) {
+			return -1;
+		}
+		String[] row = replay.rows.get(entryName);
+		DataEntry restored = toDataEntry(row);
+		DataEntry current = null;
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Map<String, String[]> currentRows = readRows(DBconnection, owner, entryName);
+			if (currentRows.containsKey(entryName)) {
+				current = toDataEntry(currentRows.get(entryName));
+				PreparedStatement delete = DBconnection.prepareStatement("DELETE FROM data_entries WHERE owner=? AND entry_name=?;");
+				delete.setString(1, owner);
+				delete.setString(2, entryName);
+				delete.executeUpdate();
+				delete.close();
+			}
+			insertRow(DBconnection, row);
+			record(DBconnection, owner, (current == null) ? ADD : UPDATE, entryName, entryName);
+			DBconnection.commit();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+			return -1;
+		}
+		// Publish the change so open views can apply it in place
+		if (current != null && current.getEntryType().equals(restored.getEntryType())) {
+			VaultModel.getInstance().fireEntryUpdated(current, entryName);
+		}
+		else {
+			if (current != null) {
+				VaultModel.getInstance().fireEntryRemoved(current);
+			}
+			VaultModel.getInstance().fireEntryAdded(restored);
+		}
+		return 1;
+	}
+
+	/**
+	 * Puts all of a user's entries back the way they were at the given time: entries added since are removed and
+	 * entries changed or removed since are restored. Every entry the restore changes is journaled, so it can be undone.
+	 *
+	 * @param	user		signed-in user
+	 * @param	timestamp	time to restore to (milliseconds since the epoch)
+	 * @return	number of entries changed, or -1 if the journal does not reach back that far or could not be read
+	 */
+	public int restoreVault(User user, long timestamp) {
+		String owner = user.getUsername();
+		Replay replay = stateAt(owner, timestamp);
+		if (replay == null) {
+			return -1;
+		}
+		int changed = 0;
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Map<String, String[]> currentRows = readRows(DBconnection, owner, null);
+			PreparedStatement delete = DBconnection.prepareStatement("DELETE FROM data_entries WHERE owner=? AND entry_name=?;");
+			for (Map.Entry<String, String[]> current : currentRows.entrySet()) {
+				String[] restored = replay.rows.get(current.getKey());
+				if (restored != null && Arrays.equals(restored, current.getValue())) {
+					continue;
+				}
+				delete.setString(1, owner);
+				delete.setString(2, current.getKey());
+				delete.executeUpdate();
+				if (restored == null) {
+					record(DBconnection, owner, DELETE, current.getKey(), current.getKey());
+					changed++;
+				}
+			}
+			delete.close();
+			for (Map.Entry<String, String[]> restored : replay.rows.entrySet()) {
+				String[] current = currentRows.get(restored.getKey());
+				if (current != null && Arrays.equals(current, restored.getValue())) {
+					continue;
+				}
+				insertRow(DBconnection, restored.getValue());
+				record(DBconnection, owner, (current == null) ? ADD : UPDATE, restored.getKey(), restored.getKey());
+				changed++;
+			}
+			DBconnection.commit();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+			return -1;
+		}
+		if (changed > 0) {
+			VaultModel.getInstance().fireEntriesReloaded(owner);
+		}
+		return changed;
+	}
+
+	/**
+	 * Rebuilds a user's rows as of a time from the newest checkpoint at or before it and the records after that.
+	 *
+	 * @return	the rows, or null if there is no checkpoint that early, the user is not signed in, or the journal has
+	 * 			been tampered with
+	 */
+	Replay stateAt(String owner, long timestamp) {
+		JournalKeys journalKeys = keys.get(owner);
+		if (journalKeys == null) {
+			return null;
+		}
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Replay replay = loadCheckpoint(DBconnection, owner, timestamp, journalKeys);
+			if (replay == null) {
+				DBconnection.close();
+				return null;
+			}
+			PreparedStatement select = DBconnection.prepareStatement("SELECT seq, recorded, record, mac FROM operation_journal WHERE owner=? AND seq>? ORDER BY seq;");
+			select.setString(1, owner);
+			select.setLong(2, replay.seq);
+			ResultSet results = select.executeQuery();
+			while (results.next()) {
+				long recorded = results.getLong("recorded");
+				if (recorded > timestamp) {
+					break;
+				}
+				byte[] sealed = results.getBytes("record");
+				byte[] mac = results.getBytes("mac");
+				if (!MessageDigest.isEqual(mac, recordMac(journalKeys, replay.chainMac, owner, recorded, sealed))) {
+					throw new GeneralSecurityException("Journal record " + results.getLong("seq") + " does not match the chain");
+				}
+				apply(replay.rows, open(journalKeys, sealed));
+				replay.seq = results.getLong("seq");
+				replay.recorded = recorded;
+				replay.chainMac = mac;
+			}
+			results.close();
+			select.close();
+			DBconnection.close();
+			return replay;
+		}
+		catch (SQLException | IOException | GeneralSecurityException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return null;
+		}
+	}
+
+	private void record(Connection DBconnection, String owner, int operation, String previousName, String entryName) throws SQLException {
+		JournalKeys journalKeys = keys.get(owner);
+		if (journalKeys == null) {
+			return;
+		}
+		String[] row = null;
+		if (operation != DELETE) {
+			row = readRows(DBconnection, owner, entryName).get(entryName);
+		}
+		byte[] previousMac = new byte[0];
+		PreparedStatement last = DBconnection.prepareStatement("SELECT mac FROM operation_journal WHERE owner=? ORDER BY seq DESC LIMIT 1;");
+		last.setString(1, owner);
+		ResultSet results = last.executeQuery();
+		if (results.next()) {
+			previousMac = results.getBytes("mac");
+		}
+		results.close();
+		last.close();
+
+		long recorded = System.currentTimeMillis();
+		byte[] sealed;
+		byte[] mac;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(operation);
+			writeString(out, previousName);
+			writeRow(out, row);
+			out.close();
+			sealed = seal(journalKeys, bytes.toByteArray());
+			mac = recordMac(journalKeys, previousMac, owner, recorded, sealed);
+		}
+		catch (IOException | GeneralSecurityException e) {
+			// Never block the user's change over the journal; the next sign-in takes a base checkpoint instead
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			return;
+		}
+		PreparedStatement insert = DBconnection.prepareStatement("INSERT INTO operation_journal (owner, recorded, record, mac) VALUES (?, ?, ?, ?);");
+		insert.setString(1, owner);
+		insert.setLong(2, recorded);
+		insert.setBytes(3, sealed);
+		insert.setBytes(4, mac);
+		insert.executeUpdate();
+		insert.close();
+
+		AtomicInteger count = uncompacted.get(owner);
+		if (count != null && count.incrementAndGet() == CHECKPOINT_EVERY) {
+			count.set(0);
+			compactor.execute(new Runnable() {
+				public void run() {
+					compact(owner);
+				}
+			});
+		}
+	}
+
+	private static void apply(Map<String, String[]> rows, byte[] record) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		int operation = in.readByte();
+		String previousName = readString(in);
+		String[] row = readRow(in);
+		rows.remove(previousName);
+		if (operation != DELETE && row != null) {
+			rows.put(row[0], row);
+		}
+	}
+
+	/**
+	 * Folds the newest checkpoint and the records after it into a new checkpoint, then thins older compacted
+	 * checkpoints to the newest of each day.
+	 */
+	private void compact(String owner) {
+		Replay replay = stateAt(owner, Long.MAX_VALUE);
+		if (replay == null) {
+			return;
+		}
+		if (writeCheckpoint(owner, replay, false) > 0) {
+			thinCheckpoints(owner);
+		}
+	}
+
+	/**
+	 * Compares the journal with the vault at sign-in, and takes a base checkpoint if the user has none yet or if the
+	 * vault was changed without being journaled.
+	 */
+	private void reconcile(String owner) {
+		Replay replay = stateAt(owner, Long.MAX_VALUE);
+		if (replay != null) {
+			Connection DBconnection = DatabaseManager.connectToDatabase(database);
+			try {
+				boolean matches = sameRows(replay.rows, readRows(DBconnection, owner, null));
+				DBconnection.close();
+				if (matches) {
+					return;
+				}
+			}
+			catch (SQLException e) {
+				System.err.println(e.getClass().getName() + ": " + e.getMessage());
+				closeQuietly(DBconnection);
+				return;
+			}
+		}
+		takeBaseCheckpoint(owner);
+	}
+
+	/**
+	 * Checkpoints the user's rows as they are in the table, with the newest record, in one read transaction.
+	 */
+	private void takeBaseCheckpoint(String owner) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Replay replay = new Replay(new TreeMap<String, String[]>(), 0, System.currentTimeMillis(), new byte[0]);
+			PreparedStatement last = DBconnection.prepareStatement("SELECT seq, mac FROM operation_journal WHERE owner=? ORDER BY seq DESC LIMIT 1;");
+			last.setString(1, owner);
+			ResultSet results = last.executeQuery();
+			if (results.next()) {
+				replay.seq = results.getLong("seq");
+				replay.chainMac = results.getBytes("mac");
+			}
+			results.close();
+			last.close();
+			replay.rows.putAll(readRows(DBconnection, owner, null));
+			DBconnection.close();
+			writeCheckpoint(owner, replay, true);
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private int writeCheckpoint(String owner, Replay replay, boolean base) {
+		JournalKeys journalKeys = keys.get(owner);
+		if (journalKeys == null) {
+			return -1;
+		}
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+			out.writeInt(replay.rows.size());
+			for (String[] row : replay.rows.values()) {
+				writeRow(out, row);
+			}
+			out.close();
+			byte[] sealed = seal(journalKeys, bytes.toByteArray());
+			PreparedStatement insert = DBconnection.prepareStatement("INSERT OR REPLACE INTO journal_checkpoints (owner, seq, recorded, base, chain_mac, snapshot, mac) VALUES (?, ?, ?, ?, ?, ?, ?);");
+			insert.setString(1, owner);
+			insert.setLong(2, replay.seq);
+			insert.setLong(3, replay.recorded);
+			insert.setInt(4, base ? 1 : 0);
+			insert.setBytes(5, replay.chainMac);
+			insert.setBytes(6, sealed);
+			insert.setBytes(7, checkpointMac(journalKeys, owner, replay.seq, replay.recorded, replay.chainMac, sealed));
+			insert.executeUpdate();
+			insert.close();
+			DBconnection.commit();
+			DBconnection.close();
+			return 1;
+		}
+		catch (SQLException | IOException | GeneralSecurityException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return -1;
+		}
+	}
+
+	private static Replay loadCheckpoint(Connection DBconnection, String owner, long timestamp, JournalKeys journalKeys) throws SQLException, IOException, GeneralSecurityException {
+		PreparedStatement select = DBconnection.prepareStatement("SELECT seq, recorded, chain_mac, snapshot, mac FROM journal_checkpoints "
+				+ "WHERE owner=? AND recorded<=? ORDER BY seq DESC, base DESC LIMIT 1;");
+		select.setString(1, owner);
+		select.setLong(2, timestamp);
+		ResultSet results = select.executeQuery();
+		if (!results.next()) {
+			results.close();
+			select.close();
+			return null;
+		}
+		long seq = results.getLong("seq");
+		long recorded = results.getLong("recorded");
+		byte[] chainMac = results.getBytes("chain_mac");
+		byte[] sealed = results.getBytes("snapshot");
+		byte[] mac = results.getBytes("mac");
+		results.close();
+		select.close();
+		if (!MessageDigest.isEqual(mac, checkpointMac(journalKeys, owner, seq, recorded, chainMac, sealed))) {
+			throw new GeneralSecurityException("Journal checkpoint " + seq + " has been altered");
+		}
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(open(journalKeys, sealed))));
+		TreeMap<String, String[]> rows = new TreeMap<String, String[]>();
+		int numRows = in.readInt();
+		for (int i = 0; i < numRows; i++) {
+			String[] row = readRow(in);
+			rows.put(row[0], row);
+		}
+		in.close();
+		return new Replay(rows, seq, recorded, chainMac);
+	}
+
+	private void thinCheckpoints(String owner) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT seq, recorded FROM journal_checkpoints WHERE owner=? AND base=0 ORDER BY seq DESC;");
+			select.setString(1, owner);
+			ResultSet results = select.executeQuery();
+			Set<LocalDate> days = new HashSet<LocalDate>();
+			List<Long> thinned = new ArrayList<Long>();
+			while (results.next()) {
+				LocalDate day = Instant.ofEpochMilli(results.getLong("recorded")).atZone(ZoneId.systemDefault()).toLocalDate();
+				if (!days.add(day)) {
+					thinned.add(results.getLong("seq"));
+				}
+			}
+			results.close();
+			select.close();
+			PreparedStatement delete = DBconnection.prepareStatement("DELETE FROM journal_checkpoints WHERE owner=? AND seq=? AND base=0;");
+			for (long seq : thinned) {
+				delete.setString(1, owner);
+				delete.setLong(2, seq);
+				delete.addBatch();
+			}
+			delete.executeBatch();
+			delete.close();
+			DBconnection.commit();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+		}
+	}
+
+	/**
+	 * @param	entryName	name of the one row to read, or null for all of the owner's rows
+	 * @return	rows by entry name, each as its COLUMNS values
+	 */
+	static Map<String, String[]> readRows(Connection DBconnection, String owner, String entryName) throws SQLException {
+		Map<String, String[]> rows = new TreeMap<String, String[]>();
+		PreparedStatement select = DBconnection.prepareStatement("SELECT * FROM data_entries WHERE owner=?" + ((entryName == null) ? ";" : " AND entry_name=?;"));
+		select.setString(1, owner);
+		if (entryName != null) {
+			select.setString(2, entryName);
+		}
+		ResultSet results = select.executeQuery();
+		while (results.next()) {
+			String[] row = new String[COLUMNS.length];
+			for (int i = 0; i < COLUMNS.length; i++) {
+				row[i] = results.getString(COLUMNS[i]);
+			}
+			rows.put(row[0], row);
+		}
+		results.close();
+		select.close();
+		return rows;
+	}
+
+	private static void insertRow(Connection DBconnection, String[] row) throws SQLException {
+		StringBuilder sql = new StringBuilder("INSERT INTO data_entries (");
+		for (int i = 0; i < COLUMNS.length; i++) {
+			sql.append((i == 0) ? "" : ", ").append(COLUMNS[i]);
+		}
+		sql.append(") VALUES (");
+		for (int i = 0; i < COLUMNS.length; i++) {
+			sql.append((i == 0) ? "?" : ", ?");
+		}
+		PreparedStatement insert = DBconnection.prepareStatement(sql.append(");").toString());
+		for (int i = 0; i < COLUMNS.length; i++) {
+			insert.setString(i + 1, row[i]);
+		}
+		insert.executeUpdate();
+		insert.close();
+	}
+
+	private static boolean sameRows(Map<String, String[]> a, Map<String, String[]> b) {
+		if (!a.keySet().equals(b.keySet())) {
+			return false;
+		}
+		for (Map.Entry<String, String[]> row : a.entrySet()) {
+			if (!Arrays.equals(row.getValue(), b.get(row.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return	the (still encrypted) entry a row holds; only its name, type, owner and valid users are used
+	 */
+	private static DataEntry toDataEntry(String[] row) {
+		DataEntry entry = new DataEntry(row[0], row[1], row[2], row[3], 0, null);
+		List<String> validUsers = new ArrayList<String>();
+		if (row[4] != null) {
+			for (String validUser : row[4].split(" ")) {
+				validUsers.add(validUser);
+			}
+		}
+		entry.setValidUsers(validUsers);
+		return entry;
+	}
+
+	private JournalKeys loadKeys(String owner, SecretValue sessionKey) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement select = DBconnection.prepareStatement("SELECT wrapped_key FROM journal_keys WHERE owner=?;");
+			select.setString(1, owner);
+			ResultSet results = select.executeQuery();
+			byte[] wrapped = results.next() ? results.getBytes("wrapped_key") : null;
+			results.close();
+			select.close();
+			DBconnection.close();
+			if (wrapped != null) {
+				return new JournalKeys(unwrap(sessionKey, wrapped));
+			}
+		}
+		catch (SQLException | GeneralSecurityException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return null;
+		}
+		byte[] raw = new byte[2 * KEY_BYTES];
+		new SecureRandom().nextBytes(raw);
+		if (storeWrappedKey(owner, raw, sessionKey, true) < 0) {
+			Arrays.fill(raw, (byte) 0);
+			return null;
+		}
+		return new JournalKeys(raw);
+	}
+
+	private int storeWrappedKey(String owner, byte[] raw, SecretValue sessionKey, boolean create) {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			PreparedStatement store = DBconnection.prepareStatement(create
+					? "INSERT INTO journal_keys (wrapped_key, owner) VALUES (?, ?);"
+					: "UPDATE journal_keys SET wrapped_key=? WHERE owner=?;");
+			store.setBytes(1, wrap(sessionKey, raw));
+			store.setString(2, owner);
+			int stored = store.executeUpdate();
+			store.close();
+			DBconnection.commit();
+			DBconnection.close();
+			return (stored > 0) ? 1 : -1;
+		}
+		catch (SQLException | GeneralSecurityException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			closeQuietly(DBconnection);
+			return -1;
+		}
+	}
+
+	private static byte[] wrap(SecretValue sessionKey, byte[] raw) throws GeneralSecurityException {
+		JournalKeys wrapping = wrappingKeys(sessionKey);
+		try {
+			byte[] sealed = seal(wrapping, raw);
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(wrapping.mac);
+			byte[] tag = mac.doFinal(sealed);
+			byte[] wrapped = Arrays.copyOf(sealed, sealed.length + tag.length);
+			System.arraycopy(tag, 0, wrapped, sealed.length, tag.length);
+			return wrapped;
+		}
+		finally {
+			wrapping.destroy();
+		}
+	}
+
+	private static byte[] unwrap(SecretValue sessionKey, byte[] wrapped) throws GeneralSecurityException {
+		JournalKeys wrapping = wrappingKeys(sessionKey);
+		try {
+			int sealedLength = wrapped.length - KEY_BYTES;
+			if (sealedLength <= IV_BYTES) {
+				throw new GeneralSecurityException("Journal key too short");
+			}
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(wrapping.mac);
+			mac.update(wrapped, 0, sealedLength);
+			if (!MessageDigest.isEqual(mac.doFinal(), Arrays.copyOfRange(wrapped, sealedLength, wrapped.length))) {
+				throw new GeneralSecurityException("Wrong password for the journal key");
+			}
+			return open(wrapping, Arrays.copyOf(wrapped, sealedLength));
+		}
+		finally {
+			wrapping.destroy();
+		}
+	}
+
+	/**
+	 * @return	AES and HMAC keys for wrapping the journal key, derived from the session key
+	 */
+	private static JournalKeys wrappingKeys(SecretValue sessionKey) throws GeneralSecurityException {
+		byte[] session = sessionKey.toByteArray();
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(session, "HmacSHA256"));
+			byte[] raw = new byte[2 * KEY_BYTES];
+			System.arraycopy(mac.doFinal("sentinel-journal-wrap-encryption".getBytes(StandardCharsets.UTF_8)), 0, raw, 0, KEY_BYTES);
+			System.arraycopy(mac.doFinal("sentinel-journal-wrap-mac".getBytes(StandardCharsets.UTF_8)), 0, raw, KEY_BYTES, KEY_BYTES);
+			return new JournalKeys(raw);
+		}
+		finally {
+			Arrays.fill(session, (byte) 0);
+		}
+	}
+
+	private static byte[] recordMac(JournalKeys journalKeys, byte[] previousMac, String owner, long recorded, byte[] sealed) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(journalKeys.mac);
+		mac.update(previousMac);
+		mac.update(owner.getBytes(StandardCharsets.UTF_8));
+		mac.update(longBytes(recorded));
+		return mac.doFinal(sealed);
+	}
+
+	private static byte[] checkpointMac(JournalKeys journalKeys, String owner, long seq, long recorded, byte[] chainMac, byte[] sealed) throws GeneralSecurityException {
+		Mac mac = Mac.getInstance("HmacSHA256");
+		mac.init(journalKeys.mac);
+		mac.update("checkpoint".getBytes(StandardCharsets.UTF_8));
+		mac.update(owner.getBytes(StandardCharsets.UTF_8));
+		mac.update(longBytes(seq));
+		mac.update(longBytes(recorded));
+		mac.update(chainMac);
+		return mac.doFinal(sealed);
+	}
+
+	private static byte[] seal(JournalKeys journalKeys, byte[] data) throws GeneralSecurityException {
+		byte[] iv = new byte[IV_BYTES];
+		new SecureRandom().nextBytes(iv);
+		Cipher c = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		c.init(Cipher.ENCRYPT_MODE, journalKeys.encryption, new IvParameterSpec(iv));
+		byte[] encrypted = c.doFinal(data);
+		byte[] sealed = Arrays.copyOf(iv, IV_BYTES + encrypted.length);
+		System.arraycopy(encrypted, 0, sealed, IV_BYTES, encrypted.length);
+		return sealed;
+	}
+
+	private static byte[] open(JournalKeys journalKeys, byte[] sealed) throws GeneralSecurityException {
+		if (sealed.length <= IV_BYTES) {
+			throw new GeneralSecurityException("Journal record too short");
+		}
+		Cipher c = Cipher.getInstance("AES/CBC/PKCS5Padding");
+		c.init(Cipher.DECRYPT_MODE, journalKeys.encryption, new IvParameterSpec(sealed, 0, IV_BYTES));
+		return c.doFinal(sealed, IV_BYTES, sealed.length - IV_BYTES);
+	}
+
+	private static byte[] longBytes(long value) {
+		byte[] bytes = new byte[8];
+		for (int i = 7; i >= 0; i--) {
+			bytes[i] = (byte) value;
+			value >>>= 8;
+		}
+		return bytes;
+	}
+
+	private static void writeRow(DataOutputStream out, String[] row) throws IOException {
+		out.writeBoolean(row != null);
+		if (row != null) {
+			for (String value : row) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	private static String[] readRow(DataInputStream in) throws IOException {
+		if (!in.readBoolean()) {
+			return null;
+		}
+		String[] row = new String[COLUMNS.length];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = readString(in);
+		}
+		return row;
+	}
+
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	void createJournalTables() {
+		Connection DBconnection = DatabaseManager.connectToDatabase(database);
+		try {
+			Statement stmt = DBconnection.createStatement();
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS operation_journal ("
+					+ "'seq'		INTEGER	PRIMARY KEY	AUTOINCREMENT, "
+					+ "'owner'		TEXT	NOT NULL, "
+					+ "'recorded'	INTEGER	NOT NULL, "
+					+ "'record'		BLOB	NOT NULL, "
+					+ "'mac'		BLOB	NOT NULL)");
+			stmt.executeUpdate("CREATE INDEX IF NOT EXISTS operation_journal_owner ON operation_journal(owner, seq)");
+			// Append-only: records can be added but never changed or removed
+			stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS operation_journal_no_update BEFORE UPDATE ON operation_journal BEGIN "
+					+ "SELECT RAISE(ABORT, 'operation_journal is append-only'); END");
+			stmt.executeUpdate("CREATE TRIGGER IF NOT EXISTS operation_journal_no_delete BEFORE DELETE ON operation_journal BEGIN "
+					+ "SELECT RAISE(ABORT, 'operation_journal is append-only'); END");
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS journal_checkpoints ("
+					+ "'owner'		TEXT	NOT NULL, "
+					+ "'seq'		INTEGER	NOT NULL, "
+					+ "'recorded'	INTEGER	NOT NULL, "
+					+ "'base'		INTEGER	NOT NULL, "
+					+ "'chain_mac'	BLOB	NOT NULL, "
+					+ "'snapshot'	BLOB	NOT NULL, "
+					+ "'mac'		BLOB	NOT NULL, "
+					+ "PRIMARY KEY (owner, seq, base))");
+			stmt.executeUpdate("CREATE TABLE IF NOT EXISTS journal_keys ("
+					+ "'owner'			TEXT	PRIMARY KEY	NOT NULL, "
+					+ "'wrapped_key'	BLOB	NOT NULL)");
+			DBconnection.commit();
+			stmt.close();
+			DBconnection.close();
+		}
+		catch (SQLException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			closeQuietly(DBconnection);
+		}
+	}
+
+	private static void closeQuietly(Connection DBconnection) {
+		try {
+			if (DBconnection != null) {
+				DBconnection.close();
+			}
+		}
+		catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import cryptography.Crypto;
+import dataManagement.DataEntry;
+import dataManagement.User;
+import security.StrengthChecker;
+
+/**
+ * Audits the passwords a user has stored in their vault for weakness and reuse.
+ * Entries are streamed from the database, decrypted and scored in parallel, and written to the report as they finish,
+ * so no entry is held once it has been scored. Reuse is detected by comparing keyed hashes (HMAC-SHA256 under a key
+ * that only lives for one audit), so plaintext passwords are never kept after an entry has been scored. The reuse
+ * counts keep one short hash per distinct password, which is all the audit holds on to until it finishes.
+ */
+public class VaultAuditor {
+
+	// Entry types that hold a password, and the index of the password among their data fields
+	private static final List<String> PASSWORD_ENTRY_TYPES = Arrays.asList("Account Login", "General Password", "Wifi Network");
+	private static final int PASSWORD_FIELD_INDEX = 1;
+	private static final int REUSE_GROUP_ID_LENGTH = 12; // hex characters of the keyed hash shown in the report
+
+	private final int numThreads;
+
+	public VaultAuditor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param numThreads	number of worker threads that decrypt and score entries
+	 */
+	public VaultAuditor(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * Summary of a finished audit.
+	 */
+	public static class AuditSummary {
+		private final int entriesAudited;
+		private final int weakPasswords;
+		private final int adequatePasswords;
+		private final int strongPasswords;
+		private final int reusedPasswordGroups;
+		private final int entriesWithReusedPasswords;
+		private final int failedEntries;
+
+		AuditSummary(int entriesAudited, int weakPasswords, int adequatePasswords, int strongPasswords, int reusedPasswordGroups, int entriesWithReusedPasswords, int failedEntries) {
+			this.entriesAudited = entriesAudited;
+			this.weakPasswords = weakPasswords;
+			this.adequatePasswords = adequatePasswords;
+			this.strongPasswords = strongPasswords;
+			this.reusedPasswordGroups = reusedPasswordGroups;
+			this.entriesWithReusedPasswords = entriesWithReusedPasswords;
+			this.failedEntries = failedEntries;
+		}
+
+		public int getEntriesAudited() {
+			return entriesAudited;
+		}
+
+		public int getWeakPasswords() {
+			return weakPasswords;
+		}
+
+		public int getAdequatePasswords() {
+			return adequatePasswords;
+		}
+
+		public int getStrongPasswords() {
+			return strongPasswords;
+		}
+
+		public int getReusedPasswordGroups() {
+			return reusedPasswordGroups;
+		}
+
+		public int getEntriesWithReusedPasswords() {
+			return entriesWithReusedPasswords;
+		}
+
+		/**
+		 * @return	number of entries that could not be decrypted or scored, and are missing from the report
+		 */
+		public int getFailedEntries() {
+			return failedEntries;
+		}
+	}
+
+	/**
+	 * One audit in progress: scores passwords from any number of threads, counts how often each is reused and writes
+	 * a report line per entry. The key the passwords are hashed under is wiped by close().
+	 */
+	static class Audit {
+		private final Writer report;
+		private final byte[] auditKey = new byte[32];
+		private final ThreadLocal<Mac> macs;
+		private final ThreadLocal<StrengthChecker> checkers;
+		// One counter per distinct password, so this (unlike the entries themselves) grows with the vault
+		private final Map<String, AtomicInteger> reuseCounts = new ConcurrentHashMap<String, AtomicInteger>();
+		private final AtomicInteger weak = new AtomicInteger();
+		private final AtomicInteger adequate = new AtomicInteger();
+		private final AtomicInteger strong = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private IOException writeFailure;
+
+		/**
+		 * @param	report	destination of the report; the CSV header is written straight away
+		 * @throws	IOException if the report cannot be written
+		 */
+		Audit(Writer report) throws IOException {
+			this.report = report;
+			new SecureRandom().nextBytes(auditKey);
+			macs = new ThreadLocal<Mac>() {
+				protected Mac initialValue() {
+					try {
+						Mac mac = Mac.getInstance("HmacSHA256");
+						mac.init(new SecretKeySpec(auditKey, "HmacSHA256"));
+						return mac;
+					}
+					catch (GeneralSecurityException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			};
+			checkers = new ThreadLocal<StrengthChecker>() {
+				protected StrengthChecker initialValue() {
+					return new StrengthChecker(false);
+				}
+			};
+			report.write("entry_type,entry_name,rating,reuse_group\n");
+		}
+
+		/**
+		 * Rates one entry's password and writes its report line.
+		 *
+		 * @param	entryType	type of the entry
+		 * @param	entryName	name of the entry
+		 * @param	password	decrypted password; empty passwords are not audited
+		 */
+		void add(String entryType, String entryName, String password) {
+			if (password == null || password.isEmpty()) {
+				return;
+			}
+			String rating = checkers.get().checkStrength(password);
+			if (rating.equals("Weak")) {
+				weak.incrementAndGet();
+			}
+			else if (rating.equals("Strong")) {
+				strong.incrementAndGet();
+			}
+			else {
+				adequate.incrementAndGet();
+			}
+
+			String reuseGroup = toHex(macs.get().doFinal(password.getBytes(StandardCharsets.UTF_8))).substring(0, REUSE_GROUP_ID_LENGTH);
+			AtomicInteger count = reuseCounts.get(reuseGroup);
+			if (count == null) {
+				AtomicInteger newCount = new AtomicInteger();
+				count = reuseCounts.putIfAbsent(reuseGroup, newCount);
+				if (count == null) {
+					count = newCount;
+				}
+			}
+			count.incrementAndGet();
+
+			String line = csv(entryType) + "," + csv(entryName) + "," + rating + "," + reuseGroup + "\n";
+			synchronized (report) {
+				try {
+					report.write(line);
+				}
+				catch (IOException e) {
+					writeFailure = e;
+				}
+			}
+		}
+
+		/**
+		 * Counts an entry that could not be decrypted or scored.
+		 */
+		void fail() {
+			failed.incrementAndGet();
+		}
+
+		/**
+		 * Wipes the key the passwords were hashed under; the reuse groups already written stay comparable.
+		 */
+		void close() {
+			Arrays.fill(auditKey, (byte) 0);
+		}
+
+		/**
+		 * Writes the summary of reused passwords and the totals, once every entry has been added.
+		 *
+		 * @return	AuditSummary of the results
+		 * @throws	IOException if the report cannot be written
+		 */
+		AuditSummary finish() throws IOException {
+			synchronized (report) {
+				if (writeFailure != null) {
+					throw writeFailure;
+				}
+			}
+			int reusedGroups = 0;
+			int reusedEntries = 0;
+			report.write("\nreuse_group,entries_sharing_password\n");
+			for (Map.Entry<String, AtomicInteger> group : reuseCounts.entrySet()) {
+				if (group.getValue().get() > 1) {
+					reusedGroups++;
+					reusedEntries += group.getValue().get();
+					report.write(group.getKey() + "," + group.getValue().get() + "\n");
+				}
+			}
+			int audited = weak.get() + adequate.get() + strong.get();
+			report.write("\naudited," + audited + "\nweak," + weak.get() + "\nadequate," + adequate.get() + "\nstrong," + strong.get()
+					+ "\nfailed," + failed.get() + "\ncompleted," + LocalDateTime.now().toString() + "\n");
+			report.flush();
+
+			return new AuditSummary(audited, weak.get(), adequate.get(), strong.get(), reusedGroups, reusedEntries, failed.get());
+		}
+	}
+
+	/**
+	 * Audits every password-holding entry a user owns and writes a CSV report.
+	 * Each entry gets one line (type, name, rating, reuse group); entries with the same reuse group share a password.
+	 * A summary of reused groups is appended once all entries have been scored. An entry that cannot be decrypted or
+	 * scored is left out of the report and counted as failed.
+	 *
+	 * @param	user	user whose vault is audited
+	 * @param	report	destination of the report; flushed but not closed
+	 * @return	AuditSummary of the results
+	 * @throws	IOException if the report cannot be written or the entries cannot be read
+	 */
+	public AuditSummary audit(final User user, final Writer report) throws IOException {
+		final Audit audit = new Audit(report);
+		// Bounded queue + caller-runs keeps at most a few entries per thread in memory at once
+		final ThreadPoolExecutor workers = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(numThreads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+		int numEntries;
+		boolean interrupted = false;
+		try {
+			DatabaseManager dbm = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE);
+			numEntries = dbm.streamUserDataEntries(user, PASSWORD_ENTRY_TYPES, new Consumer<DataEntry>() {
+				public void accept(final DataEntry entry) {
+					workers.execute(new Runnable() {
+						public void run() {
+							// Runs on the streaming thread when the queue is full, so nothing may escape into the stream
+							try {
+								if (entry.getFieldDataList().get(PASSWORD_FIELD_INDEX) == null) {
+									return;
+								}
+								new Crypto().decrypt(user, entry);
+								String password = entry.getFieldDataList().get(PASSWORD_FIELD_INDEX);
+								entry.setDataFields(null); // drop the decrypted fields as soon as the password is taken out
+								audit.add(entry.getEntryType(), entry.getEntryName(), password);
+							}
+							catch (RuntimeException e) {
+								System.err.println(e.getClass().getName() + ": " + e.getMessage());
+								entry.setDataFields(null);
+								audit.fail();
+							}
+						}
+					});
+				}
+			});
+		}
+		finally {
+			workers.shutdown();
+			try {
+				workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				interrupted = true;
+			}
+			audit.close();
+		}
+		if (interrupted) {
+			throw new IOException("Vault audit was interrupted");
+		}
+		if (numEntries < 0) {
+			throw new IOException("Could not read data entries for " + user.getUsername());
+		}
+		return audit.finish();
+	}
+
+	private static String csv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+}
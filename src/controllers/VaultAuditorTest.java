@@ -0,0 +1,148 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import security.StrengthChecker;
+
+/**
+ * Checks what a vault audit reports: the rating counts, which entries share a reuse group, the summary of reused
+ * passwords and the quoting of entry names that would break a CSV line. Passwords are handed to the audit already
+ * decrypted, as the audit's workers do, so no database is needed.
+ */
+public class VaultAuditorTest {
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		try {
+			testReport();
+			testConcurrentEntries();
+		}
+		catch (IOException | InterruptedException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			failures++;
+		}
+
+		System.out.println((failures == 0) ? "All tests passed" : failures + " tests failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static void testReport() throws IOException {
+		String[][] entries = {
+				{ "Account Login", "Bank", "password" },
+				{ "Account Login", "Mail, personal", "password" },
+				{ "General Password", "Say \"hello\"", "password" },
+				{ "Wifi Network", "Home\nWifi", "V3ry-L0ng&Unique*Passphrase!2016" },
+				{ "Wifi Network", "Office\r", "Tr0ub4dor&3xyz!Q" },
+				{ "Account Login", "Shop", "Tr0ub4dor&3xyz!Q" },
+				{ "Account Login", "Empty", "" } };
+
+		StringWriter report = new StringWriter();
+		VaultAuditor.Audit audit = new VaultAuditor.Audit(report);
+		for (String[] entry : entries) {
+			audit.add(entry[0], entry[1], entry[2]);
+		}
+		audit.fail();
+		audit.close();
+		VaultAuditor.AuditSummary summary = audit.finish();
+
+		// The ratings the audit reports are the StrengthChecker's
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		StrengthChecker checker = new StrengthChecker(false);
+		for (String[] entry : entries) {
+			if (!entry[2].isEmpty()) {
+				String rating = checker.checkStrength(entry[2]);
+				expected.put(rating, (expected.containsKey(rating) ? expected.get(rating) : 0) + 1);
+			}
+		}
+		check("empty passwords are not audited", summary.getEntriesAudited() == 6);
+		check("the weak passwords are counted", summary.getWeakPasswords() == count(expected, "Weak") && summary.getWeakPasswords() >= 3);
+		check("the strong passwords are counted", summary.getStrongPasswords() == count(expected, "Strong"));
+		check("the adequate passwords are counted", summary.getAdequatePasswords() == 6 - count(expected, "Weak") - count(expected, "Strong"));
+		check("failed entries are counted", summary.getFailedEntries() == 1);
+		check("two passwords are reused", summary.getReusedPasswordGroups() == 2);
+		check("by five entries", summary.getEntriesWithReusedPasswords() == 5);
+
+		String text = report.toString();
+		List<String> lines = new ArrayList<String>(Arrays.asList(text.split("\n", -1)));
+		check("the report starts with its header", lines.get(0).equals("entry_type,entry_name,rating,reuse_group"));
+		check("a plain name is written as it is", text.contains("\nAccount Login,Bank,"));
+		check("a name with a comma is quoted", text.contains("\nAccount Login,\"Mail, personal\","));
+		check("quotes in a name are doubled", text.contains("\nGeneral Password,\"Say \"\"hello\"\"\","));
+		check("a name with a line break is quoted", text.contains("\nWifi Network,\"Home\nWifi\","));
+		check("a name with a carriage return is quoted", text.contains("\nWifi Network,\"Office\r\","));
+		check("an empty password gets no line", !text.contains("Empty"));
+		check("no password appears in the report", !text.contains(",password") && !text.contains("Tr0ub4dor") && !text.contains("Passphrase"));
+
+		String bank = reuseGroup(text, "Account Login,Bank,");
+		String shop = reuseGroup(text, "Account Login,Shop,");
+		check("entries with the same password share a reuse group", bank.equals(reuseGroup(text, "Account Login,\"Mail, personal\","))
+				&& shop.equals(reuseGroup(text, "Wifi Network,\"Office\r\",")));
+		check("entries with different passwords do not", !bank.equals(shop) && !shop.equals(reuseGroup(text, "Wifi Network,\"Home\nWifi\",")));
+		check("the summary lists each reused group", text.contains("\n" + bank + ",3\n") && text.contains("\n" + shop + ",2\n"));
+		check("the summary gives the totals", text.contains("\naudited,6\n") && text.contains("\nfailed,1\n"));
+	}
+
+	private static void testConcurrentEntries() throws IOException, InterruptedException {
+		final int threads = 4;
+		final int perThread = 250;
+		StringWriter report = new StringWriter();
+		final VaultAuditor.Audit audit = new VaultAuditor.Audit(report);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < perThread; i++) {
+						// Every thread stores the same 250 passwords, so each is reused once per thread
+						audit.add("Account Login", "Entry " + thread + "-" + i, "Shared-Secret#" + i);
+					}
+					done.countDown();
+				}
+			}).start();
+		}
+		done.await();
+		audit.close();
+		VaultAuditor.AuditSummary summary = audit.finish();
+		check("entries added from several threads are all audited", summary.getEntriesAudited() == threads * perThread);
+		check("and grouped by password", summary.getReusedPasswordGroups() == perThread && summary.getEntriesWithReusedPasswords() == threads * perThread);
+		int entryLines = 0;
+		for (String line : report.toString().split("\n")) {
+			if (line.startsWith("Account Login,Entry ")) {
+				entryLines++;
+			}
+		}
+		check("and each gets one whole report line", entryLines == threads * perThread);
+	}
+
+	private static String reuseGroup(String report, String linePrefix) {
+		int start = report.indexOf("\n" + linePrefix);
+		if (start < 0) {
+			return "missing: " + linePrefix;
+		}
+		int end = report.indexOf('\n', start + 1 + linePrefix.length());
+		String rest = report.substring(start + 1 + linePrefix.length(), end);
+		return rest.substring(rest.indexOf(',') + 1);
+	}
+
+	private static int count(Map<String, Integer> counts, String rating) {
+		return counts.containsKey(rating) ? counts.get(rating) : 0;
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "PASS: " : "FAIL: ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+}
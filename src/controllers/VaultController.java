@@ -7,6 +7,7 @@ import java.security.Security;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Properties;
 
@@ -17,6 +18,7 @@ import javax.swing.tree.DefaultMutableTreeNode;
 import com.sun.mail.smtp.SMTPTransport;
 
 import cryptography.SaltGenerator;
+import cryptography.SecretValue;
 import cryptography.Crypto;
 import cryptography.PasswordHasher;
 import dataManagement.DataEntry;
@@ -193,10 +195,28 @@ public class VaultController {
 	}
 	
 	//*****TODO: When user successfully login, we need to update the last login time******
+	/**
+	 * Signs a user in and opens the home view. Failed attempts are counted by the LoginAttemptService, which also
+	 * turns away attempts made too soon after a failure without checking the password.
+	 * 
+	 * @param	username	email of the account
+	 * @param	password	password typed by the user
+	 * @return	1 if signed in; 0 if the email or password is wrong; -1 if the account must wait before trying again
+	 * 			(see LoginAttemptService.getRetryDelay); -2 if too many failures caused the account to be deleted
+	 */
 	public int loginCheck(String username, String password) throws NoSuchAlgorithmException {
 		
+		LoginAttemptService attempts = LoginAttemptService.getInstance();
+		if (attempts.getRetryDelay(username) > 0) {
+			return -1;
+		}
 		DatabaseManager d = new DatabaseManager("vault_database");
 		User user =d.retrieveUserFromDatabase(username);
+		MailDispatcher.getInstance(); // starts sending anything left in the outbox
+		if (user == null) {
+			attempts.recordFailure(username);
+			return 0;
+		}
 		
 		LocalDateTime fromDateTime = user.getLastLogin();
 		LocalDateTime toDateTime = LocalDateTime.now();
@@ -229,86 +249,78 @@ public class VaultController {
 		/******TODO: MainView should take in user OBJECT!**********/
 		PasswordValidation p = new PasswordValidation();
 		if (p.isValidPassword(user, password)) {
+			attempts.recordSuccess(username);
+			d.createDataEntryIndexes();
+			d.createChangeLog();
+			char[] passwordChars = password.toCharArray();
+			VaultSession.start(user).setArchiveKey(BackupArchive.deriveKey(username, passwordChars));
+			Arrays.fill(passwordChars, '\0');
 			HomeView window = new HomeView(username);
 			//MainView window = new MainView(username);
 			window.frmSentinelDataVault.setVisible(true);
-			//TODO Perform an automatic backup check here
-			checkForAutoBackup(user, user.getLastLogin());
+			BackupScheduler.getInstance().start(user);
+			OperationJournal.getInstance().start(user, VaultSession.getCurrent().getArchiveKey());
+			EntryHistory.getInstance().start(user);
 			return 1;
 		}
 		else {
-			return 0;
+			return (attempts.recordFailure(username) == LoginAttemptService.ACCOUNT_WIPED) ? -2 : 0;
 		}
 	}
 	
 	/**
-	 * Determine if a backup should be created. Create one if needed.
+	 * Keeps the user's operation journal and backup archive readable after a password change, by wrapping their keys
+	 * under the new password, and gives the session the new password's key for later backups.
+	 * 
+	 * @param	user		signed-in user whose password changed
+	 * @param	newPassword	the new password
+	 * @return	positive integer if success; negative if failure
 	 */
-	private static void checkForAutoBackup(User user, LocalDateTime fromDateTime) {
-		LocalDateTime toDateTime = LocalDateTime.now();
-		LocalDateTime tempDateTime = LocalDateTime.from(fromDateTime);
-		
-		long yearsSinceLastLogin = tempDateTime.until(toDateTime, ChronoUnit.YEARS);
-		long monthsSinceLastLogin = tempDateTime.until(toDateTime, ChronoUnit.MONTHS);
-		long daysSinceLastLogin = tempDateTime.until(toDateTime, ChronoUnit.DAYS);
-		long hoursSinceLastLogin = tempDateTime.until(toDateTime, ChronoUnit.HOURS);
-		
-		if (user.getMaxBackupSize() == 1) {
-			return;
-		}
-		else if (user.getMaxBackupSize() == 2 && hoursSinceLastLogin >= 1) {
-			if (JOptionPane.showConfirmDialog(null, "It has been over an hour since your last backup. Do you want to create one now?", "Automatic Backup", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
-				performBackup(user);
-			}
-			else {
-				return;
-			}
-		}
-		else if (user.getMaxBackupSize() == 3 && daysSinceLastLogin >= 1) {
-			if (JOptionPane.showConfirmDialog(null, "It has been over a day since your last backup. Do you want to create one now?", "Automatic Backup", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
-				performBackup(user);
-			}
-			else {
-				return;
-			}
-		}
-		else if (user.getMaxBackupSize() == 4 && daysSinceLastLogin >= 7) {
-			if (JOptionPane.showConfirmDialog(null, "It has been over a week since your last backup. Do you want to create one now?", "Automatic Backup", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
-				performBackup(user);
-			}
-			else {
-				return;
-			}
-		}
-		else if (user.getMaxBackupSize() == 5 && monthsSinceLastLogin >= 1) {
-			if (JOptionPane.showConfirmDialog(null, "It has been over a month since your last backup. Do you want to create one now?", "Automatic Backup", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
-				performBackup(user);
-			}
-			else {
-				return;
-			}
+	public static int rekeySession(User user, String newPassword) {
+		char[] passwordChars = newPassword.toCharArray();
+		SecretValue newKey = BackupArchive.deriveKey(user.getUsername(), passwordChars);
+		Arrays.fill(passwordChars, '\0');
+		VaultSession session = VaultSession.getCurrent();
+		SecretValue oldKey = (session != null && session.getUser().getUsername().equals(user.getUsername())) ? session.getArchiveKey() : null;
+		if (oldKey == null) {
+			newKey.close();
+			return -1;
 		}
-		else if (user.getMaxBackupSize() == 6 && yearsSinceLastLogin >= 1) {
-			if (JOptionPane.showConfirmDialog(null, "It has been over a year since your last backup. Do you want to create one now?", "Automatic Backup", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE) == JOptionPane.YES_OPTION) {
-				performBackup(user);
-			}
-			else {
-				return;
+		int result = OperationJournal.getInstance().changePassword(user.getUsername(), newKey);
+		String destination = BackupScheduler.getInstance().getDestination(user.getUsername());
+		if (destination != null) {
+			File archiveDirectory = BackupManager.getArchiveDirectory(user, destination);
+			if (BackupArchive.isArchive(archiveDirectory) && new BackupArchive(archiveDirectory).rewrap(oldKey, newKey) < 0) {
+				System.err.println("Could not rewrap the backup archive key in " + archiveDirectory.getPath());
+				result = -1;
 			}
 		}
+		session.setArchiveKey(newKey); // closes the old key
+		return result;
 	}
-	
+
 	public static void performBackup(User currentUser) {
+		BackupScheduler scheduler = BackupScheduler.getInstance();
+		String destination = scheduler.getDestination(currentUser.getUsername());
 		JFileChooser fileChooser = new JFileChooser();
 		fileChooser.setDialogTitle("Choose a location to save backup database file");
 		fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY); // User can only select a directory to store a backup
 		fileChooser.setAcceptAllFileFilterUsed(false);
+		if (destination != null) {
+			fileChooser.setSelectedFile(new File(destination));
+		}
 		int result = fileChooser.showDialog(null, "Save Backup");
 		if (result == JFileChooser.APPROVE_OPTION) {
 			// Execute the backup
 			File selectedBackupLocation = fileChooser.getSelectedFile();
+			VaultSession session = VaultSession.getCurrent();
+			if (session != null && session.getArchiveKey() != null) {
+				// Scheduled backups go to the same place from now on; progress is shown by the BackupScheduler's listeners
+				scheduler.setDestination(currentUser.getUsername(), selectedBackupLocation.getAbsolutePath());
+				scheduler.requestBackup(currentUser, true);
+				return;
+			}
 			BackupManager bum = new BackupManager();
-			System.out.println(selectedBackupLocation.getAbsolutePath());
 			bum.createUserBackupDatabase(currentUser, selectedBackupLocation.getAbsolutePath());
 			JOptionPane.showMessageDialog(null, "You have successfully backed up your account!", "Backup Successfully Created", JOptionPane.INFORMATION_MESSAGE);
 		}
@@ -0,0 +1,99 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a single change to a data entry in the vault database, as published by VaultModel.
+ * Events only carry names, types and permissions; they never carry field data, encrypted or not.
+ */
+public class VaultEvent {
+
+	public enum Type {
+		ADDED,		// a new entry was stored
+		UPDATED,	// an entry's name or fields changed (getPreviousEntryName() holds its old name)
+		REMOVED,	// an entry was deleted
+		SHARED,		// an entry's valid users changed (getPreviousValidUsers() holds the old list)
+		RELOADED	// many of the owner's entries changed at once, by an import or restore (entry name and type are null; reload the owner's entries)
+	}
+
+	private final Type type;
+	private final String owner;
+	private final String entryName;
+	private final String entryType;
+	private final String previousEntryName;
+	private final List<String> validUsers;
+	private final List<String> previousValidUsers;
+
+	VaultEvent(Type type, String owner, String entryName, String entryType, String previousEntryName, List<String> validUsers, List<String> previousValidUsers) {
+		this.type = type;
+		this.owner = owner;
+		this.entryName = entryName;
+		this.entryType = entryType;
+		this.previousEntryName = previousEntryName;
+		this.validUsers = copyOf(validUsers);
+		this.previousValidUsers = copyOf(previousValidUsers);
+	}
+
+	private static List<String> copyOf(List<String> users) {
+		if (users == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(new ArrayList<String>(users));
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public String getEntryName() {
+		return entryName;
+	}
+
+	public String getEntryType() {
+		return entryType;
+	}
+
+	/**
+	 * @return	name of the entry before an UPDATED change; the current name for every other type
+	 */
+	public String getPreviousEntryName() {
+		return previousEntryName;
+	}
+
+	public List<String> getValidUsers() {
+		return validUsers;
+	}
+
+	/**
+	 * @return	valid users before a SHARED change; the current valid users for every other type
+	 */
+	public List<String> getPreviousValidUsers() {
+		return previousValidUsers;
+	}
+
+	/**
+	 * @param	username	username (email) of a user
+	 * @return	true if the entry was shared with username before this change
+	 */
+	public boolean wasSharedWith(String username) {
+		return previousValidUsers.contains(username);
+	}
+
+	/**
+	 * @param	username	username (email) of a user
+	 * @return	true if the entry is shared with username after this change
+	 */
+	public boolean isSharedWith(String username) {
+		return validUsers.contains(username);
+	}
+
+	public String toString() {
+		return type + " " + entryType + " \"" + entryName + "\" of " + owner;
+	}
+}
@@ -0,0 +1,84 @@
+package controllers;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.SwingUtilities;
+
+import dataManagement.DataEntry;
+
+/**
+ * Observable view of the vault database. DatabaseManager publishes every committed change to a data entry here, and
+ * views subscribe to apply the change in place instead of rebuilding themselves from a full reload.
+ * Changes made to other databases (backup files) are not published.
+ */
+public class VaultModel {
+
+	public static final String VAULT_DATABASE = "vault_database";
+
+	private static final VaultModel instance = new VaultModel();
+
+	private final List<VaultModelListener> listeners = new CopyOnWriteArrayList<VaultModelListener>();
+
+	private VaultModel() {
+	}
+
+	public static VaultModel getInstance() {
+		return instance;
+	}
+
+	public void addVaultModelListener(VaultModelListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeVaultModelListener(VaultModelListener listener) {
+		listeners.remove(listener);
+	}
+
+	void fireEntryAdded(DataEntry entry) {
+		fire(new VaultEvent(VaultEvent.Type.ADDED, entry.getOwner(), entry.getEntryName(), entry.getEntryType(),
+				entry.getEntryName(), entry.getValidUsers(), entry.getValidUsers()));
+	}
+
+	void fireEntryUpdated(DataEntry oldEntry, String newEntryName) {
+		fire(new VaultEvent(VaultEvent.Type.UPDATED, oldEntry.getOwner(), newEntryName, oldEntry.getEntryType(),
+				oldEntry.getEntryName(), oldEntry.getValidUsers(), oldEntry.getValidUsers()));
+	}
+
+	void fireEntryRemoved(DataEntry entry) {
+		fire(new VaultEvent(VaultEvent.Type.REMOVED, entry.getOwner(), entry.getEntryName(), entry.getEntryType(),
+				entry.getEntryName(), entry.getValidUsers(), entry.getValidUsers()));
+	}
+
+	void fireEntryShared(DataEntry entry, List<String> previousValidUsers) {
+		fire(new VaultEvent(VaultEvent.Type.SHARED, entry.getOwner(), entry.getEntryName(), entry.getEntryType(),
+				entry.getEntryName(), entry.getValidUsers(), previousValidUsers));
+	}
+
+	void fireEntriesReloaded(String owner) {
+		fire(new VaultEvent(VaultEvent.Type.RELOADED, owner, null, null, null, null, null));
+	}
+
+	private void fire(final VaultEvent event) {
+		// Drop cached copies on the committing thread, before any view hears of the change, so a read that follows the
+		// write never sees the old entry
+		VaultSession.entriesModified(event);
+		if (listeners.isEmpty()) {
+			return;
+		}
+		// Listeners update Swing components, so always deliver on the event dispatch thread
+		Runnable dispatch = new Runnable() {
+			public void run() {
+				for (VaultModelListener listener : listeners) {
+					listener.vaultChanged(event);
+				}
+			}
+		};
+		if (SwingUtilities.isEventDispatchThread()) {
+			dispatch.run();
+		}
+		else {
+			SwingUtilities.invokeLater(dispatch);
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package controllers;
+
+/**
+ * Receives changes to the vault database from VaultModel. Always called on the event dispatch thread.
+ */
+public interface VaultModelListener {
+
+	/**
+	 * @param	event	the change that was committed to the vault database
+	 */
+	void vaultChanged(VaultEvent event);
+}
@@ -0,0 +1,261 @@
+package controllers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cryptography.SecretValue;
+import dataManagement.DataEntry;
+import dataManagement.User;
+
+/**
+ * The signed-in user's session, started by VaultController.loginCheck once the password has been validated.
+ * Holds the authenticated User, so the UI does not go back to the database for it, and a small LRU cache of the other
+ * users it has looked up (owners of shared entries). Cached users expire after USER_TTL_MILLIS and are dropped as soon
+ * as DatabaseManager.modifyUserField changes them.
+ *
+ * Cached copies of other users only keep what the UI needs from them: the username, the password salt and data key
+ * (the IV and key material their shared entries are encrypted under) and their settings. The password hash and the
+ * security question and answer are never cached.
+ *
+ * Decrypted data entries the user opens are kept in the session's DataEntryCache until they change, are evicted, or
+ * the session sits idle, and the names and types of the user's own entries are indexed for search-as-you-type.
+ * The key for the user's backup archives is derived from the password at sign-in and held off-heap until sign-out.
+ */
+public class VaultSession {
+
+	private static final int MAX_CACHED_USERS = 64;
+	private static final long USER_TTL_MILLIS = 5 * 60 * 1000;
+
+	private static VaultSession current;
+
+	private User user;
+	private boolean userStale = false;
+	private final DataEntryCache entryCache = new DataEntryCache();
+	private final EntrySearchIndex searchIndex = new EntrySearchIndex();
+	private SecretValue archiveKey;
+
+	// access-ordered, so the eldest entry is the least recently used
+	private final LinkedHashMap<String, CachedUser> userCache = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+			return size() > MAX_CACHED_USERS;
+		}
+	};
+
+	private static class CachedUser {
+		private final User user;
+		private final long expires;
+
+		CachedUser(User user, long expires) {
+			this.user = user;
+			this.expires = expires;
+		}
+	}
+
+	private VaultSession(User user) {
+		this.user = user;
+	}
+
+	/**
+	 * Starts a new session for a user who has just been authenticated, replacing any previous session.
+	 *
+	 * @param	user	the authenticated user
+	 * @return	the new session
+	 */
+	public static synchronized VaultSession start(User user) {
+		if (current != null) {
+			current.clear();
+		}
+		current = new VaultSession(user);
+		return current;
+	}
+
+	/**
+	 * @return	the current session, or null if no user is signed in
+	 */
+	public static synchronized VaultSession getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Ends the current session (sign out) and drops everything it cached.
+	 */
+	public static synchronized void end() {
+		if (current != null) {
+			current.clear();
+		}
+		current = null;
+	}
+
+	/**
+	 * Retrieves one decrypted data entry, through the current session's entry cache if there is a session.
+	 *
+	 * @param	entryName	name of the entry
+	 * @param	owner		User who owns the entry
+	 * @param	entryType	type of the entry
+	 * @return	the decrypted entry, or null if it could not be retrieved
+	 */
+	public static DataEntry findDataEntry(String entryName, User owner, String entryType) {
+		VaultSession session = getCurrent();
+		if (session == null) {
+			return DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).retrieveOneDataEntry(entryName, owner, entryType);
+		}
+		DataEntry entry = session.entryCache.get(owner.getUsername(), entryName, entryType);
+		if (entry == null) {
+			long generation = session.entryCache.getGeneration();
+			entry = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).retrieveOneDataEntry(entryName, owner, entryType);
+			session.entryCache.put(entry, generation);
+		}
+		return entry;
+	}
+
+	/**
+	 * Looks up a user through the current session if there is one, otherwise straight from the vault database.
+	 *
+	 * @param	username	username (email) of the user
+	 * @return	the user, or null if no such user exists
+	 */
+	public static User findUser(String username) {
+		VaultSession session = getCurrent();
+		if (session != null) {
+			return session.getUser(username);
+		}
+		return DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).retrieveUserFromDatabase(username);
+	}
+
+	/**
+	 * Called after data entries in the vault database have changed, on the thread that committed the change.
+	 *
+	 * @param	event	the committed change
+	 */
+	static void entriesModified(VaultEvent event) {
+		VaultSession session = getCurrent();
+		if (session != null) {
+			session.entryCache.invalidate(event);
+		}
+	}
+
+	/**
+	 * Called after a user's row in the 'users' table has been modified.
+	 *
+	 * @param	user	User whose field was modified
+	 */
+	static void userModified(User user) {
+		VaultSession session = getCurrent();
+		if (session != null) {
+			session.invalidateUser(user);
+		}
+	}
+
+	/**
+	 * @return	the authenticated user of this session
+	 */
+	public synchronized User getUser() {
+		if (userStale) {
+			User reloaded = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).retrieveUserFromDatabase(user.getUsername());
+			if (reloaded != null) {
+				user = reloaded;
+			}
+			userStale = false;
+		}
+		return user;
+	}
+
+	/**
+	 * Returns a user by username. The session's own user is returned as is; any other user is served from the cache
+	 * and read from the database once it is missing or expired.
+	 *
+	 * @param	username	username (email) of the user
+	 * @return	the user, or null if no such user exists
+	 */
+	public synchronized User getUser(String username) {
+		if (username == null) {
+			return null;
+		}
+		if (username.equals(user.getUsername())) {
+			return getUser();
+		}
+
+		long now = System.currentTimeMillis();
+		CachedUser cached = userCache.get(username);
+		if (cached != null && cached.expires > now) {
+			return cached.user;
+		}
+
+		User found = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).retrieveUserFromDatabase(username);
+		if (found == null) {
+			userCache.remove(username);
+			return null;
+		}
+		User publicUser = new User(found.getUsername(), null, found.getPasswordSalt(), found.getDataKey(), null, null, found.getLastLogin());
+		publicUser.setDefaultHighSecurity(found.isHighSecurity());
+		publicUser.setAccountWipe(found.isAccountWipeSet());
+		publicUser.setBackupFrequency(found.getBackupFrequency());
+		publicUser.setMaxBackupSize(found.getMaxBackupSize());
+		userCache.put(username, new CachedUser(publicUser, now + USER_TTL_MILLIS));
+		purgeExpired(now);
+		return publicUser;
+	}
+
+	/**
+	 * Drops a user from the cache. If the user is the session's own user and was modified through another User object,
+	 * the session user is read again on its next use.
+	 *
+	 * @param	modified	User whose stored data changed
+	 */
+	public synchronized void invalidateUser(User modified) {
+		userCache.remove(modified.getUsername());
+		if (modified != user && modified.getUsername().equals(user.getUsername())) {
+			userStale = true;
+		}
+	}
+
+	private void purgeExpired(long now) {
+		Iterator<CachedUser> it = userCache.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().expires <= now) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return	cache of the data entries decrypted during this session
+	 */
+	public DataEntryCache getEntryCache() {
+		return entryCache;
+	}
+
+	/**
+	 * @return	search index over the names and types of the user's entries; filled by HomeView when it loads them
+	 */
+	public EntrySearchIndex getSearchIndex() {
+		return searchIndex;
+	}
+
+	/**
+	 * @return	key for the user's backup archives (see BackupArchive.deriveKey), or null if none was set at sign-in
+	 */
+	public synchronized SecretValue getArchiveKey() {
+		return archiveKey;
+	}
+
+	/**
+	 * @param	archiveKey	key for the user's backup archives; the session closes it when it ends
+	 */
+	public synchronized void setArchiveKey(SecretValue archiveKey) {
+		if (this.archiveKey != null && this.archiveKey != archiveKey) {
+			this.archiveKey.close();
+		}
+		this.archiveKey = archiveKey;
+	}
+
+	private synchronized void clear() {
+		userCache.clear();
+		entryCache.close();
+		searchIndex.close();
+		setArchiveKey(null);
+	}
+}
@@ -98,15 +98,14 @@ public class Crypto {
 	}
 	
 	public String generateShareString(User user, DataEntry entry) {
-		String shareString = entry.getEntryType() + "\n\n";
+		StringBuilder shareString = new StringBuilder(entry.getEntryType()).append("\n\n");
 		
 		for (String fieldData : entry.getFieldDataList()) {
-			if (!fieldData.equals(""))
-			shareString += fieldData;
-			shareString += "\n\n";
+			shareString.append(fieldData).append("\n\n");
 		}
 		
-		return shareString.substring(0, shareString.length() - 2);
+		shareString.setLength(shareString.length() - 2);
+		return shareString.toString();
 	}
 	
 	public DataEntry encrypt(User user, DataEntry data) {
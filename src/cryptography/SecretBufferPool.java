@@ -0,0 +1,89 @@
+package cryptography;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of direct (off-heap) ByteBuffers for SecretValues. Buffers come in power-of-two size classes from
+ * MIN_BUFFER_SIZE to MAX_BUFFER_SIZE so that decrypting a vault's worth of fields reuses a handful of buffers instead of
+ * allocating new direct memory for every field. Larger requests get an unpooled buffer.
+ * Buffers must be zeroed before they are released; SecretValue.close() does this.
+ */
+public class SecretBufferPool {
+
+	public static final int MIN_BUFFER_SIZE = 64;
+	public static final int MAX_BUFFER_SIZE = 64 * 1024;
+	private static final int MAX_BUFFERS_PER_CLASS = 32;
+
+	private static final SecretBufferPool defaultPool = new SecretBufferPool();
+
+	private final List<ArrayDeque<ByteBuffer>> freeBuffers;
+
+	public SecretBufferPool() {
+		int numClasses = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE) + 1;
+		freeBuffers = new ArrayList<ArrayDeque<ByteBuffer>>(numClasses);
+		for (int i = 0; i < numClasses; i++) {
+			freeBuffers.add(new ArrayDeque<ByteBuffer>());
+		}
+	}
+
+	public static SecretBufferPool getDefault() {
+		return defaultPool;
+	}
+
+	/**
+	 * Takes a cleared direct buffer that can hold at least the given number of bytes.
+	 *
+	 * @param	minCapacity	number of bytes needed
+	 * @return	a direct buffer with position 0 and limit at its capacity
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int sizeClass = sizeClass(minCapacity);
+		if (sizeClass < 0) {
+			return ByteBuffer.allocateDirect(minCapacity);
+		}
+		synchronized (freeBuffers.get(sizeClass)) {
+			ByteBuffer buffer = freeBuffers.get(sizeClass).poll();
+			if (buffer != null) {
+				buffer.clear();
+				return buffer;
+			}
+		}
+		return ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << sizeClass);
+	}
+
+	/**
+	 * Returns a zeroed buffer to the pool. Buffers that do not belong to a size class, or whose class is full, are left
+	 * for the garbage collector.
+	 *
+	 * @param	buffer	buffer taken from acquire(), already zeroed
+	 */
+	public void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		int sizeClass = sizeClass(capacity);
+		if (sizeClass < 0 || (MIN_BUFFER_SIZE << sizeClass) != capacity) {
+			return;
+		}
+		synchronized (freeBuffers.get(sizeClass)) {
+			if (freeBuffers.get(sizeClass).size() < MAX_BUFFERS_PER_CLASS) {
+				freeBuffers.get(sizeClass).push(buffer);
+			}
+		}
+	}
+
+	/**
+	 * @return	index of the smallest size class that holds the given number of bytes, or -1 if it is too large to pool
+	 */
+	private static int sizeClass(int capacity) {
+		if (capacity > MAX_BUFFER_SIZE) {
+			return -1;
+		}
+		if (capacity <= MIN_BUFFER_SIZE) {
+			return 0;
+		}
+		int roundedUp = Integer.highestOneBit(capacity - 1) << 1;
+		return Integer.numberOfTrailingZeros(roundedUp) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+	}
+}
@@ -0,0 +1,169 @@
+package cryptography;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A decrypted value held outside the Java heap. The bytes live in a pooled direct ByteBuffer, so they are never
+ * copied around by the garbage collector, and close() overwrites them with zeros before the buffer goes back to the
+ * pool. Nothing in this class creates a String from the secret.
+ *
+ * For Swing, toCharArray() and fromChars() work with the char[] a JPasswordField uses (getPassword()); callers should
+ * Arrays.fill() those arrays once they are done with them.
+ * Text is encoded with the platform default charset, which is what Crypto.encrypt and Crypto.decrypt use for fields.
+ */
+public class SecretValue implements AutoCloseable {
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private final SecretBufferPool pool;
+	private final int length;
+	private ByteBuffer buffer;
+
+	/**
+	 * @param pool		pool the buffer is returned to on close
+	 * @param buffer	buffer holding the secret in [0, length)
+	 * @param length	number of bytes in the secret
+	 */
+	SecretValue(SecretBufferPool pool, ByteBuffer buffer, int length) {
+		this.pool = pool;
+		this.buffer = buffer;
+		this.length = length;
+	}
+
+	/**
+	 * Copies bytes into a new secret. The caller is still responsible for wiping the array.
+	 *
+	 * @param	bytes	secret bytes
+	 * @return	new SecretValue holding a copy of the bytes
+	 */
+	public static SecretValue copyOf(byte[] bytes) {
+		SecretBufferPool pool = SecretBufferPool.getDefault();
+		ByteBuffer buffer = pool.acquire(bytes.length);
+		buffer.put(bytes);
+		return new SecretValue(pool, buffer, bytes.length);
+	}
+
+	/**
+	 * Encodes characters (e.g. from JPasswordField.getPassword()) into a new secret without going through a String.
+	 * The caller is still responsible for wiping the array.
+	 *
+	 * @param	chars	secret characters
+	 * @return	new SecretValue holding the encoded characters
+	 */
+	public static SecretValue fromChars(char[] chars) {
+		CharsetEncoder encoder = CHARSET.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		SecretBufferPool pool = SecretBufferPool.getDefault();
+		ByteBuffer buffer = pool.acquire((int) Math.ceil(chars.length * (double) encoder.maxBytesPerChar()));
+		encoder.encode(CharBuffer.wrap(chars), buffer, true);
+		encoder.flush(buffer);
+		return new SecretValue(pool, buffer, buffer.position());
+	}
+
+	/**
+	 * @return	number of bytes in the secret
+	 */
+	public int length() {
+		return length;
+	}
+
+	public boolean isEmpty() {
+		return length == 0;
+	}
+
+	public synchronized boolean isClosed() {
+		return buffer == null;
+	}
+
+	/**
+	 * Decodes the secret into a new char array, e.g. for JPasswordField or StrengthChecker.
+	 *
+	 * @return	the secret's characters; the caller should wipe the array when done with it
+	 */
+	public synchronized char[] toCharArray() {
+		CharsetDecoder decoder = CHARSET.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer chars = CharBuffer.allocate((int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+		decoder.decode(contents(), chars, true);
+		decoder.flush(chars);
+		char[] result = Arrays.copyOf(chars.array(), chars.position());
+		Arrays.fill(chars.array(), '\0');
+		return result;
+	}
+
+	/**
+	 * @return	a copy of the secret's bytes; the caller should wipe the array when done with it
+	 */
+	public synchronized byte[] toByteArray() {
+		byte[] bytes = new byte[length];
+		contents().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Compares the secret with characters (e.g. JPasswordField.getPassword()) in time that does not depend on where
+	 * they first differ.
+	 *
+	 * @param	chars	characters to compare with
+	 * @return	true if the secret decodes to exactly these characters
+	 */
+	public boolean contentEquals(char[] chars) {
+		char[] secret = toCharArray();
+		try {
+			int diff = secret.length ^ chars.length;
+			for (int i = 0; i < Math.min(secret.length, chars.length); i++) {
+				diff |= secret[i] ^ chars[i];
+			}
+			return diff == 0;
+		}
+		finally {
+			Arrays.fill(secret, '\0');
+		}
+	}
+
+	/**
+	 * @return	read-only view of the secret's bytes, positioned at 0 with the limit at its length
+	 * @throws	IllegalStateException if the secret has been closed
+	 */
+	synchronized ByteBuffer contents() {
+		if (buffer == null) {
+			throw new IllegalStateException("SecretValue has been closed");
+		}
+		ByteBuffer view = buffer.asReadOnlyBuffer();
+		view.position(0);
+		view.limit(length);
+		return view;
+	}
+
+	/**
+	 * Zeroes the secret and returns its buffer to the pool. Closing more than once has no effect.
+	 */
+	public synchronized void close() {
+		if (buffer != null) {
+			wipe(buffer);
+			pool.release(buffer);
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Overwrites a whole buffer with zeros.
+	 *
+	 * @param	buffer	buffer to wipe
+	 */
+	static void wipe(ByteBuffer buffer) {
+		for (int i = 0; i < buffer.capacity(); i++) {
+			buffer.put(i, (byte) 0);
+		}
+	}
+
+	public String toString() {
+		return "SecretValue[" + length + " bytes" + (isClosed() ? ", closed]" : "]");
+	}
+}
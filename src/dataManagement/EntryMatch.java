@@ -0,0 +1,53 @@
+package dataManagement;
+
+/**
+ * One data entry found by a search, identified by owner, name and type. Matches with a lower rank are better.
+ */
+public class EntryMatch implements Comparable<EntryMatch> {
+
+	private final String owner;
+	private final String entryName;
+	private final String entryType;
+	private final int rank;
+
+	public EntryMatch(String owner, String entryName, String entryType, int rank) {
+		this.owner = owner;
+		this.entryName = entryName;
+		this.entryType = entryType;
+		this.rank = rank;
+	}
+
+	public String getOwner() {
+		return this.owner;
+	}
+
+	public String getEntryName() {
+		return this.entryName;
+	}
+
+	public String getEntryType() {
+		return this.entryType;
+	}
+
+	public int getRank() {
+		return this.rank;
+	}
+
+	/**
+	 * Orders matches best first: by rank, then entry name, then entry type.
+	 */
+	public int compareTo(EntryMatch o) {
+		if (rank != o.rank) {
+			return (rank < o.rank) ? -1 : 1;
+		}
+		int byName = entryName.compareTo(o.entryName);
+		if (byName != 0) {
+			return byName;
+		}
+		return entryType.compareTo(o.entryType);
+	}
+
+	public String toString() {
+		return entryName + "  (" + entryType + ")";
+	}
+}
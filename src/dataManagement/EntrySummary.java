@@ -0,0 +1,42 @@
+package dataManagement;
+
+import java.time.LocalDateTime;
+
+/**
+ * The name, type and last modified time of one data entry, read without touching (or decrypting) its fields.
+ * Lists of entries hold these and only decrypt the DataEntry an item refers to when it is opened.
+ */
+public class EntrySummary {
+
+	private final String owner;
+	private final String entryName;
+	private final String entryType;
+	private final LocalDateTime lastModified;
+
+	public EntrySummary(String owner, String entryName, String entryType, LocalDateTime lastModified) {
+		this.owner = owner;
+		this.entryName = entryName;
+		this.entryType = entryType;
+		this.lastModified = lastModified;
+	}
+
+	public String getOwner() {
+		return this.owner;
+	}
+
+	public String getEntryName() {
+		return this.entryName;
+	}
+
+	public String getEntryType() {
+		return this.entryType;
+	}
+
+	public LocalDateTime getLastModified() {
+		return this.lastModified;
+	}
+
+	public String toString() {
+		return entryName;
+	}
+}
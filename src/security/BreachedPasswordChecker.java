@@ -0,0 +1,196 @@
+package security;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Offline lookup of passwords that appear in known breach corpora.
+ * Reads a sorted file of fixed-width SHA-1 hash prefixes (written by BreachedPasswordConverter) through memory-mapped
+ * segments, and finds a hash with an interpolation search that falls back to binary search. Nothing is loaded onto
+ * the heap, so lookups stay O(log n) page reads even for files of several gigabytes.
+ *
+ * File layout (big-endian):
+ * 	int		magic (BREACH_MAGIC)
+ * 	int		prefix length in bytes
+ * 	long	number of records
+ * 	byte[]	records, each the first (prefix length) bytes of a SHA-1 hash, sorted as unsigned numbers
+ */
+public class BreachedPasswordChecker {
+
+	public static final int BREACH_MAGIC = 0x53444248; // "SDBH"
+	public static final String DEFAULT_BREACH_FILE = "breached_passwords.bin";
+	static final int HEADER_SIZE = 16;
+	private static final int INTERPOLATION_STEPS = 8; // switch to binary search if interpolation has not converged
+
+	private static BreachedPasswordChecker defaultChecker;
+	private static boolean defaultCheckerLoaded = false;
+
+	private final MappedByteBuffer[] segments;
+	private final int prefixLength;
+	private final long numRecords;
+	private final long recordsPerSegment;
+
+	private BreachedPasswordChecker(MappedByteBuffer[] segments, int prefixLength, long numRecords, long recordsPerSegment) {
+		this.segments = segments;
+		this.prefixLength = prefixLength;
+		this.numRecords = numRecords;
+		this.recordsPerSegment = recordsPerSegment;
+	}
+
+	/**
+	 * Maps a breach file written by BreachedPasswordConverter.
+	 *
+	 * @param	breachFile	sorted hash prefix file
+	 * @return	BreachedPasswordChecker backed by the mapped file
+	 * @throws	IOException if the file cannot be read or is not a breach file
+	 */
+	public static BreachedPasswordChecker open(File breachFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(breachFile, "r");
+		try {
+			if (file.length() < HEADER_SIZE || file.readInt() != BREACH_MAGIC) {
+				throw new IOException("Not a breached password file");
+			}
+			int prefixLength = file.readInt();
+			long numRecords = file.readLong();
+			if (prefixLength < 8 || prefixLength > 20 || HEADER_SIZE + numRecords * prefixLength > file.length()) {
+				throw new IOException("Corrupt breached password file header");
+			}
+
+			// A single mapping is limited to 2 GB, so map whole records in as many segments as needed
+			long recordsPerSegment = Integer.MAX_VALUE / prefixLength;
+			int numSegments = (int) Math.max(1, (numRecords + recordsPerSegment - 1) / recordsPerSegment);
+			MappedByteBuffer[] segments = new MappedByteBuffer[numSegments];
+			FileChannel channel = file.getChannel();
+			for (int i = 0; i < numSegments; i++) {
+				long firstRecord = i * recordsPerSegment;
+				long segmentRecords = Math.min(recordsPerSegment, numRecords - firstRecord);
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + firstRecord * prefixLength, segmentRecords * prefixLength);
+			}
+			return new BreachedPasswordChecker(segments, prefixLength, numRecords, recordsPerSegment);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the breach file stored next to the vault database ("breached_passwords.bin"), mapped once on first use.
+	 *
+	 * @return	the default checker, or null if no breach file has been converted
+	 */
+	public static synchronized BreachedPasswordChecker getDefault() {
+		if (!defaultCheckerLoaded) {
+			defaultCheckerLoaded = true;
+			File breachFile = new File(DEFAULT_BREACH_FILE);
+			if (breachFile.exists()) {
+				try {
+					defaultChecker = open(breachFile);
+				}
+				catch (IOException e) {
+					System.err.println(e.getClass().getName() + ": " + e.getMessage());
+				}
+			}
+		}
+		return defaultChecker;
+	}
+
+	/**
+	 * Checks if a password appears in the breach corpus.
+	 *
+	 * @param	password	password to check
+	 * @return	true if the SHA-1 hash of password is in the breach file
+	 */
+	public boolean isBreached(String password) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			return containsHash(md.digest(password.getBytes(StandardCharsets.UTF_8)));
+		}
+		catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if a SHA-1 hash (or any hash at least as long as the stored prefixes) is in the breach file.
+	 *
+	 * @param	hash	raw hash bytes
+	 * @return	true if the hash prefix is in the breach file
+	 */
+	public boolean containsHash(byte[] hash) {
+		long key = leadingLong(hash);
+		long low = 0;
+		long high = numRecords - 1;
+		int steps = 0;
+		while (low <= high) {
+			long mid;
+			long lowKey = recordLeadingLong(low);
+			long highKey = recordLeadingLong(high);
+			if (Long.compareUnsigned(key, lowKey) < 0 || Long.compareUnsigned(key, highKey) > 0) {
+				return false;
+			}
+			if (steps++ < INTERPOLATION_STEPS && highKey != lowKey) {
+				// SHA-1 hashes are uniformly distributed, so the key's position is proportional to its value
+				double fraction = unsignedToDouble(key - lowKey) / unsignedToDouble(highKey - lowKey);
+				mid = low + (long) (fraction * (high - low));
+			}
+			else {
+				mid = (low + high) >>> 1;
+			}
+			int comparison = compareRecord(mid, hash);
+			if (comparison < 0) {
+				low = mid + 1;
+			}
+			else if (comparison > 0) {
+				high = mid - 1;
+			}
+			else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return	number of hash prefixes in the breach file
+	 */
+	public long size() {
+		return numRecords;
+	}
+
+	private int compareRecord(long record, byte[] hash) {
+		MappedByteBuffer segment = segments[(int) (record / recordsPerSegment)];
+		int offset = (int) (record % recordsPerSegment) * prefixLength;
+		for (int i = 0; i < prefixLength; i++) {
+			int difference = (segment.get(offset + i) & 0xff) - (hash[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return 0;
+	}
+
+	private long recordLeadingLong(long record) {
+		MappedByteBuffer segment = segments[(int) (record / recordsPerSegment)];
+		return segment.getLong((int) (record % recordsPerSegment) * prefixLength);
+	}
+
+	private static long leadingLong(byte[] hash) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (hash[i] & 0xff);
+		}
+		return value;
+	}
+
+	private static double unsignedToDouble(long value) {
+		double result = (double) (value >>> 1) * 2.0;
+		return result + (value & 1);
+	}
+}
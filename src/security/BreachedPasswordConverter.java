@@ -0,0 +1,117 @@
+package security;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Offline tool that converts a plain-text SHA-1 hash list into the binary file read by BreachedPasswordChecker.
+ * Each input line holds a 40-digit hex SHA-1 hash, optionally followed by ":count" (the format of the
+ * "ordered by hash" Pwned Passwords download). Lines must already be sorted by hash.
+ *
+ * Usage: BreachedPasswordConverter <hash list> [output file] [prefix length in bytes]
+ */
+public class BreachedPasswordConverter {
+
+	private static final int DEFAULT_PREFIX_LENGTH = 10; // 80 bits keeps false matches negligible at half the size
+
+	/**
+	 * Converts a sorted plain-text hash list.
+	 *
+	 * @param	hashListFile	plain-text hash list, one hex SHA-1 hash per line
+	 * @param	breachFile		binary file to write
+	 * @param	prefixLength	number of leading hash bytes to keep per record (8 to 20)
+	 * @return	number of distinct records written
+	 * @throws	IOException if the input cannot be read, is not sorted, or the output cannot be written
+	 */
+	public long convert(File hashListFile, File breachFile, int prefixLength) throws IOException {
+		if (prefixLength < 8 || prefixLength > 20) {
+			throw new IllegalArgumentException("Prefix length must be between 8 and 20 bytes");
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(hashListFile), StandardCharsets.US_ASCII));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(breachFile), 1 << 16));
+		long numRecords = 0;
+		try {
+			// Header is rewritten with the final record count once all records are written
+			out.writeInt(BreachedPasswordChecker.BREACH_MAGIC);
+			out.writeInt(prefixLength);
+			out.writeLong(0);
+
+			byte[] previous = null;
+			byte[] record = new byte[prefixLength];
+			String line;
+			long lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				int separator = line.indexOf(':');
+				String hexHash = (separator >= 0) ? line.substring(0, separator) : line;
+				if (hexHash.length() != 40) {
+					throw new IOException("Line " + lineNumber + " is not a SHA-1 hash: " + line);
+				}
+				for (int i = 0; i < prefixLength; i++) {
+					record[i] = (byte) Integer.parseInt(hexHash.substring(2 * i, 2 * i + 2), 16);
+				}
+
+				if (previous != null) {
+					int comparison = CommonPasswordFilterBuilder.UNSIGNED_BYTE_ORDER.compare(previous, record);
+					if (comparison > 0) {
+						throw new IOException("Line " + lineNumber + " is out of order; the hash list must be sorted by hash");
+					}
+					if (comparison == 0) {
+						continue; // Distinct hashes can share a prefix; keep one record
+					}
+				}
+				else {
+					previous = new byte[prefixLength];
+				}
+				out.write(record);
+				System.arraycopy(record, 0, previous, 0, prefixLength);
+				numRecords++;
+			}
+		}
+		finally {
+			reader.close();
+			out.close();
+		}
+
+		RandomAccessFile header = new RandomAccessFile(breachFile, "rw");
+		try {
+			header.seek(8);
+			header.writeLong(numRecords);
+		}
+		finally {
+			header.close();
+		}
+		return numRecords;
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: BreachedPasswordConverter <hash list> [output file] [prefix length in bytes]");
+			return;
+		}
+		File breachFile = new File((args.length > 1) ? args[1] : BreachedPasswordChecker.DEFAULT_BREACH_FILE);
+		int prefixLength = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_PREFIX_LENGTH;
+
+		BreachedPasswordConverter converter = new BreachedPasswordConverter();
+		try {
+			long start = System.currentTimeMillis();
+			long numRecords = converter.convert(new File(args[0]), breachFile, prefixLength);
+			System.out.println("Wrote " + numRecords + " hash prefixes to " + breachFile.getPath() + " in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package security;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.passay.CharacterRule;
+import org.passay.EnglishCharacterData;
+import org.passay.PasswordGenerator;
+
+/**
+ * Reusable password generator for provisioning many credentials at once (e.g. rotating every Wifi password).
+ * The password policy (character rules, special characters, repetition pattern) is compiled once in the constructor,
+ * and every password is drawn from one shared SecureRandom, which seeds itself from the platform's entropy source.
+ * Instances are thread-safe.
+ */
+public class BulkPasswordGenerator {
+
+	private static final char[] SPECIAL_CHARACTERS = "!@#$%^&*()-=_+[]{}|\'\"\\/?:.~".toCharArray();
+	private static final char[] REPLACEMENT_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+	private static final Pattern REPEAT_CHAR_PATTERN = Pattern.compile("([a-zA-Z0-9])\\1+");
+
+	private final SecureRandom random;
+	private final PasswordGenerator generator;
+	private final List<CharacterRule> passRules;
+	private final boolean containsSpecial;
+	private final boolean specialOnly;
+	private final boolean avoidRepetition;
+	private final int passwordLength;
+
+	/**
+	 * Compiles a password policy from user-entered criteria.
+	 *
+	 * @param containsUpper		Determines if passwords will contain uppercase letters
+	 * @param containsLower		Determines if passwords will contain lowercase letters
+	 * @param containsDigit		Determines if passwords will contain digits
+	 * @param containsSpecial	Determines if passwords will contain special characters
+	 * @param avoidRepetition	Determines if passwords will contain letter or digit repetitions
+	 * @param passwordLength	Determines length of the passwords
+	 */
+	public BulkPasswordGenerator(boolean containsUpper, boolean containsLower, boolean containsDigit, boolean containsSpecial, boolean avoidRepetition, int passwordLength) {
+		this(new SecureRandom(), containsUpper, containsLower, containsDigit, containsSpecial, avoidRepetition, passwordLength);
+	}
+
+	BulkPasswordGenerator(SecureRandom random, boolean containsUpper, boolean containsLower, boolean containsDigit, boolean containsSpecial, boolean avoidRepetition, int passwordLength) {
+		this.random = random;
+		this.generator = new PasswordGenerator(random);
+		List<CharacterRule> rules = new ArrayList<CharacterRule>();
+		if (containsUpper) {
+			rules.add(new CharacterRule(EnglishCharacterData.UpperCase, 1));
+		}
+		if (containsLower) {
+			rules.add(new CharacterRule(EnglishCharacterData.LowerCase, 1));
+		}
+		if (containsDigit) {
+			rules.add(new CharacterRule(EnglishCharacterData.Digit, 1));
+		}
+		this.passRules = Collections.unmodifiableList(rules);
+		this.containsSpecial = containsSpecial;
+		this.specialOnly = containsSpecial && rules.isEmpty();
+		this.avoidRepetition = avoidRepetition;
+		this.passwordLength = passwordLength;
+	}
+
+	/**
+	 * Generates a single password that follows the compiled policy.
+	 *
+	 * @return	generated password
+	 */
+	public String next() {
+		String password;
+		if (specialOnly) {
+			// Password will contain ONLY special characters, randomly selected
+			char[] specOnlyPassword = new char[passwordLength];
+			for (int i = 0; i < passwordLength; i++) {
+				specOnlyPassword[i] = SPECIAL_CHARACTERS[random.nextInt(SPECIAL_CHARACTERS.length)];
+			}
+			password = new String(specOnlyPassword);
+		}
+		else if (containsSpecial) {
+			// Password will contain AT LEAST ONE special characters
+			char[] tempPassArray = generator.generatePassword(passwordLength, passRules).toCharArray();
+			// Replace a random amount of letters with special characters
+			int numReplacements = random.nextInt(Math.max(1, passwordLength / 2));
+			int i = 0;
+			do {
+				tempPassArray[random.nextInt(passwordLength)] = SPECIAL_CHARACTERS[random.nextInt(SPECIAL_CHARACTERS.length)];
+			} while (++i < numReplacements);
+			password = new String(tempPassArray);
+		}
+		else {
+			password = generator.generatePassword(passwordLength, passRules);
+		}
+
+		if (avoidRepetition) {
+			return removeRepeatChars(password);
+		}
+		return password;
+	}
+
+	/**
+	 * Generates a number of passwords lazily; each password is only created when the stream reaches it.
+	 *
+	 * @param	numPasswords	number of passwords to generate
+	 * @return	Stream of generated passwords
+	 */
+	public Stream<String> generate(long numPasswords) {
+		return Stream.generate(new Supplier<String>() {
+			public String get() {
+				return next();
+			}
+		}).limit(numPasswords);
+	}
+
+	/**
+	 * Removes all instances of duplicate letters or digits from a given password.
+	 *
+	 * @param password	password to remove duplicate letters or digits from
+	 * @return			new form of password absent of any duplicate letters or digits
+	 */
+	private String removeRepeatChars(String password) {
+		char[] newPassword = password.toCharArray();
+		Matcher matcher = REPEAT_CHAR_PATTERN.matcher(password);
+
+		while (matcher.find()) {
+			int dupePosition = matcher.start();
+			char duplicateChar = password.charAt(dupePosition);
+			char replacementChar = REPLACEMENT_CHARACTERS[random.nextInt(REPLACEMENT_CHARACTERS.length)];
+			while (duplicateChar == replacementChar) {
+				replacementChar = REPLACEMENT_CHARACTERS[random.nextInt(REPLACEMENT_CHARACTERS.length)];
+			}
+			newPassword[dupePosition] = replacementChar;
+		}
+
+		return new String(newPassword);
+	}
+}
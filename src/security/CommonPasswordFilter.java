@@ -0,0 +1,178 @@
+package security;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Two-tier lookup of common passwords and dictionary words.
+ * A memory-mapped Bloom filter answers most lookups with a handful of memory reads, and only possible matches are
+ * confirmed against the exact (sorted, memory-mapped) word list. Both files are produced offline by
+ * CommonPasswordFilterBuilder from a local wordlist.
+ *
+ * Bloom file layout (big-endian):
+ * 	int		magic (BLOOM_MAGIC)
+ * 	int		number of hash functions
+ * 	long	number of bits
+ * 	long[]	bit array
+ */
+public class CommonPasswordFilter {
+
+	public static final int BLOOM_MAGIC = 0x53444246; // "SDBF"
+	public static final String BLOOM_EXTENSION = ".bloom";
+	public static final String WORD_LIST_EXTENSION = ".words";
+	public static final String DEFAULT_FILTER_NAME = "common_passwords";
+	static final int BLOOM_HEADER_SIZE = 16;
+
+	private static CommonPasswordFilter defaultFilter;
+	private static boolean defaultFilterLoaded = false;
+
+	private final MappedByteBuffer bloomBits;
+	private final int numHashes;
+	private final long numBits;
+	private final MappedWordList wordList;
+
+	private CommonPasswordFilter(MappedByteBuffer bloomBits, MappedWordList wordList) throws IOException {
+		if (bloomBits.capacity() < BLOOM_HEADER_SIZE || bloomBits.getInt(0) != BLOOM_MAGIC) {
+			throw new IOException("Not a Bloom filter file");
+		}
+		this.bloomBits = bloomBits;
+		this.numHashes = bloomBits.getInt(4);
+		this.numBits = bloomBits.getLong(8);
+		if (numHashes <= 0 || numBits <= 0 || BLOOM_HEADER_SIZE + ((numBits + 63) / 64) * 8 > bloomBits.capacity()) {
+			throw new IOException("Corrupt Bloom filter header");
+		}
+		this.wordList = wordList;
+	}
+
+	/**
+	 * Maps a filter built by CommonPasswordFilterBuilder.
+	 *
+	 * @param	filterName	path of the filter without extension (the ".bloom" and ".words" files must both exist)
+	 * @return	CommonPasswordFilter backed by the mapped files
+	 * @throws	IOException if either file cannot be read or is corrupt
+	 */
+	public static CommonPasswordFilter open(String filterName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(filterName + BLOOM_EXTENSION, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer bits = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new CommonPasswordFilter(bits, MappedWordList.open(new File(filterName + WORD_LIST_EXTENSION)));
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the filter stored next to the vault database ("common_passwords.bloom" and "common_passwords.words").
+	 * The files are mapped once on first use.
+	 *
+	 * @return	the default filter, or null if it has not been built
+	 */
+	public static synchronized CommonPasswordFilter getDefault() {
+		if (!defaultFilterLoaded) {
+			defaultFilterLoaded = true;
+			if (new File(DEFAULT_FILTER_NAME + BLOOM_EXTENSION).exists()) {
+				try {
+					defaultFilter = open(DEFAULT_FILTER_NAME);
+				}
+				catch (IOException e) {
+					System.err.println(e.getClass().getName() + ": " + e.getMessage());
+				}
+			}
+		}
+		return defaultFilter;
+	}
+
+	/**
+	 * Checks if a word is a known common password or dictionary word. Case-insensitive.
+	 *
+	 * @param	word	word to look up
+	 * @return	true if the word is in the list
+	 */
+	public boolean contains(String word) {
+		String normalized = normalize(word);
+		byte[] bytes = normalized.getBytes(StandardCharsets.UTF_8);
+		if (!mightContain(bytes)) {
+			return false;
+		}
+		// Bloom filter hit; confirm against the exact list to rule out false positives
+		return wordList.contains(normalized);
+	}
+
+	/**
+	 * @return	number of words in the exact list
+	 */
+	public int size() {
+		return wordList.size();
+	}
+
+	private boolean mightContain(byte[] word) {
+		long hash1 = hash(word);
+		long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L) | 1L;
+		for (int i = 0; i < numHashes; i++) {
+			long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+			long bitWord = bloomBits.getLong(BLOOM_HEADER_SIZE + (int) (bit >>> 6) * 8);
+			if ((bitWord & (1L << (bit & 63))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Normalizes a word the same way the builder does before storing it.
+	 *
+	 * @param	word	word to normalize
+	 * @return	trimmed, lowercase form of word
+	 */
+	static String normalize(String word) {
+		return word.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * Computes the first of the two base hashes used for double hashing (FNV-1a finished with a 64-bit mix).
+	 *
+	 * @param	word	UTF-8 bytes of a normalized word
+	 * @return	64-bit hash of word
+	 */
+	static long hash(byte[] word) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < word.length; i++) {
+			hash ^= (word[i] & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		return mix(hash);
+	}
+
+	/**
+	 * Sets the bits for a word; shared with the builder so both sides agree on bit positions.
+	 *
+	 * @param	bits		bit array to update
+	 * @param	numBits		number of usable bits in the array
+	 * @param	numHashes	number of hash functions
+	 * @param	word		UTF-8 bytes of a normalized word
+	 */
+	static void addToBits(long[] bits, long numBits, int numHashes, byte[] word) {
+		long hash1 = hash(word);
+		long hash2 = mix(hash1 ^ 0x9e3779b97f4a7c15L) | 1L;
+		for (int i = 0; i < numHashes; i++) {
+			long bit = ((hash1 + i * hash2) & Long.MAX_VALUE) % numBits;
+			bits[(int) (bit >>> 6)] |= (1L << (bit & 63));
+		}
+	}
+
+	private static long mix(long hash) {
+		hash ^= (hash >>> 33);
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= (hash >>> 33);
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= (hash >>> 33);
+		return hash;
+	}
+}
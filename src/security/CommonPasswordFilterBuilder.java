@@ -0,0 +1,162 @@
+package security;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Offline tool that builds the files read by CommonPasswordFilter from a plain-text wordlist (one word per line).
+ *
+ * Usage: CommonPasswordFilterBuilder <wordlist> [output name] [false positive rate]
+ */
+public class CommonPasswordFilterBuilder {
+
+	private static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+	// Unsigned byte order; MappedWordList.contains() binary searches in this order
+	static final Comparator<byte[]> UNSIGNED_BYTE_ORDER = new Comparator<byte[]>() {
+		public int compare(byte[] a, byte[] b) {
+			int shared = Math.min(a.length, b.length);
+			for (int i = 0; i < shared; i++) {
+				int difference = (a[i] & 0xff) - (b[i] & 0xff);
+				if (difference != 0) {
+					return difference;
+				}
+			}
+			return a.length - b.length;
+		}
+	};
+
+	/**
+	 * Builds a ".bloom" and ".words" file pair from a wordlist.
+	 *
+	 * @param	wordListFile		plain-text wordlist, one word per line (UTF-8)
+	 * @param	filterName			output path without extension
+	 * @param	falsePositiveRate	target false positive rate of the Bloom filter (e.g. 0.001)
+	 * @return	number of distinct words written
+	 * @throws	IOException if the wordlist cannot be read or the output cannot be written
+	 */
+	public int build(File wordListFile, String filterName, double falsePositiveRate) throws IOException {
+		List<byte[]> words = readSortedWords(wordListFile, true);
+		writeBloomFilter(words, new File(filterName + CommonPasswordFilter.BLOOM_EXTENSION), falsePositiveRate);
+		writeWordList(words, new File(filterName + CommonPasswordFilter.WORD_LIST_EXTENSION));
+		return words.size();
+	}
+
+	/**
+	 * Reads a wordlist into a sorted, duplicate-free list of UTF-8 words.
+	 *
+	 * @param	wordListFile	plain-text wordlist, one word per line (UTF-8)
+	 * @param	normalize		if true, words are trimmed and lowercased the way CommonPasswordFilter looks them up
+	 * @return	words sorted by unsigned byte order
+	 * @throws	IOException if the wordlist cannot be read
+	 */
+	static List<byte[]> readSortedWords(File wordListFile, boolean normalize) throws IOException {
+		List<byte[]> words = new ArrayList<byte[]>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(wordListFile), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String word = normalize ? CommonPasswordFilter.normalize(line) : line.trim();
+				if (!word.isEmpty()) {
+					words.add(word.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		Collections.sort(words, UNSIGNED_BYTE_ORDER);
+
+		// Remove duplicates in place now that equal words are adjacent
+		int distinct = 0;
+		for (int i = 0; i < words.size(); i++) {
+			if (distinct == 0 || UNSIGNED_BYTE_ORDER.compare(words.get(distinct - 1), words.get(i)) != 0) {
+				words.set(distinct++, words.get(i));
+			}
+		}
+		return new ArrayList<byte[]>(words.subList(0, distinct));
+	}
+
+	/**
+	 * Writes words in the format read by MappedWordList.
+	 *
+	 * @param	words			UTF-8 words, in the order they should be stored
+	 * @param	wordListFile	file to write
+	 * @throws	IOException if the file cannot be written
+	 */
+	static void writeWordList(List<byte[]> words, File wordListFile) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(wordListFile)));
+		try {
+			out.writeInt(MappedWordList.WORD_LIST_MAGIC);
+			out.writeInt(words.size());
+			int offset = 0;
+			for (byte[] word : words) {
+				out.writeInt(offset);
+				offset += word.length;
+			}
+			out.writeInt(offset);
+			for (byte[] word : words) {
+				out.write(word);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static void writeBloomFilter(List<byte[]> words, File bloomFile, double falsePositiveRate) throws IOException {
+		// Optimal sizing: m = -n ln(p) / (ln 2)^2 bits and k = (m / n) ln 2 hash functions
+		int n = Math.max(1, words.size());
+		long numBits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+		numBits = Math.max(64, Math.min(numBits, (long) (Integer.MAX_VALUE - CommonPasswordFilter.BLOOM_HEADER_SIZE) * 8 - 64));
+		int numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+
+		long[] bits = new long[(int) ((numBits + 63) / 64)];
+		for (byte[] word : words) {
+			CommonPasswordFilter.addToBits(bits, numBits, numHashes, word);
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bloomFile)));
+		try {
+			out.writeInt(CommonPasswordFilter.BLOOM_MAGIC);
+			out.writeInt(numHashes);
+			out.writeLong(numBits);
+			for (long bitWord : bits) {
+				out.writeLong(bitWord);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: CommonPasswordFilterBuilder <wordlist> [output name] [false positive rate]");
+			return;
+		}
+		String filterName = (args.length > 1) ? args[1] : CommonPasswordFilter.DEFAULT_FILTER_NAME;
+		double falsePositiveRate = (args.length > 2) ? Double.parseDouble(args[2]) : DEFAULT_FALSE_POSITIVE_RATE;
+
+		CommonPasswordFilterBuilder builder = new CommonPasswordFilterBuilder();
+		try {
+			long start = System.currentTimeMillis();
+			int numWords = builder.build(new File(args[0]), filterName, falsePositiveRate);
+			System.out.println("Wrote " + numWords + " words to " + filterName + " in " + (System.currentTimeMillis() - start) + " ms");
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+		}
+	}
+}
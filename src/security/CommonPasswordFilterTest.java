@@ -0,0 +1,135 @@
+package security;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the Bloom filter never turns away a word it was built from (no false negatives), both on the raw bit
+ * array and through a filter built and mapped from files, and that words not in the list are still rejected.
+ */
+public class CommonPasswordFilterTest {
+
+	private static int failures = 0;
+
+	public static void main(String[] args) {
+		List<String> words = new ArrayList<String>();
+		Random random = new Random(307);
+		for (int i = 0; i < 20000; i++) {
+			words.add(randomWord(random));
+		}
+		words.add("password");
+		words.add("P@ssw0rd");
+		words.add("letmein");
+
+		// A high false positive rate means few bits per word, which is where a bit position mismatch would show
+		for (double falsePositiveRate : new double[] { 0.5, 0.01, 0.001 }) {
+			long numBits = (long) Math.ceil(-words.size() * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+			int numHashes = Math.max(1, (int) Math.round((double) numBits / words.size() * Math.log(2)));
+			long[] bits = new long[(int) ((numBits + 63) / 64)];
+			for (String word : words) {
+				CommonPasswordFilter.addToBits(bits, numBits, numHashes, bytes(word));
+			}
+			int missing = 0;
+			for (String word : words) {
+				if (!allBitsSet(bits, numBits, numHashes, bytes(word))) {
+					missing++;
+				}
+			}
+			check("every word sets its bits at false positive rate " + falsePositiveRate, missing == 0);
+		}
+
+		File wordListFile = null;
+		String filterName = null;
+		try {
+			wordListFile = File.createTempFile("common_passwords", ".txt");
+			filterName = wordListFile.getPath() + ".filter";
+			Writer writer = new OutputStreamWriter(new FileOutputStream(wordListFile), StandardCharsets.UTF_8);
+			try {
+				for (String word : words) {
+					writer.write("  " + word + "\n");
+				}
+			}
+			finally {
+				writer.close();
+			}
+			int numWords = new CommonPasswordFilterBuilder().build(wordListFile, filterName, 0.5);
+			CommonPasswordFilter filter = CommonPasswordFilter.open(filterName);
+			check("the filter holds every distinct word", filter.size() == numWords);
+
+			int missing = 0;
+			for (String word : words) {
+				if (!filter.contains(word) || !filter.contains(word.toUpperCase()) || !filter.contains(" " + word + " ")) {
+					missing++;
+				}
+			}
+			check("the filter finds every word of the list, in any case", missing == 0);
+
+			int found = 0;
+			for (int i = 0; i < 1000; i++) {
+				if (filter.contains(randomWord(random) + "#not-listed")) {
+					found++;
+				}
+			}
+			check("words not in the list are rejected", found == 0);
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+			e.printStackTrace();
+			failures++;
+		}
+		finally {
+			if (wordListFile != null) {
+				wordListFile.delete();
+				// The filter's files stay mapped until the filter is collected, so they cannot always be deleted yet
+				new File(filterName + CommonPasswordFilter.BLOOM_EXTENSION).deleteOnExit();
+				new File(filterName + CommonPasswordFilter.WORD_LIST_EXTENSION).deleteOnExit();
+			}
+		}
+
+		System.out.println((failures == 0) ? "All tests passed" : failures + " tests failed");
+		if (failures > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean allBitsSet(long[] bits, long numBits, int numHashes, byte[] word) {
+		long[] single = new long[bits.length];
+		CommonPasswordFilter.addToBits(single, numBits, numHashes, word);
+		for (int i = 0; i < bits.length; i++) {
+			if ((bits[i] & single[i]) != single[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] bytes(String word) {
+		return CommonPasswordFilter.normalize(word).getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String randomWord(Random random) {
+		StringBuilder word = new StringBuilder();
+		int length = 4 + random.nextInt(12);
+		for (int i = 0; i < length; i++) {
+			word.append((char) ('a' + random.nextInt(26)));
+		}
+		if (random.nextBoolean()) {
+			word.append(random.nextInt(10000));
+		}
+		return word.toString();
+	}
+
+	private static void check(String name, boolean passed) {
+		System.out.println((passed ? "PASS: " : "FAIL: ") + name);
+		if (!passed) {
+			failures++;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package security;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only, memory-mapped list of words stored as an offset index followed by UTF-8 word data.
+ * Opening a list only maps the file; no word is copied onto the heap until it is requested.
+ *
+ * File layout (big-endian):
+ * 	int		magic (WORD_LIST_MAGIC)
+ * 	int		count
+ * 	int[]	count + 1 offsets into the data section (the last offset is the end of the data)
+ * 	byte[]	UTF-8 data of all words, back to back
+ *
+ * Lists written by CommonPasswordFilterBuilder are sorted by unsigned byte order, which allows contains() to
+ * binary search the mapped data without decoding any words.
+ */
+public class MappedWordList {
+
+	public static final int WORD_LIST_MAGIC = 0x53445757; // "SDWW"
+	private static final int HEADER_SIZE = 8;
+
+	private final MappedByteBuffer buffer;
+	private final int count;
+	private final int dataStart;
+
+	private MappedWordList(MappedByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != WORD_LIST_MAGIC) {
+			throw new IOException("Not a word list file");
+		}
+		this.count = buffer.getInt(4);
+		this.dataStart = HEADER_SIZE + 4 * (count + 1);
+		if (count < 0 || dataStart > buffer.capacity()) {
+			throw new IOException("Corrupt word list header");
+		}
+	}
+
+	/**
+	 * Maps a word list file into memory.
+	 *
+	 * @param	wordListFile	file written by CommonPasswordFilterBuilder
+	 * @return	MappedWordList backed by the file's pages
+	 * @throws	IOException if the file cannot be read or is not a word list
+	 */
+	public static MappedWordList open(File wordListFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(wordListFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			// The mapping stays valid after the channel is closed
+			return new MappedWordList(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * @return	number of words in the list
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Decodes a single word from the mapped data.
+	 *
+	 * @param	index	position of the word in the list
+	 * @return	the word at index
+	 */
+	public String get(int index) {
+		if (index < 0 || index >= count) {
+			throw new IndexOutOfBoundsException("Word index " + index + " out of range for " + count + " words");
+		}
+		int start = wordStart(index);
+		byte[] word = new byte[wordStart(index + 1) - start];
+		for (int i = 0; i < word.length; i++) {
+			word[i] = buffer.get(start + i);
+		}
+		return new String(word, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Checks if a word is in the list by binary searching the mapped data. Requires a sorted list.
+	 *
+	 * @param	word	word to look for (compared exactly, so callers must normalize case themselves)
+	 * @return	true if the word is in the list
+	 */
+	public boolean contains(String word) {
+		byte[] key = word.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int comparison = compareWord(mid, key);
+			if (comparison < 0) {
+				low = mid + 1;
+			}
+			else if (comparison > 0) {
+				high = mid - 1;
+			}
+			else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int wordStart(int index) {
+		return dataStart + buffer.getInt(HEADER_SIZE + 4 * index);
+	}
+
+	// Unsigned lexicographic comparison of the word at index against key
+	private int compareWord(int index, byte[] key) {
+		int start = wordStart(index);
+		int length = wordStart(index + 1) - start;
+		int shared = Math.min(length, key.length);
+		for (int i = 0; i < shared; i++) {
+			int difference = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - key.length;
+	}
+}
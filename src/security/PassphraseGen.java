@@ -0,0 +1,160 @@
+package security;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Generates diceware-style passphrases from a large local wordlist.
+ * The wordlist is read through a MappedWordList, so opening it only maps the offset index and a passphrase only
+ * decodes the words it picks. Words are chosen uniformly with SecureRandom, so each word adds log2(wordlist size)
+ * bits of entropy.
+ *
+ * Usage (to build the wordlist file): PassphraseGen <wordlist> [output file]
+ */
+public class PassphraseGen {
+
+	public static final String DEFAULT_WORD_LIST = "passphrase_words" + CommonPasswordFilter.WORD_LIST_EXTENSION;
+
+	private static PassphraseGen defaultGenerator;
+	private static boolean defaultGeneratorLoaded = false;
+
+	private final MappedWordList words;
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * @param words	wordlist to draw passphrase words from
+	 */
+	public PassphraseGen(MappedWordList words) {
+		if (words.size() < 2) {
+			throw new IllegalArgumentException("A passphrase wordlist needs at least two words");
+		}
+		this.words = words;
+	}
+
+	/**
+	 * Returns a generator over the wordlist stored next to the vault database ("passphrase_words.words"), mapped once
+	 * on first use.
+	 *
+	 * @return	the default generator, or null if no passphrase wordlist has been built
+	 */
+	public static synchronized PassphraseGen getDefault() {
+		if (!defaultGeneratorLoaded) {
+			defaultGeneratorLoaded = true;
+			File wordListFile = new File(DEFAULT_WORD_LIST);
+			if (wordListFile.exists()) {
+				try {
+					defaultGenerator = new PassphraseGen(MappedWordList.open(wordListFile));
+				}
+				catch (IOException | IllegalArgumentException e) {
+					System.err.println(e.getClass().getName() + ": " + e.getMessage());
+				}
+			}
+		}
+		return defaultGenerator;
+	}
+
+	/**
+	 * Generates a passphrase of randomly chosen words.
+	 *
+	 * @param wordCount		Number of words in the passphrase
+	 * @param separator		Text placed between words (may be empty)
+	 * @param capitalize	Determines if the first letter of each word is capitalized
+	 * @return				Generated passphrase
+	 */
+	public String generatePassphrase(int wordCount, String separator, boolean capitalize) {
+		StringBuilder passphrase = new StringBuilder();
+		for (int i = 0; i < wordCount; i++) {
+			if (i > 0) {
+				passphrase.append(separator);
+			}
+			String word = words.get(random.nextInt(words.size()));
+			if (capitalize && !word.isEmpty()) {
+				passphrase.append(word.substring(0, 1).toUpperCase(Locale.ROOT)).append(word.substring(1));
+			}
+			else {
+				passphrase.append(word);
+			}
+		}
+		return passphrase.toString();
+	}
+
+	/**
+	 * Entropy of a passphrase, assuming an attacker knows the wordlist, separator and capitalization.
+	 *
+	 * @param wordCount	Number of words in the passphrase
+	 * @return			entropy in bits (wordCount * log2(wordlist size))
+	 */
+	public double getEntropyBits(int wordCount) {
+		return wordCount * Math.log(words.size()) / Math.log(2);
+	}
+
+	/**
+	 * @return	number of words passphrases are drawn from
+	 */
+	public int getWordListSize() {
+		return words.size();
+	}
+
+	/**
+	 * Builds a wordlist file from a plain-text list. Each line is either a bare word or a diceware line
+	 * ("11111	word"), in which case the last whitespace-separated token is used. Duplicates are removed so
+	 * every stored word is equally likely.
+	 *
+	 * @param	plainWordList	plain-text wordlist (UTF-8)
+	 * @param	wordListFile	file to write
+	 * @return	number of distinct words written
+	 * @throws	IOException if the wordlist cannot be read or the output cannot be written
+	 */
+	public static int buildWordList(File plainWordList, File wordListFile) throws IOException {
+		List<byte[]> wordBytes = new ArrayList<byte[]>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(plainWordList), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] tokens = line.trim().split("\\s+");
+				String word = tokens[tokens.length - 1];
+				if (!word.isEmpty()) {
+					wordBytes.add(word.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		Collections.sort(wordBytes, CommonPasswordFilterBuilder.UNSIGNED_BYTE_ORDER);
+
+		List<byte[]> distinctWords = new ArrayList<byte[]>();
+		for (byte[] word : wordBytes) {
+			if (distinctWords.isEmpty() || CommonPasswordFilterBuilder.UNSIGNED_BYTE_ORDER.compare(distinctWords.get(distinctWords.size() - 1), word) != 0) {
+				distinctWords.add(word);
+			}
+		}
+		CommonPasswordFilterBuilder.writeWordList(distinctWords, wordListFile);
+		return distinctWords.size();
+	}
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: PassphraseGen <wordlist> [output file]");
+			return;
+		}
+		File wordListFile = new File((args.length > 1) ? args[1] : DEFAULT_WORD_LIST);
+		try {
+			int numWords = buildWordList(new File(args[0]), wordListFile);
+			System.out.println("Wrote " + numWords + " words to " + wordListFile.getPath()
+					+ String.format(" (%.2f bits per word)", Math.log(numWords) / Math.log(2)));
+		}
+		catch (IOException e) {
+			System.err.println(e.getClass().getName() + ": " + e.getMessage());
+		}
+	}
+}
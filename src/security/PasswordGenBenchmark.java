@@ -0,0 +1,65 @@
+package security;
+
+import java.util.function.Consumer;
+
+/**
+ * Measures the per-password cost of one-off generation (PasswordGen.generatePassword, which compiles the policy on
+ * every call) against bulk generation (BulkPasswordGenerator, which compiles it once).
+ * Each case runs warmup rounds first so the JIT has compiled the hot paths before anything is timed.
+ *
+ * Usage: PasswordGenBenchmark [passwords per round] [password length]
+ */
+public class PasswordGenBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+
+	// Consumed results are folded in here so the JIT cannot discard the generated passwords as dead code
+	private static long blackhole = 0;
+
+	private static void runCase(String name, int numPasswords, Runnable round) {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			round.run();
+		}
+		long best = Long.MAX_VALUE;
+		long total = 0;
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			long start = System.nanoTime();
+			round.run();
+			long elapsed = System.nanoTime() - start;
+			best = Math.min(best, elapsed);
+			total += elapsed;
+		}
+		System.out.printf("%-32s avg %8.0f ns/password   best %8.0f ns/password%n", name,
+				(double) total / MEASURED_ROUNDS / numPasswords, (double) best / numPasswords);
+	}
+
+	public static void main(String[] args) {
+		final int numPasswords = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		final int passwordLength = (args.length > 1) ? Integer.parseInt(args[1]) : 16;
+
+		final PasswordGen passGen = new PasswordGen();
+		final Consumer<String> sink = new Consumer<String>() {
+			public void accept(String password) {
+				blackhole += password.charAt(0);
+			}
+		};
+
+		runCase("PasswordGen.generatePassword", numPasswords, new Runnable() {
+			public void run() {
+				for (int i = 0; i < numPasswords; i++) {
+					sink.accept(passGen.generatePassword(true, true, true, true, true, passwordLength));
+				}
+			}
+		});
+
+		final BulkPasswordGenerator bulkGen = new BulkPasswordGenerator(true, true, true, true, true, passwordLength);
+		runCase("BulkPasswordGenerator.generate", numPasswords, new Runnable() {
+			public void run() {
+				bulkGen.generate(numPasswords).forEach(sink);
+			}
+		});
+
+		System.out.println("(checksum " + blackhole + ")");
+	}
+}
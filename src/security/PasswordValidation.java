@@ -25,6 +25,20 @@ public class PasswordValidation {
 	}
 	}
 	
+	/**
+	 * Checks a password against the offline breached password file, if one has been converted.
+	 * 
+	 * @param password	password in need of checking
+	 * @return			True if the password appears in a known data breach
+	 */
+	public boolean isBreached(String password) {
+		BreachedPasswordChecker checker = BreachedPasswordChecker.getDefault();
+		if (checker == null) {
+			return false;
+		}
+		return checker.isBreached(password);
+	}
+	
 	/**
 	 * @param user		Whose password you want to check
 	 * @param password	Given password being tested if it matches the User's actual password
@@ -1,6 +1,8 @@
 package security;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.passay.CharacterCharacteristicsRule;
@@ -25,6 +27,11 @@ public class StrengthChecker {
 	private static final int SEQUENTIAL_MULTIPLIER = 2;
 	private static final int DUPLICATE_MULTIPLIER = 3;
 	
+	// Dictionary Deduction Constants
+	private static final int COMMON_PASSWORD_DEDUCTION = 50;
+	private static final int DICTIONARY_WORD_DEDUCTION = 20;
+	private static final int MIN_DICTIONARY_WORD_LENGTH = 4;
+	
 	// Minimum Requirement Constants
 	private static final int PARTIAL_MIN_REQ_BONUS = 8;
 	private static final int FULL_MIN_REQ_BONUS = 10;
@@ -34,6 +41,19 @@ public class StrengthChecker {
 	private static final int WEAK_RATING_THRESHOLD = 40;
 	private static final int STRONG_RATING_THRESHOLD = 70;
 	
+	private final boolean printDebug;
+	
+	public StrengthChecker() {
+		this(true);
+	}
+	
+	/**
+	 * @param printDebug	if false, the score breakdown is not printed (e.g. when checking many passwords at once)
+	 */
+	public StrengthChecker(boolean printDebug) {
+		this.printDebug = printDebug;
+	}
+	
 	/**
 	 * Checks the strength of a given password.
 	 * 
@@ -48,7 +68,7 @@ public class StrengthChecker {
 		
 		// Password length determines initial strength score
 		int strengthScore = LENGTH_MULTIPLIER * password.length();
-		System.out.println("Length Points:\t\t" + (LENGTH_MULTIPLIER * password.length())); // ***DEBUG***
+		debug("Length Points:\t\t" + (LENGTH_MULTIPLIER * password.length())); // ***DEBUG***
 		
 		// Check minimum requirements
 		strengthScore += checkMinRequirements(password);
@@ -59,19 +79,20 @@ public class StrengthChecker {
 		// Check for point deductions
 		strengthScore -= findPointDeductions(password);
 		
-		// TODO Implement common word deductions???
+		// Check for common password and dictionary word deductions
+		strengthScore -= findDictionaryDeductions(password);
 		
 		// Return password rating based on final strength score
 		if (strengthScore < WEAK_RATING_THRESHOLD) {
-			System.out.println("Strength Score:\t\t" + strengthScore); // ***DEBUG***
+			debug("Strength Score:\t\t" + strengthScore); // ***DEBUG***
 			return "Weak";
 		}
 		else if (strengthScore > STRONG_RATING_THRESHOLD) {
-			System.out.println("Strength Score:\t\t" + strengthScore); // ***DEBUG***
+			debug("Strength Score:\t\t" + strengthScore); // ***DEBUG***
 			return "Strong";
 		}
 		else {
-			System.out.println("Strength Score:\t\t" + strengthScore); // ***DEBUG***
+			debug("Strength Score:\t\t" + strengthScore); // ***DEBUG***
 			return "Adequate";
 		}		
 	}
@@ -94,17 +115,17 @@ public class StrengthChecker {
 		// Get results of validators and assign points appropriately
 		RuleResult partialResult = partialValidator.validate(new PasswordData(password));
 		if (!partialResult.isValid()) {
-			System.out.println("Min Req Bonus:\t\t0"); // ***DEBUG***
+			debug("Min Req Bonus:\t\t0"); // ***DEBUG***
 			return 0;
 		}
 		else {
 			RuleResult fullResult = fullValidator.validate(new PasswordData(password));
 			if (fullResult.isValid()) {
-				System.out.println("Min Req Bonus:\t\t" + FULL_MIN_REQ_BONUS); // ***DEBUG***
+				debug("Min Req Bonus:\t\t" + FULL_MIN_REQ_BONUS); // ***DEBUG***
 				return FULL_MIN_REQ_BONUS;
 			}
 			else {
-				System.out.println("Min Req Bonus:\t\t" + PARTIAL_MIN_REQ_BONUS); // ***DEBUG***
+				debug("Min Req Bonus:\t\t" + PARTIAL_MIN_REQ_BONUS); // ***DEBUG***
 				return PARTIAL_MIN_REQ_BONUS;
 			}
 		}
@@ -150,11 +171,11 @@ public class StrengthChecker {
 		totalPointBonuses += (SYMBOLS_MULTIPLIER * numSymbols);
 		
 		/* DEBUG STATEMENTS */
-		System.out.println("Total Bonuses:\t\t" + totalPointBonuses);
-		System.out.println("\tUppercases:\t\t" + (UPPERCASE_MULTIPLIER * numUppercases));
-		System.out.println("\tLowercases:\t\t" + (LOWERCASE_MULTIPLIER * numLowercases));
-		System.out.println("\tDigits:\t\t\t" + (DIGITS_MULTIPLIER * numDigits));
-		System.out.println("\tSymbols:\t\t" + (SYMBOLS_MULTIPLIER * numSymbols));
+		debug("Total Bonuses:\t\t" + totalPointBonuses);
+		debug("\tUppercases:\t\t" + (UPPERCASE_MULTIPLIER * numUppercases));
+		debug("\tLowercases:\t\t" + (LOWERCASE_MULTIPLIER * numLowercases));
+		debug("\tDigits:\t\t\t" + (DIGITS_MULTIPLIER * numDigits));
+		debug("\tSymbols:\t\t" + (SYMBOLS_MULTIPLIER * numSymbols));
 		/* DEBUG STATEMENTS */
 		
 		return totalPointBonuses;
@@ -215,17 +236,86 @@ public class StrengthChecker {
 		totalPointDeductions += DUPLICATE_MULTIPLIER * numDuplicates;
 		
 		/* DEBUG STATEMENTS */
-		System.out.println("Total Deductions:\t" + totalPointDeductions);
-		System.out.println("\tLetters Only:\t\t" + ((letters) ? (LETTERS_ONLY_MULTIPLIER * password.length()) : 0));
-		System.out.println("\tDigits Only:\t\t" + ((digits) ? (DIGITS_ONLY_MULTIPLIER * password.length()) : 0));
-		System.out.println("\tSymbols Only:\t\t" + ((symbols) ? (SYMBOLS_ONLY_MULTIPLIER * password.length()) : 0));
-		System.out.println("\tSequentials:\t\t" + (SEQUENTIAL_MULTIPLIER * numSequentials));
-		System.out.println("\tDuplicates:\t\t" + (DUPLICATE_MULTIPLIER * numDuplicates));
+		debug("Total Deductions:\t" + totalPointDeductions);
+		debug("\tLetters Only:\t\t" + ((letters) ? (LETTERS_ONLY_MULTIPLIER * password.length()) : 0));
+		debug("\tDigits Only:\t\t" + ((digits) ? (DIGITS_ONLY_MULTIPLIER * password.length()) : 0));
+		debug("\tSymbols Only:\t\t" + ((symbols) ? (SYMBOLS_ONLY_MULTIPLIER * password.length()) : 0));
+		debug("\tSequentials:\t\t" + (SEQUENTIAL_MULTIPLIER * numSequentials));
+		debug("\tDuplicates:\t\t" + (DUPLICATE_MULTIPLIER * numDuplicates));
 		/* DEBUG STATEMENTS */
 		
 		return totalPointDeductions;
 	}
 
+	private int findDictionaryDeductions(String password) {
+		CommonPasswordFilter filter = CommonPasswordFilter.getDefault();
+		if (filter == null) {
+			debug("Dictionary Deductions:\t0 (no common password filter)"); // ***DEBUG***
+			return 0;
+		}
+		
+		// The whole password is a known common password
+		if (filter.contains(password)) {
+			debug("Dictionary Deductions:\t" + COMMON_PASSWORD_DEDUCTION); // ***DEBUG***
+			return COMMON_PASSWORD_DEDUCTION;
+		}
+		
+		// The password is a dictionary word dressed up with leetspeak and leading/trailing digits or symbols
+		for (String baseWord : findBaseWords(password)) {
+			if (baseWord.length() >= MIN_DICTIONARY_WORD_LENGTH && filter.contains(baseWord)) {
+				debug("Dictionary Deductions:\t" + DICTIONARY_WORD_DEDUCTION); // ***DEBUG***
+				return DICTIONARY_WORD_DEDUCTION;
+			}
+		}
+		
+		debug("Dictionary Deductions:\t0"); // ***DEBUG***
+		return 0;
+	}
+	
+	/**
+	 * Finds the dictionary words a password may be built from. Leetspeak is undone before the leading and trailing
+	 * digits and symbols are stripped, so substituted letters at either end survive ("p4ssw0rd" -> "password",
+	 * "@dmin99" -> "admin"). A digit suffix that was never a letter would turn into one that way ("password1" ->
+	 * "passwordl"), so the word left by stripping first is tried as well.
+	 * 
+	 * @param	password	password to examine
+	 * @return	candidate base words, lowercase; at most two
+	 */
+	static List<String> findBaseWords(String password) {
+		List<String> baseWords = new ArrayList<String>(2);
+		baseWords.add(undoLeetspeak(password.toLowerCase()).replaceAll("^[^a-z]+|[^a-z]+$", ""));
+		String stripped = undoLeetspeak(password.replaceAll("^[^a-zA-Z]+|[^a-zA-Z]+$", "").toLowerCase());
+		if (!baseWords.contains(stripped)) {
+			baseWords.add(stripped);
+		}
+		return baseWords;
+	}
+	
+	private static String undoLeetspeak(String password) {
+		char[] letters = password.toCharArray();
+		for (int i = 0; i < letters.length; i++) {
+			switch (letters[i]) {
+				case '0': letters[i] = 'o'; break;
+				case '1': letters[i] = 'l'; break;
+				case '3': letters[i] = 'e'; break;
+				case '4': letters[i] = 'a'; break;
+				case '5': letters[i] = 's'; break;
+				case '7': letters[i] = 't'; break;
+				case '@': letters[i] = 'a'; break;
+				case '$': letters[i] = 's'; break;
+				case '!': letters[i] = 'i'; break;
+				default: break;
+			}
+		}
+		return new String(letters);
+	}
+
+	private void debug(String message) {
+		if (printDebug) {
+			System.out.println(message);
+		}
+	}
+
 	public static void main(String[] args) {
 		String password = "password";
 		StrengthChecker checker = new StrengthChecker();
@@ -0,0 +1,103 @@
+package userInterface;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.border.EmptyBorder;
+
+import controllers.BackupScheduler;
+import controllers.BackupScheduler.BackupRun;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JProgressBar;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.event.ActionEvent;
+
+/**
+ * Shows how far a background backup has got, and lets the user cancel it. Closes itself when the backup finishes,
+ * and says how it went if the user asked for the backup.
+ */
+public class BackupProgressView extends JFrame implements BackupScheduler.BackupListener {
+
+	private JPanel contentPanel;
+	private final BackupRun run;
+	private JLabel lblStage;
+	private JProgressBar progressBar;
+	private JButton btnCancel;
+
+	/**
+	 * Create the frame.
+	 *
+	 * @param	run	backup to follow
+	 */
+	public BackupProgressView(BackupRun run) {
+		this.run = run;
+		setResizable(false);
+		setTitle(run.isManual() ? "Backing up your vault" : "Automatic Backup");
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		setBounds(100, 100, 400, 150);
+		setLocationRelativeTo(null);
+		contentPanel = new JPanel();
+		contentPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+		setContentPane(contentPanel);
+		contentPanel.setLayout(null);
+
+		lblStage = new JLabel(run.getStage());
+		lblStage.setBounds(20, 15, 360, 16);
+		contentPanel.add(lblStage);
+
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		progressBar.setValue(run.getPercent());
+		progressBar.setBounds(20, 40, 360, 20);
+		contentPanel.add(progressBar);
+
+		btnCancel = new JButton("Cancel");
+		btnCancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				BackupProgressView.this.run.cancel();
+				btnCancel.setEnabled(false);
+				lblStage.setText("Cancelling...");
+			}
+		});
+		btnCancel.setBounds(280, 75, 100, 29);
+		contentPanel.add(btnCancel);
+
+		// Closing the window only hides the progress; the backup carries on
+		addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				BackupScheduler.getInstance().removeBackupListener(BackupProgressView.this);
+			}
+		});
+		BackupScheduler.getInstance().addBackupListener(this);
+	}
+
+	public void backupStarted(BackupRun started) {
+	}
+
+	public void backupProgress(BackupRun progressed) {
+		if (progressed != run) {
+			return;
+		}
+		if (!run.isCancelled()) {
+			lblStage.setText(run.getStage());
+		}
+		progressBar.setValue(run.getPercent());
+	}
+
+	public void backupFinished(BackupRun finished) {
+		if (finished != run) {
+			return;
+		}
+		dispose();
+		if (run.getResult() == BackupRun.SUCCEEDED && run.isManual()) {
+			JOptionPane.showMessageDialog(null, "You have successfully backed up your account!", "Backup Successfully Created", JOptionPane.INFORMATION_MESSAGE);
+		}
+		else if (run.getResult() == BackupRun.FAILED) {
+			JOptionPane.showMessageDialog(null, "The backup could not be created.", "Backup Failed", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+}
@@ -20,6 +20,7 @@ import javax.swing.JPasswordField;
 import javax.swing.event.TreeSelectionEvent;
 
 import controllers.DatabaseManager;
+import controllers.VaultSession;
 import dataManagement.DataEntry;
 
 import net.miginfocom.swing.MigLayout;
@@ -133,8 +134,7 @@ public class DataEntryPanel extends JPanel{
 		btnEditData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				
-				DatabaseManager dm = new DatabaseManager("vault_database");
-				EditDataEntryView editDataEntry = new EditDataEntryView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+				EditDataEntryView editDataEntry = new EditDataEntryView(VaultSession.findUser(data.getOwner()), data);
 				editDataEntry.getJframe().setVisible(true);
 			}
 		});
@@ -144,8 +144,7 @@ public class DataEntryPanel extends JPanel{
 		btnShareData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if(data != null){
-					DatabaseManager dm = new DatabaseManager("vault_database");
-					ShareView share = new ShareView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+					ShareView share = new ShareView(VaultSession.findUser(data.getOwner()), data);
 					share.setLocationRelativeTo(null);
 					share.setVisible(true);
 				}
@@ -272,8 +271,7 @@ public class DataEntryPanel extends JPanel{
 		btnEditData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				
-				DatabaseManager dm = new DatabaseManager("vault_database");
-				EditDataEntryView editDataEntry = new EditDataEntryView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+				EditDataEntryView editDataEntry = new EditDataEntryView(VaultSession.findUser(data.getOwner()), data);
 				editDataEntry.getJframe().setVisible(true);
 			}
 		});
@@ -283,8 +281,7 @@ public class DataEntryPanel extends JPanel{
 		btnShareData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if(data != null){
-					DatabaseManager dm = new DatabaseManager("vault_database");
-					ShareView share = new ShareView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+					ShareView share = new ShareView(VaultSession.findUser(data.getOwner()), data);
 					share.setLocationRelativeTo(null);
 					share.setVisible(true);
 				}
@@ -400,8 +397,7 @@ public class DataEntryPanel extends JPanel{
 		btnEditData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				
-				DatabaseManager dm = new DatabaseManager("vault_database");
-				EditDataEntryView editDataEntry = new EditDataEntryView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+				EditDataEntryView editDataEntry = new EditDataEntryView(VaultSession.findUser(data.getOwner()), data);
 				editDataEntry.getJframe().setVisible(true);
 			}
 		});
@@ -411,8 +407,7 @@ public class DataEntryPanel extends JPanel{
 		btnShareData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if(data != null){
-					DatabaseManager dm = new DatabaseManager("vault_database");
-					ShareView share = new ShareView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+					ShareView share = new ShareView(VaultSession.findUser(data.getOwner()), data);
 					share.setLocationRelativeTo(null);
 					share.setVisible(true);
 				}
@@ -460,8 +455,7 @@ public class DataEntryPanel extends JPanel{
 		btnEditData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				
-				DatabaseManager dm = new DatabaseManager("vault_database");
-				EditDataEntryView editDataEntry = new EditDataEntryView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+				EditDataEntryView editDataEntry = new EditDataEntryView(VaultSession.findUser(data.getOwner()), data);
 				editDataEntry.getJframe().setVisible(true);
 			}
 		});
@@ -471,8 +465,7 @@ public class DataEntryPanel extends JPanel{
 		btnShareData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if(data != null){
-					DatabaseManager dm = new DatabaseManager("vault_database");
-					ShareView share = new ShareView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+					ShareView share = new ShareView(VaultSession.findUser(data.getOwner()), data);
 					share.setLocationRelativeTo(null);
 					share.setVisible(true);
 				}
@@ -514,8 +507,7 @@ public class DataEntryPanel extends JPanel{
 		btnEditData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				
-				DatabaseManager dm = new DatabaseManager("vault_database");
-				EditDataEntryView editDataEntry = new EditDataEntryView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+				EditDataEntryView editDataEntry = new EditDataEntryView(VaultSession.findUser(data.getOwner()), data);
 				editDataEntry.getJframe().setVisible(true);
 			}
 		});
@@ -525,8 +517,7 @@ public class DataEntryPanel extends JPanel{
 		btnShareData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if(data != null){
-					DatabaseManager dm = new DatabaseManager("vault_database");
-					ShareView share = new ShareView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+					ShareView share = new ShareView(VaultSession.findUser(data.getOwner()), data);
 					share.setLocationRelativeTo(null);
 					share.setVisible(true);
 				}
@@ -573,8 +564,7 @@ public class DataEntryPanel extends JPanel{
 		btnEditData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				
-				DatabaseManager dm = new DatabaseManager("vault_database");
-				EditDataEntryView editDataEntry = new EditDataEntryView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+				EditDataEntryView editDataEntry = new EditDataEntryView(VaultSession.findUser(data.getOwner()), data);
 				editDataEntry.getJframe().setVisible(true);
 			}
 		});
@@ -584,8 +574,7 @@ public class DataEntryPanel extends JPanel{
 		btnShareData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if(data != null){
-					DatabaseManager dm = new DatabaseManager("vault_database");
-					ShareView share = new ShareView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+					ShareView share = new ShareView(VaultSession.findUser(data.getOwner()), data);
 					share.setLocationRelativeTo(null);
 					share.setVisible(true);
 				}
@@ -650,8 +639,7 @@ public class DataEntryPanel extends JPanel{
 		btnEditData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				
-				DatabaseManager dm = new DatabaseManager("vault_database");
-				EditDataEntryView editDataEntry = new EditDataEntryView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+				EditDataEntryView editDataEntry = new EditDataEntryView(VaultSession.findUser(data.getOwner()), data);
 				editDataEntry.getJframe().setVisible(true);
 			}
 		});
@@ -661,8 +649,7 @@ public class DataEntryPanel extends JPanel{
 		btnShareData.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				if(data != null){
-					DatabaseManager dm = new DatabaseManager("vault_database");
-					ShareView share = new ShareView(dm.retrieveUserFromDatabase(data.getOwner()), data);
+					ShareView share = new ShareView(VaultSession.findUser(data.getOwner()), data);
 					share.setLocationRelativeTo(null);
 					share.setVisible(true);
 				}
@@ -676,6 +663,89 @@ public class DataEntryPanel extends JPanel{
 		return panel;
 	}	
 	
+	/**
+	 * Builds the read-only panel for a decrypted data entry, choosing the layout from the entry's type.
+	 * 
+	 * @param data	decrypted data entry to display
+	 * @return		panel showing the entry's fields with its Edit and Share buttons
+	 */
+	public JPanel getPanelWithData(DataEntry data) {
+		ArrayList<String> indexList = new ArrayList<String>();
+		String type = data.getEntryType();
+
+		if (type.equals("Account Login")) {
+			return getAccountLoginPanelWithData(data);
+		}
+		else if (type.equals("Confirmation Number")) {
+			indexList.add("Confirmation Name");
+			indexList.add("Confirmation Number");
+		}
+		else if (type.equals("Credit/Debit Card")) {
+			return getCreditCardPanelWithData(data);
+		}
+		else if (type.equals("Entry Code")) {
+			indexList.add("Code Name");
+			indexList.add("Code");
+		}
+		else if (type.equals("Flight Ticket")) {
+			indexList.add("Passenger");
+			indexList.add("Destination");
+			indexList.add("Airport (Origin)");
+			indexList.add("Airport (Dest.)");
+			indexList.add("Gate (Origin)");
+			indexList.add("Gate (Dest.)");
+			indexList.add("Departure");
+			indexList.add("Arrival");
+			indexList.add("Group");
+			indexList.add("Seat");
+		}
+		else if (type.equals("General Password")) {
+			indexList.add("Password Name");
+			indexList.add("Password");
+		}
+		else if (type.equals("ID Card")) {
+			indexList.add("ID Card Name");
+			indexList.add("ID Card Number");
+			indexList.add("Cardholder Name");
+			indexList.add("Address");
+			indexList.add("Issue Date");
+			indexList.add("Expiration Date");
+		}
+		else if (type.equals("License")) {
+			return getLicensePaneWithData(data);
+		}
+		else if (type.equals("Passport")) {
+			indexList.add("Name");
+			indexList.add("Passport Number");
+			indexList.add("Nationality");
+			indexList.add("Sex");
+			indexList.add("Date of Birth");
+			indexList.add("Place of Birth");
+			indexList.add("Issued Date");
+			indexList.add("Expiration Date");
+		}
+		else if (type.equals("Phone Number")) {
+			return getPhoneNumberPaneWithData(data);
+		}
+		else if (type.equals("Serial Number")) {
+			indexList.add("Product Name");
+			indexList.add("Serial Number");
+		}
+		else if (type.equals("Shipment Tracking Number")) {
+			indexList.add("Company/Item Name");
+			indexList.add("Shipment Tracking Number");
+		}
+		else if (type.equals("SSN")) {
+			return getSSNWithData(data);
+		}
+		else if (type.equals("Wifi Network")) {
+			indexList.add("Network Name");
+			indexList.add("Password");
+			indexList.add("Security");
+		}
+		return getGeneralPanelWithData(indexList, data);
+	}
+	
 	public void valueChanged(TreeSelectionEvent tsl) {
 		
 		if(tsl.getNewLeadSelectionPath() != null) {
@@ -1,7 +1,6 @@
 package userInterface;
 
 import java.awt.EventQueue;
-import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.text.DecimalFormat;
@@ -127,13 +126,7 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
 						frame.dispose();
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
 					}
 				}
 			});
@@ -207,16 +200,8 @@ public class EditDataEntryView {
 					} else {
 
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -333,15 +318,7 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
-
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
 					}
 				}
 			});
@@ -481,16 +458,8 @@ public class EditDataEntryView {
 					} else {
 
 						JOptionPane.showMessageDialog(null, "You have successfully modified DataEntry");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -565,16 +534,8 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -648,16 +609,8 @@ public class EditDataEntryView {
 					} else {
 
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -732,16 +685,8 @@ public class EditDataEntryView {
 					} else {
 
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -815,16 +760,8 @@ public class EditDataEntryView {
 					} else {
 
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -975,16 +912,8 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified DataEntry");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentUser.getUsername());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -1225,16 +1154,8 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified DataEntry");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentUser.getUsername());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -1339,16 +1260,8 @@ public class EditDataEntryView {
 					} else {
 
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -1434,16 +1347,8 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -1527,16 +1432,8 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -1619,16 +1516,8 @@ public class EditDataEntryView {
 						return;
 					} else {
 						JOptionPane.showMessageDialog(null, "You have successfully modified this data entry!");
-						System.gc();
-						for (Window window : Window.getWindows()) {
-							window.dispose();
-						}
-
 						frame.dispose();
 
-						HomeView hv = new HomeView(currentEntry.getOwner());
-						hv.frmSentinelDataVault.setVisible(true);
-
 					}
 				}
 			});
@@ -3,9 +3,18 @@ package userInterface;
 import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -21,6 +30,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JPopupMenu;
 import javax.swing.JOptionPane;
 import javax.swing.JTree;
 import javax.swing.DefaultListModel;
@@ -30,21 +40,33 @@ import javax.swing.LayoutStyle.ComponentPlacement;
 import javax.swing.ListModel;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import dataManagement.*;
+import controllers.BackupArchive;
 import controllers.BackupManager;
+import controllers.BackupManifest;
+import controllers.BackupScheduler;
 import controllers.DatabaseManager;
+import controllers.ImportPipeline;
+import controllers.MergeImporter;
+import controllers.OperationJournal;
+import controllers.VaultSession;
+import controllers.VaultAuditor;
 import controllers.VaultController;
+import controllers.VaultEvent;
+import controllers.VaultModel;
+import controllers.VaultModelListener;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Font;
-import java.awt.Window;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextField;
 import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TreeSelectionEvent;
-import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.event.TreeSelectionListener;
@@ -61,18 +83,30 @@ public class HomeView {
 	public String lastlogin;
 	public User currentUser;
 	public DataEntry currentEntry;
-	public List<DataEntry> currentAllDataEntries;
-	public List<String> currentDataEntryNameList;
-	public List<String> currentDataEntryTypeList;
-	public List<String> currentSharedDataEntryNameList;
-	public List<String> currentSharedDataEntryTypeList;
-	public List<String> currentSharedDataEntryOwnerList;
 	private JTextField txtSearch;
+	private static final int SEARCH_SUGGESTIONS = 8;
 	private HomeView h;
 	public JLabel lblNewLabel;
 	public int buttonIndex_1 = 0;
-	List<DataEntry> sortedNameData;
-	List<DataEntry> sortedTimeData;
+
+	private static final Comparator<EntrySummary> ENTRY_NAME_ORDER = new Comparator<EntrySummary>() {
+		public int compare(EntrySummary a, EntrySummary b) {
+			int byName = a.getEntryName().compareToIgnoreCase(b.getEntryName());
+			return (byName != 0) ? byName : a.getEntryType().compareTo(b.getEntryType());
+		}
+	};
+	// Most recently modified first
+	private static final Comparator<EntrySummary> MODIFIED_TIME_ORDER = new Comparator<EntrySummary>() {
+		public int compare(EntrySummary a, EntrySummary b) {
+			int byTime = b.getLastModified().compareTo(a.getLastModified());
+			return (byTime != 0) ? byTime : ENTRY_NAME_ORDER.compare(a, b);
+		}
+	};
+
+	// Item List rows, always sorted by itemOrder; listModel mirrors them once a sort button has been pressed
+	private final List<EntrySummary> sortedData = new ArrayList<EntrySummary>();
+	private Comparator<EntrySummary> itemOrder = ENTRY_NAME_ORDER;
+	private final DefaultListModel<EntrySummary> listModel = new DefaultListModel<EntrySummary>();
 	
 
 
@@ -98,17 +132,149 @@ public class HomeView {
 		this.username = username;
 		lastlogin = "last login time";
 
-		DatabaseManager dbmanger = new DatabaseManager("vault_database");
-		currentUser = dbmanger.retrieveUserFromDatabase(username);
+		currentUser = VaultSession.findUser(username);
 
-		currentDataEntryNameList = dbmanger.retrieveDataEntryNameList(username);
-		currentDataEntryTypeList = dbmanger.retrieveDataEntryTypeList(username);
-		currentSharedDataEntryNameList = dbmanger.retrieveSharedEntryNameList(username);
-		currentSharedDataEntryTypeList = dbmanger.retrieveSharedEntryTypeList(username);
-		currentSharedDataEntryOwnerList= dbmanger.retrieveSharedEntryOwnerList(username);
 		initialize();	
 	}
 
+	/**
+	 * Replaces the search suggestions with the best index matches for the text in the search box.
+	 *
+	 * @param suggestions	popup shown under the search box
+	 */
+	private void showSearchSuggestions(JPopupMenu suggestions) {
+		suggestions.setVisible(false);
+		suggestions.removeAll();
+		VaultSession session = VaultSession.getCurrent();
+		String query = txtSearch.getText();
+		if (session == null || !txtSearch.hasFocus() || query.trim().isEmpty()) {
+			return;
+		}
+		for (final EntryMatch match : session.getSearchIndex().search(query, SEARCH_SUGGESTIONS)) {
+			JMenuItem item = new JMenuItem(match.toString());
+			item.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					SearchResultView.openEntry(frmSentinelDataVault, currentUser, match);
+				}
+			});
+			suggestions.add(item);
+		}
+		if (suggestions.getComponentCount() > 0) {
+			suggestions.show(txtSearch, 0, txtSearch.getHeight());
+		}
+	}
+
+	/**
+	 * Sorts the Item List rows into a new order and refills the list with them.
+	 *
+	 * @param order	order the rows are kept in from now on
+	 */
+	private void sortItemList(Comparator<EntrySummary> order) {
+		itemOrder = order;
+		Collections.sort(sortedData, itemOrder);
+		listModel.clear();
+		if (buttonIndex_1 != 0) {
+			for (EntrySummary row : sortedData) {
+				listModel.addElement(row);
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry's row from the Item List, leaving every other row where it is.
+	 *
+	 * @param entryName	name of the entry
+	 * @param entryType	type of the entry
+	 */
+	private void removeItemRow(String entryName, String entryType) {
+		for (int i = 0; i < sortedData.size(); i++) {
+			EntrySummary row = sortedData.get(i);
+			if (row.getEntryName().equals(entryName) && row.getEntryType().equals(entryType)) {
+				sortedData.remove(i);
+				if (buttonIndex_1 != 0) {
+					listModel.remove(i);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Inserts a row into the Item List at the position (found by binary search) that keeps the list sorted.
+	 *
+	 * @param row	summary of the added or changed entry
+	 */
+	private void insertItemRow(EntrySummary row) {
+		int index = Collections.binarySearch(sortedData, row, itemOrder);
+		if (index < 0) {
+			index = -index - 1;
+		}
+		sortedData.add(index, row);
+		if (buttonIndex_1 != 0) {
+			listModel.add(index, row);
+		}
+	}
+
+	/**
+	 * Merges a backup's entries into the user's vault on a background thread, showing its progress with a Cancel
+	 * button, and says what was done once it finishes.
+	 *
+	 * @param backupUser		owner of the entries in the backup
+	 * @param importLocation	path of the backup database file
+	 * @param policy			what to do with entries whose name the user already uses
+	 * @param restoredArchive	backup file restored from an archive, deleted when the merge finishes; may be null
+	 * @param btnImport			button that started the import; disabled until the merge finishes
+	 */
+	private void mergeInBackground(final User backupUser, final String importLocation, final MergeImporter.CollisionPolicy policy, final File restoredArchive,
+			final JButton btnImport) {
+		btnImport.setEnabled(false);
+		final ImportProgressView progressView = new ImportProgressView();
+		progressView.setLocationRelativeTo(frmSentinelDataVault);
+		progressView.setVisible(true);
+		final User importingUser = currentUser;
+		new SwingWorker<MergeImporter.Report, int[]>() {
+			protected MergeImporter.Report doInBackground() throws Exception {
+				return new BackupManager().mergeEntriesFromBackup(importingUser, backupUser, VaultModel.VAULT_DATABASE, importLocation, policy,
+						new ImportPipeline.ProgressListener() {
+							public boolean progress(int entriesDone, int entriesTotal) {
+								publish(new int[] { entriesDone, entriesTotal });
+								return !progressView.isCancelled();
+							}
+						});
+			}
+
+			protected void process(List<int[]> chunks) {
+				int[] latest = chunks.get(chunks.size() - 1);
+				progressView.showProgress(latest[0], latest[1]);
+			}
+
+			protected void done() {
+				progressView.dispose();
+				btnImport.setEnabled(true);
+				if (restoredArchive != null) {
+					restoredArchive.delete();
+					new File(restoredArchive.getPath() + BackupManifest.MANIFEST_SUFFIX).delete();
+				}
+				try {
+					MergeImporter.Report report = get();
+					if (report == null) {
+						JOptionPane.showMessageDialog(frmSentinelDataVault, "The entries could not be imported.", "Import Failed", JOptionPane.ERROR_MESSAGE);
+					}
+					else if (report.isCancelled()) {
+						JOptionPane.showMessageDialog(frmSentinelDataVault, report.toString(), "Import Cancelled", JOptionPane.INFORMATION_MESSAGE);
+					}
+					else {
+						JOptionPane.showMessageDialog(frmSentinelDataVault, "Entries have been imported into your account!\n\n" + report, "Import Success", JOptionPane.INFORMATION_MESSAGE);
+					}
+				}
+				catch (Exception ex) {
+					System.err.println(ex.getClass().getName() + ": " + ex.getMessage());
+					JOptionPane.showMessageDialog(frmSentinelDataVault, "The entries could not be imported.", "Import Failed", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		}.execute();
+	}
+
 	/**
 	 * Initialize the contents of the frame.
 	 */
@@ -121,11 +287,13 @@ public class HomeView {
 		frmSentinelDataVault.getContentPane().setLayout(null);
 		frmSentinelDataVault.setLocationRelativeTo(null);
 		
-		DatabaseManager dm = new DatabaseManager("vault_database");;
-		List<DataEntry> allData = dm.retrieveDataEntryList(currentUser);
-		
-		//List<DataEntry> sortedNameData = allData;
-		//List<DataEntry> sortedTimeData = allData;
+		// Only names, types and modified times are loaded here; an entry is decrypted when it is opened
+		List<EntrySummary> allData = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).retrieveDataEntrySummaries(username);
+		if (VaultSession.getCurrent() != null) {
+			VaultSession.getCurrent().getSearchIndex().rebuild(username, allData);
+		}
+		sortedData.addAll(allData);
+		Collections.sort(sortedData, itemOrder);
 		
 		//		anel_south		
 		JPanel panel_north = new JPanel();
@@ -148,6 +316,9 @@ public class HomeView {
 					currentUser.getLastLogin();
 					String time = currentUser.getLastLogin().toString();
 					d.modifyUserField(currentUser, "last_login", time );
+					BackupScheduler.getInstance().stop();
+					OperationJournal.getInstance().stop();
+					VaultSession.end();
 					currentUser = null;
 					LoginView frmLog = new LoginView();
 					frmLog.frmSignIn.setVisible(true);
@@ -213,15 +384,6 @@ public class HomeView {
 
 
 					JOptionPane.showMessageDialog(null, "You have successfully deleted the data entry.");
-					System.gc(); 
-					for (Window window : Window.getWindows()){
-						window.dispose();
-					}
-
-					frmSentinelDataVault.dispose();
-
-					HomeView hv = new HomeView(username);
-					hv.frmSentinelDataVault.setVisible(true);
 
 
 				}
@@ -288,6 +450,22 @@ public class HomeView {
 			}
 		});
 
+		// Search as you type, from the session's in-memory index
+		final JPopupMenu searchSuggestions = new JPopupMenu();
+		searchSuggestions.setFocusable(false);
+		txtSearch.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				showSearchSuggestions(searchSuggestions);
+			}
+
+			public void removeUpdate(DocumentEvent e) {
+				showSearchSuggestions(searchSuggestions);
+			}
+
+			public void changedUpdate(DocumentEvent e) {
+			}
+		});
+
 		btnSearch.setBounds(122, 6, 38, 30);
 		btnSearch.setIcon(new ImageIcon(HomeView.class.getResource("/Avatars/search.png")));
 		panel_1.add(btnSearch);
@@ -394,8 +572,8 @@ public class HomeView {
 		btnImport.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				JFileChooser fileChooser = new JFileChooser();
-				fileChooser.setDialogTitle("Choose a backup file to import");
-				fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY); // User can only select a backup file to import from
+				fileChooser.setDialogTitle("Choose a backup file or backup archive to import");
+				fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES); // A backup file, or the directory of a backup archive
 				int result = fileChooser.showDialog(frmSentinelDataVault, "Import");
 				if (result == JFileChooser.APPROVE_OPTION) {
 					// Execute the import
@@ -407,18 +585,50 @@ public class HomeView {
 					String backupUserPassword = JOptionPane.showInputDialog(null, "Enter the password for the account you're trying to import from"); // ***TESTING PURPOSES ONLY***
 					// Need to validate that current user has valid access privileges to import file
 					BackupManager bum = new BackupManager();
+					File restoredArchive = null;
+					if (BackupArchive.isArchive(selectedBackupFile)) {
+						// Rebuild the newest backup in the archive, then import it like a backup file
+						restoredArchive = new File(selectedBackupFile, "restore.tmp");
+						if (backupUserEmail == null || backupUserPassword == null
+								|| bum.restoreArchiveBackup(selectedBackupFile, backupUserEmail, backupUserPassword, restoredArchive) < 0) {
+							restoredArchive.delete();
+							JOptionPane.showMessageDialog(null, "Invalid Email/Password. Please try again.", "Unauthorized Backup Access", JOptionPane.ERROR_MESSAGE);
+							return;
+						}
+						importLocation = restoredArchive.getAbsolutePath();
+					}
 					if (bum.isValidBackupUser(backupUserEmail, backupUserPassword, importLocation)) {
-						DatabaseManager dbm = new DatabaseManager(importLocation);
-						User backupUser = dbm.retrieveUserFromDatabase(backupUserEmail);
-						bum.importEntriesFromBackup(currentUser, backupUser, "vault_database", importLocation);
-						// refresh MainView
-						JOptionPane.showMessageDialog(null, "Entries have been imported into your account!", "Import Success", JOptionPane.INFORMATION_MESSAGE);
-						Refresh rf = new Refresh(username);
-						rf.refresh();
+						if (BackupManifest.hasManifest(importLocation)) {
+							BackupManifest.Verification verification = BackupManifest.verify(importLocation);
+							if ((verification == null || !verification.isIntact())
+									&& JOptionPane.showConfirmDialog(frmSentinelDataVault, ((verification == null) ? "The backup could not be verified." : verification.toString())
+											+ "\nImport the backup anyway?", "Damaged Backup", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+								if (restoredArchive != null) {
+									restoredArchive.delete();
+									new File(restoredArchive.getPath() + BackupManifest.MANIFEST_SUFFIX).delete();
+								}
+								return;
+							}
+						}
+						User backupUser = DatabaseManager.forDatabase(importLocation).retrieveUserFromDatabase(backupUserEmail);
+						String[] policies = {"Keep the newest", "Keep both", "Keep mine"};
+						int choice = JOptionPane.showOptionDialog(frmSentinelDataVault, "If an entry with the same name is already in your vault:", "Import Entries",
+								JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, policies, policies[0]);
+						MergeImporter.CollisionPolicy policy = (choice == 1) ? MergeImporter.CollisionPolicy.RENAME
+								: (choice == 2) ? MergeImporter.CollisionPolicy.SKIP : MergeImporter.CollisionPolicy.KEEP_NEWEST;
+						if (choice >= 0) {
+							// The merge deletes the restored archive when it is done with it
+							mergeInBackground(backupUser, importLocation, policy, restoredArchive, (JButton) e.getSource());
+							return;
+						}
 					}
 					else {
 						JOptionPane.showMessageDialog(null, "Invalid Email/Password. Please try again.", "Unauthorized Backup Access", JOptionPane.ERROR_MESSAGE);
 					}
+					if (restoredArchive != null) {
+						restoredArchive.delete();
+						new File(restoredArchive.getPath() + BackupManifest.MANIFEST_SUFFIX).delete();
+					}
 				}
 			}
 		});
@@ -471,343 +681,11 @@ public class HomeView {
 
 		JTree tree = new JTree();
 
-		DatabaseManager dbmanger = new DatabaseManager("vault_database");
-		currentUser = dbmanger.retrieveUserFromDatabase(username);
-
-		currentDataEntryNameList = dbmanger.retrieveDataEntryNameList(username);
-		currentDataEntryTypeList = dbmanger.retrieveDataEntryTypeList(username);
-		currentSharedDataEntryNameList = dbmanger.retrieveSharedEntryNameList(username);
-		currentSharedDataEntryTypeList = dbmanger.retrieveSharedEntryTypeList(username);
-		currentSharedDataEntryOwnerList= dbmanger.retrieveSharedEntryOwnerList(username);
-
-		//String selectedNode = null;
-
-		DefaultMutableTreeNode node_1 = new DefaultMutableTreeNode("Account Login");
-		DefaultMutableTreeNode node_2 = new DefaultMutableTreeNode("Confirmation Number");
-		DefaultMutableTreeNode node_3 = new DefaultMutableTreeNode("Credit/Debit Card");
-		DefaultMutableTreeNode node_4 = new DefaultMutableTreeNode("Entry Code");
-		DefaultMutableTreeNode node_5 = new DefaultMutableTreeNode("Flight Ticket");
-		DefaultMutableTreeNode node_6 = new DefaultMutableTreeNode("General Password");
-		DefaultMutableTreeNode node_7 = new DefaultMutableTreeNode("ID Card");
-		DefaultMutableTreeNode node_8 = new DefaultMutableTreeNode("License");
-		DefaultMutableTreeNode node_9 = new DefaultMutableTreeNode("Passport");
-		DefaultMutableTreeNode node_10 = new DefaultMutableTreeNode("Phone Number");
-		DefaultMutableTreeNode node_11 = new DefaultMutableTreeNode("Serial Number");
-		DefaultMutableTreeNode node_12 = new DefaultMutableTreeNode("Shipment Tracking Number");
-		DefaultMutableTreeNode node_13 = new DefaultMutableTreeNode("SSN");
-		DefaultMutableTreeNode node_14 = new DefaultMutableTreeNode("Wifi Network");
-		DefaultMutableTreeNode node_15 = new DefaultMutableTreeNode("Shared Data Entry");
-
-		DefaultMutableTreeNode sharednode_1 = new DefaultMutableTreeNode("Account Login");
-		DefaultMutableTreeNode sharednode_2 = new DefaultMutableTreeNode("Confirmation Number");
-		DefaultMutableTreeNode sharednode_3 = new DefaultMutableTreeNode("Credit/Debit Card");
-		DefaultMutableTreeNode sharednode_4 = new DefaultMutableTreeNode("Entry Code");
-		DefaultMutableTreeNode sharednode_5 = new DefaultMutableTreeNode("Flight Ticket");
-		DefaultMutableTreeNode sharednode_6 = new DefaultMutableTreeNode("General Password");
-		DefaultMutableTreeNode sharednode_7 = new DefaultMutableTreeNode("ID Card");
-		DefaultMutableTreeNode sharednode_8 = new DefaultMutableTreeNode("License");
-		DefaultMutableTreeNode sharednode_9 = new DefaultMutableTreeNode("Passport");
-		DefaultMutableTreeNode sharednode_10 = new DefaultMutableTreeNode("Phone Number");
-		DefaultMutableTreeNode sharednode_11 = new DefaultMutableTreeNode("Serial Number");
-		DefaultMutableTreeNode sharednode_12 = new DefaultMutableTreeNode("Shipment Tracking Number");
-		DefaultMutableTreeNode sharednode_13 = new DefaultMutableTreeNode("SSN");
-		DefaultMutableTreeNode sharednode_14 = new DefaultMutableTreeNode("Wifi Network");
-
-
-		tree.setModel(new DefaultTreeModel(
-				new DefaultMutableTreeNode("Data Entry") {
-					{
-
-						for (int i=0; i < currentDataEntryNameList.size(); i++) {
-
-							DataEntry cd = new DataEntry(null, null, null, null, 0, null);
-							DatabaseManager db = new DatabaseManager("vault_database");
-							cd = db.retrieveOneDataEntry(currentDataEntryNameList.get(i), currentUser, currentDataEntryTypeList.get(i));
-
-
-
-							if (cd.getOwner().equals(currentUser.getUsername())) {
-
-								if(currentDataEntryTypeList.contains("Account Login")) {
-									add(node_1);
-								}
-								if(currentDataEntryTypeList.contains("Confirmation Number")) {
-									add(node_2);
-								}
-								if(currentDataEntryTypeList.contains("Credit/Debit Card")) {
-									add(node_3);
-								}
-								if(currentDataEntryTypeList.contains("Entry Code")) {
-									add(node_4);
-								}
-								if(currentDataEntryTypeList.contains("Flight Ticket")) {
-									add(node_5);
-								}
-								if(currentDataEntryTypeList.contains("General Password")) {
-									add(node_6);
-								}
-								if(currentDataEntryTypeList.contains("ID Card")) {
-									add(node_7);
-								}
-								if(currentDataEntryTypeList.contains("License")) {
-									add(node_8);
-								}
-								if(currentDataEntryTypeList.contains("Passport")) {
-									add(node_9);
-								}
-								if(currentDataEntryTypeList.contains("Phone Number")) {
-									add(node_10);
-								}
-								if(currentDataEntryTypeList.contains("Serial Number")) {
-									add(node_11);
-								}
-								if(currentDataEntryTypeList.contains("Shipment Tracking Number")) {
-									add(node_12);
-								}
-								if(currentDataEntryTypeList.contains("SSN")) {
-									add(node_13);
-								}	
-								if(currentDataEntryTypeList.contains("Wifi Network")) {
-									add(node_14);
-								}
-							}
-						}
-
-
-						List<String> owners = new ArrayList<String>();
-						DefaultMutableTreeNode ownerNode = new DefaultMutableTreeNode();
-/*need to be fixed*/
-System.out.println("here");
-						for (int i=0; i < currentSharedDataEntryNameList.size(); i++) {
-							add(node_15);
-
-System.out.println("here2"+currentSharedDataEntryNameList.get(i));
-System.out.println("here2"+currentSharedDataEntryTypeList.get(i));
-System.out.println("here2"+currentSharedDataEntryOwnerList.get(i));
-							DatabaseManager db = new DatabaseManager("vault_database");
-							DataEntry currentDE = db.retrieveOneDataEntry(currentSharedDataEntryNameList.get(i),db.retrieveUserFromDatabase(currentSharedDataEntryOwnerList.get(i)),currentSharedDataEntryTypeList.get(i));
-							DefaultMutableTreeNode child = new DefaultMutableTreeNode(currentSharedDataEntryNameList.get(i));
-							// listModel.addElement(currentSharedDataEntryNameList.get(i));
-
-
-							// new owner > add node
-							if ( !owners.contains(currentDE.getOwner().toString()) ) {
-
-System.out.println("if"+currentSharedDataEntryNameList.get(i));
-								owners.add(currentDE.getOwner().toString());
-								DefaultMutableTreeNode newOwnerNode = new DefaultMutableTreeNode(currentDE.getOwner().toString());
-								ownerNode = newOwnerNode;
-								node_15.add(ownerNode);
-
-
-System.out.println("here4"+currentSharedDataEntryNameList.get(i));
-								
-							}
-							else{
-System.out.println("else"+currentSharedDataEntryNameList.get(i));
-								int ci = 0;
-								while (!node_15.getChildAt(ci).toString().equals(currentDE.getOwner().toString())) {
-									ci++;
-								}
-								ownerNode = (DefaultMutableTreeNode) node_15.getChildAt(ci);
-
-System.out.println(currentSharedDataEntryNameList.get(i));
-							}
-
-
-System.out.println(currentSharedDataEntryNameList.get(i));
-
-
-							if(currentSharedDataEntryTypeList.contains("Account Login")) {
-								ownerNode.add(sharednode_1);
-							}
-							if(currentSharedDataEntryTypeList.contains("Confirmation Number")) {
-								ownerNode.add(sharednode_2);
-							}
-							if(currentSharedDataEntryTypeList.contains("Credit/Debit Card")) {
-								ownerNode.add(sharednode_3);
-							}
-							if(currentSharedDataEntryTypeList.contains("Entry Code")) {
-								ownerNode.add(sharednode_4);
-							}
-							if(currentSharedDataEntryTypeList.contains("Flight Ticket")) {
-								ownerNode.add(sharednode_5);
-							}
-							if(currentSharedDataEntryTypeList.contains("General Password")) {
-								ownerNode.add(sharednode_6);
-							}
-							if(currentSharedDataEntryTypeList.contains("ID Card")) {
-								ownerNode.add(sharednode_7);
-							}
-							if(currentSharedDataEntryTypeList.contains("License")) {
-								ownerNode.add(sharednode_8);
-							}
-							if(currentSharedDataEntryTypeList.contains("Passport")) {
-								ownerNode.add(sharednode_9);
-							}
-							if(currentSharedDataEntryTypeList.contains("Phone Number")) {
-								ownerNode.add(sharednode_10);
-							}
-							if(currentSharedDataEntryTypeList.contains("Serial Number")) {
-								ownerNode.add(sharednode_11);
-							}
-							if(currentSharedDataEntryTypeList.contains("Shipment Tracking Number")) {
-								ownerNode.add(sharednode_12);
-							}
-							if(currentSharedDataEntryTypeList.contains("SSN")) {
-								ownerNode.add(sharednode_13);
-							}	
-							if(currentSharedDataEntryTypeList.contains("Wifi Network")) {
-								ownerNode.add(sharednode_14);
-							}
-						}
-
-					}
-				}
-				));
-
-		//	
-		/*		
-		DefaultTreeModel model = (DefaultTreeModel) tree.getModel();
-		DefaultMutableTreeNode node = (DefaultMutableTreeNode) model.getRoot();
-		DefaultMutableTreeNode child = (DefaultMutableTreeNode) node.getRoot();
-		node.add(child);
-		model.reload(node);
-		 */		
-		//node_1 = new DefaultMutableTreeNode("Account Login");
-		//node_1.add(new DefaultMutableTreeNode("Google"));
-		//node_1.add(new DefaultMutableTreeNode("Apple"));
-		//node_1.add(new DefaultMutableTreeNode("Purdue"));
-		//root.add(node_1);
-
-		DefaultTreeModel model = (DefaultTreeModel) tree.getModel();
-		DefaultListModel<String> listModel = new DefaultListModel<String>();
-		listModel.setSize(currentDataEntryNameList.size());
-
-		DefaultMutableTreeNode root = (DefaultMutableTreeNode) model.getRoot();
-
-		System.out.println("currentDataEntryNameList :" + currentDataEntryNameList.size());
-		System.out.println("currentDataEntryTypeList :" + currentDataEntryTypeList.size());
-		System.out.println("currentSharedDataEntryNameList :" + currentSharedDataEntryNameList.size());
-		System.out.println("currentSharedDataEntryTypeList :" + currentSharedDataEntryTypeList.size());
-		System.out.println("currentSharedDataEntryOwnerList :" + currentSharedDataEntryOwnerList.size());
-		System.out.println("number of root :" + root.getChildCount());
-
-
-		for (int i=0; i < currentDataEntryTypeList.size(); i++) {
-			DefaultMutableTreeNode child = new DefaultMutableTreeNode(currentDataEntryNameList.get(i));
-
-			listModel.addElement(currentDataEntryNameList.get(i));
-
-			if (currentDataEntryTypeList.get(i).equals("Account Login")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_1.add(child);
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Confirmation Number")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_2.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Credit/Debit Card")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_3.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Entry Code")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_4.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Flight Ticket")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_5.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("General Password")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_6.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("ID Card")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_7.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("License")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_8.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Passport")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_9.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Phone Number")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_10.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Serial Number")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_11.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Shipment Tracking Number")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_12.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("SSN")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_13.add(child);	
-			}
-			else if (currentDataEntryTypeList.get(i).equals("Wifi Network")) {
-				//System.out.println(currentDataEntryTypeList.get(i));
-				node_14.add(child);	
-			}
-
-		}
-
-
-		for (int i=0; i < currentSharedDataEntryNameList.size(); i++) {
-
-			DefaultMutableTreeNode child = new DefaultMutableTreeNode(currentSharedDataEntryNameList.get(i));
-			// listModel.addElement(currentSharedDataEntryNameList.get(i));
-
-			if (currentSharedDataEntryTypeList.get(i).equals("Account Login")) {
-				sharednode_1.add(child);
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Confirmation Number")) {
-				sharednode_2.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Credit/Debit Card")) {
-				sharednode_3.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Entry Code")) {
-				sharednode_4.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Flight Ticket")) {
-				sharednode_5.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("General Password")) {
-				sharednode_6.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("ID Card")) {
-				sharednode_7.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("License")) {
-				sharednode_8.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Passport")) {
-				sharednode_9.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Phone Number")) {
-				sharednode_10.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Serial Number")) {
-				sharednode_11.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Shipment Tracking Number")) {
-				sharednode_12.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("SSN")) {
-				sharednode_13.add(child);	
-			}
-			else if (currentSharedDataEntryTypeList.get(i).equals("Wifi Network")) {
-				sharednode_14.add(child);	
-			}
-
-		}
+		// Type folders come from per-type counts; entry names are loaded when a folder is expanded
+		VaultTreeModel model = new VaultTreeModel(username);
+		tree.setModel(model);
+		tree.addTreeExpansionListener(model);
+		tree.setCellRenderer(VaultTreeModel.createCellRenderer());
 
 
 		/* ************************************************************************** */ 
@@ -822,7 +700,7 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 				JTree tree = (JTree) e.getSource();
 
 				DefaultMutableTreeNode selectedNode = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-				if (selectedNode == null) {
+				if (selectedNode == null || selectedNode instanceof VaultTreeModel.PlaceholderNode) {
 					currentEntry = null;
 					return;
 				}
@@ -848,18 +726,16 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 
 				if (selectedNode.isLeaf()) {
 
-					DatabaseManager dm = new DatabaseManager("vault_database");
 					User owner = currentUser;
 
 					if (!selectedNode.getParent().getParent().toString().equals("Data Entry")) {
-						owner = dm.retrieveUserFromDatabase(selectedNode.getParent().getParent().toString());
+						owner = VaultSession.findUser(selectedNode.getParent().getParent().toString());
 					}
 
-					DataEntry selectedDataEntry = dm.retrieveOneDataEntry(selectedNodeName, owner, selectedNode.getParent().toString());
+					DataEntry selectedDataEntry = VaultSession.findDataEntry(selectedNodeName, owner, selectedNode.getParent().toString());
 
 					currentEntry = selectedDataEntry;
 
-					ArrayList<String> indexList = new ArrayList<String>();
 
 
 					System.out.println("selectedNodeName 					: "+ selectedNodeName);
@@ -867,123 +743,7 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 					System.out.println("selectedNode.getParent().toString() : "+ selectedNode.getParent().toString());
 					System.out.println("owner"+selectedNode.getParent().getParent().toString());
 
-					if(selectedNode.getParent().toString() == "Account Login") {
-						panel = dataPanel.getAccountLoginPanelWithData(selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "Confirmation Number") {
-						indexList.add("Confirmation Name");
-						indexList.add("Confirmation Number");
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "Credit/Debit Card") {
-						panel = dataPanel.getCreditCardPanelWithData(selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "Entry Code") {
-						indexList.add("Code Name");
-						indexList.add("Code");
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "Flight Ticket") {
-						indexList.add("Passenger");
-						indexList.add("Destination");
-						indexList.add("Airport (Origin)");
-						indexList.add("Airport (Dest.)");
-						indexList.add("Gate (Origin)");
-						indexList.add("Gate (Dest.)");
-						indexList.add("Departure");
-						indexList.add("Arrival");
-						indexList.add("Group");
-						indexList.add("Seat");
-
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "General Password") {
-
-						indexList.add("Password Name");
-						indexList.add("Password");
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "ID Card") {
-
-						indexList.add("ID Card Name");
-						indexList.add("ID Card Number");
-						indexList.add("Cardholder Name");
-						indexList.add("Address");
-						indexList.add("Issue Date");
-						indexList.add("Expiration Date");
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "License") {
-
-						panel = dataPanel.getLicensePaneWithData(selectedDataEntry);
-						/*
-						indexList.add("License Name");
-						indexList.add("PCardholder Name");
-						indexList.add("License Number");
-						indexList.add("Address");
-						indexList.add("Date of Birth");
-						indexList.add("Expiration Date");
-						indexList.add("Class");
-						indexList.add("Restrictions");	
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-						 */
-
-					}
-					else if(selectedNode.getParent().toString() == "Passport") {
-						indexList.add("Name");
-						indexList.add("Passport Number");
-						indexList.add("Nationality");
-						indexList.add("Sex");
-						indexList.add("Date of Birth");
-						indexList.add("Place of Birth");
-						indexList.add("Issued Date");
-						indexList.add("Expiration Date");
-
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "Phone Number") {
-						panel = dataPanel.getPhoneNumberPaneWithData(selectedDataEntry);
-						/*
-						indexList.add("Name");
-						indexList.add("Phone Number");
-						indexList.add("Group");
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-						 */
-					}
-					else if(selectedNode.getParent().toString() == "Serial Number") {
-						indexList.add("Product Name");
-						indexList.add("Serial Number");
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "Shipment Tracking Number") {
-						indexList.add("Company/Item Name");
-						indexList.add("Shipment Tracking Number");
-
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					}
-					else if(selectedNode.getParent().toString() == "SSN") {
-						panel = dataPanel.getSSNWithData(selectedDataEntry);
-						/*
-						indexList.add("Name");
-						indexList.add("SSN");
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-						 */
-					}
-					else if(selectedNode.getParent().toString() == "Wifi Network") {
-						//panel = dataPanel.getWifiNetworkWithData(selectedDataEntry);
-						indexList.add("Network Name");
-						indexList.add("Password");
-						indexList.add("Security");
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-
-					}
+					panel = dataPanel.getPanelWithData(selectedDataEntry);
 
 					panelName = selectedNode.getParent().toString();
 
@@ -995,7 +755,6 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 					//panel_east.addTab(panelName, null, panel, null);
 
 					System.out.println("Leaf: " + selectedNodeName);
-					indexList.clear();
 				}
 				else {
 					currentEntry = null;
@@ -1033,7 +792,7 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 		 *  sort by name
 		 *  
 		 * */
-		JList<String> list = new JList();
+		JList<EntrySummary> list = new JList<EntrySummary>();
 		list.setBounds(6, 53, 208, 266);
 		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
@@ -1046,43 +805,10 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 
 		btnSortByEntry.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				//ortedNameData.clear();
-				
-				sortedNameData = allData;
-				
 				buttonIndex_1 = 1;
 				panel_east.removeAll();
+				sortItemList(ENTRY_NAME_ORDER);
 
-				listModel.clear();
-/*
-				for(int i=0; i< numOfData;i++) {
-					listModel.add(i, sortedNameData.get(i).getEntryName());
-					System.out.println(sortedNameData.get(i).getEntryName());
-					//sortedAllData.set(i, allData.get(i));
-				}
-*/
-				
-				for (int c = 0; c < ( sortedNameData.size() - 1 ); c++) {
-					for (int d = 0; d < sortedNameData.size() - c - 1; d++) {
-						if ( sortedNameData.get(d).getEntryName().compareToIgnoreCase(sortedNameData.get(d+1).getEntryName()) > 0) /* For descending order use < */
-						{
-							System.out.println(sortedNameData.get(d).getEntryName());
-							DataEntry swap;
-							swap       = sortedNameData.get(d);
-							sortedNameData.set(d, sortedNameData.get(d+1));
-							sortedNameData.set(d+1, swap);
-						}
-					}
-				}
-
-				for(int i=0; i< numOfData;i++) {
-
-					listModel.add(i, sortedNameData.get(i).getEntryName());
-					//Collections.sort(sortedAllData, sortedAllData.get(i).getLastModified());
-					//sortedAllData.set(i, allData.get(i));
-				}
-				
-				
 				list.setModel(listModel);
 				
 				panel.add(list);
@@ -1107,44 +833,9 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 			public void actionPerformed(ActionEvent e) {
 
 				buttonIndex_1 = 2;
-				//sortedTimeData.clear();
-				sortedTimeData = allData;
 				panel_east.removeAll();
-				listModel.clear();
-
-				//Collections.sort(sortedTimeData);
-
-				//bubble sort
-
-				for (int c = 0; c < ( sortedTimeData.size() - 1 ); c++) {
-					for (int d = 0; d < sortedTimeData.size() - c - 1; d++) {
-						if (sortedTimeData.get(d).getLastModified().compareTo( sortedTimeData.get(d+1).getLastModified()) > 0) /* For descending order use < */
-						{
-							DataEntry swap;
-							swap       = sortedTimeData.get(d);
-							sortedTimeData.set(d, sortedTimeData.get(d+1));
-							sortedTimeData.set(d+1, swap);
-						}
-					}
-				}
+				sortItemList(MODIFIED_TIME_ORDER);
 
-				for (int d = 0; d < (sortedTimeData.size() ) / 2; d++) {
-					
-					DataEntry swap;
-					swap       = sortedTimeData.get(d);
-					sortedTimeData.set(d, sortedTimeData.get(sortedTimeData.size()-1-d));
-					sortedTimeData.set(sortedTimeData.size()-1-d, swap);
-
-				}
-
-
-
-				for(int i=0; i< numOfData;i++) {
-
-					listModel.add(i, sortedTimeData.get(i).getEntryName());
-					//Collections.sort(sortedAllData, sortedAllData.get(i).getLastModified());
-					//sortedAllData.set(i, allData.get(i));
-				}
 				list.setModel(listModel);
 
 				panel.add(list);
@@ -1189,13 +880,8 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 					return;
 				}
 
-				DataEntry selectedDataEntry = null;
-				if(buttonIndex_1 == 1){
-					selectedDataEntry = sortedNameData.get(num);
-				}
-				else if(buttonIndex_1 == 2) {
-					selectedDataEntry = sortedTimeData.get(num);
-				}
+				EntrySummary selectedSummary = sortedData.get(num);
+				DataEntry selectedDataEntry = VaultSession.findDataEntry(selectedSummary.getEntryName(), currentUser, selectedSummary.getEntryType());
 
 				System.out.println(selectedDataEntry.getEntryName());
 				System.out.println(selectedDataEntry.getOwner());
@@ -1204,147 +890,103 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 
 				currentEntry = selectedDataEntry;
 
-				ArrayList<String> indexList = new ArrayList<String>();
 
 				DataEntryPanel dataPanel = new DataEntryPanel();
 				JPanel panel = new JPanel();
 
-				if(selectedDataEntry.getEntryType().toString().equals("Account Login")) {
-					panel = dataPanel.getAccountLoginPanelWithData(selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Confirmation Number")) {
-					indexList.add("Confirmation Name");
-					indexList.add("Confirmation Number");
+				panel = dataPanel.getPanelWithData(selectedDataEntry);
 
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Credit/Debit Card")) {
-					panel = dataPanel.getCreditCardPanelWithData(selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Entry Code")) {
-					indexList.add("Code Name");
-					indexList.add("Code");
 
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Flight Ticket")) {
-					indexList.add("Passenger");
-					indexList.add("Destination");
-					indexList.add("Airport (Origin)");
-					indexList.add("Airport (Dest.)");
-					indexList.add("Gate (Origin)");
-					indexList.add("Gate (Dest.)");
-					indexList.add("Departure");
-					indexList.add("Arrival");
-					indexList.add("Group");
-					indexList.add("Seat");
-
-
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("General Password")) {
+				JScrollPane scroll = new JScrollPane(panel);
+				panel_east.addTab(selectedDataEntry.getEntryType().toString(), null, scroll, null);
 
-					indexList.add("Password Name");
-					indexList.add("Password");
 
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("ID Card")) {
+				//panel_east.addTab(panelName, null, panel, null);
 
-					indexList.add("ID Card Name");
-					indexList.add("ID Card Number");
-					indexList.add("Cardholder Name");
-					indexList.add("Address");
-					indexList.add("Issue Date");
-					indexList.add("Expiration Date");
 
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("License")) {
-
-					panel = dataPanel.getLicensePaneWithData(selectedDataEntry);
-					/*
-						indexList.add("License Name");
-						indexList.add("PCardholder Name");
-						indexList.add("License Number");
-						indexList.add("Address");
-						indexList.add("Date of Birth");
-						indexList.add("Expiration Date");
-						indexList.add("Class");
-						indexList.add("Restrictions");	
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					 */
+			}
 
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Passport") ){
-					indexList.add("Name");
-					indexList.add("Passport Number");
-					indexList.add("Nationality");
-					indexList.add("Sex");
-					indexList.add("Date of Birth");
-					indexList.add("Place of Birth");
-					indexList.add("Issued Date");
-					indexList.add("Expiration Date");
-
-
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Phone Number") ){
-					panel = dataPanel.getPhoneNumberPaneWithData(selectedDataEntry);
-					/*
-						indexList.add("Name");
-						indexList.add("Phone Number");
-						indexList.add("Group");
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					 */
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Serial Number")) {
-					indexList.add("Product Name");
-					indexList.add("Serial Number");
 
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Shipment Tracking Number")) {
-					indexList.add("Company/Item Name");
-					indexList.add("Shipment Tracking Number");
+		});
 
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("SSN")) {
-					panel = dataPanel.getSSNWithData(selectedDataEntry);
-					/*
-						indexList.add("Name");
-						indexList.add("SSN");
-						panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
-					 */
-				}
-				else if(selectedDataEntry.getEntryType().toString().equals("Wifi Network") ){
-					//panel = dataPanel.getWifiNetworkWithData(selectedDataEntry);
-					indexList.add("Network Name");
-					indexList.add("Password");
-					indexList.add("Security");
-					panel = dataPanel.getGeneralPanelWithData(indexList, selectedDataEntry);
+		panel.add(list);
 
-				}
 
 
-				JScrollPane scroll = new JScrollPane(panel);
-				panel_east.addTab(selectedDataEntry.getEntryType().toString(), null, scroll, null);
-
+		/* ************************************************************************** */ 
+		/* 	VAULT CHANGES															  */
+		/*																			  */
+		/* ************************************************************************** */
 
-				//panel_east.addTab(panelName, null, panel, null);
+		// Adds, edits, deletes and shares are applied in place; only the changed row is read back
+		VaultModelListener vaultListener = new VaultModelListener() {
+			public void vaultChanged(VaultEvent event) {
+				if (!event.getOwner().equals(username)) {
+					return; // entries shared with this user only appear in the tree
+				}
+				DatabaseManager dm = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE);
+				if (event.getType() == VaultEvent.Type.RELOADED) {
+					sortedData.clear();
+					sortedData.addAll(dm.retrieveDataEntrySummaries(username));
+					if (VaultSession.getCurrent() != null) {
+						VaultSession.getCurrent().getSearchIndex().rebuild(username, sortedData);
+					}
+					sortItemList(itemOrder);
+					return;
+				}
 
-				indexList.clear();
+				// Item List: only the changed row is removed and re-inserted (sharing an entry leaves its row as it is)
+				if (event.getType() != VaultEvent.Type.SHARED) {
+					removeItemRow(event.getPreviousEntryName(), event.getEntryType());
+					if (event.getType() != VaultEvent.Type.REMOVED) {
+						EntrySummary changedSummary = dm.retrieveDataEntrySummary(username, event.getEntryName(), event.getEntryType());
+						if (changedSummary != null) {
+							insertItemRow(changedSummary);
+						}
+					}
+				}
 
+				// Displayed entry; only it is decrypted again, through the session's entry cache
+				if (currentEntry != null && currentEntry.getEntryName().equals(event.getPreviousEntryName())) {
+					panel_east.removeAll();
+					currentEntry = null;
+					if (event.getType() != VaultEvent.Type.REMOVED) {
+						currentEntry = VaultSession.findDataEntry(event.getEntryName(), currentUser, event.getEntryType());
+					}
+					if (currentEntry != null) {
+						JScrollPane scroll = new JScrollPane(new DataEntryPanel().getPanelWithData(currentEntry));
+						panel_east.addTab(currentEntry.getEntryType(), null, scroll, null);
+					}
+					panel_east.repaint();
+				}
+			}
+		};
+		VaultModel.getInstance().addVaultModelListener(model);
+		VaultModel.getInstance().addVaultModelListener(vaultListener);
+
+		// Backups run in the background; show each one's progress as it starts
+		final BackupScheduler.BackupListener backupListener = new BackupScheduler.BackupListener() {
+			public void backupStarted(BackupScheduler.BackupRun run) {
+				BackupProgressView progress = new BackupProgressView(run);
+				progress.setLocationRelativeTo(frmSentinelDataVault);
+				progress.setVisible(true);
 			}
 
+			public void backupProgress(BackupScheduler.BackupRun run) {
+			}
 
+			public void backupFinished(BackupScheduler.BackupRun run) {
+			}
+		};
+		BackupScheduler.getInstance().addBackupListener(backupListener);
+		frmSentinelDataVault.addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				VaultModel.getInstance().removeVaultModelListener(model);
+				VaultModel.getInstance().removeVaultModelListener(vaultListener);
+				BackupScheduler.getInstance().removeBackupListener(backupListener);
+			}
 		});
 
-		panel.add(list);
-
-
-
 		// MenuBar
 		JMenuBar menuBar = new JMenuBar();
 		frmSentinelDataVault.setJMenuBar(menuBar);
@@ -1361,12 +1003,123 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 		JMenu mnEdit = new JMenu("Edit");
 		menuBar.add(mnEdit);
 
+		JMenuItem mntmShareFolder = new JMenuItem("Share Folder...");
+		mntmShareFolder.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				Object selected = tree.getLastSelectedPathComponent();
+				if (!(selected instanceof VaultTreeModel.EntryTypeNode) || ((VaultTreeModel.EntryTypeNode) selected).getSharedWith() != null) {
+					JOptionPane.showMessageDialog(frmSentinelDataVault, "Select one of your folders to share it.");
+					return;
+				}
+				// Sharing needs only the names; the entries are decrypted only if they are sent by email
+				String entryType = ((VaultTreeModel.EntryTypeNode) selected).getEntryType();
+				List<String> entryNames = new ArrayList<String>();
+				for (EntrySummary summary : sortedData) {
+					if (summary.getEntryType().equals(entryType)) {
+						entryNames.add(summary.getEntryName());
+					}
+				}
+				if (entryNames.isEmpty()) {
+					JOptionPane.showMessageDialog(frmSentinelDataVault, "This folder is empty.");
+					return;
+				}
+				new ShareView(currentUser, entryType, entryNames).setVisible(true);
+			}
+		});
+		mnEdit.add(mntmShareFolder);
+
+		JMenuItem mntmRestoreEntry = new JMenuItem("Restore Entry...");
+		mntmRestoreEntry.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				// A deleted entry is no longer selectable, so its name can be typed in
+				String entryName = (String) JOptionPane.showInputDialog(frmSentinelDataVault, "Name of the entry to restore:", "Restore Entry",
+						JOptionPane.QUESTION_MESSAGE, null, null, (currentEntry == null) ? "" : currentEntry.getEntryName());
+				if (entryName == null || entryName.trim().isEmpty()) {
+					return;
+				}
+				long timestamp = askForRestoreTime("Restore \"" + entryName.trim() + "\" as it was at");
+				if (timestamp < 0) {
+					return;
+				}
+				if (OperationJournal.getInstance().restoreEntry(currentUser, entryName.trim(), timestamp) < 0) {
+					JOptionPane.showMessageDialog(frmSentinelDataVault, "There is no record of that entry at that time.", "Restore Entry", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		});
+		mnEdit.add(mntmRestoreEntry);
+
+		JMenuItem mntmRestoreVault = new JMenuItem("Restore Vault...");
+		mntmRestoreVault.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				long timestamp = askForRestoreTime("Restore all of your entries as they were at");
+				if (timestamp < 0) {
+					return;
+				}
+				int changed = OperationJournal.getInstance().restoreVault(currentUser, timestamp);
+				if (changed < 0) {
+					JOptionPane.showMessageDialog(frmSentinelDataVault, "Your vault's history does not reach back that far.", "Restore Vault", JOptionPane.ERROR_MESSAGE);
+				}
+				else {
+					JOptionPane.showMessageDialog(frmSentinelDataVault, changed + " entries were restored.", "Restore Vault", JOptionPane.INFORMATION_MESSAGE);
+				}
+			}
+		});
+		mnEdit.add(mntmRestoreVault);
+
 		JMenu mnUser = new JMenu("User");
 		menuBar.add(mnUser);
 
 		JMenuItem mntmAccountDeletion = new JMenuItem("Account Deletion");
 		mnUser.add(mntmAccountDeletion);
 
+		final JMenuItem mntmVaultAudit = new JMenuItem("Vault Health Audit...");
+		mntmVaultAudit.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = new JFileChooser();
+				chooser.setSelectedFile(new File(currentUser.getUsername() + "_vault_audit.csv"));
+				if (chooser.showSaveDialog(frmSentinelDataVault) != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+				final File reportFile = chooser.getSelectedFile();
+				final User auditedUser = currentUser;
+				mntmVaultAudit.setEnabled(false);
+
+				// Decrypting and scoring every password can take a while on a large vault; keep it off the EDT
+				new SwingWorker<VaultAuditor.AuditSummary, Void>() {
+					protected VaultAuditor.AuditSummary doInBackground() throws Exception {
+						Writer report = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8));
+						try {
+							return new VaultAuditor().audit(auditedUser, report);
+						}
+						finally {
+							report.close();
+						}
+					}
+
+					protected void done() {
+						mntmVaultAudit.setEnabled(true);
+						try {
+							VaultAuditor.AuditSummary summary = get();
+							JOptionPane.showMessageDialog(frmSentinelDataVault,
+									"Passwords audited: " + summary.getEntriesAudited()
+									+ "\nWeak: " + summary.getWeakPasswords()
+									+ "\nAdequate: " + summary.getAdequatePasswords()
+									+ "\nStrong: " + summary.getStrongPasswords()
+									+ "\nReused passwords: " + summary.getReusedPasswordGroups() + " (shared by " + summary.getEntriesWithReusedPasswords() + " entries)"
+									+ ((summary.getFailedEntries() > 0) ? "\nCould not be read: " + summary.getFailedEntries() : "")
+									+ "\n\nReport saved to " + reportFile.getPath(),
+									"Vault Health Audit", JOptionPane.INFORMATION_MESSAGE);
+						}
+						catch (Exception ex) {
+							System.err.println(ex.getClass().getName() + ": " + ex.getMessage());
+							JOptionPane.showMessageDialog(frmSentinelDataVault, "The vault audit could not be completed.", "Vault Health Audit", JOptionPane.ERROR_MESSAGE);
+						}
+					}
+				}.execute();
+			}
+		});
+		mnUser.add(mntmVaultAudit);
+
 		JMenu mnSearch = new JMenu("Search");
 		menuBar.add(mnSearch);
 
@@ -1385,4 +1138,28 @@ System.out.println(currentSharedDataEntryNameList.get(i));
 		JMenuItem mntmAbout = new JMenuItem("About");
 		mnHelp.add(mntmAbout);
 	}
+
+	/**
+	 * Asks for the time to restore to, as "yyyy-MM-dd HH:mm" (local time).
+	 * 
+	 * @param	message	what will be restored
+	 * @return	the time in milliseconds since the epoch, or -1 if the user cancelled
+	 */
+	private long askForRestoreTime(String message) {
+		DateTimeFormatter format = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+		String input = LocalDateTime.now().minusHours(1).format(format);
+		while (true) {
+			input = (String) JOptionPane.showInputDialog(frmSentinelDataVault, message + " (yyyy-MM-dd HH:mm):", "Restore",
+					JOptionPane.QUESTION_MESSAGE, null, null, input);
+			if (input == null) {
+				return -1;
+			}
+			try {
+				return LocalDateTime.parse(input.trim(), format).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			}
+			catch (DateTimeParseException e) {
+				JOptionPane.showMessageDialog(frmSentinelDataVault, "Enter the time as, for example, 2017-04-21 18:30.", "Restore", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
 }
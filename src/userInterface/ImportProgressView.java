@@ -0,0 +1,84 @@
+package userInterface;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.border.EmptyBorder;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JProgressBar;
+import java.awt.event.ActionListener;
+import java.awt.event.ActionEvent;
+
+/**
+ * Shows how far an import running in the background has got, and lets the user cancel it. The import polls
+ * isCancelled(); whoever runs it closes the window when it finishes.
+ */
+public class ImportProgressView extends JFrame {
+
+	private JPanel contentPanel;
+	private JLabel lblStage;
+	private JProgressBar progressBar;
+	private JButton btnCancel;
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Create the frame.
+	 */
+	public ImportProgressView() {
+		setResizable(false);
+		setTitle("Importing Entries");
+		setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); // the import has to be cancelled, not abandoned
+		setBounds(100, 100, 400, 150);
+		setLocationRelativeTo(null);
+		contentPanel = new JPanel();
+		contentPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+		setContentPane(contentPanel);
+		contentPanel.setLayout(null);
+
+		lblStage = new JLabel("Reading your entries");
+		lblStage.setBounds(20, 15, 360, 16);
+		contentPanel.add(lblStage);
+
+		progressBar = new JProgressBar(0, 100);
+		progressBar.setStringPainted(true);
+		progressBar.setIndeterminate(true);
+		progressBar.setBounds(20, 40, 360, 20);
+		contentPanel.add(progressBar);
+
+		btnCancel = new JButton("Cancel");
+		btnCancel.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				cancelled = true;
+				btnCancel.setEnabled(false);
+				lblStage.setText("Cancelling...");
+			}
+		});
+		btnCancel.setBounds(280, 75, 100, 29);
+		contentPanel.add(btnCancel);
+	}
+
+	/**
+	 * Shows how many of the backup's entries have been imported. Call on the event dispatch thread.
+	 *
+	 * @param	entriesDone		entries imported so far
+	 * @param	entriesTotal	entries to import; 0 while they are still being counted
+	 */
+	public void showProgress(int entriesDone, int entriesTotal) {
+		if (entriesTotal <= 0) {
+			return;
+		}
+		progressBar.setIndeterminate(false);
+		progressBar.setValue((int) (100L * entriesDone / entriesTotal));
+		if (!cancelled) {
+			lblStage.setText("Importing entry " + entriesDone + " of " + entriesTotal);
+		}
+	}
+
+	/**
+	 * @return	true once the user has pressed Cancel; safe to call from any thread
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -2,15 +2,12 @@ package userInterface;
 
 import java.awt.*;
 import java.awt.event.*;
-import javax.mail.MessagingException;
-import javax.mail.internet.AddressException;
 import javax.swing.*;
 import java.security.NoSuchAlgorithmException;
 import java.util.Locale;
 import org.eclipse.wb.swing.FocusTraversalOnArray;
-import controllers.DatabaseManager;
+import controllers.LoginAttemptService;
 import controllers.VaultController;
-import dataManagement.User;
 
 public class LoginView {
 
@@ -21,7 +18,6 @@ public class LoginView {
 	private JButton btnForgotPassword;
 	public String username = "";
 	private JLabel lblSentinelDataVault;
-	private int failedattempt = 0;
 	private JTextField txtWarning;
 
 	/**
@@ -119,42 +115,17 @@ public class LoginView {
 					e1.printStackTrace();
 				}
 				if (result == 1) {
-					failedattempt = 0;
 					frmSignIn.dispose();
 
+				} else if (result == -1) {
+					long seconds = (LoginAttemptService.getInstance().getRetryDelay(username) + 999) / 1000;
+					txtWarning.setText("Too many failed attempts. Please wait " + seconds + " second(s) and try again.");
+				} else if (result == -2) {
+					txtWarning.setText("The Email and/or Password is incorrect. Please try again.");
+					JOptionPane.showMessageDialog(null,
+							"Your account data has been deleted due to multiple failed login attempts");
 				} else {
 					txtWarning.setText("The Email and/or Password is incorrect. Please try again.");
-					failedattempt++;
-				}
-				// TODO migrate failcheck to Vault controller!
-				if (failedattempt > 1 && failedattempt < 5) {
-					try {
-						VaultController.Send("sentineldatavault", "SENTINELDATA", username, "Security Warning",
-								"Dear user,\n\nYou have multiple failed login attempts for your account.\n"
-										+ "If it is not you, please change your password immediately.\n\n"
-										+ "Sincerely,\nSentinel Data Vault Team");
-					} catch (AddressException e1) {
-						e1.printStackTrace();
-					} catch (MessagingException e1) {
-						e1.printStackTrace();
-					}
-				} else if (failedattempt == 5) {
-					DatabaseManager d = new DatabaseManager("vault_database");
-					User u = d.retrieveUserFromDatabase(username);
-					d.deleteAllEntriesFromDatabase(u);
-					d.deleteUserFromDatabase(u);
-					try {
-						JOptionPane.showMessageDialog(null,
-								"Your account data has been deleted due to multiple failed login attempts");
-						VaultController.Send("sentineldatavault", "SENTINELDATA", username, "Security Warning",
-								"Dear user,\n\nWe have deleted your account.\n" + "Have a nice day.\n\n"
-										+ "Sincerely,\nSentinel Data Vault Team");
-					} catch (AddressException e1) {
-						e1.printStackTrace();
-					} catch (MessagingException e1) {
-						e1.printStackTrace();
-					}
-
 				}
 			}
 		});
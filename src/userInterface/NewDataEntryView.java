@@ -19,7 +19,6 @@ import javax.swing.JRadioButton;
 
 import java.awt.Button;
 import java.awt.TextField;
-import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentEvent;
@@ -195,16 +194,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -294,16 +285,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -434,16 +417,8 @@ public class NewDataEntryView {
 								} else {
 
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -533,16 +508,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -786,16 +753,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -885,16 +844,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1056,16 +1007,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1184,16 +1127,8 @@ public class NewDataEntryView {
 								} else {
 
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1344,16 +1279,8 @@ public class NewDataEntryView {
 								} else {
 
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1453,16 +1380,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1551,16 +1470,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1650,16 +1561,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1751,16 +1654,8 @@ public class NewDataEntryView {
 								} else {
 
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
@@ -1858,16 +1753,8 @@ public class NewDataEntryView {
 									return;
 								} else {
 									JOptionPane.showMessageDialog(null, "You have successfully added a new data entry!");
-									System.gc();
-									for (Window window : Window.getWindows()) {
-										window.dispose();
-									}
-
 									frame.dispose();
 
-									HomeView hv = new HomeView(userName);
-									hv.frmSentinelDataVault.setVisible(true);
-
 								}
 							}
 						});
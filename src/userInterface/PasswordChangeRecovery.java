@@ -3,10 +3,12 @@ package userInterface;
 import java.awt.EventQueue;
 
 import javax.swing.JFrame;
+import javax.swing.JOptionPane;
 import javax.swing.JLabel;
 import javax.swing.JTextField;
 import javax.swing.JTextPane;
 
+import controllers.BackupScheduler;
 import cryptography.PasswordHasher;
 import dataManagement.User;
 import security.PasswordValidation;
@@ -94,6 +96,13 @@ public class PasswordChangeRecovery {
 				String pass2 = new String(textField_1.getPassword());
 				PasswordValidation v = new PasswordValidation();
 				if(pass1.equals(pass2) && v.minStandard(pass1) ) { 
+					// Backup archives are keyed to the old password, which a recovery cannot supply to rewrap them
+					if (JOptionPane.showConfirmDialog(frmPasswordRecovery, "Backup archives made before the reset can only be restored with your old password.\n"
+							+ "Automatic backups will stop until you choose a new backup location.\nReset your password anyway?",
+							"Password Reset", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE) != JOptionPane.YES_OPTION) {
+						return;
+					}
+					BackupScheduler.getInstance().setDestination(currentUser.getUsername(), null);
 					PasswordHasher p = new PasswordHasher();
 					System.out.println(pass1);
 					System.out.println(currentUser.getUsername());
@@ -17,6 +17,7 @@ import cryptography.SaltGenerator;
 import security.PasswordValidation;
 import javax.swing.JPasswordField;
 import controllers.DatabaseManager;
+import controllers.VaultController;
 import javax.swing.JComboBox;
 import javax.swing.DefaultComboBoxModel;
 import java.awt.Font;
@@ -179,6 +180,11 @@ public class PasswordChangeView {
 					txtNewPassWarn.setText("Needs at least 8 characters, an uppercase, lowercase, number, and symbol.");
 					txtCurPassWarn.setText(null);
 				}
+				else if (a.isBreached(newPass2)) { //if the new password appears in a known data breach
+					txtNewPassWarn.setFont(new Font("Tahoma", Font.ITALIC, 12));
+					txtNewPassWarn.setText("This password has appeared in a data breach.");
+					txtCurPassWarn.setText(null);
+				}
 				else if ( newPass1.equals(newPass2) && newPass2.equals(oldPass)) { //if the new password matches the old one
 					//JOptionPane.showMessageDialog(null, "New password cannot match the old password.", "Change Password", 0);
 					txtNewPassWarn.setFont(new Font("Tahoma", Font.ITALIC, 12));
@@ -201,6 +207,7 @@ public class PasswordChangeView {
 					
 					DatabaseManager dave = new DatabaseManager("vault_database");
 					dave.modifyUserField(currentUser, "password_hash", currentUser.getPasswordHash());
+					VaultController.rekeySession(currentUser, newPass2);
 					// Get the updated user to the database!
 					
 					frmChangePassword.dispose();
@@ -219,6 +226,7 @@ public class PasswordChangeView {
 					jim.modifyUserField(currentUser, "security_question", currentUser.getSecurityQuestion());
 					jim.modifyUserField(currentUser, "security_answer", currentUser.getSecurityAnswer());
 					jim.modifyUserField(currentUser, "password_hash", currentUser.getPasswordHash());
+					VaultController.rekeySession(currentUser, newPass2);
 					frmChangePassword.dispose();
 					}
 				//Yells at user if the above if has a false in it
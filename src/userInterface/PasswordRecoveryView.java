@@ -6,13 +6,12 @@ import java.awt.TextField;
 
 import javax.swing.JFrame;
 import controllers.DatabaseManager;
-import controllers.VaultController;
+import controllers.MailDispatcher;
 import cryptography.SaltGenerator;
 import dataManagement.User;
 import javax.swing.JOptionPane;
 import javax.swing.JTextField;
 import javax.swing.JLabel;
-import javax.mail.MessagingException;
 import javax.swing.JButton;
 import java.awt.event.ActionListener;
 import java.security.NoSuchAlgorithmException;
@@ -155,7 +154,8 @@ public class PasswordRecoveryView {
 								+ " If you do not find this email in your inbox, please check your spam folder", "Change Password", 1);
 						SaltGenerator chat = new SaltGenerator();
 						 code = chat.generateSalt();
-						VaultController.Send("sentineldatavault", "SENTINELDATA", user.getUsername(), 
+						// Kept out of the outbox table: the code only works while this window is open
+						MailDispatcher.getInstance().enqueueTransient(user.getUsername(),
 								"Changed Password", "Dear user,\n\n To continue recovering your account password, please enter the code below into the Sentinel Data Vault.\n"
 									+ "If you did not initiate this change, this e-mail can be safely disregarded.\n\n"+
 									"Your security code is: " + code +"\n\n" +
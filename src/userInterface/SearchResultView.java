@@ -1,35 +1,59 @@
 package userInterface;
 
+import java.awt.Component;
 import java.awt.EventQueue;
 
+import javax.swing.AbstractListModel;
 import javax.swing.JFrame;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JLabel;
 import javax.swing.JButton;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
+
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.awt.event.ActionEvent;
-import javax.swing.JTextPane;
 
 import controllers.DatabaseManager;
+import controllers.VaultModel;
+import controllers.VaultSession;
+import dataManagement.DataEntry;
+import dataManagement.EntryMatch;
 import dataManagement.User;
 
 public class SearchResultView {
 
-	
+	// Matches fetched per query; another page is fetched when the list is scrolled near its end
+	private static final int PAGE_SIZE = 100;
+	private static final int PREFETCH_ROWS = 20;
+
 	public JFrame frame;
 	public String text;
 	User currentUser;
 	String username;
-	
-	public List<String> currentDataEntryNameList;
-	public List<String> currentDataEntryTypeList;
-	
+
+	private JList<EntryMatch> resultList;
+	private JLabel lblResult;
+	private final SearchResultListModel results = new SearchResultListModel();
+	private SearchPageLoader loader;
+	private boolean exhausted = false;
+
 	/**
 	 *	Jiho Choi
-	 * 
+	 *
 	 */
-	
+
 	public static void main(String[] args) {
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
@@ -47,48 +71,134 @@ public class SearchResultView {
 	 * Create the application.
 	 */
 	public SearchResultView() {
+		this.text = "";
+		exhausted = true;
 		initialize();
 	}
 
 	public SearchResultView(String text, User currentUser) {
-		
-		
 		this.text = text;
 		this.currentUser = currentUser;
 		this.username = currentUser.getUsername();
-		DatabaseManager dbmanger = new DatabaseManager("vault_database");
 
-		currentDataEntryNameList = dbmanger.retrieveDataEntryNameList(username);
-		currentDataEntryTypeList = dbmanger.retrieveDataEntryTypeList(username);
-		
 		initialize();
+		loadNextPage();
 	}
-	
-	public String SearchEntryResult (String text) {
-		
-		String resultText = "";
-		int numOfResult = 0;
-		
-		
-		for(int i=0; i < currentDataEntryNameList.size(); i++ ) {
-			
-			if(currentDataEntryNameList.get(i).toLowerCase().contains(text.toLowerCase())) {
-				resultText = resultText + 
-						"Entry <"+ currentDataEntryNameList.get(i) + "> is founded under <" +currentDataEntryTypeList.get(i) + ">.\n\n";
-				}
-			numOfResult++;
+
+	/**
+	 * List model over the matches fetched so far. JList only asks for the rows it paints, so the list stays fast no
+	 * matter how many pages have been appended.
+	 */
+	private static class SearchResultListModel extends AbstractListModel<EntryMatch> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<EntryMatch> matches = new ArrayList<EntryMatch>();
+
+		public int getSize() {
+			return matches.size();
+		}
+
+		public EntryMatch getElementAt(int index) {
+			return matches.get(index);
+		}
+
+		EntryMatch last() {
+			return matches.isEmpty() ? null : matches.get(matches.size() - 1);
+		}
+
+		void append(List<EntryMatch> page) {
+			if (page.isEmpty()) {
+				return;
+			}
+			int first = matches.size();
+			matches.addAll(page);
+			fireIntervalAdded(this, first, matches.size() - 1);
 		}
-		
-		resultText = "We Found \"" + numOfResult +"\" item(s) related to \""+ text +"\". \n" + "\n" 
-				+ "------------------------------------------------ \n"
-				+ resultText;
-		
-		
-		
-		text = resultText;
-		return text;
 	}
-	
+
+	/**
+	 * Fetches the page of matches after the last one in the list.
+	 */
+	private class SearchPageLoader extends SwingWorker<List<EntryMatch>, Void> {
+
+		private final EntryMatch after;
+
+		SearchPageLoader(EntryMatch after) {
+			this.after = after;
+		}
+
+		protected List<EntryMatch> doInBackground() {
+			DatabaseManager dm = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE);
+			return dm.searchDataEntryPage(username, text, after, PAGE_SIZE);
+		}
+
+		protected void done() {
+			if (isCancelled()) {
+				return;
+			}
+			loader = null;
+			try {
+				List<EntryMatch> page = get();
+				results.append(page);
+				exhausted = page.size() < PAGE_SIZE;
+			}
+			catch (InterruptedException | ExecutionException e) {
+				System.err.println(e.getClass().getName() + ": " + e.getMessage());
+				exhausted = true;
+			}
+			updateResultLabel();
+			if (!exhausted && nearEndOfList()) {
+				loadNextPage(); // the list does not fill the window yet
+			}
+		}
+	}
+
+	private void loadNextPage() {
+		if (loader != null || exhausted) {
+			return;
+		}
+		loader = new SearchPageLoader(results.last());
+		loader.execute();
+	}
+
+	private boolean nearEndOfList() {
+		int lastVisible = resultList.getLastVisibleIndex();
+		return lastVisible >= results.getSize() - PREFETCH_ROWS;
+	}
+
+	private void updateResultLabel() {
+		String count = results.getSize() + (exhausted ? "" : "+");
+		lblResult.setText("Search Result for \"" + text + "\": " + count + " item(s)");
+	}
+
+	private void openSelectedEntry() {
+		EntryMatch match = resultList.getSelectedValue();
+		if (match != null) {
+			openEntry(frame, currentUser, match);
+		}
+	}
+
+	/**
+	 * Decrypts a matched entry and shows it in its own window.
+	 *
+	 * @param parent	window the entry is shown over
+	 * @param owner		User who owns the entry
+	 * @param match		entry to open
+	 */
+	static void openEntry(Component parent, User owner, EntryMatch match) {
+		DataEntry entry = VaultSession.findDataEntry(match.getEntryName(), owner, match.getEntryType());
+		if (entry == null) {
+			JOptionPane.showMessageDialog(parent, "\"" + match.getEntryName() + "\" could not be opened.");
+			return;
+		}
+		JFrame entryFrame = new JFrame(entry.getEntryName());
+		entryFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+		entryFrame.getContentPane().add(new JScrollPane(new DataEntryPanel().getPanelWithData(entry)));
+		entryFrame.setSize(450, 450);
+		entryFrame.setLocationRelativeTo(parent);
+		entryFrame.setVisible(true);
+	}
+
 	/**
 	 * Initialize the contents of the frame.
 	 */
@@ -98,27 +208,52 @@ public class SearchResultView {
 		frame.setResizable(false);
 		frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		frame.setLocationRelativeTo(null);
-		
+
 		frame.getContentPane().setLayout(null);
-		
-		
+
+
 		JScrollPane scrollPane = new JScrollPane();
 		scrollPane.setBounds(30, 50, 400, 185);
 		frame.getContentPane().add(scrollPane);
-		
-		JTextPane txtpnSearchResultText = new JTextPane();
-		txtpnSearchResultText.setText(SearchEntryResult(text));
-		
-		scrollPane.setViewportView(txtpnSearchResultText);
-		
-		JLabel lblResult = new JLabel("Search Result for \""+ text + "\" ");
-		lblResult.setBounds(135, 8, 215, 30);
+
+		resultList = new JList<EntryMatch>(results);
+		resultList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		resultList.setPrototypeCellValue(new EntryMatch("", "Entry Name", "Entry Type", 0)); // fixed row height
+		resultList.setToolTipText("Double-click an entry to open it");
+		resultList.addMouseListener(new MouseAdapter() {
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2) {
+					openSelectedEntry();
+				}
+			}
+		});
+		resultList.addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent e) {
+				if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+					openSelectedEntry();
+				}
+			}
+		});
+		scrollPane.setViewportView(resultList);
+		scrollPane.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				if (nearEndOfList()) {
+					loadNextPage();
+				}
+			}
+		});
+
+		lblResult = new JLabel("Searching for \"" + text + "\"...");
+		lblResult.setBounds(30, 8, 400, 30);
 		frame.getContentPane().add(lblResult);
-		
+
 		JButton btnClose = new JButton("Close");
 		btnClose.setBounds(175, 243, 117, 29);
 		btnClose.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
+				if (loader != null) {
+					loader.cancel(true);
+				}
 				frame.dispose();
 			}
 		});
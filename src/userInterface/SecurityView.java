@@ -6,7 +6,9 @@ import java.awt.event.*;
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import security.PassphraseGen;
 import security.PasswordGen;
+import security.PasswordValidation;
 import security.StrengthChecker;
 import java.awt.Font;
 import java.awt.SystemColor;
@@ -216,6 +218,94 @@ public class SecurityView {
 			}
 		});
 		
+		//Passphrase generator
+		JPanel panel_2 = new JPanel();
+		tabbedPane.addTab("Passphrase Generator", null, panel_2, null);
+		panel_2.setLayout(null);
+		
+		JLabel lblPassphraseOptions = new JLabel("Passphrase Generation Options");
+		lblPassphraseOptions.setFont(new Font("Tahoma", Font.BOLD, 14));
+		lblPassphraseOptions.setBounds(87, 24, 260, 16);
+		panel_2.add(lblPassphraseOptions);
+		
+		//number of words in the passphrase
+		JSpinner spinWordCount = new JSpinner();
+		spinWordCount.setModel(new SpinnerNumberModel(6, 3, 12, 1));
+		spinWordCount.setBounds(87, 62, 45, 19);
+		spinWordCount.setToolTipText("Specify the number of words in the passphrase.");
+		panel_2.add(spinWordCount);
+		
+		JLabel lblWordCount = new JLabel("Number of Words");
+		lblWordCount.setBounds(144, 64, 150, 16);
+		lblWordCount.setToolTipText("Specify the number of words in the passphrase.");
+		panel_2.add(lblWordCount);
+		
+		//text placed between words
+		String[] separatorNames = {"Space", "Hyphen", "Period", "Underscore", "None"};
+		String[] separators = {" ", "-", ".", "_", ""};
+		JComboBox<String> cmbSeparator = new JComboBox<String>(separatorNames);
+		cmbSeparator.setSelectedIndex(1);
+		cmbSeparator.setBounds(87, 97, 110, 22);
+		cmbSeparator.setToolTipText("Specify the character placed between words.");
+		panel_2.add(cmbSeparator);
+		
+		JLabel lblSeparator = new JLabel("Word Separator");
+		lblSeparator.setBounds(209, 100, 150, 16);
+		panel_2.add(lblSeparator);
+		
+		JCheckBox chckbxCapitalize = new JCheckBox("Capitalize Each Word");
+		chckbxCapitalize.setToolTipText("The first letter of every word will be uppercase.");
+		chckbxCapitalize.setBounds(87, 132, 215, 25);
+		panel_2.add(chckbxCapitalize);
+		
+		JTextPane txtpnPassphraseWarning = new JTextPane();
+		txtpnPassphraseWarning.setBorder(null);
+		txtpnPassphraseWarning.setForeground(new Color(220, 20, 60));
+		txtpnPassphraseWarning.setFont(new Font("Tahoma", Font.ITALIC, 12));
+		txtpnPassphraseWarning.setEditable(false);
+		txtpnPassphraseWarning.setFocusable(false);
+		txtpnPassphraseWarning.setOpaque(false);
+		txtpnPassphraseWarning.setBounds(38, 176, 320, 40);
+		panel_2.add(txtpnPassphraseWarning);
+		
+		JLabel lblEntropy = new JLabel("");
+		lblEntropy.setBounds(38, 222, 320, 16);
+		panel_2.add(lblEntropy);
+		
+		JTextField txtPassphrase = new JTextField();
+		txtPassphrase.setEditable(false);
+		txtPassphrase.setFont(new Font("Courier New", Font.PLAIN, 14));
+		txtPassphrase.setBounds(38, 287, 308, 26);
+		panel_2.add(txtPassphrase);
+		
+		JButton btnGeneratePassphrase = new JButton("Generate");
+		btnGeneratePassphrase.setBounds(87, 325, 95, 25);
+		panel_2.add(btnGeneratePassphrase);
+		btnGeneratePassphrase.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent clickGenerate) {
+				PassphraseGen phraseGen = PassphraseGen.getDefault();
+				if (phraseGen == null) {
+					txtpnPassphraseWarning.setText("No passphrase wordlist found (" + PassphraseGen.DEFAULT_WORD_LIST + ").");
+					return;
+				}
+				txtpnPassphraseWarning.setText(null);
+				int wordCount = (Integer)spinWordCount.getValue();
+				String separator = separators[cmbSeparator.getSelectedIndex()];
+				txtPassphrase.setText(phraseGen.generatePassphrase(wordCount, separator, chckbxCapitalize.isSelected()));
+				lblEntropy.setText(String.format("Entropy: %.1f bits (%d words from a list of %d)",
+						phraseGen.getEntropyBits(wordCount), wordCount, phraseGen.getWordListSize()));
+			}
+		});
+		
+		JButton btnCancel_2 = new JButton("Close");
+		btnCancel_2.setBounds(217, 325, 85, 25);
+		panel_2.add(btnCancel_2);
+		btnCancel_2.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent clickCancel) {
+					frame.dispose();
+			}
+		});
+		
 		//Strength checker
 		JPanel panel_1 = new JPanel();
 		tabbedPane.addTab("Password Strength Checker", null, panel_1, null);
@@ -234,11 +324,15 @@ public class SecurityView {
 				StrengthChecker check = new StrengthChecker();
 				String input = new String(passwordField.getText()); //new String(passwordField.getPassword())
 				String output = check.checkStrength(input);
+				PasswordValidation validation = new PasswordValidation();
+				if (validation.isBreached(input)) { //passwords from breach corpora are rejected regardless of score
+					output = "Breached";
+				}
 				Color bg = new Color(255, 175, 0);
 				if(output.equals("Strong")) { //color password strength text
 					bg = Color.GREEN;
 				}
-				if(output.equals("Weak")){ 
+				if(output.equals("Weak") || output.equals("Breached")){ 
 					bg = Color.RED;
 				}
 				txtTestText.setForeground(bg);
@@ -78,7 +78,7 @@ public class SettingsView {
 		chckbxHighSecurityLevel.setBounds(58, 62, 222, 25);
 		frmSettings.getContentPane().add(chckbxHighSecurityLevel);
 		
-		//box lets user decide when to be reminded of needing to change their password
+		//box lets user decide how often they are asked to back up their data
 		JComboBox comboBox = new JComboBox();
 		comboBox.setModel(new DefaultComboBoxModel(new String[] {"Select Frequency", "Manually", "Hourly", "Daily", "Weekly", "Monthly", "Annually"}));
 		
@@ -107,7 +107,7 @@ public class SettingsView {
 			public void actionPerformed(ActionEvent arg0) { //GETS VALUE FROM COMBO BOX
 				String s  = (String) comboBox.getSelectedItem();
 				if(s.equals("Select Frequency")) {
-					JOptionPane.showMessageDialog(null, "Must select a max back up file size.", "Settings", 0);
+					JOptionPane.showMessageDialog(null, "Must select a back up frequency.", "Settings", 0);
 				}
 				else{
 				currentUser.setBackupFrequency(s); //Adds this value to user
@@ -120,8 +120,8 @@ public class SettingsView {
 		comboBox.setBounds(228, 126, 156, 22);
 		frmSettings.getContentPane().add(comboBox);
 		
-		JLabel lblBackupFrequency = new JLabel("Password Reminder:");
-		lblBackupFrequency.setToolTipText("This field sets how often users are reminded to change their password.");
+		JLabel lblBackupFrequency = new JLabel("Automatic Backups:");
+		lblBackupFrequency.setToolTipText("This field sets how often all user data is backed up on disk.");
 		lblBackupFrequency.setBounds(67, 129, 139, 16);
 		frmSettings.getContentPane().add(lblBackupFrequency);
 		
@@ -130,73 +130,37 @@ public class SettingsView {
 		lblUserSettings.setBounds(153, 26, 118, 25);
 		frmSettings.getContentPane().add(lblUserSettings);
 		
-		//Lets user set the file size past which they'll be warned about file size. & tool tip
+		//Lets user set how much disk space their backup archive may use; the oldest backups are deleted past it. & tool tip
+		final String[] backupSizes = {"Select Size", "100 MB", "250 MB", "500 MB", "1 GB", "5 GB", "Unlimited"};
+		final int[] backupMegabytes = {-1, 100, 250, 500, 1000, 5000, 0}; // 0 = no limit
 		JComboBox comboBox_1 = new JComboBox();
-		comboBox_1.setModel(new DefaultComboBoxModel(new String[] {"Select Frequency", "Manually", "Hourly", "Daily", "Weekly", "Monthly", "Annually"}));
-		//comboBox.setSelectedIndex(currentUser.getMaxBackupSize());
-		if(currentUser.getMaxBackupSize() == 1) { //number corresponds to position in the comboBox_1 String []. 
-												  // 1 = manually, 2 = hourly, 3= daily, 4 = weekly, 5 = monthly, 6 = annually.
-			comboBox_1.setSelectedIndex(1);
-		}
-		else if(currentUser.getMaxBackupSize() == 2){ 
-			comboBox_1.setSelectedIndex(2);
-		}
-		else if(currentUser.getMaxBackupSize() == 3){ 
-			comboBox_1.setSelectedIndex(3);
-		}
-		else if(currentUser.getMaxBackupSize() == 4){ 
-			comboBox_1.setSelectedIndex(4);
-		}
-		else if(currentUser.getMaxBackupSize() == 5){ 
-			comboBox_1.setSelectedIndex(5);
-		}
-		else if(currentUser.getMaxBackupSize() == 6){ 
-			comboBox_1.setSelectedIndex(6);
+		comboBox_1.setModel(new DefaultComboBoxModel(backupSizes));
+		comboBox_1.setSelectedIndex(0);
+		for (int i = 1; i < backupMegabytes.length; i++) {
+			if (currentUser.getMaxBackupSize() == backupMegabytes[i]) {
+				comboBox_1.setSelectedIndex(i);
+			}
 		}
-		else{comboBox_1.setSelectedIndex(0); }
 
 		comboBox_1.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				String s = (String) comboBox_1.getSelectedItem();
-				int freq = 0;
-				if(s.equals("Select Value")) { 
-					JOptionPane.showMessageDialog(null, "Must select a max back up frequency.", "Settings", 0);
-				}
-				else if(s.equals("Manually")) { 
-					freq = 1;
-					currentUser.setMaxBackupSize(freq);//Adds back up freq to current user.
-				}
-				else if (s.equals("Hourly")) { 
-					freq = 2;
-					currentUser.setMaxBackupSize(freq);//Adds back up freq to current user.
-				}
-				else if (s.equals("Daily")){
-					freq = 3;
-					currentUser.setMaxBackupSize(freq);
-				}
-				else if (s.equals("Weekly")) { 
-					freq = 4;
-					currentUser.setMaxBackupSize(freq);
-				}
-				else if ( s.equals("Monthly")){ 
-					freq = 5;
-					currentUser.setMaxBackupSize(freq);
+				int index = comboBox_1.getSelectedIndex();
+				if(index <= 0) { 
+					JOptionPane.showMessageDialog(null, "Must select a max back up file size.", "Settings", 0);
 				}
-				else if (s.equals("Annually")) {
-					freq = 6;
-					currentUser.setMaxBackupSize(freq);
+				else {
+					currentUser.setMaxBackupSize(backupMegabytes[index]);//Adds max backup size (MB) to current user.
 				}
-				
 			}
 		});
-		comboBox_1.setToolTipText("This field is the frequency with which a user's data is backed up.");
+		comboBox_1.setToolTipText("This field is the most disk space a user's backups may take.");
 		
 		comboBox_1.setBounds(228, 159, 157, 22);
 		frmSettings.getContentPane().add(comboBox_1);
 		
-		JLabel lblFileSizeLimit = new JLabel("Automatic Backups:");
+		JLabel lblFileSizeLimit = new JLabel("Max Backup Size:");
 		lblFileSizeLimit.setBounds(68, 162, 190, 16);
-		lblFileSizeLimit.setToolTipText("This field is the frequency with which user data is backed up.");
+		lblFileSizeLimit.setToolTipText("When backups take more space than this, the oldest ones are deleted.");
 
 		frmSettings.getContentPane().add(lblFileSizeLimit);
 		
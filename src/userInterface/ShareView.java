@@ -8,19 +8,27 @@ import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
 import controllers.DatabaseManager;
-import controllers.VaultController;
+import controllers.MailDispatcher;
+import controllers.VaultModel;
+import controllers.VaultSession;
 import cryptography.Crypto;
 
 import javax.swing.JTextField;
-import javax.mail.MessagingException;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JSeparator;
+import javax.swing.SwingWorker;
 import java.awt.Color;
 import dataManagement.*;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.awt.event.ActionEvent;
 import javax.swing.JTabbedPane;
 import java.awt.ComponentOrientation;
@@ -28,8 +36,10 @@ import java.awt.ComponentOrientation;
 public class ShareView extends JFrame {
 
 	private JPanel contentPanel;
-	private DataEntry oldData;
-	private DataEntry sharingData;
+	// Entries to share, identified by name, type and owner; decrypted only when shared via email
+	private List<DataEntry> entries;
+	// The entry opened in the vault, already decrypted; null when sharing a folder
+	private DataEntry decryptedEntry;
 	private User owner;
 	private JTextField textField;
 	private JTextField textField_1;
@@ -54,9 +64,25 @@ public class ShareView extends JFrame {
 	 * Create the frame.
 	 */
 	public ShareView(User owner, DataEntry entry) {
+		this(owner, Collections.singletonList(entry));
+		this.decryptedEntry = entry;
+	}
+
+	/**
+	 * Create the frame for sharing several entries (e.g. a whole folder) at once. Only their names are needed; the
+	 * entries are read and decrypted if and when they are shared via email.
+	 * 
+	 * @param	owner		User who owns the entries
+	 * @param	entryType	type (folder) of the entries
+	 * @param	entryNames	names of the entries to share
+	 */
+	public ShareView(User owner, String entryType, List<String> entryNames) {
+		this(owner, namedEntries(owner, entryType, entryNames));
+	}
+
+	private ShareView(User owner, List<DataEntry> entries) {
 		this.owner = owner;
-		this.oldData = entry;
-		this.sharingData = entry;
+		this.entries = entries;
 		setResizable(false);
 		setLocationRelativeTo(null);
 		setTitle("Share with your friend");
@@ -76,7 +102,7 @@ public class ShareView extends JFrame {
 		tabbedPane.addTab("Share", null, panel, null);
 		panel.setLayout(null);
 		
-		JLabel lblEmailAccountYou = new JLabel("Enter the email account you want to share with:");
+		JLabel lblEmailAccountYou = new JLabel("Enter the email accounts you want to share with:");
 		lblEmailAccountYou.setBounds(31, 65, 376, 18);
 		panel.add(lblEmailAccountYou);
 		
@@ -87,22 +113,42 @@ public class ShareView extends JFrame {
 		JButton btnShareViaEmail = new JButton("Share via email");
 		btnShareViaEmail.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				Crypto c = new Crypto();
-				String user = textField.getText();
-				String sharestr = c.generateShareString(owner, entry);
-				int sec = owner.isHighSecurity();
-				String salt = owner.getPasswordSalt();
-				String datakey = owner.getDataKey();
-				try {
-					VaultController.Send("sentineldatavault", "SENTINELDATA", user, "Data sharing", "content: \n" + sharestr);
-					
-					JOptionPane.showMessageDialog(null,"You have successfully shared your entry via email!");
-				
-					
-				} catch (MessagingException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+				final List<String> recipients = parseRecipients();
+				if (recipients.isEmpty()) {
+					return;
 				}
+				final JButton button = (JButton) arg0.getSource();
+				button.setEnabled(false);
+				// A folder is read and decrypted one entry at a time, off the event dispatch thread
+				new SwingWorker<String, Void>() {
+					protected String doInBackground() {
+						return renderEntries();
+					}
+
+					protected void done() {
+						button.setEnabled(true);
+						String body;
+						try {
+							body = get();
+						}
+						catch (Exception e) {
+							System.err.println(e.getClass().getName() + ": " + e.getMessage());
+							body = null;
+						}
+						if (body == null) {
+							JOptionPane.showMessageDialog(null, "Your entries could not be read. Please try again.");
+							return;
+						}
+						// Render every entry once, then send the same body to each recipient
+						List<MailDispatcher.OutgoingMail> mails = new ArrayList<MailDispatcher.OutgoingMail>();
+						for (String recipient : recipients) {
+							mails.add(new MailDispatcher.OutgoingMail(recipient, "Data sharing", body));
+						}
+						if (MailDispatcher.getInstance().enqueueAll(mails) > 0) {
+							JOptionPane.showMessageDialog(null,"You have successfully shared your entry via email!");
+						}
+					}
+				}.execute();
 			}
 		});
 		btnShareViaEmail.setBounds(182, 147, 153, 27);
@@ -117,17 +163,17 @@ public class ShareView extends JFrame {
 		lblTheDataYour.setBounds(31, 13, 242, 18);
 		panel.add(lblTheDataYour);
 		
-		JLabel lblNewLabel = new JLabel(oldData.getEntryName());
+		JLabel lblNewLabel = new JLabel(entries.size() == 1 ? entries.get(0).getEntryName() : entries.size() + " entries");
 		lblNewLabel.setBounds(41, 34, 232, 18);
 		panel.add(lblNewLabel);
 		
 		JButton btnStopSharing = new JButton("Stop sharing");
 		btnStopSharing.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				sharingData.removeAllValidUser();
-				DatabaseManager d = new DatabaseManager("vault_database");
-				d.deleteEntryFromDatabase(entry);
-				d.addEntryToDatabase(owner, sharingData);
+				if (DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).stopSharingEntries(entries) < 0) {
+					JOptionPane.showMessageDialog(null, "Sharing could not be stopped. Please try again.");
+					return;
+				}
 				JOptionPane.showMessageDialog(null,
 							"You have successfully stopped sharing your file!");
 				dispose();
@@ -138,29 +184,38 @@ public class ShareView extends JFrame {
 		panel.add(btnStopSharing);
 		btnShareLocally.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent arg0) {
-				DatabaseManager d = new DatabaseManager("vault_database");
-				
-				String user = textField.getText();
-				if (d.retrieveUserFromDatabase(user) != null){
-					List<String> validUsers = entry.getValidUsers();
-					if(!validUsers.contains(user)){
-				//now check if the target user actually exists
-					sharingData.addValidUser(user);
-					d.deleteEntryFromDatabase(entry);
-					d.addEntryToDatabase(owner, sharingData);
-					//d.updateEntry(owner, entry, sharingData);
-					JOptionPane.showMessageDialog(null,
-							"You have successfully shared your file with the target user!");
-					dispose();
-					}
-					else{
+				List<String> recipients = parseRecipients();
+				if (recipients.isEmpty()) {
+					return;
+				}
+				//now check if the target users actually exist
+				for (String user : recipients) {
+					if (VaultSession.findUser(user) == null) {
 						JOptionPane.showMessageDialog(null,
-							"You are already sharing with this user!");
+								"The user email " + user + " does not exist in our database. Please check if you type it correctly");
+						return;
 					}
 				}
-				else{
+				int shared = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).shareEntries(entries, recipients);
+				if (shared < 0) {
+					JOptionPane.showMessageDialog(null, "Sharing failed. Please try again.");
+				}
+				else if (shared == 0) {
 					JOptionPane.showMessageDialog(null,
-							"The user email does not exist in our database. Please check if you type it correctly");
+							"You are already sharing with these users!");
+				}
+				else {
+					// One notification per recipient, queued together
+					String what = (entries.size() == 1) ? "\"" + entries.get(0).getEntryName() + "\"" : entries.size() + " entries";
+					List<MailDispatcher.OutgoingMail> notifications = new ArrayList<MailDispatcher.OutgoingMail>();
+					for (String user : recipients) {
+						notifications.add(new MailDispatcher.OutgoingMail(user, "Data sharing",
+								owner.getUsername() + " has shared " + what + " with you in Sentinel Data Vault."));
+					}
+					MailDispatcher.getInstance().enqueueAll(notifications);
+					JOptionPane.showMessageDialog(null,
+							"You have successfully shared your file with the target user!");
+					dispose();
 				}
 			}
 		});
@@ -182,4 +237,57 @@ public class ShareView extends JFrame {
 		lblPleaseEnterThe.setBounds(14, 13, 407, 18);
 		panel_1.add(lblPleaseEnterThe);
 	}
+
+	/**
+	 * Renders the entries being shared as the body of an email. A folder's entries are streamed from the vault and
+	 * decrypted one at a time.
+	 * 
+	 * @return	the rendered entries, or null if they could not be read
+	 */
+	private String renderEntries() {
+		final Crypto c = new Crypto();
+		final StringBuilder content = new StringBuilder("content: \n");
+		if (decryptedEntry != null) {
+			content.append(c.generateShareString(owner, decryptedEntry)).append("\n\n");
+			return content.toString();
+		}
+		final Set<String> entryNames = new HashSet<String>();
+		for (DataEntry entry : entries) {
+			entryNames.add(entry.getEntryName());
+		}
+		DatabaseManager dbm = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE);
+		int streamed = dbm.streamUserDataEntries(owner, Collections.singletonList(entries.get(0).getEntryType()), new Consumer<DataEntry>() {
+			public void accept(DataEntry entry) {
+				if (entryNames.contains(entry.getEntryName())) {
+					content.append(c.generateShareString(owner, c.decrypt(owner, entry))).append("\n\n");
+					entry.setDataFields(null);
+				}
+			}
+		});
+		return (streamed < 0) ? null : content.toString();
+	}
+
+	/**
+	 * @return	entries identified by name, type and owner only, with no fields
+	 */
+	private static List<DataEntry> namedEntries(User owner, String entryType, List<String> entryNames) {
+		List<DataEntry> namedEntries = new ArrayList<DataEntry>(entryNames.size());
+		for (String entryName : entryNames) {
+			namedEntries.add(new DataEntry(entryName, entryType, null, owner.getUsername(), 0, null));
+		}
+		return namedEntries;
+	}
+
+	/**
+	 * @return	distinct usernames typed in the email field, which may be separated by commas, semicolons or spaces
+	 */
+	private List<String> parseRecipients() {
+		Set<String> recipients = new LinkedHashSet<String>();
+		for (String user : textField.getText().trim().split("[,;\\s]+")) {
+			if (!user.isEmpty() && !user.equals(owner.getUsername())) {
+				recipients.add(user);
+			}
+		}
+		return new ArrayList<String>(recipients);
+	}
 }
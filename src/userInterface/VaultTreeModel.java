@@ -0,0 +1,462 @@
+package userInterface;
+
+import java.awt.Component;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JTree;
+import javax.swing.SwingWorker;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+
+import controllers.DatabaseManager;
+import controllers.VaultModel;
+import controllers.VaultEvent;
+import controllers.VaultModelListener;
+
+/**
+ * Tree model for the HomeView entry browser that only loads what the user has expanded.
+ * Type nodes are created from per-type counts; their entry names are fetched in windows on a background thread the
+ * first time they are expanded, and dropped again when they are collapsed. Opening a vault therefore costs a couple of
+ * GROUP BY queries no matter how many entries it holds. Changes published by VaultModel are applied as single-node
+ * inserts and removals.
+ *
+ * The tree keeps the layout HomeView's selection listener expects:
+ * 	Data Entry > type > entry name
+ * 	Data Entry > Shared Data Entry > owner > type > entry name
+ */
+public class VaultTreeModel extends DefaultTreeModel implements TreeExpansionListener, VaultModelListener {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String ROOT_NAME = "Data Entry";
+	public static final String SHARED_NAME = "Shared Data Entry";
+	// Type nodes use these literals so HomeView's listener can keep comparing them by reference
+	public static final String[] ENTRY_TYPES = {"Account Login", "Confirmation Number", "Credit/Debit Card", "Entry Code",
+			"Flight Ticket", "General Password", "ID Card", "License", "Passport", "Phone Number", "Serial Number",
+			"Shipment Tracking Number", "SSN", "Wifi Network"};
+	private static final int PAGE_SIZE = 250; // entry names fetched per background query
+
+	private final String username;
+
+	/**
+	 * Builds the type nodes of a user's vault from per-type counts. No entry names are read.
+	 *
+	 * @param	username	username (email) of the user whose vault is shown
+	 */
+	public VaultTreeModel(String username) {
+		super(new DefaultMutableTreeNode(ROOT_NAME));
+		this.username = username;
+		DefaultMutableTreeNode root = (DefaultMutableTreeNode) getRoot();
+
+		DatabaseManager dm = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE);
+		Map<String, Integer> typeCounts = dm.countDataEntriesByType(username);
+		addTypeNodes(root, typeCounts, username, null);
+
+		Map<String, Map<String, Integer>> sharedCounts = dm.countSharedEntriesByOwnerAndType(username);
+		if (!sharedCounts.isEmpty()) {
+			DefaultMutableTreeNode sharedNode = new DefaultMutableTreeNode(SHARED_NAME);
+			root.add(sharedNode);
+			for (Map.Entry<String, Map<String, Integer>> ownerCounts : sharedCounts.entrySet()) {
+				DefaultMutableTreeNode ownerNode = new DefaultMutableTreeNode(ownerCounts.getKey());
+				sharedNode.add(ownerNode);
+				addTypeNodes(ownerNode, ownerCounts.getValue(), ownerCounts.getKey(), username);
+			}
+		}
+	}
+
+	private static void addTypeNodes(DefaultMutableTreeNode parent, Map<String, Integer> typeCounts, String owner, String sharedWith) {
+		for (String entryType : ENTRY_TYPES) {
+			Integer count = typeCounts.get(entryType);
+			if (count != null && count > 0) {
+				parent.add(new EntryTypeNode(entryType, owner, sharedWith, count));
+			}
+		}
+	}
+
+	/**
+	 * A type folder whose entry names are loaded on expansion. Never a leaf, even while it has no children loaded.
+	 */
+	public static class EntryTypeNode extends DefaultMutableTreeNode {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String owner;
+		private final String sharedWith;
+		private int entryCount;
+		private boolean loaded = false;
+		private EntryNameLoader loader = null;
+
+		EntryTypeNode(String entryType, String owner, String sharedWith, int entryCount) {
+			super(entryType);
+			this.owner = owner;
+			this.sharedWith = sharedWith;
+			this.entryCount = entryCount;
+			add(new PlaceholderNode());
+		}
+
+		public String getEntryType() {
+			return (String) getUserObject();
+		}
+
+		public String getOwner() {
+			return owner;
+		}
+
+		public int getEntryCount() {
+			return entryCount;
+		}
+
+		/**
+		 * @return	username the folder's entries are shared with, or null if it is one of the owner's own folders
+		 */
+		public String getSharedWith() {
+			return sharedWith;
+		}
+
+		public boolean isLeaf() {
+			return false;
+		}
+	}
+
+	/**
+	 * Stands in for the children of a type node until they have been loaded.
+	 */
+	public static class PlaceholderNode extends DefaultMutableTreeNode {
+
+		private static final long serialVersionUID = 1L;
+
+		PlaceholderNode() {
+			super("Loading...", false);
+		}
+	}
+
+	public void treeExpanded(TreeExpansionEvent event) {
+		Object expanded = event.getPath().getLastPathComponent();
+		if (expanded instanceof EntryTypeNode) {
+			EntryTypeNode typeNode = (EntryTypeNode) expanded;
+			if (!typeNode.loaded && typeNode.loader == null) {
+				typeNode.loader = new EntryNameLoader(typeNode);
+				typeNode.loader.execute();
+			}
+		}
+	}
+
+	public void treeCollapsed(TreeExpansionEvent event) {
+		unload((TreeNode) event.getPath().getLastPathComponent());
+	}
+
+	public void vaultChanged(VaultEvent event) {
+		boolean owned = event.getOwner().equals(username);
+		switch (event.getType()) {
+			case ADDED:
+				if (owned || event.isSharedWith(username)) {
+					addEntryName(event.getOwner(), event.getEntryType(), event.getEntryName());
+				}
+				break;
+			case REMOVED:
+				if (owned || event.isSharedWith(username)) {
+					removeEntryName(event.getOwner(), event.getEntryType(), event.getEntryName());
+				}
+				break;
+			case UPDATED:
+				if ((owned || event.isSharedWith(username)) && !event.getEntryName().equals(event.getPreviousEntryName())) {
+					removeEntryName(event.getOwner(), event.getEntryType(), event.getPreviousEntryName());
+					addEntryName(event.getOwner(), event.getEntryType(), event.getEntryName());
+				}
+				break;
+			case SHARED:
+				// Only the shared view of another owner's entry can change
+				if (!owned && event.isSharedWith(username) && !event.wasSharedWith(username)) {
+					addEntryName(event.getOwner(), event.getEntryType(), event.getEntryName());
+				}
+				else if (!owned && !event.isSharedWith(username) && event.wasSharedWith(username)) {
+					removeEntryName(event.getOwner(), event.getEntryType(), event.getEntryName());
+				}
+				break;
+			case RELOADED:
+				if (owned) {
+					recountOwnedTypes();
+				}
+				break;
+		}
+	}
+
+	private void addEntryName(String owner, String entryType, String entryName) {
+		EntryTypeNode typeNode = findTypeNode(owner, entryType, true);
+		typeNode.entryCount++;
+		nodeChanged(typeNode);
+		if (typeNode.loaded) {
+			// Children are sorted by name, as the windowed queries return them
+			int index = 0;
+			while (index < typeNode.getChildCount() && typeNode.getChildAt(index).toString().compareTo(entryName) < 0) {
+				index++;
+			}
+			typeNode.insert(new DefaultMutableTreeNode(entryName, false), index);
+			nodesWereInserted(typeNode, new int[] {index});
+		}
+		else if (typeNode.loader != null) {
+			reload(typeNode); // the running load may already be past this name
+		}
+	}
+
+	private void removeEntryName(String owner, String entryType, String entryName) {
+		EntryTypeNode typeNode = findTypeNode(owner, entryType, false);
+		if (typeNode == null) {
+			return;
+		}
+		typeNode.entryCount--;
+		if (typeNode.entryCount <= 0) {
+			// Remove the empty folder, and its owner and "Shared Data Entry" folders if they are now empty too
+			TreeNode node = typeNode;
+			while (node.getParent() != null && node.getParent() != getRoot() && node.getParent().getChildCount() == 1) {
+				node = node.getParent();
+			}
+			if (node instanceof EntryTypeNode && ((EntryTypeNode) node).loader != null) {
+				((EntryTypeNode) node).loader.cancel(false);
+				((EntryTypeNode) node).loader = null;
+			}
+			removeNodeFromParent((DefaultMutableTreeNode) node);
+			return;
+		}
+		nodeChanged(typeNode);
+		if (typeNode.loaded) {
+			for (int i = 0; i < typeNode.getChildCount(); i++) {
+				if (typeNode.getChildAt(i).toString().equals(entryName)) {
+					removeNodeFromParent((DefaultMutableTreeNode) typeNode.getChildAt(i));
+					break;
+				}
+			}
+		}
+		else if (typeNode.loader != null) {
+			reload(typeNode);
+		}
+	}
+
+	/**
+	 * Re-reads the counts of the user's own type folders after a bulk change, and reloads the folders that have
+	 * their names loaded. Folders left empty (e.g. by a restore) are removed.
+	 */
+	private void recountOwnedTypes() {
+		Map<String, Integer> typeCounts = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE).countDataEntriesByType(username);
+		for (String entryType : ENTRY_TYPES) {
+			Integer count = typeCounts.get(entryType);
+			if (count == null || count <= 0) {
+				EntryTypeNode emptyNode = findTypeNode(username, entryType, false);
+				if (emptyNode != null) {
+					emptyNode.entryCount = 1; // so removing the last name drops the folder and any empty folders above it
+					removeEntryName(username, entryType, null);
+				}
+				continue;
+			}
+			EntryTypeNode typeNode = findTypeNode(username, entryType, true);
+			if (typeNode.entryCount == count) {
+				continue;
+			}
+			typeNode.entryCount = count;
+			nodeChanged(typeNode);
+			if (typeNode.loaded || typeNode.loader != null) {
+				reload(typeNode);
+			}
+		}
+	}
+
+	/**
+	 * Finds the type folder that holds an owner's entries of a given type, optionally creating it (and the
+	 * "Shared Data Entry" and owner folders above it) in the same order the constructor builds them.
+	 */
+	private EntryTypeNode findTypeNode(String owner, String entryType, boolean create) {
+		DefaultMutableTreeNode root = (DefaultMutableTreeNode) getRoot();
+		DefaultMutableTreeNode parent = root;
+		String sharedWith = null;
+		if (!owner.equals(username)) {
+			sharedWith = username;
+			DefaultMutableTreeNode sharedNode = findChild(root, SHARED_NAME);
+			if (sharedNode == null) {
+				if (!create) {
+					return null;
+				}
+				sharedNode = new DefaultMutableTreeNode(SHARED_NAME);
+				insertNodeInto(sharedNode, root, root.getChildCount());
+			}
+			parent = findChild(sharedNode, owner);
+			if (parent == null) {
+				if (!create) {
+					return null;
+				}
+				int index = 0;
+				while (index < sharedNode.getChildCount() && sharedNode.getChildAt(index).toString().compareTo(owner) < 0) {
+					index++;
+				}
+				parent = new DefaultMutableTreeNode(owner);
+				insertNodeInto(parent, sharedNode, index);
+			}
+		}
+
+		int typeOrder = typeOrder(entryType);
+		int index = 0;
+		for (; index < parent.getChildCount(); index++) {
+			TreeNode child = parent.getChildAt(index);
+			if (child instanceof EntryTypeNode) {
+				int childOrder = typeOrder(((EntryTypeNode) child).getEntryType());
+				if (childOrder == typeOrder) {
+					return (EntryTypeNode) child;
+				}
+				if (childOrder > typeOrder) {
+					break;
+				}
+			}
+			else {
+				break; // "Shared Data Entry" always follows the owned type folders
+			}
+		}
+		if (!create) {
+			return null;
+		}
+		// Reuse the literal from ENTRY_TYPES so the folder name compares by reference like the others
+		EntryTypeNode typeNode = new EntryTypeNode(ENTRY_TYPES[typeOrder], owner, sharedWith, 0);
+		insertNodeInto(typeNode, parent, index);
+		return typeNode;
+	}
+
+	private static DefaultMutableTreeNode findChild(DefaultMutableTreeNode parent, String name) {
+		for (int i = 0; i < parent.getChildCount(); i++) {
+			if (parent.getChildAt(i).toString().equals(name) && !(parent.getChildAt(i) instanceof EntryTypeNode)) {
+				return (DefaultMutableTreeNode) parent.getChildAt(i);
+			}
+		}
+		return null;
+	}
+
+	private static int typeOrder(String entryType) {
+		for (int i = 0; i < ENTRY_TYPES.length; i++) {
+			if (ENTRY_TYPES[i].equals(entryType)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown entry type: " + entryType);
+	}
+
+	/**
+	 * Restarts loading a type folder from its first window.
+	 */
+	private void reload(EntryTypeNode typeNode) {
+		if (typeNode.loader != null) {
+			typeNode.loader.cancel(false);
+		}
+		typeNode.loaded = false;
+		typeNode.removeAllChildren();
+		typeNode.add(new PlaceholderNode());
+		nodeStructureChanged(typeNode);
+		typeNode.loader = new EntryNameLoader(typeNode);
+		typeNode.loader.execute();
+	}
+
+	/**
+	 * Drops the loaded entry names below a collapsed node so memory follows what is actually expanded.
+	 */
+	private void unload(TreeNode node) {
+		if (node instanceof EntryTypeNode) {
+			EntryTypeNode typeNode = (EntryTypeNode) node;
+			if (typeNode.loader != null) {
+				typeNode.loader.cancel(false);
+				typeNode.loader = null;
+			}
+			if (typeNode.loaded || typeNode.getChildCount() > 1) {
+				typeNode.loaded = false;
+				typeNode.removeAllChildren();
+				typeNode.add(new PlaceholderNode());
+				nodeStructureChanged(typeNode);
+			}
+			return;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			unload(node.getChildAt(i));
+		}
+	}
+
+	/**
+	 * Fetches the entry names of one type node a window at a time, inserting each window as it arrives.
+	 */
+	private class EntryNameLoader extends SwingWorker<Void, List<String>> {
+
+		private final EntryTypeNode typeNode;
+
+		EntryNameLoader(EntryTypeNode typeNode) {
+			this.typeNode = typeNode;
+		}
+
+		protected Void doInBackground() {
+			DatabaseManager dm = DatabaseManager.forDatabase(VaultModel.VAULT_DATABASE);
+			String afterName = null;
+			while (!isCancelled()) {
+				List<String> page = dm.retrieveDataEntryNamePage(typeNode.owner, typeNode.getEntryType(), typeNode.sharedWith, afterName, PAGE_SIZE);
+				if (!page.isEmpty()) {
+					publish(page);
+					afterName = page.get(page.size() - 1);
+				}
+				if (page.size() < PAGE_SIZE) {
+					break;
+				}
+			}
+			return null;
+		}
+
+		protected void process(List<List<String>> pages) {
+			if (typeNode.loader != this) {
+				return; // collapsed (and possibly re-expanded) since this window was fetched
+			}
+			for (List<String> page : pages) {
+				// New names go in front of the placeholder, which stays last until loading is done
+				int[] insertedIndices = new int[page.size()];
+				for (int i = 0; i < page.size(); i++) {
+					insertedIndices[i] = typeNode.getChildCount() - 1;
+					typeNode.insert(new DefaultMutableTreeNode(page.get(i), false), insertedIndices[i]);
+				}
+				nodesWereInserted(typeNode, insertedIndices);
+			}
+		}
+
+		protected void done() {
+			if (typeNode.loader != this) {
+				return;
+			}
+			typeNode.loader = null;
+			typeNode.loaded = true;
+			int placeholderIndex = typeNode.getChildCount() - 1;
+			if (placeholderIndex >= 0 && typeNode.getChildAt(placeholderIndex) instanceof PlaceholderNode) {
+				Object[] removed = {typeNode.getChildAt(placeholderIndex)};
+				typeNode.remove(placeholderIndex);
+				nodesWereRemoved(typeNode, new int[] {placeholderIndex}, removed);
+			}
+		}
+	}
+
+	/**
+	 * @return	renderer that shows each type folder with its entry count, e.g. "Account Login (12)"
+	 */
+	public static DefaultTreeCellRenderer createCellRenderer() {
+		return new DefaultTreeCellRenderer() {
+			private static final long serialVersionUID = 1L;
+
+			public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded, boolean leaf, int row, boolean hasFocus) {
+				super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
+				if (value instanceof EntryTypeNode) {
+					setText(value.toString() + " (" + ((EntryTypeNode) value).getEntryCount() + ")");
+				}
+				return this;
+			}
+		};
+	}
+
+	/**
+	 * @return	username (email) of the user whose vault is shown
+	 */
+	public String getUsername() {
+		return username;
+	}
+}